@@ -30,6 +30,7 @@ package org.sentilo.agent.activity.monitor.repository.batch;
 
 import java.util.List;
 
+import org.sentilo.agent.common.metrics.EventLatencyMetrics;
 import org.sentilo.common.domain.EventMessage;
 import org.sentilo.common.rest.RESTClient;
 
@@ -40,15 +41,22 @@ public class BatchProcessContext {
   private final int numMaxRetries;
   private final BatchProcessCallback callback;
   private final String esVersion;
+  private final EventLatencyMetrics latencyMetrics;
 
   public BatchProcessContext(final List<EventMessage> eventsToProcess, final RESTClient restClient, final int numMaxRetries, final String esVersion,
       final BatchProcessCallback callback) {
+    this(eventsToProcess, restClient, numMaxRetries, esVersion, callback, null);
+  }
+
+  public BatchProcessContext(final List<EventMessage> eventsToProcess, final RESTClient restClient, final int numMaxRetries, final String esVersion,
+      final BatchProcessCallback callback, final EventLatencyMetrics latencyMetrics) {
     super();
     this.eventsToProcess = eventsToProcess;
     this.restClient = restClient;
     this.numMaxRetries = numMaxRetries;
     this.esVersion = esVersion;
     this.callback = callback;
+    this.latencyMetrics = latencyMetrics;
   }
 
   public List<EventMessage> getEventsToProcess() {
@@ -71,4 +79,8 @@ public class BatchProcessContext {
     return esVersion;
   }
 
+  public EventLatencyMetrics getLatencyMetrics() {
+    return latencyMetrics;
+  }
+
 }
@@ -33,6 +33,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
 
+import org.sentilo.agent.common.metrics.EventLatencyMetrics;
 import org.sentilo.common.converter.DefaultStringMessageConverter;
 import org.sentilo.common.converter.StringMessageConverter;
 import org.sentilo.common.domain.EventMessage;
@@ -46,12 +47,14 @@ import org.springframework.util.StringUtils;
 public class BatchProcessWorker implements Callable<BatchProcessResult> {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(BatchProcessWorker.class);
+  private static final String SINK = "elasticsearch";
   private static final String DEFAULT_INDEX_NAME = "sentilo";
   private static final String DEFAULT_INDEX_MATH_DATE_PATTERN = "{now/d}";
 
   private List<EventMessage> initialEventsToProcess;
   private final RESTClient restClient;
   private final BatchProcessCallback callback;
+  private final EventLatencyMetrics latencyMetrics;
   private int numRetries;
   private final String indexName;
   private final int numMaxRetries;
@@ -63,6 +66,7 @@ public class BatchProcessWorker implements Callable<BatchProcessResult> {
     restClient = batchUpdateContext.getRestClient();
     numMaxRetries = batchUpdateContext.getNumMaxRetries();
     callback = batchUpdateContext.getCallback();
+    latencyMetrics = batchUpdateContext.getLatencyMetrics();
     esVersion = batchUpdateContext.getEsVersion();
 
     final String suffixIndexName =
@@ -78,7 +82,11 @@ public class BatchProcessWorker implements Callable<BatchProcessResult> {
   public BatchProcessResult call() {
     LOGGER.debug("Init batch process. Event elements that should be indexed in elasticsearch:  {} ", initialEventsToProcess.size());
 
+    final long flushStart = System.currentTimeMillis();
     final List<EventMessage> eventsNoProcessed = doBatchProcess();
+    if (latencyMetrics != null) {
+      latencyMetrics.recordFlush(SINK, flushStart, initialEventsToProcess, eventsNoProcessed);
+    }
     final int numElementsProcessed = initialEventsToProcess.size() - eventsNoProcessed.size();
     LOGGER.debug("Number of elements actually indexed: {}", numElementsProcessed);
 
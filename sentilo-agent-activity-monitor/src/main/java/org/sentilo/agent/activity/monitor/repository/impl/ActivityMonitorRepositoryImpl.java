@@ -44,6 +44,9 @@ import org.sentilo.agent.activity.monitor.repository.ActivityMonitorRepository;
 import org.sentilo.agent.activity.monitor.repository.batch.BatchProcessContext;
 import org.sentilo.agent.activity.monitor.repository.batch.BatchProcessMonitor;
 import org.sentilo.agent.activity.monitor.repository.batch.BatchProcessWorker;
+import org.sentilo.agent.common.metrics.EventLatencyMetrics;
+import org.sentilo.agent.common.repository.BufferedEventRepository;
+import org.sentilo.agent.common.utils.InFlightTasks;
 import org.sentilo.common.converter.DefaultStringMessageConverter;
 import org.sentilo.common.converter.StringMessageConverter;
 import org.sentilo.common.domain.EventMessage;
@@ -57,7 +60,7 @@ import org.springframework.stereotype.Repository;
 import org.springframework.util.CollectionUtils;
 
 @Repository
-public class ActivityMonitorRepositoryImpl implements ActivityMonitorRepository {
+public class ActivityMonitorRepositoryImpl implements ActivityMonitorRepository, BufferedEventRepository {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(ActivityMonitorRepositoryImpl.class);
 
@@ -78,8 +81,11 @@ public class ActivityMonitorRepositoryImpl implements ActivityMonitorRepository
   private RESTClient restClient;
   @Autowired
   private BatchProcessMonitor batchProcessMonitor;
+  @Autowired(required = false)
+  private EventLatencyMetrics latencyMetrics;
 
   private ExecutorService workersManager;
+  private final InFlightTasks inFlightTasks = new InFlightTasks();
 
   private final Lock lock = new ReentrantLock();
   private List<EventMessage> batchQueue = new ArrayList<EventMessage>();
@@ -138,14 +144,14 @@ public class ActivityMonitorRepositoryImpl implements ActivityMonitorRepository
     } finally {
       lock.unlock();
       if (eventsToIndex != null) {
-        flushToElasticSearch(new BatchProcessContext(eventsToIndex, restClient, numMaxRetries, esVersion, batchProcessMonitor));
+        flushToElasticSearch(new BatchProcessContext(eventsToIndex, restClient, numMaxRetries, esVersion, batchProcessMonitor, latencyMetrics));
       }
     }
   }
 
   private void flushToElasticSearch(final BatchProcessContext batchProcessContext) {
     // Assign flush task to a busy worker
-    workersManager.submit(new BatchProcessWorker(batchProcessContext));
+    inFlightTasks.submit(workersManager, new BatchProcessWorker(batchProcessContext));
     LOGGER.debug("Scheduled batch process task for index {} elements in elasticsearch ", batchProcessContext.getEventsToProcess().size());
   }
 
@@ -158,7 +164,7 @@ public class ActivityMonitorRepositoryImpl implements ActivityMonitorRepository
     try {
       if (!CollectionUtils.isEmpty(batchQueue)) {
         LOGGER.info("Flushing {} elements to elasticsearch", batchQueue.size());
-        final BatchProcessContext context = new BatchProcessContext(batchQueue, restClient, numMaxRetries, esVersion, batchProcessMonitor);
+        final BatchProcessContext context = new BatchProcessContext(batchQueue, restClient, numMaxRetries, esVersion, batchProcessMonitor, latencyMetrics);
         final BatchProcessWorker worker = new BatchProcessWorker(context);
         worker.call();
       }
@@ -168,6 +174,29 @@ public class ActivityMonitorRepositoryImpl implements ActivityMonitorRepository
     }
   }
 
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.sentilo.agent.common.repository.BufferedEventRepository#flushAndWait(long)
+   */
+  public void flushAndWait(final long timeout) {
+    List<EventMessage> eventsToIndex = null;
+    lock.lock();
+    try {
+      if (!CollectionUtils.isEmpty(batchQueue)) {
+        eventsToIndex = batchQueue;
+        batchQueue = new ArrayList<EventMessage>();
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    if (eventsToIndex != null) {
+      flushToElasticSearch(new BatchProcessContext(eventsToIndex, restClient, numMaxRetries, esVersion, batchProcessMonitor, latencyMetrics));
+    }
+    inFlightTasks.awaitAll(timeout);
+  }
+
   @SuppressWarnings({"unused", "rawtypes"})
   private String getElasticVersion() {
     final StringMessageConverter converter = new DefaultStringMessageConverter();
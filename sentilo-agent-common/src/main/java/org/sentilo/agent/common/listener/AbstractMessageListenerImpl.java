@@ -28,12 +28,16 @@
  */
 package org.sentilo.agent.common.listener;
 
+import java.util.List;
+
+import org.sentilo.agent.common.metrics.EventLatencyMetrics;
 import org.sentilo.common.converter.DefaultStringMessageConverter;
 import org.sentilo.common.converter.StringMessageConverter;
 import org.sentilo.common.domain.EventMessage;
 import org.sentilo.common.exception.MessageNotWritableException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.connection.Message;
 import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.data.redis.serializer.RedisSerializer;
@@ -48,6 +52,9 @@ public abstract class AbstractMessageListenerImpl implements MessageListener {
   private RedisSerializer<String> serializer = new StringRedisSerializer();
   private StringMessageConverter eventConverter = new DefaultStringMessageConverter();
 
+  @Autowired(required = false)
+  private EventLatencyMetrics latencyMetrics;
+
   public AbstractMessageListenerImpl(final String name) {
     super();
     Assert.notNull(name, "name must not be NULL");
@@ -66,6 +73,9 @@ public abstract class AbstractMessageListenerImpl implements MessageListener {
       // The received message corresponds to a JSON representation of an object of type
       // EventMessage.
       final EventMessage eventMessage = (EventMessage) eventConverter.unmarshal(info, EventMessage.class);
+      if (latencyMetrics != null) {
+        latencyMetrics.recordReceived(eventMessage);
+      }
 
       doWithMessage(eventMessage);
     } catch (final MessageNotWritableException mnwe) {
@@ -80,6 +90,19 @@ public abstract class AbstractMessageListenerImpl implements MessageListener {
    */
   public abstract void doWithMessage(final EventMessage eventMessage);
 
+  /**
+   * Called with the events read in a single batch from an event stream. By default each event is
+   * processed individually, but implementations that could benefit from handling them all at once
+   * (e.g. with a bulk insert) should override it.
+   *
+   * @param eventMessages
+   */
+  public void doWithMessages(final List<EventMessage> eventMessages) {
+    for (final EventMessage eventMessage : eventMessages) {
+      doWithMessage(eventMessage);
+    }
+  }
+
   public String getName() {
     return name;
   }
@@ -47,15 +47,26 @@ public abstract class AbstractSubscriptionsInitListener implements org.springfra
   @Autowired(required = false)
   private AsyncPendingEventService pendingEventService;
 
+  @Autowired(required = false)
+  private EventStreamConsumer streamConsumer;
+
   @Override
   public void onApplicationEvent(final ContextRefreshedEvent event) {
     LOGGER.info("Begin process to register agent's subscriptions ");
     subscribe();
+    if (isStreamEnabled()) {
+      streamConsumer.start();
+    }
     LOGGER.info("End of process");
   }
 
   protected void registerSubscription(final MessageListener messageListener, final Topic topic) {
-    listenerContainer.addMessageListener(messageListener, topic);
+    // Events are read either from the event streams or from the pub/sub channels, never from both
+    if (isStreamEnabled()) {
+      streamConsumer.addMessageListener(messageListener, topic);
+    } else {
+      listenerContainer.addMessageListener(messageListener, topic);
+    }
     if (pendingEventService != null) {
       pendingEventService.addMessageListener(messageListener, topic);
     }
@@ -64,4 +75,8 @@ public abstract class AbstractSubscriptionsInitListener implements org.springfra
 
   protected abstract void subscribe();
 
+  private boolean isStreamEnabled() {
+    return streamConsumer != null && streamConsumer.isEnabled();
+  }
+
 }
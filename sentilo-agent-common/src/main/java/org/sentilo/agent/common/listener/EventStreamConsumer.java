@@ -0,0 +1,351 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.agent.common.listener;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import javax.annotation.PreDestroy;
+
+import org.sentilo.agent.common.metrics.EventLatencyMetrics;
+import org.sentilo.agent.common.repository.BufferedEventRepository;
+import org.sentilo.agent.common.repository.EventStreamEntry;
+import org.sentilo.agent.common.repository.EventStreamRepository;
+import org.sentilo.agent.common.utils.Constants;
+import org.sentilo.agent.common.utils.Utils;
+import org.sentilo.common.converter.DefaultStringMessageConverter;
+import org.sentilo.common.converter.StringMessageConverter;
+import org.sentilo.common.domain.EventMessage;
+import org.sentilo.common.enums.EventTransport;
+import org.sentilo.common.exception.MessageNotWritableException;
+import org.sentilo.common.utils.EventStreamUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.Topic;
+import org.springframework.stereotype.Component;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Reads the events of the agent's subscriptions from the platform event streams when the stream
+ * transport is enabled (<code>jedis.events.transport</code>).
+ *
+ * Every instance of the same agent joins the same consumer group, named as the agent, so events are
+ * shared among them, and each one reads them in batches of up to
+ * <code>jedis.events.stream.batch.size</code> entries. Entries are acknowledged once they have been
+ * handed to the listeners and every {@link BufferedEventRepository} of the agent has confirmed that
+ * the events have been written. Entries not acknowledged are recovered in two ways:
+ * <ul>
+ * <li>entries read but not acknowledged before a restart are delivered again to the same consumer
+ * when it starts, and</li>
+ * <li>every <code>jedis.events.stream.claim.interval</code> millis, entries of any consumer of the
+ * group that have been pending for at least <code>jedis.events.stream.claim.idle</code> millis
+ * (e.g. because their consumer has died, or has failed to write them) are claimed and processed
+ * again. This time must be greater than <code>jedis.events.stream.flush.timeout</code>, so
+ * entries still being processed are not claimed.</li>
+ * </ul>
+ *
+ * Reads are non-blocking: streams are polled every <code>jedis.events.stream.poll.interval</code>
+ * millis while there are no new entries.
+ */
+@Component
+public class EventStreamConsumer implements Runnable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(EventStreamConsumer.class);
+
+  private static final String NEW_ENTRIES = ">";
+  private static final String PENDING_ENTRIES = "0";
+
+  @Autowired
+  private EventStreamRepository eventStreamRepository;
+
+  @Autowired(required = false)
+  private List<BufferedEventRepository> bufferedRepositories = Collections.emptyList();
+
+  @Autowired(required = false)
+  private EventLatencyMetrics latencyMetrics;
+
+  @Value("${jedis.events.transport:pubsub}")
+  private EventTransport transport = EventTransport.pubsub;
+
+  @Value("${jedis.events.stream.partitions:4}")
+  private int partitions = 4;
+
+  @Value("${jedis.events.stream.batch.size:100}")
+  private int batchSize = 100;
+
+  @Value("${jedis.events.stream.poll.interval:500}")
+  private long pollInterval = 500;
+
+  @Value("${jedis.events.stream.flush.timeout:60000}")
+  private long flushTimeout = 60000;
+
+  @Value("${jedis.events.stream.claim.interval:30000}")
+  private long claimInterval = 30000;
+
+  @Value("${jedis.events.stream.claim.idle:120000}")
+  private long claimIdleTime = 120000;
+
+  /** Where a new consumer group starts reading from: $ (only new events) or 0 (retained ones too) */
+  @Value("${jedis.events.stream.start:$}")
+  private String startId = "$";
+
+  @Value("${jedis.events.stream.consumer:}")
+  private String consumer;
+
+  private final Map<Topic, MessageListener> topicMapping = new ConcurrentHashMap<Topic, MessageListener>();
+  private final Set<String> streams = new CopyOnWriteArraySet<String>();
+  private final StringMessageConverter eventConverter = new DefaultStringMessageConverter();
+
+  private volatile boolean running;
+  private Thread worker;
+
+  public boolean isEnabled() {
+    return transport.isStream();
+  }
+
+  /**
+   * Registers a listener for the events of <code>topic</code> and creates, if needed, the agent's
+   * consumer group on every stream partition which could hold them.
+   */
+  public void addMessageListener(final MessageListener listener, final Topic topic) {
+    topicMapping.put(topic, listener);
+    for (final String stream : EventStreamUtils.getStreamKeys(topic.getTopic(), partitions)) {
+      if (streams.add(stream)) {
+        eventStreamRepository.createGroup(stream, getGroup(), startId);
+        LOGGER.debug("Consumer group {} registered on stream {}", getGroup(), stream);
+      }
+    }
+  }
+
+  public synchronized void start() {
+    if (worker == null && !streams.isEmpty()) {
+      running = true;
+      worker = new Thread(this, "EventStreamConsumer");
+      worker.setDaemon(true);
+      worker.start();
+      LOGGER.info("Consumer {} of group {} started on streams {}", getConsumer(), getGroup(), streams);
+    }
+  }
+
+  @PreDestroy
+  public synchronized void stop() {
+    running = false;
+    if (worker != null) {
+      worker.interrupt();
+      try {
+        worker.join(pollInterval * 2);
+      } catch (final InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+      worker = null;
+    }
+  }
+
+  @Override
+  public void run() {
+    // First of all, entries delivered before the last stop but never acknowledged are processed
+    for (final String stream : streams) {
+      replayPending(stream);
+    }
+
+    long lastClaim = System.currentTimeMillis();
+    while (running) {
+      if (System.currentTimeMillis() - lastClaim >= claimInterval) {
+        for (final String stream : streams) {
+          claimIdle(stream);
+        }
+        lastClaim = System.currentTimeMillis();
+      }
+
+      int consumed = 0;
+      for (final String stream : streams) {
+        consumed += consume(stream, NEW_ENTRIES);
+      }
+
+      if (consumed == 0) {
+        try {
+          Thread.sleep(pollInterval);
+        } catch (final InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          running = false;
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads a batch of entries from the stream, hands them to the listeners subscribed to their
+   * topics and acknowledges them once they have been written.
+   *
+   * @return number of entries acknowledged
+   */
+  public int consume(final String stream, final String id) {
+    final List<EventStreamEntry> entries;
+    try {
+      entries = eventStreamRepository.readGroup(stream, getGroup(), getConsumer(), batchSize, id);
+    } catch (final Exception e) {
+      LOGGER.error("Error reading entries from stream {}", stream, e);
+      return 0;
+    }
+
+    return process(stream, entries);
+  }
+
+  /**
+   * Processes the entries of the stream that have been delivered to this consumer but have not been
+   * acknowledged, page by page, so that entries which fail again do not prevent the following ones
+   * from being replayed.
+   */
+  public void replayPending(final String stream) {
+    String lastId = PENDING_ENTRIES;
+    List<EventStreamEntry> entries;
+    do {
+      try {
+        entries = eventStreamRepository.readGroup(stream, getGroup(), getConsumer(), batchSize, lastId);
+      } catch (final Exception e) {
+        LOGGER.error("Error reading pending entries from stream {}", stream, e);
+        return;
+      }
+
+      if (!entries.isEmpty()) {
+        LOGGER.debug("Replaying {} pending entries of stream {}", entries.size(), stream);
+        lastId = entries.get(entries.size() - 1).getId();
+        process(stream, entries);
+      }
+    } while (running && entries.size() == batchSize);
+  }
+
+  /**
+   * Claims the entries of the stream that have been idle for too long and processes them.
+   *
+   * @return number of entries acknowledged
+   */
+  public int claimIdle(final String stream) {
+    final List<EventStreamEntry> entries;
+    try {
+      entries = eventStreamRepository.claimIdle(stream, getGroup(), getConsumer(), claimIdleTime, batchSize);
+    } catch (final Exception e) {
+      LOGGER.error("Error claiming idle entries from stream {}", stream, e);
+      return 0;
+    }
+
+    if (!entries.isEmpty()) {
+      LOGGER.info("Claimed {} entries of stream {} idle for more than {} ms", entries.size(), stream, claimIdleTime);
+    }
+    return process(stream, entries);
+  }
+
+  private int process(final String stream, final List<EventStreamEntry> entries) {
+    if (CollectionUtils.isEmpty(entries)) {
+      return 0;
+    }
+
+    try {
+      final List<String> ids = new ArrayList<String>();
+      final Map<MessageListener, List<EventMessage>> batches = new LinkedHashMap<MessageListener, List<EventMessage>>();
+      for (final EventStreamEntry entry : entries) {
+        ids.add(entry.getId());
+        // Entries trimmed from the stream while pending can not be processed anymore
+        if (entry.getMessage() != null) {
+          addToBatches(batches, entry.getTopic(), entry.getMessage());
+        }
+      }
+
+      for (final Entry<MessageListener, List<EventMessage>> batch : batches.entrySet()) {
+        ((AbstractMessageListenerImpl) batch.getKey()).doWithMessages(batch.getValue());
+      }
+
+      // Events could still be buffered in memory: entries are only acknowledged once written
+      for (final BufferedEventRepository repository : bufferedRepositories) {
+        repository.flushAndWait(flushTimeout);
+      }
+
+      eventStreamRepository.ack(stream, getGroup(), ids);
+      return ids.size();
+    } catch (final Exception e) {
+      // Entries not acknowledged remain pending and will be claimed again once idle
+      LOGGER.error("Error consuming entries from stream {}", stream, e);
+      return 0;
+    }
+  }
+
+  private void addToBatches(final Map<MessageListener, List<EventMessage>> batches, final String channel, final String message) {
+    final EventMessage event;
+    try {
+      event = (EventMessage) eventConverter.unmarshal(message, EventMessage.class);
+    } catch (final MessageNotWritableException mnwe) {
+      // Entry can never be processed, so it is discarded (and acknowledged)
+      LOGGER.error("Error unmarshalling message: {}. ", message, mnwe);
+      return;
+    }
+
+    if (latencyMetrics != null) {
+      latencyMetrics.recordReceived(event);
+    }
+
+    for (final Entry<Topic, MessageListener> mapping : topicMapping.entrySet()) {
+      if (Utils.matches(mapping.getKey(), channel)) {
+        List<EventMessage> batch = batches.get(mapping.getValue());
+        if (batch == null) {
+          batch = new ArrayList<EventMessage>();
+          batches.put(mapping.getValue(), batch);
+        }
+        batch.add(event);
+      }
+    }
+  }
+
+  private String getGroup() {
+    return System.getProperty(Constants.SENTILO_AGENT_NAME_ENV);
+  }
+
+  /**
+   * The consumer name must be stable across restarts so pending entries could be recovered: by
+   * default it is the agent name followed by the host name.
+   */
+  private String getConsumer() {
+    if (!StringUtils.hasText(consumer)) {
+      final String runtimeName = ManagementFactory.getRuntimeMXBean().getName();
+      consumer = getGroup() + "@" + runtimeName.substring(runtimeName.indexOf('@') + 1);
+    }
+    return consumer;
+  }
+}
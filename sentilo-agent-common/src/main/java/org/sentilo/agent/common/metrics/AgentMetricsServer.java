@@ -0,0 +1,104 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.agent.common.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Exposes the agent metrics, in the Prometheus text format, at
+ * <code>http://{host}:{sentilo.agent.metrics.port}/metrics</code> so they can be scraped. Agents
+ * don't run any web server, so the one embedded in the JDK is used. It is disabled by default (port
+ * 0).
+ */
+@Component
+public class AgentMetricsServer {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AgentMetricsServer.class);
+
+  private static final String CONTEXT_PATH = "/metrics";
+  private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  @Value("${sentilo.agent.metrics.port:0}")
+  private int port;
+
+  @Autowired
+  private EventLatencyMetrics latencyMetrics;
+
+  private HttpServer server;
+
+  @PostConstruct
+  public void start() throws IOException {
+    if (port <= 0) {
+      return;
+    }
+
+    server = HttpServer.create(new InetSocketAddress(port), 0);
+    server.createContext(CONTEXT_PATH, new HttpHandler() {
+
+      @Override
+      public void handle(final HttpExchange exchange) throws IOException {
+        final byte[] body = latencyMetrics.toPrometheusFormat().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(200, body.length);
+        try (final OutputStream os = exchange.getResponseBody()) {
+          os.write(body);
+        }
+      }
+    });
+    server.start();
+    LOGGER.info("Agent metrics exposed on port {} at {}", port, CONTEXT_PATH);
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (server != null) {
+      server.stop(0);
+    }
+  }
+
+  public int getPort() {
+    return server != null ? server.getAddress().getPort() : port;
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.agent.common.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.sentilo.agent.common.utils.Constants;
+import org.sentilo.common.domain.EventMessage;
+import org.sentilo.common.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.CollectionUtils;
+
+/**
+ * Keeps latency histograms of the events processed by the agent, from the moment they are published
+ * by the platform (i.e. {@link EventMessage#getPublishedAt()}) to the moment they are stored in the
+ * agent sink (OpenTSDB, Elasticsearch, a database, Kafka, ...). The time is split into the
+ * following stages:
+ * <ul>
+ * <li>delivery: from the publication of the event to its reception by the agent.</li>
+ * <li>queue: from the reception of the event to the start of the flush which stores it in the
+ * sink.</li>
+ * <li>flush: duration of each flush to the sink (retries included), recorded once per flush.</li>
+ * <li>end_to_end: from the publication of the event to the end of the flush which has stored
+ * it.</li>
+ * </ul>
+ * Delivery and end to end latencies depend on the clocks of the platform and the agent being in
+ * sync.
+ */
+@Component
+public class EventLatencyMetrics {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(EventLatencyMetrics.class);
+
+  public static final String DELIVERY = "delivery";
+  public static final String QUEUE = "queue";
+  public static final String FLUSH = "flush";
+  public static final String END_TO_END = "end_to_end";
+
+  private static final String METRIC_NAME = "sentilo_agent_event_latency_seconds";
+  private static final double[] QUANTILES = {50, 95, 99};
+
+  private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+
+  /**
+   * Records the delivery latency of an event just received by the agent and marks it with the
+   * current time, from which its queue time will be computed.
+   */
+  public void recordReceived(final EventMessage event) {
+    final long now = System.currentTimeMillis();
+    event.setReceivedAt(now);
+    if (event.getPublishedAt() != null) {
+      record(DELIVERY, null, now - event.getPublishedAt());
+    }
+  }
+
+  /**
+   * Records a flush of events to a sink which has started at <code>flushStartMillis</code> and has
+   * just finished.
+   *
+   * @param sink name of the sink where events are stored
+   * @param flushStartMillis time when the flush has started
+   * @param events events to store
+   * @param failedEvents events, among the previous ones, which could not be stored. They are not
+   *        accounted since they will be stored later as pending events.
+   */
+  public void recordFlush(final String sink, final long flushStartMillis, final List<EventMessage> events, final List<EventMessage> failedEvents) {
+    final long now = System.currentTimeMillis();
+    record(FLUSH, sink, now - flushStartMillis);
+
+    if (CollectionUtils.isEmpty(events) || !CollectionUtils.isEmpty(failedEvents) && failedEvents.size() >= events.size()) {
+      return;
+    }
+
+    final Set<EventMessage> failed = Collections.newSetFromMap(new IdentityHashMap<EventMessage, Boolean>());
+    if (failedEvents != null) {
+      failed.addAll(failedEvents);
+    }
+
+    for (final EventMessage event : events) {
+      if (failed.contains(event)) {
+        continue;
+      }
+      if (event.getReceivedAt() != null) {
+        record(QUEUE, sink, flushStartMillis - event.getReceivedAt());
+      }
+      if (event.getPublishedAt() != null) {
+        record(END_TO_END, sink, now - event.getPublishedAt());
+      }
+    }
+  }
+
+  public LatencyHistogram getHistogram(final String stage, final String sink) {
+    return histograms.get(buildKey(stage, sink));
+  }
+
+  /**
+   * Writes the histograms in the Prometheus text exposition format, as summaries labelled by agent,
+   * stage and sink.
+   */
+  public String toPrometheusFormat() {
+    final String agent = System.getProperty(Constants.SENTILO_AGENT_NAME_ENV);
+    final StringBuilder sb = new StringBuilder();
+    sb.append("# HELP ").append(METRIC_NAME).append(" Latency of the events processed by the agent, by stage and sink\n");
+    sb.append("# TYPE ").append(METRIC_NAME).append(" summary\n");
+
+    for (final Entry<String, LatencyHistogram> entry : getSortedHistograms().entrySet()) {
+      final String[] tokens = entry.getKey().split(" ", -1);
+      final LatencyHistogram histogram = entry.getValue();
+      final String labels = buildLabels(agent, tokens[0], tokens[1]);
+
+      for (final double quantile : QUANTILES) {
+        sb.append(METRIC_NAME).append('{').append(labels).append(",quantile=\"").append(quantile / 100).append("\"} ");
+        sb.append(histogram.getPercentileMillis(quantile) / 1000).append('\n');
+      }
+      sb.append(METRIC_NAME).append("_sum{").append(labels).append("} ");
+      sb.append(histogram.getMeanMillis() * histogram.getCount() / 1000).append('\n');
+      sb.append(METRIC_NAME).append("_count{").append(labels).append("} ").append(histogram.getCount()).append('\n');
+    }
+
+    return sb.toString();
+  }
+
+  @Scheduled(initialDelay = 60000, fixedDelay = 60000 * 10)
+  public void writeState() {
+    LOGGER.info(" ---- EventLatencyMetrics ---- ");
+    for (final Entry<String, LatencyHistogram> entry : getSortedHistograms().entrySet()) {
+      final LatencyHistogram histogram = entry.getValue();
+      LOGGER.info("{} --> count: {}, mean: {} ms, p95: {} ms, p99: {} ms, max: {} ms", entry.getKey().trim(), histogram.getCount(),
+          histogram.getMeanMillis(), histogram.getPercentileMillis(95), histogram.getPercentileMillis(99), histogram.getMaxMillis());
+    }
+  }
+
+  private void record(final String stage, final String sink, final long elapsedMillis) {
+    final String key = buildKey(stage, sink);
+    LatencyHistogram histogram = histograms.get(key);
+    if (histogram == null) {
+      final LatencyHistogram newHistogram = new LatencyHistogram();
+      histogram = histograms.putIfAbsent(key, newHistogram);
+      if (histogram == null) {
+        histogram = newHistogram;
+      }
+    }
+    histogram.record(elapsedMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private Map<String, LatencyHistogram> getSortedHistograms() {
+    return new TreeMap<String, LatencyHistogram>(histograms);
+  }
+
+  private static String buildKey(final String stage, final String sink) {
+    return stage + " " + (sink != null ? sink : "");
+  }
+
+  private static String buildLabels(final String agent, final String stage, final String sink) {
+    final List<String> labels = new ArrayList<String>();
+    if (agent != null) {
+      labels.add("agent=\"" + agent + "\"");
+    }
+    labels.add("stage=\"" + stage + "\"");
+    if (!sink.isEmpty()) {
+      labels.add("sink=\"" + sink + "\"");
+    }
+    return String.join(",", labels);
+  }
+}
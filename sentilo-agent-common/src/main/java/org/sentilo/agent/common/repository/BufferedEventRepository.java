@@ -0,0 +1,50 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.agent.common.repository;
+
+/**
+ * Implemented by the agent repositories which do not persist the events synchronously, e.g. because
+ * they are buffered and written in batches by background workers.
+ *
+ * When events are read from a stream, entries are only acknowledged once
+ * {@link #flushAndWait(long)} has returned, so they will be delivered again if the agent dies
+ * before writing them.
+ */
+public interface BufferedEventRepository {
+
+  /**
+   * Writes the events buffered so far and waits until they, and every write already in progress,
+   * have finished. Events which can not be written are considered done once they have been stored
+   * as pending events.
+   *
+   * @param timeout max time to wait, in millis
+   * @throws IllegalStateException if writes have not finished in time, or if they could not be done
+   */
+  void flushAndWait(final long timeout);
+}
@@ -0,0 +1,63 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.agent.common.repository;
+
+/**
+ * Entry read from a platform event stream: its id and the topic and message fields added by the
+ * platform. Fields are null if the entry has been trimmed from the stream since it was delivered.
+ */
+public class EventStreamEntry {
+
+  private final String id;
+  private final String topic;
+  private final String message;
+
+  public EventStreamEntry(final String id, final String topic, final String message) {
+    this.id = id;
+    this.topic = topic;
+    this.message = message;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getTopic() {
+    return topic;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  @Override
+  public String toString() {
+    return id + " " + topic;
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.agent.common.repository;
+
+import java.util.List;
+
+/**
+ * Consumer group operations over the platform event streams.
+ */
+public interface EventStreamRepository {
+
+  /**
+   * Creates the consumer group on the stream, and the stream itself, if they do not exist yet.
+   *
+   * @param stream
+   * @param group
+   * @param startId id from which a new group starts reading: $ (only new entries) or 0
+   */
+  void createGroup(final String stream, final String group, final String startId);
+
+  /**
+   * Reads up to <code>count</code> entries of the stream on behalf of the consumer: new entries if
+   * <code>id</code> is &gt;, or entries already delivered to the consumer, and not acknowledged yet,
+   * whose id is greater than <code>id</code> otherwise.
+   *
+   * @param stream
+   * @param group
+   * @param consumer
+   * @param count
+   * @param id
+   * @return entries read, never null
+   */
+  List<EventStreamEntry> readGroup(final String stream, final String group, final String consumer, final int count, final String id);
+
+  /**
+   * Acknowledges the entries, removing them from the pending entries list of the group.
+   *
+   * @param stream
+   * @param group
+   * @param ids
+   * @return number of entries acknowledged
+   */
+  long ack(final String stream, final String group, final List<String> ids);
+
+  /**
+   * Transfers to the consumer up to <code>count</code> pending entries of the group which have not
+   * been acknowledged for at least <code>minIdleTime</code> millis, e.g. because the consumer they
+   * were delivered to has died or has failed to process them.
+   *
+   * @param stream
+   * @param group
+   * @param consumer
+   * @param minIdleTime
+   * @param count
+   * @return entries claimed, never null
+   */
+  List<EventStreamEntry> claimIdle(final String stream, final String group, final String consumer, final long minIdleTime, final int count);
+}
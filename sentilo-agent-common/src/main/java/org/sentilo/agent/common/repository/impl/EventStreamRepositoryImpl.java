@@ -0,0 +1,204 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.agent.common.repository.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.sentilo.agent.common.repository.EventStreamEntry;
+import org.sentilo.agent.common.repository.EventStreamRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.CollectionUtils;
+
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Neither Jedis nor Spring Data Redis versions used by Sentilo support stream commands, and
+ * XREADGROUP can not be called from Lua scripts before Redis 7, so commands are written to the
+ * connection as raw RESP arrays and their replies are read back through the Jedis client. Thus,
+ * this repository requires a Jedis connection factory and Redis 5 or later.
+ */
+@Repository
+public class EventStreamRepositoryImpl implements EventStreamRepository {
+
+  private static final String BUSYGROUP = "BUSYGROUP";
+  private static final String TOPIC_FIELD = "topic";
+  private static final String MESSAGE_FIELD = "message";
+  private static final byte[] CRLF = {'\r', '\n'};
+
+  @Autowired
+  private StringRedisTemplate redisTemplate;
+
+  public void createGroup(final String stream, final String group, final String startId) {
+    try {
+      execute("XGROUP", "CREATE", stream, group, startId, "MKSTREAM");
+    } catch (final JedisDataException jde) {
+      if (jde.getMessage() == null || !jde.getMessage().startsWith(BUSYGROUP)) {
+        throw jde;
+      }
+    }
+  }
+
+  public List<EventStreamEntry> readGroup(final String stream, final String group, final String consumer, final int count, final String id) {
+    // Reply is null if there are no new entries, or a list with a [stream, entries] pair otherwise
+    final List<?> reply = (List<?>) execute("XREADGROUP", "GROUP", group, consumer, "COUNT", Integer.toString(count), "STREAMS", stream, id);
+    if (CollectionUtils.isEmpty(reply)) {
+      return Collections.emptyList();
+    }
+
+    return toEntries((List<?>) ((List<?>) reply.get(0)).get(1));
+  }
+
+  public long ack(final String stream, final String group, final List<String> ids) {
+    if (CollectionUtils.isEmpty(ids)) {
+      return 0;
+    }
+
+    final List<String> args = new ArrayList<String>(ids.size() + 3);
+    args.add("XACK");
+    args.add(stream);
+    args.add(group);
+    args.addAll(ids);
+    return (Long) execute(args.toArray(new String[args.size()]));
+  }
+
+  public List<EventStreamEntry> claimIdle(final String stream, final String group, final String consumer, final long minIdleTime, final int count) {
+    // Each pending entry is described by its id, consumer, idle time and number of deliveries
+    final List<?> pending = (List<?>) execute("XPENDING", stream, group, "-", "+", Integer.toString(count));
+    final List<String> args = new ArrayList<String>();
+    if (!CollectionUtils.isEmpty(pending)) {
+      for (final Object item : pending) {
+        final List<?> fields = (List<?>) item;
+        if ((Long) fields.get(2) >= minIdleTime) {
+          args.add(toString(fields.get(0)));
+        }
+      }
+    }
+
+    if (args.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    // XCLAIM only transfers the entries which are still idle, so another consumer could not claim
+    // them at the same time
+    args.addAll(0, Arrays.asList("XCLAIM", stream, group, consumer, Long.toString(minIdleTime)));
+    return toEntries((List<?>) execute(args.toArray(new String[args.size()])));
+  }
+
+  private List<EventStreamEntry> toEntries(final List<?> reply) {
+    final List<EventStreamEntry> entries = new ArrayList<EventStreamEntry>();
+    if (reply == null) {
+      return entries;
+    }
+
+    for (final Object item : reply) {
+      // Entries deleted from the stream while pending are returned without fields, or as nil
+      if (item == null) {
+        continue;
+      }
+      final List<?> entry = (List<?>) item;
+      String topic = null;
+      String message = null;
+      final List<?> fields = entry.size() > 1 ? (List<?>) entry.get(1) : null;
+      for (int i = 0; fields != null && i + 1 < fields.size(); i += 2) {
+        final String field = toString(fields.get(i));
+        if (TOPIC_FIELD.equals(field)) {
+          topic = toString(fields.get(i + 1));
+        } else if (MESSAGE_FIELD.equals(field)) {
+          message = toString(fields.get(i + 1));
+        }
+      }
+      entries.add(new EventStreamEntry(toString(entry.get(0)), topic, message));
+    }
+
+    return entries;
+  }
+
+  private Object execute(final String... args) {
+    return redisTemplate.execute(new RedisCallback<Object>() {
+
+      public Object doInRedis(final RedisConnection connection) throws DataAccessException {
+        final Client client = ((Jedis) connection.getNativeConnection()).getClient();
+        client.connect();
+        try {
+          final OutputStream out = client.getSocket().getOutputStream();
+          out.write(encode(args));
+          out.flush();
+        } catch (final IOException ioe) {
+          // The connection is left in an unknown state: it is closed, and opened again (and
+          // authenticated) by the next command
+          client.disconnect();
+          throw new JedisConnectionException(ioe);
+        }
+
+        try {
+          return client.getOne();
+        } finally {
+          client.resetPipelinedCount();
+        }
+      }
+    });
+  }
+
+  private static byte[] encode(final String... args) {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeLine(out, "*" + args.length);
+    for (final String arg : args) {
+      final byte[] value = SafeEncoder.encode(arg);
+      writeLine(out, "$" + value.length);
+      out.write(value, 0, value.length);
+      out.write(CRLF, 0, CRLF.length);
+    }
+    return out.toByteArray();
+  }
+
+  private static void writeLine(final ByteArrayOutputStream out, final String line) {
+    final byte[] value = SafeEncoder.encode(line);
+    out.write(value, 0, value.length);
+    out.write(CRLF, 0, CRLF.length);
+  }
+
+  private static String toString(final Object value) {
+    return value instanceof byte[] ? SafeEncoder.encode((byte[]) value) : null;
+  }
+}
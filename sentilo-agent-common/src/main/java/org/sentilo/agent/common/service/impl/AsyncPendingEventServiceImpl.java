@@ -30,14 +30,12 @@ package org.sentilo.agent.common.service.impl;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.sentilo.agent.common.listener.AbstractMessageListenerImpl;
 import org.sentilo.agent.common.service.AsyncPendingEventService;
+import org.sentilo.agent.common.utils.Utils;
 import org.sentilo.common.domain.EventMessage;
 import org.springframework.data.redis.connection.MessageListener;
-import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.Topic;
 import org.springframework.stereotype.Service;
 
@@ -52,7 +50,7 @@ public class AsyncPendingEventServiceImpl implements AsyncPendingEventService {
     final String channel = event.getTopic();
 
     for (final Topic topic : topicMapping.keySet()) {
-      if (matches(topic, channel)) {
+      if (Utils.matches(topic, channel)) {
         processEvent(topicMapping.get(topic), event);
       }
     }
@@ -62,23 +60,6 @@ public class AsyncPendingEventServiceImpl implements AsyncPendingEventService {
     topicMapping.put(topic, listener);
   }
 
-  private boolean matches(final Topic topic, final String channel) {
-    final Pattern r = Pattern.compile(buildPattern(topic));
-    final Matcher m = r.matcher(channel);
-
-    return m.matches();
-  }
-
-  private String buildPattern(final Topic topic) {
-    if (topic instanceof ChannelTopic) {
-      return topic.getTopic();
-    } else {
-      // Convert topic pattern in a valid regular expression, i.e., replace the last * character
-      // with .*
-      return topic.getTopic().replaceAll("\\*", ".*");
-    }
-  }
-
   /**
    * Retry the original action with the pending event <code>event</code>.
    *
@@ -0,0 +1,99 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.agent.common.utils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Keeps track of the tasks submitted to an executor which have not finished yet, so that a caller
+ * could wait for all of them.
+ */
+public class InFlightTasks {
+
+  private final Set<Future<?>> tasks = ConcurrentHashMap.newKeySet();
+
+  public <T> Future<T> submit(final ExecutorService executor, final Callable<T> task) {
+    pruneDone();
+    final Future<T> future = executor.submit(task);
+    if (future != null) {
+      tasks.add(future);
+    }
+    return future;
+  }
+
+  /**
+   * Waits until every task submitted so far has finished.
+   *
+   * @param timeout max time to wait, in millis
+   * @throws IllegalStateException if any task has failed or has not finished in time
+   */
+  public void awaitAll(final long timeout) {
+    final long deadline = System.currentTimeMillis() + timeout;
+    final List<Future<?>> pending = new ArrayList<Future<?>>(tasks);
+    try {
+      for (final Future<?> future : pending) {
+        future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        tasks.remove(future);
+      }
+    } catch (final InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for tasks in progress", ie);
+    } catch (final ExecutionException ee) {
+      // The failure is only reported once
+      pruneDone();
+      throw new IllegalStateException("Task in progress has failed", ee.getCause());
+    } catch (final TimeoutException te) {
+      throw new IllegalStateException("Tasks in progress have not finished after " + timeout + " ms", te);
+    }
+  }
+
+  public int size() {
+    pruneDone();
+    return tasks.size();
+  }
+
+  private void pruneDone() {
+    final Iterator<Future<?>> it = tasks.iterator();
+    while (it.hasNext()) {
+      if (it.next().isDone()) {
+        it.remove();
+      }
+    }
+  }
+}
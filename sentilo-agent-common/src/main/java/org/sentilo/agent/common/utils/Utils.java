@@ -28,6 +28,9 @@
  */
 package org.sentilo.agent.common.utils;
 
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import org.sentilo.common.enums.SubscribeType;
 import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.PatternTopic;
@@ -52,6 +55,27 @@ public abstract class Utils {
     return StringUtils.hasText(topic) && topic.endsWith(Constants.REDIS_CHANNEL_PATTERN_SUFFIX);
   }
 
+  /**
+   * Returns true if <code>channel</code> is the topic itself or, if <code>topic</code> is a
+   * pattern, if it matches the pattern.
+   */
+  public static boolean matches(final Topic topic, final String channel) {
+    final Pattern r = Pattern.compile(buildPattern(topic));
+    final Matcher m = r.matcher(channel);
+
+    return m.matches();
+  }
+
+  private static String buildPattern(final Topic topic) {
+    if (topic instanceof ChannelTopic) {
+      return topic.getTopic();
+    } else {
+      // Convert topic pattern in a valid regular expression, i.e., replace the last * character
+      // with .*
+      return topic.getTopic().replaceAll("\\*", ".*");
+    }
+  }
+
   public static boolean isTopicOfType(final String topicName, final SubscribeType type) {
     return type != null && topicName.startsWith(type.toString().toLowerCase());
   }
@@ -28,8 +28,11 @@
  */
 package org.sentilo.agent.common.test.listener;
 
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -37,11 +40,13 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.sentilo.agent.common.listener.AbstractSubscriptionsInitListener;
+import org.sentilo.agent.common.listener.EventStreamConsumer;
 import org.sentilo.agent.common.service.AsyncPendingEventService;
 import org.sentilo.agent.common.utils.Utils;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
 import org.springframework.test.util.ReflectionTestUtils;
 
 public class AbstractSubscriptionsInitListenerTest {
@@ -86,4 +91,15 @@ public class AbstractSubscriptionsInitListenerTest {
     verify(apes).addMessageListener(messageListener, Utils.buildTopic(mockTopic));
   }
 
+  @Test
+  public void onApplicationContextWithStreamTransport() {
+    final EventStreamConsumer streamConsumer = mock(EventStreamConsumer.class);
+    when(streamConsumer.isEnabled()).thenReturn(true);
+    ReflectionTestUtils.setField(subscriptionListener, "streamConsumer", streamConsumer);
+    subscriptionListener.onApplicationEvent(event);
+    verify(streamConsumer).addMessageListener(messageListener, Utils.buildTopic(mockTopic));
+    verify(streamConsumer).start();
+    verify(listenerContainer, times(0)).addMessageListener(any(MessageListener.class), any(Topic.class));
+  }
+
 }
@@ -0,0 +1,199 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.agent.common.test.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.sentilo.agent.common.listener.AbstractMessageListenerImpl;
+import org.sentilo.agent.common.listener.EventStreamConsumer;
+import org.sentilo.agent.common.repository.BufferedEventRepository;
+import org.sentilo.agent.common.repository.EventStreamEntry;
+import org.sentilo.agent.common.repository.EventStreamRepository;
+import org.sentilo.agent.common.utils.Constants;
+import org.sentilo.agent.common.utils.Utils;
+import org.sentilo.common.converter.DefaultStringMessageConverter;
+import org.sentilo.common.domain.EventMessage;
+import org.sentilo.common.enums.EventTransport;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class EventStreamConsumerTest {
+
+  private static final String AGENT_NAME = "mockAgent";
+  private static final String CONSUMER = "mockAgent@host";
+  private static final String STREAM = "stream:data:0";
+
+  @InjectMocks
+  private EventStreamConsumer consumer;
+
+  @Mock
+  private EventStreamRepository eventStreamRepository;
+
+  @Mock
+  private BufferedEventRepository bufferedRepository;
+
+  @Mock
+  private AbstractMessageListenerImpl dataListener;
+
+  @Mock
+  private AbstractMessageListenerImpl alarmListener;
+
+  @Before
+  public void setUp() throws Exception {
+    MockitoAnnotations.initMocks(this);
+    System.setProperty(Constants.SENTILO_AGENT_NAME_ENV, AGENT_NAME);
+    ReflectionTestUtils.setField(consumer, "consumer", CONSUMER);
+    ReflectionTestUtils.setField(consumer, "partitions", 1);
+    ReflectionTestUtils.setField(consumer, "batchSize", 2);
+    ReflectionTestUtils.setField(consumer, "transport", EventTransport.stream);
+    ReflectionTestUtils.setField(consumer, "bufferedRepositories", Collections.singletonList(bufferedRepository));
+    ReflectionTestUtils.setField(consumer, "running", true);
+  }
+
+  @Test
+  public void isEnabled() {
+    assertTrue(consumer.isEnabled());
+  }
+
+  @Test
+  public void addMessageListener() {
+    consumer.addMessageListener(dataListener, Utils.buildTopic("data:*"));
+    consumer.addMessageListener(alarmListener, Utils.buildTopic("data:provider1*"));
+
+    // Group is created only once per stream
+    verify(eventStreamRepository).createGroup(STREAM, AGENT_NAME, "$");
+  }
+
+  @Test
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public void consume() throws Exception {
+    consumer.addMessageListener(dataListener, Utils.buildTopic("data:*"));
+    consumer.addMessageListener(alarmListener, Utils.buildTopic("alarm:*"));
+    when(eventStreamRepository.readGroup(STREAM, AGENT_NAME, CONSUMER, 2, ">"))
+        .thenReturn(Arrays.asList(buildEntry("1-0", "data:provider1:sensor1"), buildEntry("1-1", "data:provider1:sensor2")));
+
+    final int consumed = consumer.consume(STREAM, ">");
+
+    final ArgumentCaptor<List> batch = ArgumentCaptor.forClass(List.class);
+    assertEquals(2, consumed);
+    verify(dataListener).doWithMessages(batch.capture());
+    verify(alarmListener, never()).doWithMessages(anyListOf(EventMessage.class));
+    assertEquals(2, batch.getValue().size());
+    // Entries are acknowledged once the events buffered have been written
+    final InOrder inOrder = inOrder(bufferedRepository, eventStreamRepository);
+    inOrder.verify(bufferedRepository).flushAndWait(60000);
+    inOrder.verify(eventStreamRepository).ack(STREAM, AGENT_NAME, Arrays.asList("1-0", "1-1"));
+  }
+
+  @Test
+  public void consumeEmptyStream() {
+    consumer.addMessageListener(dataListener, Utils.buildTopic("data:*"));
+    when(eventStreamRepository.readGroup(STREAM, AGENT_NAME, CONSUMER, 2, ">")).thenReturn(Collections.<EventStreamEntry>emptyList());
+
+    assertEquals(0, consumer.consume(STREAM, ">"));
+    verify(dataListener, never()).doWithMessages(anyListOf(EventMessage.class));
+    verify(bufferedRepository, never()).flushAndWait(anyLong());
+  }
+
+  @Test
+  public void entriesAreNotAcknowledgedIfListenerFails() throws Exception {
+    consumer.addMessageListener(dataListener, Utils.buildTopic("data:*"));
+    when(eventStreamRepository.readGroup(STREAM, AGENT_NAME, CONSUMER, 2, ">"))
+        .thenReturn(Collections.singletonList(buildEntry("1-0", "data:provider1:sensor1")));
+    doThrow(new RuntimeException("error")).when(dataListener).doWithMessages(anyListOf(EventMessage.class));
+
+    assertEquals(0, consumer.consume(STREAM, ">"));
+    verify(eventStreamRepository, never()).ack(eq(STREAM), eq(AGENT_NAME), anyListOf(String.class));
+  }
+
+  @Test
+  public void entriesAreNotAcknowledgedIfWriteFails() throws Exception {
+    consumer.addMessageListener(dataListener, Utils.buildTopic("data:*"));
+    when(eventStreamRepository.readGroup(STREAM, AGENT_NAME, CONSUMER, 2, ">"))
+        .thenReturn(Collections.singletonList(buildEntry("1-0", "data:provider1:sensor1")));
+    doThrow(new IllegalStateException("timeout")).when(bufferedRepository).flushAndWait(anyLong());
+
+    assertEquals(0, consumer.consume(STREAM, ">"));
+    verify(eventStreamRepository, never()).ack(eq(STREAM), eq(AGENT_NAME), anyListOf(String.class));
+  }
+
+  @Test
+  public void replayPendingByPages() throws Exception {
+    consumer.addMessageListener(dataListener, Utils.buildTopic("data:*"));
+    when(eventStreamRepository.readGroup(STREAM, AGENT_NAME, CONSUMER, 2, "0"))
+        .thenReturn(Arrays.asList(buildEntry("1-0", "data:provider1:sensor1"), buildEntry("1-1", "data:provider1:sensor2")));
+    when(eventStreamRepository.readGroup(STREAM, AGENT_NAME, CONSUMER, 2, "1-1"))
+        .thenReturn(Collections.singletonList(buildEntry("1-2", "data:provider1:sensor1")));
+    // First page fails, but the next one is replayed anyway
+    doThrow(new IllegalStateException("timeout")).doNothing().when(bufferedRepository).flushAndWait(anyLong());
+
+    consumer.replayPending(STREAM);
+
+    verify(eventStreamRepository, never()).ack(STREAM, AGENT_NAME, Arrays.asList("1-0", "1-1"));
+    verify(eventStreamRepository).ack(STREAM, AGENT_NAME, Collections.singletonList("1-2"));
+  }
+
+  @Test
+  public void claimIdle() throws Exception {
+    consumer.addMessageListener(dataListener, Utils.buildTopic("data:*"));
+    when(eventStreamRepository.claimIdle(STREAM, AGENT_NAME, CONSUMER, 120000, 2))
+        .thenReturn(Arrays.asList(buildEntry("1-0", "data:provider1:sensor1"), new EventStreamEntry("1-1", null, null)));
+
+    assertEquals(2, consumer.claimIdle(STREAM));
+    // Entries trimmed from the stream are just acknowledged
+    verify(dataListener).doWithMessages(anyListOf(EventMessage.class));
+    verify(eventStreamRepository).ack(STREAM, AGENT_NAME, Arrays.asList("1-0", "1-1"));
+  }
+
+  private EventStreamEntry buildEntry(final String id, final String topic) throws Exception {
+    final EventMessage event = new EventMessage();
+    event.setTopic(topic);
+    event.setMessage("12.3");
+    return new EventStreamEntry(id, topic, new DefaultStringMessageConverter().marshal(event));
+  }
+}
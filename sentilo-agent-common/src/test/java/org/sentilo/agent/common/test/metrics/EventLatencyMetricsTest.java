@@ -0,0 +1,133 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.agent.common.test.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sentilo.agent.common.metrics.EventLatencyMetrics;
+import org.sentilo.agent.common.utils.Constants;
+import org.sentilo.common.domain.EventMessage;
+import org.sentilo.common.metrics.LatencyHistogram;
+
+public class EventLatencyMetricsTest {
+
+  private static final String SINK = "opentsdb";
+
+  private EventLatencyMetrics metrics;
+
+  @Before
+  public void setUp() {
+    metrics = new EventLatencyMetrics();
+  }
+
+  @Test
+  public void recordReceived() {
+    final EventMessage event = buildEvent(System.currentTimeMillis() - 2000);
+
+    metrics.recordReceived(event);
+
+    assertNotNull(event.getReceivedAt());
+    final LatencyHistogram delivery = metrics.getHistogram(EventLatencyMetrics.DELIVERY, null);
+    assertEquals(1, delivery.getCount());
+    assertTrue(delivery.getMaxMillis() >= 2000);
+  }
+
+  @Test
+  public void recordReceivedWithoutPublishedAt() {
+    final EventMessage event = new EventMessage();
+
+    metrics.recordReceived(event);
+
+    assertNotNull(event.getReceivedAt());
+    assertNull(metrics.getHistogram(EventLatencyMetrics.DELIVERY, null));
+  }
+
+  @Test
+  public void recordFlush() {
+    final long now = System.currentTimeMillis();
+    final EventMessage event1 = buildEvent(now - 5000);
+    event1.setReceivedAt(now - 3000);
+    final EventMessage event2 = buildEvent(now - 5000);
+    event2.setReceivedAt(now - 3000);
+    final EventMessage failedEvent = buildEvent(now - 60000);
+    failedEvent.setReceivedAt(now - 60000);
+
+    metrics.recordFlush(SINK, now - 1000, Arrays.asList(event1, failedEvent, event2), Collections.singletonList(failedEvent));
+
+    assertEquals(1, metrics.getHistogram(EventLatencyMetrics.FLUSH, SINK).getCount());
+    assertTrue(metrics.getHistogram(EventLatencyMetrics.FLUSH, SINK).getMaxMillis() >= 1000);
+    final LatencyHistogram queue = metrics.getHistogram(EventLatencyMetrics.QUEUE, SINK);
+    assertEquals(2, queue.getCount());
+    assertEquals(2000, queue.getMaxMillis(), 0);
+    final LatencyHistogram endToEnd = metrics.getHistogram(EventLatencyMetrics.END_TO_END, SINK);
+    assertEquals(2, endToEnd.getCount());
+    assertTrue(endToEnd.getMaxMillis() >= 5000 && endToEnd.getMaxMillis() < 60000);
+  }
+
+  @Test
+  public void recordFailedFlush() {
+    final List<EventMessage> events = Collections.singletonList(buildEvent(System.currentTimeMillis()));
+
+    metrics.recordFlush(SINK, System.currentTimeMillis(), events, events);
+
+    assertEquals(1, metrics.getHistogram(EventLatencyMetrics.FLUSH, SINK).getCount());
+    assertNull(metrics.getHistogram(EventLatencyMetrics.END_TO_END, SINK));
+  }
+
+  @Test
+  public void toPrometheusFormat() {
+    System.setProperty(Constants.SENTILO_AGENT_NAME_ENV, "historian");
+    final EventMessage event = buildEvent(System.currentTimeMillis());
+    metrics.recordReceived(event);
+    metrics.recordFlush(SINK, System.currentTimeMillis(), Collections.singletonList(event), null);
+
+    final String output = metrics.toPrometheusFormat();
+
+    assertTrue(output.contains("# TYPE sentilo_agent_event_latency_seconds summary"));
+    assertTrue(output.contains("sentilo_agent_event_latency_seconds_count{agent=\"historian\",stage=\"delivery\"} 1"));
+    assertTrue(output.contains("sentilo_agent_event_latency_seconds_count{agent=\"historian\",stage=\"end_to_end\",sink=\"opentsdb\"} 1"));
+    assertTrue(output.contains("sentilo_agent_event_latency_seconds{agent=\"historian\",stage=\"queue\",sink=\"opentsdb\",quantile=\"0.99\"} "));
+  }
+
+  private EventMessage buildEvent(final long publishedAt) {
+    final EventMessage event = new EventMessage();
+    event.setMessage("12.5");
+    event.setPublishedAt(publishedAt);
+    return event;
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.agent.common.test.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sentilo.agent.common.repository.EventStreamEntry;
+import org.sentilo.agent.common.repository.impl.EventStreamRepositoryImpl;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+public class EventStreamRepositoryImplTest {
+
+  private static final String STREAM = "stream:data:0";
+  private static final String GROUP = "mockAgent";
+  private static final String CONSUMER = "mockAgent@host";
+
+  @InjectMocks
+  private EventStreamRepositoryImpl repository;
+
+  @Mock
+  private StringRedisTemplate redisTemplate;
+
+  @Mock
+  private RedisConnection connection;
+
+  @Mock
+  private Jedis jedis;
+
+  @Mock
+  private Client client;
+
+  @Mock
+  private Socket socket;
+
+  private ByteArrayOutputStream out;
+
+  @SuppressWarnings("unchecked")
+  @Before
+  public void setUp() throws Exception {
+    MockitoAnnotations.initMocks(this);
+    out = new ByteArrayOutputStream();
+    when(redisTemplate.execute(any(RedisCallback.class))).thenAnswer(new Answer<Object>() {
+
+      public Object answer(final InvocationOnMock invocation) throws Throwable {
+        return ((RedisCallback<Object>) invocation.getArguments()[0]).doInRedis(connection);
+      }
+    });
+    when(connection.getNativeConnection()).thenReturn(jedis);
+    when(jedis.getClient()).thenReturn(client);
+    when(client.getSocket()).thenReturn(socket);
+    when(socket.getOutputStream()).thenReturn(out);
+  }
+
+  @Test
+  public void createGroup() {
+    when(client.getOne()).thenReturn(bytes("OK"));
+
+    repository.createGroup(STREAM, GROUP, "$");
+
+    assertEquals(command("XGROUP", "CREATE", STREAM, GROUP, "$", "MKSTREAM"), SafeEncoder.encode(out.toByteArray()));
+    verify(client).resetPipelinedCount();
+  }
+
+  @Test
+  public void createExistingGroup() {
+    when(client.getOne()).thenThrow(new JedisDataException("BUSYGROUP Consumer Group name already exists"));
+
+    repository.createGroup(STREAM, GROUP, "$");
+  }
+
+  @Test(expected = JedisDataException.class)
+  public void createGroupOnWrongType() {
+    when(client.getOne()).thenThrow(new JedisDataException("WRONGTYPE Operation against a key holding the wrong kind of value"));
+
+    repository.createGroup(STREAM, GROUP, "$");
+  }
+
+  @Test
+  public void readGroup() {
+    final Object entry = Arrays.asList(bytes("1-0"), Arrays.asList(bytes("topic"), bytes("data:provider1:sensor1"), bytes("message"), bytes("{}")));
+    when(client.getOne()).thenReturn(Collections.singletonList(Arrays.asList(bytes(STREAM), Collections.singletonList(entry))));
+
+    final List<EventStreamEntry> entries = repository.readGroup(STREAM, GROUP, CONSUMER, 100, ">");
+
+    assertEquals(command("XREADGROUP", "GROUP", GROUP, CONSUMER, "COUNT", "100", "STREAMS", STREAM, ">"), SafeEncoder.encode(out.toByteArray()));
+    assertEquals(1, entries.size());
+    assertEquals("1-0", entries.get(0).getId());
+    assertEquals("data:provider1:sensor1", entries.get(0).getTopic());
+    assertEquals("{}", entries.get(0).getMessage());
+  }
+
+  @Test
+  public void readGroupWithoutNewEntries() {
+    when(client.getOne()).thenReturn(null);
+
+    assertTrue(repository.readGroup(STREAM, GROUP, CONSUMER, 100, ">").isEmpty());
+  }
+
+  @Test
+  public void ack() {
+    when(client.getOne()).thenReturn(2L);
+
+    assertEquals(2, repository.ack(STREAM, GROUP, Arrays.asList("1-0", "1-1")));
+    assertEquals(command("XACK", STREAM, GROUP, "1-0", "1-1"), SafeEncoder.encode(out.toByteArray()));
+  }
+
+  @Test
+  public void claimIdle() {
+    final Object pending = Arrays.asList(Arrays.asList(bytes("1-0"), bytes("other@host"), 200000L, 1L),
+        Arrays.asList(bytes("1-1"), bytes("other@host"), 1000L, 1L));
+    final Object claimed = Collections.singletonList(Arrays.asList(bytes("1-0"), null));
+    when(client.getOne()).thenReturn(pending, claimed);
+
+    final List<EventStreamEntry> entries = repository.claimIdle(STREAM, GROUP, CONSUMER, 120000, 100);
+
+    // Only the entry idle for long enough is claimed
+    assertEquals(command("XPENDING", STREAM, GROUP, "-", "+", "100") + command("XCLAIM", STREAM, GROUP, CONSUMER, "120000", "1-0"),
+        SafeEncoder.encode(out.toByteArray()));
+    assertEquals(1, entries.size());
+    assertEquals("1-0", entries.get(0).getId());
+    assertNull(entries.get(0).getMessage());
+  }
+
+  private byte[] bytes(final String value) {
+    return SafeEncoder.encode(value);
+  }
+
+  private String command(final String... args) {
+    final StringBuilder sb = new StringBuilder("*" + args.length + "\r\n");
+    for (final String arg : args) {
+      sb.append('$').append(arg.length()).append("\r\n").append(arg).append("\r\n");
+    }
+    return sb.toString();
+  }
+}
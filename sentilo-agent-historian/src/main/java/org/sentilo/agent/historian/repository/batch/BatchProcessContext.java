@@ -30,6 +30,7 @@ package org.sentilo.agent.historian.repository.batch;
 
 import java.util.List;
 
+import org.sentilo.agent.common.metrics.EventLatencyMetrics;
 import org.sentilo.common.domain.EventMessage;
 import org.sentilo.common.rest.RESTClient;
 
@@ -39,14 +40,21 @@ public class BatchProcessContext {
   private final RESTClient restClient;
   private final int numMaxRetries;
   private final BatchProcessCallback callback;
+  private final EventLatencyMetrics latencyMetrics;
 
   public BatchProcessContext(final List<EventMessage> eventsToProcess, final RESTClient restClient, final int numMaxRetries,
       final BatchProcessCallback callback) {
+    this(eventsToProcess, restClient, numMaxRetries, callback, null);
+  }
+
+  public BatchProcessContext(final List<EventMessage> eventsToProcess, final RESTClient restClient, final int numMaxRetries,
+      final BatchProcessCallback callback, final EventLatencyMetrics latencyMetrics) {
     super();
     this.eventsToProcess = eventsToProcess;
     this.restClient = restClient;
     this.numMaxRetries = numMaxRetries;
     this.callback = callback;
+    this.latencyMetrics = latencyMetrics;
   }
 
   public List<EventMessage> getEventsToProcess() {
@@ -65,4 +73,8 @@ public class BatchProcessContext {
     return callback;
   }
 
+  public EventLatencyMetrics getLatencyMetrics() {
+    return latencyMetrics;
+  }
+
 }
@@ -35,6 +35,7 @@ import java.util.List;
 import java.util.concurrent.Callable;
 
 import org.apache.http.HttpStatus;
+import org.sentilo.agent.common.metrics.EventLatencyMetrics;
 import org.sentilo.agent.historian.domain.OpenTSDBDataPoint;
 import org.sentilo.agent.historian.domain.OpenTSDBErrorResponse;
 import org.sentilo.agent.historian.utils.OpenTSDBDataPointMarshaller;
@@ -52,10 +53,12 @@ import org.springframework.util.CollectionUtils;
 public class BatchProcessWorker implements Callable<BatchProcessResult> {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(BatchProcessWorker.class);
+  private static final String SINK = "opentsdb";
 
   private final List<EventMessage> initialEventsToProcess;
   private final RESTClient restClient;
   private final BatchProcessCallback callback;
+  private final EventLatencyMetrics latencyMetrics;
   private int numRetries;
   private final int numMaxRetries;
   private final StringMessageConverter converter = new DefaultStringMessageConverter();
@@ -65,12 +68,17 @@ public class BatchProcessWorker implements Callable<BatchProcessResult> {
     restClient = batchUpdateContext.getRestClient();
     numMaxRetries = batchUpdateContext.getNumMaxRetries();
     callback = batchUpdateContext.getCallback();
+    latencyMetrics = batchUpdateContext.getLatencyMetrics();
 
   }
 
   public BatchProcessResult call() {
 
+    final long flushStart = System.currentTimeMillis();
     final List<EventMessage> eventsNoProcessed = doBatchProcess();
+    if (latencyMetrics != null) {
+      latencyMetrics.recordFlush(SINK, flushStart, initialEventsToProcess, eventsNoProcessed);
+    }
     final int numElementsProcessed = initialEventsToProcess.size() - eventsNoProcessed.size();
     LOGGER.debug("Number of elements stored in history: {}", numElementsProcessed);
 
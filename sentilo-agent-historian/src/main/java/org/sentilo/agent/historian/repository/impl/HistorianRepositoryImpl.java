@@ -41,6 +41,9 @@ import java.util.concurrent.locks.ReentrantLock;
 
 import javax.annotation.PostConstruct;
 
+import org.sentilo.agent.common.metrics.EventLatencyMetrics;
+import org.sentilo.agent.common.repository.BufferedEventRepository;
+import org.sentilo.agent.common.utils.InFlightTasks;
 import org.sentilo.agent.historian.repository.HistorianRepository;
 import org.sentilo.agent.historian.repository.batch.BatchProcessContext;
 import org.sentilo.agent.historian.repository.batch.BatchProcessMonitor;
@@ -57,7 +60,7 @@ import org.springframework.stereotype.Repository;
 import org.springframework.util.CollectionUtils;
 
 @Repository
-public class HistorianRepositoryImpl implements HistorianRepository {
+public class HistorianRepositoryImpl implements HistorianRepository, BufferedEventRepository {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(HistorianRepositoryImpl.class);
 
@@ -78,8 +81,11 @@ public class HistorianRepositoryImpl implements HistorianRepository {
   private RESTClient restClient;
   @Autowired
   private BatchProcessMonitor batchProcessMonitor;
+  @Autowired(required = false)
+  private EventLatencyMetrics latencyMetrics;
 
   private ExecutorService workersManager;
+  private final InFlightTasks inFlightTasks = new InFlightTasks();
 
   private final Lock lock = new ReentrantLock();
   private List<EventMessage> batchQueue = new ArrayList<EventMessage>();
@@ -143,14 +149,14 @@ public class HistorianRepositoryImpl implements HistorianRepository {
     } finally {
       lock.unlock();
       if (eventsToExport != null) {
-        flushToOpenTSDB(new BatchProcessContext(eventsToExport, restClient, numMaxRetries, batchProcessMonitor));
+        flushToOpenTSDB(new BatchProcessContext(eventsToExport, restClient, numMaxRetries, batchProcessMonitor, latencyMetrics));
       }
     }
   }
 
   private void flushToOpenTSDB(final BatchProcessContext batchProcessContext) {
     // Assign flush task to a busy worker
-    workersManager.submit(new BatchProcessWorker(batchProcessContext));
+    inFlightTasks.submit(workersManager, new BatchProcessWorker(batchProcessContext));
     LOGGER.debug("Scheduling batch process task for put {} elements to OpenTSDB ", batchProcessContext.getEventsToProcess().size());
   }
 
@@ -189,7 +195,7 @@ public class HistorianRepositoryImpl implements HistorianRepository {
     try {
       if (!CollectionUtils.isEmpty(batchQueue)) {
         LOGGER.info("Flush {} elements to opentsdb", batchQueue.size());
-        final BatchProcessContext context = new BatchProcessContext(batchQueue, restClient, numMaxRetries, batchProcessMonitor);
+        final BatchProcessContext context = new BatchProcessContext(batchQueue, restClient, numMaxRetries, batchProcessMonitor, latencyMetrics);
         final BatchProcessWorker worker = new BatchProcessWorker(context);
         worker.call();
       }
@@ -199,4 +205,27 @@ public class HistorianRepositoryImpl implements HistorianRepository {
     }
   }
 
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.sentilo.agent.common.repository.BufferedEventRepository#flushAndWait(long)
+   */
+  public void flushAndWait(final long timeout) {
+    List<EventMessage> eventsToExport = null;
+    lock.lock();
+    try {
+      if (!CollectionUtils.isEmpty(batchQueue)) {
+        eventsToExport = batchQueue;
+        batchQueue = new ArrayList<EventMessage>();
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    if (eventsToExport != null) {
+      flushToOpenTSDB(new BatchProcessContext(eventsToExport, restClient, numMaxRetries, batchProcessMonitor, latencyMetrics));
+    }
+    inFlightTasks.awaitAll(timeout);
+  }
+
 }
@@ -28,7 +28,13 @@
  */
 package org.sentilo.agent.historian.test.repository;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 
 import org.junit.Assert;
@@ -98,4 +104,27 @@ public class HistorianRepositoryImplTest {
     Assert.assertTrue(((List<EventMessage>) value).size() == 2);
   }
 
+  @SuppressWarnings("unchecked")
+  @Test
+  public void flushAndWait() throws Exception {
+    ReflectionTestUtils.setField(repository, "workersManager", workersManager);
+    when(workersManager.submit(any(Callable.class))).thenReturn(CompletableFuture.completedFuture(null));
+    repository.publishMessageToOpenTSDB(event);
+
+    repository.flushAndWait(1000);
+
+    verify(workersManager).submit(any(Callable.class));
+    Assert.assertTrue(((List<EventMessage>) ReflectionTestUtils.getField(repository, "batchQueue")).isEmpty());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test(expected = IllegalStateException.class)
+  public void flushAndWaitTimeout() throws Exception {
+    ReflectionTestUtils.setField(repository, "workersManager", workersManager);
+    when(workersManager.submit(any(Callable.class))).thenReturn(new CompletableFuture<Object>());
+    repository.publishMessageToOpenTSDB(event);
+
+    repository.flushAndWait(10);
+  }
+
 }
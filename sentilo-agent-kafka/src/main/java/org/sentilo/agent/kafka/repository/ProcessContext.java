@@ -28,6 +28,7 @@
  */
 package org.sentilo.agent.kafka.repository;
 
+import org.sentilo.agent.common.metrics.EventLatencyMetrics;
 import org.sentilo.common.domain.EventMessage;
 import org.springframework.kafka.core.KafkaTemplate;
 
@@ -37,14 +38,21 @@ public class ProcessContext {
   private final ProcessCallback callback;
   private final EventMessage eventToProcess;
   private final KafkaTemplate<String, String> kafkaTemplate;
+  private final EventLatencyMetrics latencyMetrics;
 
   public ProcessContext(final EventMessage eventToProcess, final int numMaxRetries, final ProcessCallback callback,
       final KafkaTemplate<String, String> kafkaTemplate) {
+    this(eventToProcess, numMaxRetries, callback, kafkaTemplate, null);
+  }
+
+  public ProcessContext(final EventMessage eventToProcess, final int numMaxRetries, final ProcessCallback callback,
+      final KafkaTemplate<String, String> kafkaTemplate, final EventLatencyMetrics latencyMetrics) {
     super();
     this.eventToProcess = eventToProcess;
     this.numMaxRetries = numMaxRetries;
     this.callback = callback;
     this.kafkaTemplate = kafkaTemplate;
+    this.latencyMetrics = latencyMetrics;
   }
 
   public EventMessage getEventToProcess() {
@@ -63,4 +71,8 @@ public class ProcessContext {
     return kafkaTemplate;
   }
 
+  public EventLatencyMetrics getLatencyMetrics() {
+    return latencyMetrics;
+  }
+
 }
@@ -28,8 +28,11 @@
  */
 package org.sentilo.agent.kafka.repository;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Callable;
 
+import org.sentilo.agent.common.metrics.EventLatencyMetrics;
 import org.sentilo.agent.kafka.utils.TopicName;
 import org.sentilo.common.converter.DefaultStringMessageConverter;
 import org.sentilo.common.converter.StringMessageConverter;
@@ -48,10 +51,12 @@ import org.springframework.util.concurrent.ListenableFuture;
 public class ProcessWorker implements Callable<ProcessResult> {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(ProcessWorker.class);
+  private static final String SINK = "kafka";
 
   private final KafkaTemplate<String, String> kafkaTemplate;
 
   private final ProcessCallback callback;
+  private final EventLatencyMetrics latencyMetrics;
   private int numRetries;
   private final int numMaxRetries;
   private final EventMessage eventToProcess;
@@ -63,6 +68,7 @@ public class ProcessWorker implements Callable<ProcessResult> {
     numMaxRetries = streamUpdateContext.getNumMaxRetries();
     callback = streamUpdateContext.getCallback();
     kafkaTemplate = streamUpdateContext.getKafkaTemplate();
+    latencyMetrics = streamUpdateContext.getLatencyMetrics();
   }
 
   public ProcessResult call() {
@@ -70,10 +76,16 @@ public class ProcessWorker implements Callable<ProcessResult> {
     EventMessage failedEvent = null;
 
     if (eventToProcess != null && checkRetries()) {
+      final long flushStart = System.currentTimeMillis();
       final boolean response = publishToKafka(eventToProcess);
       if (!response) {
         failedEvent = eventToProcess;
       }
+
+      if (latencyMetrics != null) {
+        final List<EventMessage> events = Collections.singletonList(eventToProcess);
+        latencyMetrics.recordFlush(SINK, flushStart, events, response ? null : events);
+      }
     }
 
     final ProcessResult result = new ProcessResult(failedEvent);
@@ -35,6 +35,9 @@ import java.util.concurrent.TimeUnit;
 
 import javax.annotation.PostConstruct;
 
+import org.sentilo.agent.common.metrics.EventLatencyMetrics;
+import org.sentilo.agent.common.repository.BufferedEventRepository;
+import org.sentilo.agent.common.utils.InFlightTasks;
 import org.sentilo.agent.kafka.repository.KafkaAgentRepository;
 import org.sentilo.agent.kafka.repository.ProcessContext;
 import org.sentilo.agent.kafka.repository.ProcessMonitor;
@@ -49,7 +52,7 @@ import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public class KafkaAgentRepositoryImpl implements KafkaAgentRepository {
+public class KafkaAgentRepositoryImpl implements KafkaAgentRepository, BufferedEventRepository {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(KafkaAgentRepositoryImpl.class);
 
@@ -68,10 +71,14 @@ public class KafkaAgentRepositoryImpl implements KafkaAgentRepository {
   @Autowired
   private ProcessMonitor streamProcessMonitor;
 
+  @Autowired(required = false)
+  private EventLatencyMetrics latencyMetrics;
+
   @Autowired
   private KafkaTemplate<String, String> kafkaTemplate;
 
   private ExecutorService workersManager;
+  private final InFlightTasks inFlightTasks = new InFlightTasks();
 
   @PostConstruct
   public void init() {
@@ -104,9 +111,9 @@ public class KafkaAgentRepositoryImpl implements KafkaAgentRepository {
    */
   public void publishMessageToKafka(final EventMessage event) {
 
-    final ProcessContext processContext = new ProcessContext(event, numMaxRetries, streamProcessMonitor, kafkaTemplate);
+    final ProcessContext processContext = new ProcessContext(event, numMaxRetries, streamProcessMonitor, kafkaTemplate, latencyMetrics);
 
-    workersManager.submit(new ProcessWorker(processContext));
+    inFlightTasks.submit(workersManager, new ProcessWorker(processContext));
     LOGGER.debug("Scheduling batch process task for put an element to Kafka.");
   }
 
@@ -126,4 +133,13 @@ public class KafkaAgentRepositoryImpl implements KafkaAgentRepository {
 
   }
 
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.sentilo.agent.common.repository.BufferedEventRepository#flushAndWait(long)
+   */
+  public void flushAndWait(final long timeout) {
+    inFlightTasks.awaitAll(timeout);
+  }
+
 }
@@ -36,6 +36,7 @@ import java.util.Set;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import org.sentilo.agent.common.repository.BufferedEventRepository;
 import org.sentilo.agent.location.parser.CatalogMessageConverter;
 import org.sentilo.common.batch.BatchProcess;
 import org.sentilo.common.domain.CatalogInputMessage;
@@ -52,7 +53,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
 @Component
-public class ComponentLocationUpdater implements AsyncCatalogResourceUpdater, BatchProcess {
+public class ComponentLocationUpdater implements AsyncCatalogResourceUpdater, BatchProcess, BufferedEventRepository {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(ComponentLocationUpdater.class);
   private final Lock lock = new ReentrantLock();
@@ -91,7 +92,7 @@ public class ComponentLocationUpdater implements AsyncCatalogResourceUpdater, Ba
   }
 
   @Scheduled(initialDelay = 30000, fixedDelay = 15000)
-  public void process() {
+  public synchronized void process() {
     final List<SensorLocationElement> sortedListToUpdate = cloneAndSortLocations();
 
     LOGGER.debug("Start process to update {} locations.", sortedListToUpdate.size());
@@ -103,6 +104,17 @@ public class ComponentLocationUpdater implements AsyncCatalogResourceUpdater, Ba
     LOGGER.debug("Process finished. Locations that has not been updated: {}", oldUpdatesAwaiting.size());
   }
 
+  /**
+   * Sends the locations awaiting right now, instead of waiting for the next scheduled process, so
+   * that their stream entries could be acknowledged.
+   */
+  public synchronized void flushAndWait(final long timeout) {
+    process();
+    if (!oldUpdatesAwaiting.isEmpty()) {
+      throw new IllegalStateException("Components location update process has failed. " + oldUpdatesAwaiting.size() + " locations awaiting");
+    }
+  }
+
   private List<SensorLocationElement> cloneAndSortLocations() {
     lock.lock();
     try {
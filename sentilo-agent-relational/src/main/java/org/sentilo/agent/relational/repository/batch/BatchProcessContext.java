@@ -30,6 +30,7 @@ package org.sentilo.agent.relational.repository.batch;
 
 import java.util.List;
 
+import org.sentilo.agent.common.metrics.EventLatencyMetrics;
 import org.sentilo.agent.relational.domain.Data;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.transaction.PlatformTransactionManager;
@@ -43,9 +44,16 @@ public class BatchProcessContext {
   private final String tablesPrefix;
   private final BatchProcessCallback callback;
   private final String targetDs;
+  private final EventLatencyMetrics latencyMetrics;
 
   public BatchProcessContext(final List<Data> dataToPersist, final JdbcTemplate jdbcTemplate, final PlatformTransactionManager transactionManager,
       final int numMaxRetries, final String tablesPrefix, final String targetDs, final BatchProcessCallback callback) {
+    this(dataToPersist, jdbcTemplate, transactionManager, numMaxRetries, tablesPrefix, targetDs, callback, null);
+  }
+
+  public BatchProcessContext(final List<Data> dataToPersist, final JdbcTemplate jdbcTemplate, final PlatformTransactionManager transactionManager,
+      final int numMaxRetries, final String tablesPrefix, final String targetDs, final BatchProcessCallback callback,
+      final EventLatencyMetrics latencyMetrics) {
     super();
     this.dataToPersist = dataToPersist;
     this.jdbcTemplate = jdbcTemplate;
@@ -54,6 +62,7 @@ public class BatchProcessContext {
     this.tablesPrefix = tablesPrefix;
     this.targetDs = targetDs;
     this.callback = callback;
+    this.latencyMetrics = latencyMetrics;
   }
 
   public List<Data> getDataToPersist() {
@@ -84,4 +93,8 @@ public class BatchProcessContext {
     return targetDs;
   }
 
+  public EventLatencyMetrics getLatencyMetrics() {
+    return latencyMetrics;
+  }
+
 }
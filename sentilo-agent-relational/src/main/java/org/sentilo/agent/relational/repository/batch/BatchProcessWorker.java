@@ -34,11 +34,13 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 
+import org.sentilo.agent.common.metrics.EventLatencyMetrics;
 import org.sentilo.agent.relational.domain.Alarm;
 import org.sentilo.agent.relational.domain.Data;
 import org.sentilo.agent.relational.domain.Observation;
 import org.sentilo.agent.relational.domain.Order;
 import org.sentilo.agent.relational.utils.ThreadLocalProperties;
+import org.sentilo.common.domain.EventMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
@@ -52,6 +54,7 @@ public class BatchProcessWorker implements Callable<BatchProcessResult> {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(BatchProcessWorker.class);
   private static final String INSERT_CMD_PREFIX = "insert into ";
+  private static final String SINK = "jdbc";
 
   private String observationPs;
   private String orderPs;
@@ -61,6 +64,7 @@ public class BatchProcessWorker implements Callable<BatchProcessResult> {
   private final JdbcTemplate jdbcTemplate;
   private final TransactionTemplate transactionTemplate;
   private final BatchProcessCallback callback;
+  private final EventLatencyMetrics latencyMetrics;
 
   private int numRetries;
   private final int numMaxRetries;
@@ -73,6 +77,7 @@ public class BatchProcessWorker implements Callable<BatchProcessResult> {
     transactionTemplate = new TransactionTemplate(batchUpdateContext.getTransactionManager());
     numMaxRetries = batchUpdateContext.getNumMaxRetries();
     callback = batchUpdateContext.getCallback();
+    latencyMetrics = batchUpdateContext.getLatencyMetrics();
     targetDs = batchUpdateContext.getTargetDs();
   }
 
@@ -95,8 +100,10 @@ public class BatchProcessWorker implements Callable<BatchProcessResult> {
     final List<Data> alarms = subList(dataToPersist, Alarm.class);
     final List<Data> observations = subList(dataToPersist, Observation.class);
 
+    final long flushStart = System.currentTimeMillis();
     final int numElementsPersisted = doBatchUpdate(orders, alarms, observations);
     LOGGER.info("Number of elements persisted: {}", numElementsPersisted);
+    recordLatency(flushStart, numElementsPersisted);
 
     final BatchProcessResult result = new BatchProcessResult(dataToPersist, numElementsPersisted);
 
@@ -104,6 +111,20 @@ public class BatchProcessWorker implements Callable<BatchProcessResult> {
     return result;
   }
 
+  private void recordLatency(final long flushStart, final int numElementsPersisted) {
+    if (latencyMetrics != null) {
+      // All the data is persisted in a single transaction, so either all events have been stored or
+      // none of them
+      final List<EventMessage> events = new ArrayList<EventMessage>();
+      for (final Data data : dataToPersist) {
+        if (data.getSourceEvent() != null) {
+          events.add(data.getSourceEvent());
+        }
+      }
+      latencyMetrics.recordFlush(SINK, flushStart, events, numElementsPersisted > 0 ? null : events);
+    }
+  }
+
   private int doBatchUpdate(final List<Data> orders, final List<Data> alarms, final List<Data> observations) {
 
     int numElementsPersisted = 0;
@@ -44,6 +44,9 @@ import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 
 import org.apache.tomcat.jdbc.pool.DataSource;
+import org.sentilo.agent.common.metrics.EventLatencyMetrics;
+import org.sentilo.agent.common.repository.BufferedEventRepository;
+import org.sentilo.agent.common.utils.InFlightTasks;
 import org.sentilo.agent.relational.domain.Alarm;
 import org.sentilo.agent.relational.domain.Data;
 import org.sentilo.agent.relational.domain.Observation;
@@ -63,7 +66,7 @@ import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
 @Repository
-public class AgentRelationalBatchRepositoryImpl implements AgentRelationalRepository {
+public class AgentRelationalBatchRepositoryImpl implements AgentRelationalRepository, BufferedEventRepository {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(AgentRelationalBatchRepositoryImpl.class);
 
@@ -89,7 +92,11 @@ public class AgentRelationalBatchRepositoryImpl implements AgentRelationalReposi
   @Autowired
   private BatchProcessMonitor batchUpdateMonitor;
 
+  @Autowired(required = false)
+  private EventLatencyMetrics latencyMetrics;
+
   private ExecutorService workersManager;
+  private final InFlightTasks inFlightTasks = new InFlightTasks();
 
   private Map<String, List<Data>> batchQueues;
   private final Lock lock = new ReentrantLock();
@@ -179,6 +186,33 @@ public class AgentRelationalBatchRepositoryImpl implements AgentRelationalReposi
     }
   }
 
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.sentilo.agent.common.repository.BufferedEventRepository#flushAndWait(long)
+   */
+  public void flushAndWait(final long timeout) {
+    final Map<String, List<Data>> dataToPersist = new HashMap<String, List<Data>>();
+    lock.lock();
+    try {
+      if (!CollectionUtils.isEmpty(batchQueues)) {
+        for (final Map.Entry<String, List<Data>> batchQueue : batchQueues.entrySet()) {
+          if (!CollectionUtils.isEmpty(batchQueue.getValue())) {
+            dataToPersist.put(batchQueue.getKey(), batchQueue.getValue());
+            batchQueue.setValue(new ArrayList<Data>());
+          }
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    for (final Map.Entry<String, List<Data>> data : dataToPersist.entrySet()) {
+      flushToRelational(buildBatchContext(data.getValue(), data.getKey()));
+    }
+    inFlightTasks.awaitAll(timeout);
+  }
+
   private void addToQueue(final Data data) {
     List<Data> dataToPersist = null;
     lock.lock();
@@ -204,12 +238,12 @@ public class AgentRelationalBatchRepositoryImpl implements AgentRelationalReposi
 
   private BatchProcessContext buildBatchContext(final List<Data> dataToPersist, final String targetDs) {
     return new BatchProcessContext(dataToPersist, jdbcTemplate, platformTransactionManager, numMaxRetries, tablesPrefix, targetDs,
-        batchUpdateMonitor);
+        batchUpdateMonitor, latencyMetrics);
   }
 
   private void flushToRelational(final BatchProcessContext batchUpdateContext) {
     // Assign flush task to a busy worker
-    workersManager.submit(new BatchProcessWorker(batchUpdateContext));
+    inFlightTasks.submit(workersManager, new BatchProcessWorker(batchUpdateContext));
     LOGGER.debug("Scheduling batch update task for persist {} elements in dataSource {}", batchUpdateContext.getDataToPersist().size(),
         batchUpdateContext.getTargetDs());
   }
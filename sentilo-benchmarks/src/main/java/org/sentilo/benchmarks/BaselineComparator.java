@@ -0,0 +1,155 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares two JMH results in JSON format, i.e. the one of the current build with a baseline
+ * saved from a previous one, and returns the benchmarks whose score, or whose allocation per
+ * operation, is more than <code>threshold</code> percent worse than in the baseline.
+ *
+ * Benchmarks are matched by name and parameters; those which are only in one of the results are
+ * ignored. Usage: <code>BaselineComparator baseline.json result.json [threshold]</code>
+ */
+public class BaselineComparator {
+
+  private static final String ALLOC_RATE_NORM = "gc.alloc.rate.norm";
+  /** Allocation differences smaller than this number of bytes per operation are just noise */
+  private static final double MIN_ALLOC_DELTA = 16;
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final double threshold;
+
+  public BaselineComparator(final double threshold) {
+    this.threshold = threshold;
+  }
+
+  public static void main(final String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: BaselineComparator <baseline.json> <result.json> [threshold]");
+      System.exit(2);
+    }
+
+    final double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+    final List<String> regressions = new BaselineComparator(threshold).compare(new File(args[0]), new File(args[1]));
+    System.exit(regressions.isEmpty() ? 0 : 1);
+  }
+
+  public List<String> compare(final File baselineFile, final File resultFile) throws IOException {
+    final Map<String, JsonNode> baseline = read(baselineFile);
+    final Map<String, JsonNode> result = read(resultFile);
+    final List<String> regressions = new ArrayList<String>();
+
+    System.out.println(String.format("%-90s %14s %14s %8s", "Benchmark", "Baseline", "Current", "Delta"));
+    for (final Entry<String, JsonNode> entry : result.entrySet()) {
+      final JsonNode base = baseline.get(entry.getKey());
+      if (base == null) {
+        continue;
+      }
+
+      final JsonNode current = entry.getValue();
+      final boolean higherIsBetter = "thrpt".equals(current.path("mode").asText());
+      final double baseScore = base.path("primaryMetric").path("score").asDouble();
+      final double score = current.path("primaryMetric").path("score").asDouble();
+      final String unit = current.path("primaryMetric").path("scoreUnit").asText();
+      if (compare(entry.getKey(), unit, baseScore, score, higherIsBetter, 0)) {
+        regressions.add(entry.getKey());
+      }
+
+      final JsonNode baseAlloc = findAllocRateNorm(base);
+      final JsonNode alloc = findAllocRateNorm(current);
+      if (baseAlloc != null && alloc != null
+          && compare(entry.getKey() + " (alloc)", "B/op", baseAlloc.path("score").asDouble(), alloc.path("score").asDouble(), false, MIN_ALLOC_DELTA)) {
+        regressions.add(entry.getKey() + " (alloc)");
+      }
+    }
+
+    if (regressions.isEmpty()) {
+      System.out.println(String.format("No benchmark is more than %.1f%% worse than the baseline", threshold));
+    } else {
+      System.out.println(String.format("%d benchmarks are more than %.1f%% worse than the baseline: %s", regressions.size(), threshold, regressions));
+    }
+    return regressions;
+  }
+
+  private boolean compare(final String name, final String unit, final double baseScore, final double score, final boolean higherIsBetter,
+      final double minDelta) {
+    final double delta = baseScore != 0 ? (score - baseScore) * 100 / baseScore : 0;
+    final double worsening = higherIsBetter ? -delta : delta;
+    final boolean regression = worsening > threshold && Math.abs(score - baseScore) >= minDelta;
+
+    System.out.println(String.format("%-90s %14.3f %14.3f %+7.1f%% %s%s", name, baseScore, score, delta, unit, regression ? "  <-- REGRESSION" : ""));
+    return regression;
+  }
+
+  private JsonNode findAllocRateNorm(final JsonNode benchmark) {
+    final Iterator<Entry<String, JsonNode>> metrics = benchmark.path("secondaryMetrics").fields();
+    while (metrics.hasNext()) {
+      final Entry<String, JsonNode> metric = metrics.next();
+      if (metric.getKey().endsWith(ALLOC_RATE_NORM)) {
+        return metric.getValue();
+      }
+    }
+    return null;
+  }
+
+  private Map<String, JsonNode> read(final File file) throws IOException {
+    final Map<String, JsonNode> benchmarks = new LinkedHashMap<String, JsonNode>();
+    for (final JsonNode benchmark : mapper.readTree(file)) {
+      benchmarks.put(buildKey(benchmark), benchmark);
+    }
+    return benchmarks;
+  }
+
+  private String buildKey(final JsonNode benchmark) {
+    final StringBuilder key = new StringBuilder(benchmark.path("benchmark").asText());
+    final Map<String, String> params = new TreeMap<String, String>();
+    final Iterator<Entry<String, JsonNode>> fields = benchmark.path("params").fields();
+    while (fields.hasNext()) {
+      final Entry<String, JsonNode> param = fields.next();
+      params.put(param.getKey(), param.getValue().asText());
+    }
+    if (!params.isEmpty()) {
+      key.append(params);
+    }
+    return key.toString();
+  }
+}
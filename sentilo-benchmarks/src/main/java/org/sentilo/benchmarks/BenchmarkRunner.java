@@ -0,0 +1,69 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.benchmarks;
+
+import java.io.File;
+import java.util.List;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.StringUtils;
+
+/**
+ * Runs the benchmarks which match the regular expression given (all of them by default) with the
+ * GC profiler, which reports the bytes allocated per operation, and writes their results in JSON
+ * format to <code>benchmark.result</code>.
+ *
+ * If <code>benchmark.baseline</code> is set, results are compared with it and the process exits
+ * with an error status if any of them is more than <code>benchmark.threshold</code> percent worse
+ * (see {@link BaselineComparator}). A result file can be kept as the baseline of later builds.
+ */
+public class BenchmarkRunner {
+
+  public static void main(final String[] args) throws Exception {
+    final String include = args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*";
+    final String result = System.getProperty("benchmark.result", "target/jmh-result.json");
+
+    final Options options = new OptionsBuilder().include(include).addProfiler(GCProfiler.class).resultFormat(ResultFormatType.JSON)
+        .result(result).shouldFailOnError(true).build();
+    new Runner(options).run();
+
+    final String baseline = System.getProperty("benchmark.baseline");
+    if (StringUtils.hasText(baseline)) {
+      final double threshold = Double.parseDouble(System.getProperty("benchmark.threshold", "10"));
+      final List<String> regressions = new BaselineComparator(threshold).compare(new File(baseline), new File(result));
+      if (!regressions.isEmpty()) {
+        System.exit(1);
+      }
+    }
+  }
+}
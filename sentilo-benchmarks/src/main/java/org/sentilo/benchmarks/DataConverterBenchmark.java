@@ -0,0 +1,96 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sentilo.platform.common.domain.DataInputMessage;
+import org.sentilo.platform.server.converter.DataConverter;
+import org.sentilo.platform.server.request.SentiloRequest;
+
+/**
+ * Parsing of PUT /data requests: a single value in the path, the observations of a sensor and the
+ * observations of several sensors of a provider (fixtures data-sensor.json and
+ * data-provider.json).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms512m", "-Xmx512m", "-Duser.timezone=UTC"})
+public class DataConverterBenchmark {
+
+  private final DataConverter converter = new DataConverter();
+
+  private SentiloRequest valueRequest;
+  private SentiloRequest sensorRequest;
+  private SentiloRequest providerRequest;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    Fixtures.setRequesterContext();
+    valueRequest = Fixtures.buildDataRequest("PUT", Fixtures.PROVIDER + "/" + Fixtures.SENSOR + "/21.4", null);
+    sensorRequest = Fixtures.buildDataRequest("PUT", Fixtures.PROVIDER + "/" + Fixtures.SENSOR, Fixtures.read("data-sensor.json"));
+    providerRequest = Fixtures.buildDataRequest("PUT", Fixtures.PROVIDER, Fixtures.read("data-provider.json"));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    Fixtures.clearRequesterContext();
+  }
+
+  @Benchmark
+  public DataInputMessage parseValue() {
+    return converter.parsePutRequest(valueRequest);
+  }
+
+  @Benchmark
+  public DataInputMessage parseSensorObservations() {
+    return converter.parsePutRequest(sensorRequest);
+  }
+
+  @Benchmark
+  public DataInputMessage parseProviderObservations() {
+    return converter.parsePutRequest(providerRequest);
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.benchmarks;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sentilo.common.utils.DateUtils;
+
+/**
+ * Parsing and formatting of Sentilo timestamps, which is done for every observation read or
+ * written. Formats are shared by every thread, so parsing is also measured with several threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms512m", "-Xmx512m", "-Duser.timezone=UTC"})
+public class DateUtilsBenchmark {
+
+  private final String timestamp = "17/10/2026T10:15:00";
+  private final String timestampWithZone = "17/10/2026T12:15:00+0200";
+  private final Date date = new Date(1792232100000L);
+  private final Long millis = Long.valueOf(1792232100000L);
+
+  @Benchmark
+  public Date stringToDate() {
+    return DateUtils.stringToDate(timestamp);
+  }
+
+  @Benchmark
+  public Date stringWithZoneToDate() {
+    return DateUtils.stringToDate(timestampWithZone);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Date stringToDateContended() {
+    return DateUtils.stringToDate(timestamp);
+  }
+
+  @Benchmark
+  public String toStringTimestamp() {
+    return DateUtils.toStringTimestamp(date);
+  }
+
+  @Benchmark
+  public String timestampToString() {
+    return DateUtils.timestampToString(millis);
+  }
+}
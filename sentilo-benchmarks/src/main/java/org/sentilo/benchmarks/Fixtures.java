@@ -0,0 +1,112 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpEntityEnclosingRequest;
+import org.apache.http.protocol.BasicHttpContext;
+import org.sentilo.platform.common.domain.EntityMetadataMessage;
+import org.sentilo.platform.common.security.RequesterContext;
+import org.sentilo.platform.common.security.RequesterContextHolder;
+import org.sentilo.platform.common.security.ResourceOwnerContext;
+import org.sentilo.platform.common.security.ResourceOwnerContextHolder;
+import org.sentilo.platform.server.request.SentiloRequest;
+
+/**
+ * Payloads and requests shared by the benchmarks. Payloads are read from the fixtures folder of the
+ * classpath and are never generated at random, so that every run measures the same work.
+ */
+public final class Fixtures {
+
+  public static final String PROVIDER = "bcn-environment";
+  public static final String SENSOR = "TA-001";
+  public static final String TENANT = "barcelona";
+
+  private Fixtures() {
+    throw new AssertionError();
+  }
+
+  public static String read(final String name) throws IOException {
+    final InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name);
+    if (in == null) {
+      throw new IOException("Fixture " + name + " not found");
+    }
+
+    try {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[4096];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return out.toString("UTF-8");
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Builds a request to the data service as the request handler does once the handler has been
+   * located.
+   */
+  public static SentiloRequest buildDataRequest(final String method, final String resourcePath, final String body) {
+    final BasicHttpEntityEnclosingRequest httpRequest = new BasicHttpEntityEnclosingRequest(method, "/data/" + resourcePath);
+    if (body != null) {
+      httpRequest.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+    }
+
+    final SentiloRequest request = SentiloRequest.build(httpRequest, new BasicHttpContext());
+    request.setPathParts("/data", resourcePath);
+    return request;
+  }
+
+  /**
+   * Sets the contexts of an authenticated request of the provider, as the services expect them.
+   * They are bound to the current thread, so they must be set by each benchmark thread.
+   */
+  public static void setRequesterContext() {
+    final EntityMetadataMessage metadata = new EntityMetadataMessage();
+    metadata.setEntity(PROVIDER);
+    metadata.setToken("c956738a36ba2196fd564368780686f276f730");
+    metadata.setTenantId(TENANT);
+
+    RequesterContextHolder.setContext(new RequesterContext(metadata));
+    ResourceOwnerContextHolder.setContext(new ResourceOwnerContext(metadata));
+  }
+
+  public static void clearRequesterContext() {
+    RequesterContextHolder.clearContext();
+    ResourceOwnerContextHolder.clearContext();
+  }
+}
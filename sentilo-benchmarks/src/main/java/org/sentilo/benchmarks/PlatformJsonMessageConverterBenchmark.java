@@ -0,0 +1,109 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sentilo.platform.common.domain.Observation;
+import org.sentilo.platform.server.converter.DataConverter;
+import org.sentilo.platform.server.request.SentiloRequest;
+import org.sentilo.platform.server.response.SentiloResponse;
+
+/**
+ * Marshalling of GET /data responses to JSON, which is done by the write path of
+ * PlatformJsonMessageConverter: the last observations of a sensor and of every sensor of a
+ * provider.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms512m", "-Xmx512m", "-Duser.timezone=UTC"})
+public class PlatformJsonMessageConverterBenchmark {
+
+  private final DataConverter converter = new DataConverter();
+
+  private SentiloRequest sensorRequest;
+  private SentiloRequest providerRequest;
+  private List<Observation> sensorObservations;
+  private List<Observation> providerObservations;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    Fixtures.setRequesterContext();
+    final String sensorPath = Fixtures.PROVIDER + "/" + Fixtures.SENSOR;
+    sensorObservations =
+        converter.parsePutRequest(Fixtures.buildDataRequest("PUT", sensorPath, Fixtures.read("data-sensor.json"))).getObservations();
+    providerObservations =
+        converter.parsePutRequest(Fixtures.buildDataRequest("PUT", Fixtures.PROVIDER, Fixtures.read("data-provider.json"))).getObservations();
+
+    sensorRequest = Fixtures.buildDataRequest("GET", sensorPath, null);
+    providerRequest = Fixtures.buildDataRequest("GET", Fixtures.PROVIDER, null);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    Fixtures.clearRequesterContext();
+  }
+
+  @Benchmark
+  public HttpResponse writeSensorObservations() {
+    return write(sensorRequest, sensorObservations);
+  }
+
+  @Benchmark
+  public HttpResponse writeProviderObservations() {
+    return write(providerRequest, providerObservations);
+  }
+
+  private HttpResponse write(final SentiloRequest request, final List<Observation> observations) {
+    final HttpResponse httpResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+    converter.writeResponse(request, SentiloResponse.build(httpResponse), observations);
+    return httpResponse;
+  }
+}
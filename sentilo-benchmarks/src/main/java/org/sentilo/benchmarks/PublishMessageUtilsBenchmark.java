@@ -0,0 +1,110 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sentilo.platform.common.domain.AlarmInputMessage;
+import org.sentilo.platform.common.domain.Observation;
+import org.sentilo.platform.common.domain.OrderInputMessage;
+import org.sentilo.platform.service.utils.ChannelUtils;
+import org.sentilo.platform.service.utils.ChannelUtils.PubSubChannelPrefix;
+import org.sentilo.platform.service.utils.PublishMessageUtils;
+import org.springframework.data.redis.listener.Topic;
+
+/**
+ * Serialization of the events published for each observation, order and alarm received.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms512m", "-Xmx512m", "-Duser.timezone=UTC"})
+public class PublishMessageUtilsBenchmark {
+
+  private Observation observation;
+  private Topic dataTopic;
+  private OrderInputMessage order;
+  private Topic orderTopic;
+  private AlarmInputMessage alarm;
+  private Topic alarmTopic;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Fixtures.setRequesterContext();
+
+    observation = new Observation(Fixtures.PROVIDER, Fixtures.SENSOR, "21.4", 1792232100000L, "41.3800 2.1700");
+    dataTopic = ChannelUtils.buildTopic(PubSubChannelPrefix.data, Fixtures.PROVIDER, Fixtures.SENSOR);
+
+    order = new OrderInputMessage(Fixtures.PROVIDER, Fixtures.SENSOR);
+    order.setOrder("{\"action\":\"calibrate\",\"offset\":-0.5}");
+    orderTopic = ChannelUtils.buildTopic(PubSubChannelPrefix.order, Fixtures.PROVIDER, Fixtures.SENSOR);
+
+    alarm = new AlarmInputMessage("TA-001-threshold");
+    alarm.setProviderId(Fixtures.PROVIDER);
+    alarm.setSensorId(Fixtures.SENSOR);
+    alarm.setAlertType("INTERNAL");
+    alarm.setMessage("Value 38.2 is greater than 35");
+    alarm.setSender("sentilo-agent-alert");
+    alarmTopic = ChannelUtils.buildTopic(PubSubChannelPrefix.alarm, "TA-001-threshold");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    Fixtures.clearRequesterContext();
+  }
+
+  @Benchmark
+  public byte[] observationEvent() {
+    return PublishMessageUtils.buildContentToPublish(observation, dataTopic);
+  }
+
+  @Benchmark
+  public byte[] orderEvent() {
+    return PublishMessageUtils.buildContentToPublish(order, orderTopic);
+  }
+
+  @Benchmark
+  public byte[] alarmEvent() {
+    return PublishMessageUtils.buildContentToPublish(alarm, alarmTopic);
+  }
+}
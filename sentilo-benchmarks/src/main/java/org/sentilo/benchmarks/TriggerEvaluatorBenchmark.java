@@ -0,0 +1,102 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sentilo.agent.alert.domain.InternalAlert;
+import org.sentilo.agent.alert.trigger.TriggerEvaluator;
+import org.sentilo.agent.alert.trigger.TriggerResult;
+import org.sentilo.common.enums.AlertTriggerType;
+
+/**
+ * Evaluation by the alert agent of the internal alerts of a sensor for each observation received.
+ * Values go through a fixed sequence which both fires and doesn't fire every trigger.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms512m", "-Xmx512m", "-Duser.timezone=UTC"})
+public class TriggerEvaluatorBenchmark {
+
+  private static final String[] VALUES = {"21.4", "36.2", "4.8", "24.9", "21.4", "-1.5", "35", "19.75"};
+
+  @Param({"GT", "LTE", "EQ", "CHANGE_DELTA"})
+  private AlertTriggerType trigger;
+
+  private final TriggerEvaluator evaluator = new TriggerEvaluator();
+  private InternalAlert alert;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    alert = new InternalAlert("TA-001-" + trigger.name().toLowerCase());
+    alert.setProviderId(Fixtures.PROVIDER);
+    alert.setSensorId(Fixtures.SENSOR);
+    alert.setTrigger(trigger);
+    alert.setExpression(getExpression(trigger));
+  }
+
+  @Benchmark
+  public TriggerResult evaluate() {
+    final String value = VALUES[next];
+    next = (next + 1) % VALUES.length;
+
+    final TriggerResult result = evaluator.evaluate(alert, value);
+    evaluator.setPreviousValue(value);
+    return result;
+  }
+
+  private static String getExpression(final AlertTriggerType trigger) {
+    switch (trigger) {
+      case GT:
+        return "35";
+      case LTE:
+        return "5";
+      case EQ:
+        return "21.4";
+      default:
+        return "10";
+    }
+  }
+}
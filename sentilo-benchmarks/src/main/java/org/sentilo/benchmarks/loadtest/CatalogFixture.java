@@ -0,0 +1,168 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.benchmarks.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.sentilo.common.domain.CatalogAlert;
+import org.sentilo.common.domain.CatalogSensor;
+import org.sentilo.common.enums.SensorState;
+import org.sentilo.platform.common.domain.AdminInputMessage;
+import org.sentilo.platform.common.domain.EntitiesMetadataMessage;
+import org.sentilo.platform.common.domain.EntityMetadataMessage;
+import org.sentilo.platform.common.domain.PermissionMessage;
+import org.sentilo.platform.common.domain.PermissionMessage.PermissionType;
+import org.sentilo.platform.common.domain.PermissionsMessage;
+
+/**
+ * Entities, permissions and resources of the load test, i.e. what the catalog would hold: the
+ * catalog application itself, providers with their sensors and one external alert each, and
+ * applications which may read from every provider and send orders to them.
+ */
+public class CatalogFixture {
+
+  public static final String CATALOG_ID = "sentilo-catalog";
+  public static final String TENANT = "loadtest";
+
+  private final int providers;
+  private final int sensorsPerProvider;
+  private final int applications;
+
+  public CatalogFixture(final int providers, final int sensorsPerProvider, final int applications) {
+    this.providers = providers;
+    this.sensorsPerProvider = sensorsPerProvider;
+    this.applications = applications;
+  }
+
+  public int getProviders() {
+    return providers;
+  }
+
+  public int getSensorsPerProvider() {
+    return sensorsPerProvider;
+  }
+
+  public int getApplications() {
+    return applications;
+  }
+
+  public String getProvider(final int i) {
+    return String.format("loadtest-provider-%03d", i);
+  }
+
+  public String getSensor(final int i) {
+    return String.format("sensor-%04d", i);
+  }
+
+  public String getAlert(final int provider) {
+    return getProvider(provider) + "-alert";
+  }
+
+  public String getApplication(final int i) {
+    return String.format("loadtest-app-%03d", i);
+  }
+
+  public String getToken(final String entity) {
+    return "token-" + entity;
+  }
+
+  public EntitiesMetadataMessage getEntitiesMetadata() {
+    final List<EntityMetadataMessage> entities = new ArrayList<EntityMetadataMessage>();
+    entities.add(buildEntityMetadata(CATALOG_ID));
+    for (int i = 0; i < providers; i++) {
+      entities.add(buildEntityMetadata(getProvider(i)));
+    }
+    for (int i = 0; i < applications; i++) {
+      entities.add(buildEntityMetadata(getApplication(i)));
+    }
+
+    final EntitiesMetadataMessage message = new EntitiesMetadataMessage();
+    message.setEntitiesMetadata(entities);
+    return message;
+  }
+
+  public PermissionsMessage getPermissions() {
+    final List<PermissionMessage> permissions = new ArrayList<PermissionMessage>();
+    for (int i = 0; i < providers; i++) {
+      final String provider = getProvider(i);
+      permissions.add(new PermissionMessage(CATALOG_ID, provider, PermissionType.ADMIN.name()));
+      permissions.add(new PermissionMessage(provider, provider, PermissionType.ADMIN.name()));
+      for (int j = 0; j < applications; j++) {
+        permissions.add(new PermissionMessage(getApplication(j), provider, PermissionType.WRITE.name()));
+      }
+    }
+    for (int j = 0; j < applications; j++) {
+      final String application = getApplication(j);
+      permissions.add(new PermissionMessage(CATALOG_ID, application, PermissionType.ADMIN.name()));
+      permissions.add(new PermissionMessage(application, application, PermissionType.ADMIN.name()));
+    }
+
+    final PermissionsMessage message = new PermissionsMessage();
+    message.setPermissions(permissions);
+    return message;
+  }
+
+  /**
+   * Returns the sensors and alerts of a provider as the catalog sends them to the platform when
+   * they are created.
+   */
+  public AdminInputMessage getResources(final int provider) {
+    final List<CatalogSensor> sensors = new ArrayList<CatalogSensor>();
+    for (int i = 0; i < sensorsPerProvider; i++) {
+      final CatalogSensor sensor = new CatalogSensor();
+      sensor.setProvider(getProvider(provider));
+      sensor.setSensor(getSensor(i));
+      sensor.setType("temperature");
+      sensor.setDataType("NUMBER");
+      sensor.setState(SensorState.online);
+      sensors.add(sensor);
+    }
+
+    final CatalogAlert alert = new CatalogAlert(getAlert(provider));
+    alert.setEntity(getProvider(provider));
+    alert.setType("EXTERNAL");
+    alert.setActive(Boolean.TRUE.toString());
+    final List<CatalogAlert> alerts = new ArrayList<CatalogAlert>();
+    alerts.add(alert);
+
+    final AdminInputMessage message = new AdminInputMessage();
+    message.setSensors(sensors);
+    message.setAlerts(alerts);
+    return message;
+  }
+
+  private EntityMetadataMessage buildEntityMetadata(final String entity) {
+    final EntityMetadataMessage metadata = new EntityMetadataMessage();
+    metadata.setEntity(entity);
+    metadata.setToken(getToken(entity));
+    metadata.setTenantId(TENANT);
+    return metadata;
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.benchmarks.loadtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sentilo.common.domain.OrderMessage;
+import org.sentilo.common.enums.SubscribeType;
+import org.sentilo.common.metrics.LatencyHistogram;
+import org.sentilo.platform.client.core.PlatformTemplate;
+import org.sentilo.platform.client.core.domain.AlarmInputMessage;
+import org.sentilo.platform.client.core.domain.DataInputMessage;
+import org.sentilo.platform.client.core.domain.OrderInputMessage;
+import org.sentilo.platform.client.core.domain.SubscribeInputMessage;
+import org.sentilo.platform.client.core.domain.SubscriptionParams;
+import org.sentilo.platform.client.core.domain.factory.SubscribeInputMessageFactory;
+
+/**
+ * Sends a mix of requests to the platform through {@link PlatformTemplate}, as providers and
+ * applications of the fixture, from several threads at once, and records the latency and errors of
+ * each kind of request.
+ */
+public class LoadClient {
+
+  private final PlatformTemplate platformTemplate;
+  private final CatalogFixture fixture;
+  private final StubPushReceivers receivers;
+  private final Operation[] operations;
+  private final int[] cumulativeWeights;
+
+  public LoadClient(final PlatformTemplate platformTemplate, final CatalogFixture fixture, final StubPushReceivers receivers,
+      final Map<Operation, Integer> mix) {
+    this.platformTemplate = platformTemplate;
+    this.fixture = fixture;
+    this.receivers = receivers;
+
+    operations = new Operation[mix.size()];
+    cumulativeWeights = new int[mix.size()];
+    int i = 0;
+    int total = 0;
+    for (final Entry<Operation, Integer> entry : mix.entrySet()) {
+      total += entry.getValue();
+      operations[i] = entry.getKey();
+      cumulativeWeights[i++] = total;
+    }
+  }
+
+  /**
+   * Subscribes every application to the data, orders and alarms of every provider, with its stub
+   * receiver as endpoint, so each request which publishes an event is followed by push
+   * notifications.
+   */
+  public void subscribeAll() {
+    for (int i = 0; i < fixture.getApplications(); i++) {
+      for (int j = 0; j < fixture.getProviders(); j++) {
+        subscribe(i, SubscribeType.DATA, fixture.getProvider(j));
+        subscribe(i, SubscribeType.ORDER, fixture.getProvider(j));
+        subscribe(i, SubscribeType.ALARM, fixture.getAlert(j));
+      }
+    }
+  }
+
+  /**
+   * Sends requests from the given number of threads for the given time and returns the statistics
+   * of each kind of request.
+   */
+  public Map<Operation, OperationStats> run(final int threads, final int seconds, final long seed) throws InterruptedException {
+    final Map<Operation, OperationStats> stats = new EnumMap<Operation, OperationStats>(Operation.class);
+    for (final Operation operation : operations) {
+      stats.put(operation, new OperationStats());
+    }
+
+    final long deadline = System.nanoTime() + seconds * 1000000000L;
+    final CountDownLatch finished = new CountDownLatch(threads);
+    for (int i = 0; i < threads; i++) {
+      final Random random = new Random(seed + i);
+      final Thread worker = new Thread("loadtest-client-" + i) {
+
+        @Override
+        public void run() {
+          try {
+            while (System.nanoTime() < deadline) {
+              final Operation operation = nextOperation(random);
+              final OperationStats operationStats = stats.get(operation);
+              final long start = System.nanoTime();
+              try {
+                execute(operation, random);
+                operationStats.recordSuccess((System.nanoTime() - start) / 1000);
+              } catch (final RuntimeException e) {
+                operationStats.recordError(e);
+              }
+            }
+          } finally {
+            finished.countDown();
+          }
+        }
+      };
+      worker.start();
+    }
+
+    finished.await();
+    return stats;
+  }
+
+  private Operation nextOperation(final Random random) {
+    final int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+    int i = 0;
+    while (value >= cumulativeWeights[i]) {
+      i++;
+    }
+    return operations[i];
+  }
+
+  private void execute(final Operation operation, final Random random) {
+    final int providerIdx = random.nextInt(fixture.getProviders());
+    final String provider = fixture.getProvider(providerIdx);
+    final String sensor = fixture.getSensor(random.nextInt(fixture.getSensorsPerProvider()));
+    final int applicationIdx = random.nextInt(fixture.getApplications());
+    final String application = fixture.getApplication(applicationIdx);
+
+    switch (operation) {
+      case PUT_DATA:
+        final DataInputMessage observation = new DataInputMessage(provider, sensor, Double.toString(random.nextInt(4000) / 100.0));
+        observation.setIdentityToken(fixture.getToken(provider));
+        platformTemplate.getDataOps().sendObservations(observation);
+        break;
+      case GET_DATA:
+        final DataInputMessage observationsQuery = new DataInputMessage(provider, sensor);
+        observationsQuery.setIdentityToken(fixture.getToken(application));
+        platformTemplate.getDataOps().getLastObservations(observationsQuery);
+        break;
+      case PUT_ORDER:
+        final OrderInputMessage order = new OrderInputMessage(provider, sensor, new OrderMessage("sampling " + (1 + random.nextInt(60))));
+        order.setIdentityToken(fixture.getToken(application));
+        platformTemplate.getOrderOps().publish(order);
+        break;
+      case GET_ORDER:
+        final OrderInputMessage ordersQuery = new OrderInputMessage(provider, sensor);
+        ordersQuery.setIdentityToken(fixture.getToken(provider));
+        platformTemplate.getOrderOps().getLastOrders(ordersQuery);
+        break;
+      case PUT_ALARM:
+        final AlarmInputMessage alarm = new AlarmInputMessage(fixture.getAlert(providerIdx), "Threshold exceeded by " + sensor);
+        alarm.setIdentityToken(fixture.getToken(provider));
+        platformTemplate.getAlarmOps().publish(alarm);
+        break;
+      case GET_ALARM:
+        final AlarmInputMessage alarmsQuery = new AlarmInputMessage(fixture.getAlert(providerIdx));
+        alarmsQuery.setIdentityToken(fixture.getToken(application));
+        platformTemplate.getAlarmOps().getLastAlarmMessages(alarmsQuery);
+        break;
+      case SUBSCRIBE:
+        subscribe(applicationIdx, SubscribeType.DATA, provider, sensor);
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported operation " + operation);
+    }
+  }
+
+  private void subscribe(final int application, final SubscribeType type, final String... resources) {
+    final SubscriptionParams params = new SubscriptionParams(receivers.getEndpoint(application % receivers.getReceivers()));
+    final SubscribeInputMessage subscription = SubscribeInputMessageFactory.buildSubscription(type, params, resources);
+    subscription.setIdentityToken(fixture.getToken(fixture.getApplication(application)));
+    platformTemplate.getSubscribeOps().subscribe(subscription);
+  }
+
+  /**
+   * Latency of the successful requests of a kind, and number of failed ones.
+   */
+  public static class OperationStats {
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile String firstError;
+
+    void recordSuccess(final long micros) {
+      latency.record(micros, TimeUnit.MICROSECONDS);
+    }
+
+    void recordError(final RuntimeException e) {
+      if (errors.getAndIncrement() == 0) {
+        firstError = e.getClass().getSimpleName() + ": " + e.getMessage();
+      }
+    }
+
+    public LatencyHistogram getLatency() {
+      return latency;
+    }
+
+    public long getErrors() {
+      return errors.get();
+    }
+
+    public String getFirstError() {
+      return firstError;
+    }
+
+    public long getRequests() {
+      return latency.getCount() + errors.get();
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.benchmarks.loadtest;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Settings of a load test run: the defaults of <code>loadtest/loadtest.properties</code> overridden
+ * by those of the file given, if any.
+ */
+public class LoadTestConfig {
+
+  private static final String DEFAULTS = "loadtest/loadtest.properties";
+
+  private final Properties properties = new Properties();
+
+  public LoadTestConfig(final String file) throws IOException {
+    final InputStream defaults = LoadTestConfig.class.getClassLoader().getResourceAsStream(DEFAULTS);
+    try {
+      properties.load(defaults);
+    } finally {
+      defaults.close();
+    }
+
+    if (StringUtils.hasText(file)) {
+      final InputStream overrides = new FileInputStream(file);
+      try {
+        properties.load(overrides);
+      } finally {
+        overrides.close();
+      }
+    }
+  }
+
+  public String getRedisServer() {
+    return getString("loadtest.redis.server");
+  }
+
+  public String getRedisHost() {
+    return getString("loadtest.redis.host");
+  }
+
+  public int getRedisPort() {
+    return getInt("loadtest.redis.port");
+  }
+
+  public String getRedisPassword() {
+    return getString("loadtest.redis.password");
+  }
+
+  public int getPlatformPort() {
+    return getInt("loadtest.platform.port");
+  }
+
+  public int getProviders() {
+    return getInt("loadtest.providers");
+  }
+
+  public int getSensorsPerProvider() {
+    return getInt("loadtest.sensors.per.provider");
+  }
+
+  public int getApplications() {
+    return getInt("loadtest.applications");
+  }
+
+  public int getReceivers() {
+    return getInt("loadtest.receivers");
+  }
+
+  public int getThreads() {
+    return getInt("loadtest.threads");
+  }
+
+  public int getWarmupSeconds() {
+    return getInt("loadtest.warmup.seconds");
+  }
+
+  public int getDurationSeconds() {
+    return getInt("loadtest.duration.seconds");
+  }
+
+  public long getSeed() {
+    return Long.parseLong(getString("loadtest.seed"));
+  }
+
+  /**
+   * Returns the weight of each kind of request, in the order given, from a list such as
+   * <code>put-data:50,get-data:25</code>.
+   */
+  public Map<Operation, Integer> getMix() {
+    final Map<Operation, Integer> mix = new LinkedHashMap<Operation, Integer>();
+    for (final String entry : StringUtils.commaDelimitedListToStringArray(getString("loadtest.mix"))) {
+      final String[] parts = entry.trim().split(":");
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("Invalid loadtest.mix entry: " + entry);
+      }
+
+      final int weight = Integer.parseInt(parts[1].trim());
+      if (weight > 0) {
+        mix.put(Operation.fromName(parts[0]), weight);
+      }
+    }
+
+    if (mix.isEmpty()) {
+      throw new IllegalArgumentException("loadtest.mix must contain at least one request with a positive weight");
+    }
+    return mix;
+  }
+
+  public double getMaxErrorRate() {
+    return Double.parseDouble(getString("loadtest.max.error.rate"));
+  }
+
+  public String getResult() {
+    return getString("loadtest.result");
+  }
+
+  private String getString(final String key) {
+    final String value = properties.getProperty(key);
+    return value != null ? value.trim() : "";
+  }
+
+  private int getInt(final String key) {
+    return Integer.parseInt(getString(key));
+  }
+}
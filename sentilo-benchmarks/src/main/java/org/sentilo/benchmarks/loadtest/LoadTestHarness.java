@@ -0,0 +1,247 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.benchmarks.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.sentilo.benchmarks.loadtest.LoadClient.OperationStats;
+import org.sentilo.common.rest.RequestContext;
+import org.sentilo.platform.client.core.PlatformTemplate;
+import org.sentilo.platform.common.security.repository.EntityMetadataRepository;
+import org.sentilo.platform.server.auth.AuthorizationService;
+import org.sentilo.platform.server.http.RequestListenerThread;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.support.GenericXmlApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * End-to-end load test of the platform server. Starts a Redis server, a stub catalog and stub push
+ * receivers, boots the platform server against them as {@link org.sentilo.platform.server.SentiloServer}
+ * does, registers the sensors and alerts of the fixture, and then sends the configured mix of
+ * requests through {@link PlatformTemplate}, first to warm up and then to measure.
+ *
+ * The report is printed and written in JSON to <code>loadtest.result</code>. The process exits
+ * with an error status if the ratio of failed requests is greater than
+ * <code>loadtest.max.error.rate</code>. Usage: <code>LoadTestHarness [loadtest.properties]</code>
+ */
+public final class LoadTestHarness {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LoadTestHarness.class);
+
+  private static final long STARTUP_TIMEOUT = 60000;
+  private static final int RECEIVER_THREADS = 8;
+
+  private LoadTestHarness() {
+  }
+
+  public static void main(final String[] args) throws Exception {
+    final LoadTestConfig config = new LoadTestConfig(args.length > 0 ? args[0] : null);
+    final Map<Operation, Integer> mix = config.getMix();
+    validate(config, mix);
+
+    final CatalogFixture fixture = new CatalogFixture(config.getProviders(), config.getSensorsPerProvider(), config.getApplications());
+    final RedisServerProcess redis = new RedisServerProcess(config, new File("target/loadtest/redis"));
+    final StubCatalog catalog = new StubCatalog(fixture);
+    final StubPushReceivers receivers = new StubPushReceivers(config.getReceivers(), RECEIVER_THREADS);
+    GenericXmlApplicationContext platform = null;
+    GenericXmlApplicationContext client = null;
+    boolean passed = false;
+
+    try {
+      redis.start();
+      catalog.start();
+      receivers.start();
+      LOGGER.info("Redis listening at {}:{}, stub catalog at {}", redis.getHost(), redis.getPort(), catalog.getEndpoint());
+
+      final int port = config.getPlatformPort() > 0 ? config.getPlatformPort() : findFreePort();
+      platform = startPlatform(port, redis, catalog);
+      waitUntilReady(platform, fixture, port);
+      LOGGER.info("Platform server listening at port {}", port);
+
+      client = startClient(port, fixture);
+      final PlatformTemplate platformTemplate = client.getBean(PlatformTemplate.class);
+      registerResources(platformTemplate, fixture);
+
+      final LoadClient loadClient = new LoadClient(platformTemplate, fixture, receivers, mix);
+      if (config.getReceivers() > 0) {
+        loadClient.subscribeAll();
+      }
+
+      LOGGER.info("Warming up for {} seconds with {} threads", config.getWarmupSeconds(), config.getThreads());
+      loadClient.run(config.getThreads(), config.getWarmupSeconds(), config.getSeed());
+      receivers.reset();
+
+      LOGGER.info("Measuring for {} seconds with {} threads", config.getDurationSeconds(), config.getThreads());
+      final Map<String, Long> commandsBefore = redis.getCommandCalls();
+      final long start = System.nanoTime();
+      final Map<Operation, OperationStats> stats = loadClient.run(config.getThreads(), config.getDurationSeconds(), config.getSeed() + config.getThreads());
+      final double seconds = (System.nanoTime() - start) / 1e9;
+      final Map<String, Long> commandsAfter = redis.getCommandCalls();
+
+      final LoadTestReport report = new LoadTestReport(config, seconds);
+      report.addOperations(stats);
+      report.addRedisCommands(commandsBefore, commandsAfter);
+      if (config.getReceivers() > 0) {
+        report.addPushNotifications(receivers);
+      }
+      report.print(System.out);
+      report.write(new File(config.getResult()));
+
+      passed = report.getErrorRate() <= config.getMaxErrorRate();
+      if (!passed) {
+        LOGGER.error("Error rate {} is greater than the maximum allowed {}", report.getErrorRate(), config.getMaxErrorRate());
+      }
+    } finally {
+      if (client != null) {
+        client.close();
+      }
+      if (platform != null) {
+        platform.close();
+      }
+      receivers.stop();
+      catalog.stop();
+      redis.stop();
+    }
+
+    System.exit(passed ? 0 : 1);
+  }
+
+  static int findFreePort() throws IOException {
+    final ServerSocket socket = new ServerSocket(0);
+    try {
+      return socket.getLocalPort();
+    } finally {
+      socket.close();
+    }
+  }
+
+  private static void validate(final LoadTestConfig config, final Map<Operation, Integer> mix) {
+    if (config.getProviders() < 1 || config.getSensorsPerProvider() < 1 || config.getApplications() < 1) {
+      throw new IllegalArgumentException("The fixture needs at least one provider, one sensor per provider and one application");
+    }
+    if (config.getThreads() < 1) {
+      throw new IllegalArgumentException("loadtest.threads must be positive");
+    }
+    if (mix.containsKey(Operation.SUBSCRIBE) && config.getReceivers() < 1) {
+      throw new IllegalArgumentException("Subscribe requests need at least one push receiver");
+    }
+  }
+
+  private static GenericXmlApplicationContext startPlatform(final int port, final RedisServerProcess redis, final StubCatalog catalog) {
+    // These properties take precedence over the ones of the platform properties files
+    final Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("port", Integer.toString(port));
+    properties.put("jedis.pool.host", redis.getHost());
+    properties.put("jedis.pool.port", Integer.toString(redis.getPort()));
+    properties.put("jedis.pool.password", redis.getPassword());
+    properties.put("catalog.rest.endpoint", catalog.getEndpoint());
+    properties.put("catalog.id", CatalogFixture.CATALOG_ID);
+
+    final GenericXmlApplicationContext ctx = new GenericXmlApplicationContext();
+    ctx.getEnvironment().setActiveProfiles("dev");
+    ctx.getEnvironment().getPropertySources().addFirst(new MapPropertySource("loadtest", properties));
+    ctx.load("classpath:spring/platform-server-context.xml");
+    ctx.refresh();
+
+    final RequestListenerThread listener = (RequestListenerThread) ctx.getBean("listener");
+    listener.setDaemon(true);
+    listener.start();
+    return ctx;
+  }
+
+  /**
+   * Waits until the platform has loaded the credentials and permissions from the stub catalog and
+   * accepts connections.
+   */
+  private static void waitUntilReady(final GenericXmlApplicationContext platform, final CatalogFixture fixture, final int port)
+      throws InterruptedException {
+    final EntityMetadataRepository entityMetadataRepository = platform.getBean(EntityMetadataRepository.class);
+    final AuthorizationService authorizationService = platform.getBean(AuthorizationService.class);
+    final String catalogToken = fixture.getToken(CatalogFixture.CATALOG_ID);
+    final long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT;
+
+    while (!entityMetadataRepository.containsEntityCredential(catalogToken)
+        || !authorizationService.hasAccessToAdmin(CatalogFixture.CATALOG_ID, fixture.getProvider(0)) || !isListening(port)) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new IllegalStateException("Platform server isn't ready after " + STARTUP_TIMEOUT + " ms");
+      }
+      Thread.sleep(200);
+    }
+  }
+
+  private static boolean isListening(final int port) {
+    final Socket socket = new Socket();
+    try {
+      socket.connect(new InetSocketAddress("127.0.0.1", port), 1000);
+      return true;
+    } catch (final IOException e) {
+      return false;
+    } finally {
+      try {
+        socket.close();
+      } catch (final IOException e) {
+        // ignore
+      }
+    }
+  }
+
+  private static GenericXmlApplicationContext startClient(final int port, final CatalogFixture fixture) {
+    final Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("rest.client.host", "http://127.0.0.1:" + port);
+    properties.put("rest.client.identity.key", fixture.getToken(CatalogFixture.CATALOG_ID));
+
+    final GenericXmlApplicationContext ctx = new GenericXmlApplicationContext();
+    ctx.getEnvironment().getPropertySources().addFirst(new MapPropertySource("loadtest", properties));
+    ctx.load("classpath:loadtest/loadtest-client-context.xml");
+    ctx.refresh();
+    return ctx;
+  }
+
+  /**
+   * Registers the sensors and alerts of each provider as the catalog does when they are created.
+   */
+  private static void registerResources(final PlatformTemplate platformTemplate, final CatalogFixture fixture) throws IOException {
+    final ObjectMapper mapper = new ObjectMapper();
+    for (int i = 0; i < fixture.getProviders(); i++) {
+      final RequestContext rc = new RequestContext("admin/save", mapper.writeValueAsString(fixture.getResources(i)));
+      rc.setIdentityToken(fixture.getToken(CatalogFixture.CATALOG_ID));
+      platformTemplate.getClient().post(rc);
+    }
+    LOGGER.info("Registered {} providers with {} sensors and one alert each", fixture.getProviders(), fixture.getSensorsPerProvider());
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.benchmarks.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.sentilo.benchmarks.loadtest.LoadClient.OperationStats;
+import org.sentilo.common.metrics.LatencyHistogram;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Results of the measured part of a load test run: throughput, latency percentiles and errors of
+ * each kind of request, Redis commands processed per request, and push notifications delivered.
+ * Printed as a table and written in JSON so runs can be compared. Latencies are measured with the
+ * same {@link LatencyHistogram} as the platform metrics, so percentiles are the upper bounds of the
+ * buckets where they fall.
+ */
+public class LoadTestReport {
+
+  private static final int TOP_COMMANDS = 10;
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+  private final Map<String, Object> content = new LinkedHashMap<String, Object>();
+  private final double seconds;
+  private long requests;
+  private long errors;
+
+  public LoadTestReport(final LoadTestConfig config, final double seconds) {
+    this.seconds = seconds;
+
+    final Map<String, Object> settings = new LinkedHashMap<String, Object>();
+    settings.put("threads", config.getThreads());
+    settings.put("seconds", seconds);
+    settings.put("providers", config.getProviders());
+    settings.put("sensorsPerProvider", config.getSensorsPerProvider());
+    settings.put("applications", config.getApplications());
+    settings.put("receivers", config.getReceivers());
+    settings.put("mix", config.getMix().toString());
+    content.put("settings", settings);
+  }
+
+  public void addOperations(final Map<Operation, OperationStats> stats) {
+    final Map<String, Object> operations = new LinkedHashMap<String, Object>();
+    for (final Entry<Operation, OperationStats> entry : stats.entrySet()) {
+      final OperationStats operationStats = entry.getValue();
+      requests += operationStats.getRequests();
+      errors += operationStats.getErrors();
+
+      final Map<String, Object> operation = new LinkedHashMap<String, Object>();
+      operation.put("requests", operationStats.getRequests());
+      operation.put("errors", operationStats.getErrors());
+      operation.put("throughput", operationStats.getRequests() / seconds);
+      operation.put("latencyMillis", describe(operationStats.getLatency()));
+      if (operationStats.getFirstError() != null) {
+        operation.put("firstError", operationStats.getFirstError());
+      }
+      operations.put(entry.getKey().getName(), operation);
+    }
+
+    final Map<String, Object> total = new LinkedHashMap<String, Object>();
+    total.put("requests", requests);
+    total.put("errors", errors);
+    total.put("errorRate", getErrorRate());
+    total.put("throughput", requests / seconds);
+    content.put("total", total);
+    content.put("operations", operations);
+  }
+
+  /**
+   * Adds the Redis commands processed between both readings, which include those of the platform
+   * background tasks, related to the number of requests.
+   */
+  public void addRedisCommands(final Map<String, Long> before, final Map<String, Long> after) {
+    final List<Entry<String, Long>> deltas = new ArrayList<Entry<String, Long>>();
+    long total = 0;
+    for (final Entry<String, Long> entry : after.entrySet()) {
+      final Long previous = before.get(entry.getKey());
+      final long delta = entry.getValue() - (previous != null ? previous : 0);
+      if (delta > 0) {
+        deltas.add(new SimpleEntry<String, Long>(entry.getKey(), delta));
+        total += delta;
+      }
+    }
+
+    Collections.sort(deltas, new Comparator<Entry<String, Long>>() {
+
+      @Override
+      public int compare(final Entry<String, Long> o1, final Entry<String, Long> o2) {
+        return o2.getValue().compareTo(o1.getValue());
+      }
+    });
+
+    final Map<String, Object> commandsPerRequest = new LinkedHashMap<String, Object>();
+    for (final Entry<String, Long> delta : deltas.subList(0, Math.min(TOP_COMMANDS, deltas.size()))) {
+      commandsPerRequest.put(delta.getKey(), perRequest(delta.getValue()));
+    }
+
+    final Map<String, Object> redis = new LinkedHashMap<String, Object>();
+    redis.put("commands", total);
+    redis.put("commandsPerRequest", perRequest(total));
+    redis.put("topCommandsPerRequest", commandsPerRequest);
+    content.put("redis", redis);
+  }
+
+  public void addPushNotifications(final StubPushReceivers receivers) {
+    final Map<String, Object> push = new LinkedHashMap<String, Object>();
+    push.put("received", receivers.getReceived());
+    push.put("invalid", receivers.getInvalid());
+    push.put("throughput", receivers.getReceived() / seconds);
+    push.put("deliveryLatencyMillis", describe(receivers.getDeliveryLatency()));
+    content.put("push", push);
+  }
+
+  public double getErrorRate() {
+    return requests == 0 ? 0 : (double) errors / requests;
+  }
+
+  public void write(final File file) throws IOException {
+    if (file.getParentFile() != null) {
+      file.getParentFile().mkdirs();
+    }
+    new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, content);
+  }
+
+  @SuppressWarnings("unchecked")
+  public void print(final PrintStream out) {
+    out.println(String.format("%-10s %10s %8s %10s %9s %9s %9s %9s %9s %9s", "Request", "Count", "Errors", "Req/s", "Mean ms", "p50 ms", "p90 ms",
+        "p99 ms", "p99.9 ms", "Max ms"));
+    final Map<String, Map<String, Object>> operations = (Map<String, Map<String, Object>>) content.get("operations");
+    for (final Entry<String, Map<String, Object>> operation : operations.entrySet()) {
+      final Map<String, Object> values = operation.getValue();
+      final Map<String, Object> latency = (Map<String, Object>) values.get("latencyMillis");
+      out.println(String.format("%-10s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f", operation.getKey(), values.get("requests"),
+          values.get("errors"), values.get("throughput"), latency.get("mean"), latency.get("p50"), latency.get("p90"), latency.get("p99"),
+          latency.get("p99.9"), latency.get("max")));
+    }
+
+    out.println(String.format("Total: %d requests, %.1f req/s, %d errors (%.3f%%)", requests, requests / seconds, errors, getErrorRate() * 100));
+    for (final Entry<String, Map<String, Object>> operation : operations.entrySet()) {
+      if (operation.getValue().containsKey("firstError")) {
+        out.println(String.format("First %s error: %s", operation.getKey(), operation.getValue().get("firstError")));
+      }
+    }
+
+    final Map<String, Object> redis = (Map<String, Object>) content.get("redis");
+    if (redis != null) {
+      out.println(String.format("Redis: %d commands, %.2f per request; top: %s", redis.get("commands"), redis.get("commandsPerRequest"),
+          redis.get("topCommandsPerRequest")));
+    }
+
+    final Map<String, Object> push = (Map<String, Object>) content.get("push");
+    if (push != null) {
+      final Map<String, Object> latency = (Map<String, Object>) push.get("deliveryLatencyMillis");
+      out.println(String.format("Push: %d notifications, %.1f/s, %d invalid; delivery p50 %.2f ms, p99 %.2f ms", push.get("received"),
+          push.get("throughput"), push.get("invalid"), latency.get("p50"), latency.get("p99")));
+    }
+  }
+
+  private double perRequest(final long value) {
+    return requests == 0 ? 0 : Math.round((double) value / requests * 100) / 100.0;
+  }
+
+  private Map<String, Object> describe(final LatencyHistogram histogram) {
+    final Map<String, Object> latency = new LinkedHashMap<String, Object>();
+    latency.put("mean", histogram.getMeanMillis());
+    for (final double percentile : PERCENTILES) {
+      latency.put("p" + (percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile)),
+          histogram.getPercentileMillis(percentile));
+    }
+    latency.put("max", histogram.getMaxMillis());
+    return latency;
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.benchmarks.loadtest;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.util.StringUtils;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * The Redis the platform runs against: by default a <code>redis-server</code> process started on
+ * a free port without persistence, otherwise an already running instance. Also reads the number of
+ * commands Redis has processed, so they can be related to the requests of the load test.
+ */
+public class RedisServerProcess {
+
+  private static final long STARTUP_TIMEOUT = 10000;
+
+  private final String executable;
+  private final String password;
+  private final File workDir;
+  private String host;
+  private int port;
+  private Process process;
+
+  public RedisServerProcess(final LoadTestConfig config, final File workDir) {
+    executable = config.getRedisServer();
+    password = config.getRedisPassword();
+    host = config.getRedisHost();
+    port = config.getRedisPort();
+    this.workDir = workDir;
+  }
+
+  public void start() throws IOException, InterruptedException {
+    if (!StringUtils.hasText(host)) {
+      host = "127.0.0.1";
+      port = LoadTestHarness.findFreePort();
+      workDir.mkdirs();
+
+      final ProcessBuilder builder = new ProcessBuilder(executable, "--port", Integer.toString(port), "--bind", host, "--save", "",
+          "--appendonly", "no", "--dir", workDir.getAbsolutePath());
+      if (StringUtils.hasText(password)) {
+        builder.command().add("--requirepass");
+        builder.command().add(password);
+      }
+      builder.redirectErrorStream(true).redirectOutput(new File(workDir, "redis-server.log"));
+      process = builder.start();
+    }
+
+    waitUntilReady();
+  }
+
+  public void stop() throws InterruptedException {
+    if (process != null) {
+      process.destroy();
+      process.waitFor();
+    }
+  }
+
+  public String getHost() {
+    return host;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public String getPassword() {
+    return password;
+  }
+
+  /**
+   * Returns the number of calls to each command processed by Redis since it was started.
+   */
+  public Map<String, Long> getCommandCalls() throws IOException {
+    final Map<String, Long> calls = new TreeMap<String, Long>();
+    final Jedis jedis = connect();
+    try {
+      // Each line follows the pattern cmdstat_<command>:calls=<n>,usec=<n>,usec_per_call=<n>
+      final BufferedReader reader = new BufferedReader(new StringReader(jedis.info("commandstats")));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith("cmdstat_")) {
+          final String command = line.substring("cmdstat_".length(), line.indexOf(':'));
+          final String stats = line.substring(line.indexOf(':') + 1);
+          for (final String stat : stats.split(",")) {
+            if (stat.startsWith("calls=")) {
+              calls.put(command, Long.valueOf(stat.substring("calls=".length())));
+            }
+          }
+        }
+      }
+    } finally {
+      jedis.close();
+    }
+    return calls;
+  }
+
+  private void waitUntilReady() throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT;
+    while (true) {
+      try {
+        final Jedis jedis = connect();
+        try {
+          jedis.ping();
+          return;
+        } finally {
+          jedis.close();
+        }
+      } catch (final JedisConnectionException e) {
+        if (process != null && !process.isAlive()) {
+          throw new IllegalStateException("redis-server exited with status " + process.exitValue() + ", see " + workDir + "/redis-server.log");
+        }
+        if (System.currentTimeMillis() > deadline) {
+          throw new IllegalStateException("Redis isn't reachable at " + host + ":" + port, e);
+        }
+        Thread.sleep(100);
+      }
+    }
+  }
+
+  private Jedis connect() {
+    final Jedis jedis = new Jedis(host, port);
+    if (StringUtils.hasText(password)) {
+      jedis.auth(password);
+    }
+    return jedis;
+  }
+}
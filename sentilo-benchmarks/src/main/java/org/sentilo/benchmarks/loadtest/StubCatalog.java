@@ -0,0 +1,99 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.benchmarks.loadtest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stands in for the catalog application: returns the entity metadata and permissions of the
+ * fixture, which the platform needs to authenticate and authorize requests, and an empty response
+ * to any other call.
+ */
+public class StubCatalog {
+
+  private static final String METADATA_PATH = "/api/entities/metadata";
+  private static final String PERMISSIONS_PATH = "/api/entities/permissions";
+
+  private final HttpServer server;
+
+  public StubCatalog(final CatalogFixture fixture) throws IOException {
+    final ObjectMapper mapper = new ObjectMapper();
+    final byte[] metadata = mapper.writeValueAsBytes(fixture.getEntitiesMetadata());
+    final byte[] permissions = mapper.writeValueAsBytes(fixture.getPermissions());
+
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext(METADATA_PATH, new StaticHandler(metadata));
+    server.createContext(PERMISSIONS_PATH, new StaticHandler(permissions));
+    server.createContext("/", new StaticHandler("{}".getBytes(StandardCharsets.UTF_8)));
+    server.setExecutor(Executors.newFixedThreadPool(2));
+  }
+
+  public void start() {
+    server.start();
+  }
+
+  public void stop() {
+    server.stop(0);
+  }
+
+  public String getEndpoint() {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+  }
+
+  static class StaticHandler implements HttpHandler {
+
+    private final byte[] body;
+
+    StaticHandler(final byte[] body) {
+      this.body = body;
+    }
+
+    @Override
+    public void handle(final HttpExchange exchange) throws IOException {
+      try {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        final OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+      } finally {
+        exchange.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.benchmarks.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sentilo.common.metrics.LatencyHistogram;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Endpoints to which the platform pushes the notifications of the subscriptions of the load test
+ * applications. They count the notifications received and the delay between the publication of
+ * each event and its delivery.
+ */
+public class StubPushReceivers {
+
+  private static final String PATH = "/receiver/";
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final HttpServer server;
+  private final int receivers;
+
+  private volatile LatencyHistogram deliveryLatency = new LatencyHistogram();
+  private final AtomicLong received = new AtomicLong();
+  private final AtomicLong invalid = new AtomicLong();
+
+  public StubPushReceivers(final int receivers, final int threads) throws IOException {
+    this.receivers = receivers;
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext(PATH, new ReceiverHandler());
+    server.setExecutor(Executors.newFixedThreadPool(threads));
+  }
+
+  public void start() {
+    server.start();
+  }
+
+  public void stop() {
+    server.stop(0);
+  }
+
+  public int getReceivers() {
+    return receivers;
+  }
+
+  public String getEndpoint(final int receiver) {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + PATH + receiver;
+  }
+
+  /**
+   * Discards what has been received so far, i.e. during the warmup.
+   */
+  public void reset() {
+    deliveryLatency = new LatencyHistogram();
+    received.set(0);
+    invalid.set(0);
+  }
+
+  public long getReceived() {
+    return received.get();
+  }
+
+  public long getInvalid() {
+    return invalid.get();
+  }
+
+  public LatencyHistogram getDeliveryLatency() {
+    return deliveryLatency;
+  }
+
+  class ReceiverHandler implements HttpHandler {
+
+    @Override
+    public void handle(final HttpExchange exchange) throws IOException {
+      final long receivedAt = System.currentTimeMillis();
+      try {
+        final InputStream in = exchange.getRequestBody();
+        final JsonNode event = mapper.readTree(in);
+        in.close();
+
+        received.incrementAndGet();
+        final JsonNode publishedAt = event != null ? event.get("publishedAt") : null;
+        if (publishedAt != null && publishedAt.canConvertToLong()) {
+          deliveryLatency.record(receivedAt - publishedAt.asLong(), TimeUnit.MILLISECONDS);
+        }
+        exchange.sendResponseHeaders(200, -1);
+      } catch (final IOException e) {
+        invalid.incrementAndGet();
+        exchange.sendResponseHeaders(400, -1);
+      } finally {
+        exchange.close();
+      }
+    }
+  }
+}
@@ -56,12 +56,15 @@ import org.sentilo.web.catalog.search.builder.DefaultSearchFilterBuilderImpl;
 import org.sentilo.web.catalog.search.builder.SearchFilterBuilder;
 import org.sentilo.web.catalog.service.ComponentService;
 import org.sentilo.web.catalog.service.ComponentTypesService;
+import org.sentilo.web.catalog.service.PlatformService;
 import org.sentilo.web.catalog.service.ProviderService;
 import org.sentilo.web.catalog.service.SensorService;
 import org.sentilo.web.catalog.service.SensorSubstateService;
 import org.sentilo.web.catalog.service.SensorTypesService;
 import org.sentilo.web.catalog.utils.CatalogUtils;
 import org.sentilo.web.catalog.utils.LastUpdateMessageBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.MessageSource;
 import org.springframework.http.MediaType;
@@ -75,6 +78,11 @@ import org.springframework.web.bind.annotation.ResponseBody;
 
 public class AbstractMapController extends CatalogBaseController {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(AbstractMapController.class);
+
+  /** Maximum number of sensors whose last observations the platform returns in a single request */
+  private static final int MAX_SENSORS_PER_REQUEST = 500;
+
   @Autowired
   private ProviderService providerService;
 
@@ -87,6 +95,9 @@ public class AbstractMapController extends CatalogBaseController {
   @Autowired
   private SensorService sensorService;
 
+  @Autowired
+  private PlatformService platformService;
+
   @Autowired
   private LocalDateFormatter localDateFormat;
 
@@ -139,8 +150,12 @@ public class AbstractMapController extends CatalogBaseController {
     final List<Long> updatedTimestamps = new ArrayList<Long>();
     updatedTimestamps.add(0L);
 
+    // Last observations of all the sensors are retrieved with a single request to the platform
+    final Map<String, Observation> lastObservations = getLastObservations(sensors, filterParams);
+
     for (final Sensor sensor : sensors) {
-      final ObservationDTO observationDTO = getSensorLastObservation(filterParams, sensor);
+      final Observation observation = lastObservations.get(getObservationKey(sensor.getProviderId(), sensor.getSensorId()));
+      final ObservationDTO observationDTO = getSensorLastObservation(sensor, observation);
 
       // Finally, add the observation to list
       lastObservationsList.add(observationDTO);
@@ -157,14 +172,54 @@ public class AbstractMapController extends CatalogBaseController {
         LastUpdateMessageBuilder.buildMessage(messageSource, updatedTimestamps.get(0)));
   }
 
-  private ObservationDTO getSensorLastObservation(final QueryFilterParams filterParams, final Sensor sensor) {
+  /**
+   * Sensors are requested in chunks of up to {@link #MAX_SENSORS_PER_REQUEST}, the maximum number
+   * accepted by the platform. If a chunk fails, e.g. because one of its sensors could not be read,
+   * its sensors are requested one by one, so the info box shows every observation available.
+   */
+  private Map<String, Observation> getLastObservations(final List<Sensor> sensors, final QueryFilterParams filterParams) {
+    final Map<String, Observation> lastObservations = new HashMap<String, Observation>();
+    for (int i = 0; i < sensors.size(); i += MAX_SENSORS_PER_REQUEST) {
+      final List<Sensor> chunk = sensors.subList(i, Math.min(i + MAX_SENSORS_PER_REQUEST, sensors.size()));
+      try {
+        for (final Observation observation : platformService.getLastObservations(chunk, filterParams)) {
+          // Observations are sorted from newest to oldest
+          if (!lastObservations.containsKey(getObservationKey(observation.getProvider(), observation.getSensor()))) {
+            lastObservations.put(getObservationKey(observation.getProvider(), observation.getSensor()), observation);
+          }
+        }
+      } catch (final Exception ex) {
+        LOGGER.warn("Error retrieving the last observations of {} sensors at once, they will be retrieved one by one", chunk.size(), ex);
+        addLastObservations(chunk, filterParams, lastObservations);
+      }
+    }
+    return lastObservations;
+  }
+
+  private void addLastObservations(final List<Sensor> sensors, final QueryFilterParams filterParams, final Map<String, Observation> lastObservations) {
+    for (final Sensor sensor : sensors) {
+      try {
+        final Observation observation = getSensorService().getLastObservation(sensor, filterParams);
+        if (observation != null) {
+          lastObservations.put(getObservationKey(sensor.getProviderId(), sensor.getSensorId()), observation);
+        }
+      } catch (final Exception ex) {
+        LOGGER.warn("Error retrieving the last observation of sensor {}/{}: {}", sensor.getProviderId(), sensor.getSensorId(), ex.getMessage());
+      }
+    }
+  }
+
+  private String getObservationKey(final String providerId, final String sensorId) {
+    return providerId + "/" + sensorId;
+  }
+
+  private ObservationDTO getSensorLastObservation(final Sensor sensor, final Observation observation) {
 
     if (sensor.getSubstate() != null) {
       final SensorSubstate ss = sensorSubstateService.find(sensor.getSubstate());
       sensor.setSubstateDesc(ss.getDescription());
     }
 
-    final Observation observation = getSensorService().getLastObservation(sensor, filterParams);
     translateAndEscapeSensorType(sensor);
 
     final ObservationDTO observationDTO = new ObservationDTO(sensor, observation);
@@ -37,6 +37,8 @@ import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
 
 import org.sentilo.common.domain.OrderMessage;
+import org.sentilo.common.domain.QueryFilterParams;
+import org.sentilo.common.enums.DataAggregation;
 import org.sentilo.common.enums.SensorState;
 import org.sentilo.platform.client.core.domain.AlarmMessage;
 import org.sentilo.platform.client.core.domain.Observation;
@@ -191,12 +193,19 @@ public class SensorController extends CrudController<Sensor> {
   @RequestMapping(value = "/lastObs/{sensorId}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
   @ResponseBody
   public LastEventsDTO<ObservationDTO> getLastObservations(@PathVariable final String sensorId,
-      @RequestParam(value = "from", required = false) final Long from, @RequestParam(value = "to", required = false) final Long to) {
+      @RequestParam(value = "from", required = false) final Long from, @RequestParam(value = "to", required = false) final Long to,
+      @RequestParam(value = "aggregate", required = false) final DataAggregation aggregate,
+      @RequestParam(value = "interval", required = false) final Long interval,
+      @RequestParam(value = "downsample", required = false) final Integer downsample) {
 
     final Date fromDate = from != null ? new Date(from) : null;
     final Date toDate = to != null ? new Date(to) : null;
     final Sensor sensor = sensorService.find(new Sensor(sensorId));
-    final SortedEventsList<Observation> events = sensorService.getLastObservations(sensor, fromDate, toDate);
+    // Charts of long periods ask the platform for aggregated or downsampled observations instead of
+    // reading all of them
+    final SortedEventsList<Observation> events = aggregate != null || downsample != null
+        ? sensorService.getLastObservations(sensor, new QueryFilterParams(fromDate, toDate, null, aggregate, interval, downsample))
+        : sensorService.getLastObservations(sensor, fromDate, toDate);
     final LastEventsDTO<ObservationDTO> lastEvents = convertLastObservationsToLastObservationsDTO(sensor, events);
 
     // If sensor data is not TEXT type, reverse order collection to display data from left to right
@@ -32,10 +32,13 @@ import java.util.List;
 import java.util.Map;
 
 import org.sentilo.common.domain.PlatformConfigMessage;
+import org.sentilo.common.domain.QueryFilterParams;
 import org.sentilo.common.domain.PlatformMetricsMessage;
+import org.sentilo.platform.client.core.domain.Observation;
 import org.sentilo.platform.client.core.domain.Subscription;
 import org.sentilo.web.catalog.domain.PlatformAdminInputMessage;
 import org.sentilo.web.catalog.domain.PlatformStatsMessage;
+import org.sentilo.web.catalog.domain.Sensor;
 
 public interface PlatformService {
 
@@ -62,4 +65,10 @@ public interface PlatformService {
    */
   int getPlatformTtl();
 
+  /**
+   * Returns, with a single request to the platform, the last observations of every sensor that
+   * match the filter. Each observation is filled in with its provider and sensor.
+   */
+  List<Observation> getLastObservations(List<Sensor> sensors, QueryFilterParams filterParams);
+
 }
@@ -43,6 +43,12 @@ public interface SensorService extends CrudService<Sensor> {
 
   SortedEventsList<Observation> getLastObservations(Sensor sensor, Date from, Date to);
 
+  /**
+   * Returns the observations of the sensor filtered by <code>params</code>, which could also ask the
+   * platform to aggregate or downsample them.
+   */
+  SortedEventsList<Observation> getLastObservations(Sensor sensor, QueryFilterParams params);
+
   SortedEventsList<AlarmMessage> getLastAlarmsMessages(Sensor sensor);
 
   SortedEventsList<OrderMessage> getLastOrderMessages(Sensor sensor);
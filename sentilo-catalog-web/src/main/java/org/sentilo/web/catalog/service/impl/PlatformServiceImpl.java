@@ -28,6 +28,7 @@
  */
 package org.sentilo.web.catalog.service.impl;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -37,19 +38,26 @@ import org.sentilo.common.converter.DefaultStringMessageConverter;
 import org.sentilo.common.converter.StringMessageConverter;
 import org.sentilo.common.domain.PlatformConfigMessage;
 import org.sentilo.common.domain.PlatformMetricsMessage;
+import org.sentilo.common.domain.QueryFilterParams;
 import org.sentilo.common.exception.RESTClientException;
 import org.sentilo.common.rest.RESTClient;
 import org.sentilo.common.rest.RequestContext;
+import org.sentilo.platform.client.core.PlatformTemplate;
+import org.sentilo.platform.client.core.domain.DataInputMessage;
+import org.sentilo.platform.client.core.domain.Observation;
+import org.sentilo.platform.client.core.domain.ObservationsOutputMessage;
 import org.sentilo.platform.client.core.domain.Subscription;
 import org.sentilo.platform.client.core.domain.SubscriptionsOutputMessage;
 import org.sentilo.web.catalog.domain.PlatformAdminInputMessage;
 import org.sentilo.web.catalog.domain.PlatformStatsMessage;
+import org.sentilo.web.catalog.domain.Sensor;
 import org.sentilo.web.catalog.service.PlatformService;
 import org.sentilo.web.catalog.utils.Constants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.util.CollectionUtils;
 
 @Service
 public class PlatformServiceImpl implements PlatformService {
@@ -59,6 +67,9 @@ public class PlatformServiceImpl implements PlatformService {
   @Autowired
   private RESTClient restClient;
 
+  @Autowired
+  private PlatformTemplate platformTemplate;
+
   /**
    * Internal cache to evict continues calls to config API service. Cache is initialized with an
    * expired time of 30 minutes
@@ -185,6 +196,26 @@ public class PlatformServiceImpl implements PlatformService {
     }
   }
 
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.sentilo.web.catalog.service.PlatformService#getLastObservations(java.util.List,
+   * org.sentilo.common.domain.QueryFilterParams)
+   */
+  public List<Observation> getLastObservations(final List<Sensor> sensors, final QueryFilterParams filterParams) {
+    if (CollectionUtils.isEmpty(sensors)) {
+      return new ArrayList<Observation>();
+    }
+
+    final List<DataInputMessage> messages = new ArrayList<DataInputMessage>();
+    for (final Sensor sensor : sensors) {
+      messages.add(new DataInputMessage(sensor.getProviderId(), sensor.getSensorId(), filterParams));
+    }
+
+    final ObservationsOutputMessage outMessage = platformTemplate.getDataOps().getLastObservations(messages);
+    return outMessage.getObservations();
+  }
+
   private int getAndConvertDefaultPlatformTtl() {
     final String platformTllConfigName = Constants.PLATFORM_DEFAULT_TTL_KEY;
     int platformTtlConfigInMinutes = -1;
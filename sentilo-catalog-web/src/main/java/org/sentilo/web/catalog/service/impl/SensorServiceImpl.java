@@ -125,6 +125,17 @@ public class SensorServiceImpl extends AbstractBaseCrudServiceImpl<Sensor> imple
     return getFilteredLastObservations(sensor, filterParams);
   }
 
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.sentilo.web.catalog.service.SensorService#getLastObservations(org.sentilo.web.catalog.
+   * domain.Sensor, org.sentilo.common.domain.QueryFilterParams)
+   */
+  @Override
+  public SortedEventsList<Observation> getLastObservations(final Sensor sensor, final QueryFilterParams params) {
+    return getFilteredLastObservations(sensor, params);
+  }
+
   /*
    * (non-Javadoc)
    *
@@ -295,4 +295,19 @@ function valueToBooleanText(value) {
 	  return messages.boolValues.falseValue.toUpperCase();
   }
   return messages.boolValues.trueValue.toUpperCase();
-}
\ No newline at end of file
+}
+
+/*
+ * Filters to ask for the numeric chart of the period [from, to], downsampled by the platform to the
+ * number of points displayed, so long periods don't transfer all their observations.
+ */
+function createSampledChartFilters(from, to, points) {
+  if (from === null || to === null || to <= from) {
+    return {to: to};
+  }
+  return {
+    from: from,
+    to: to,
+    downsample: Math.max(points, 3)
+  };
+}
@@ -75,14 +75,14 @@ function showNumericDataChart(url, dataPanel, sensorType, unit, filters) {
 		
 		$("#chart-control-prev-btn").unbind('click');
 		$("#chart-control-prev-btn").on('click', function(e) {
-			filters = {
-				to: data.fromTime
-			};
+			// Previous period, as long as the displayed one, downsampled to the same number of points
+			filters = createSampledChartFilters(data.fromTime - (data.toTime - data.fromTime), data.fromTime, data.size);
 			var navActual = {
 				fromTimestamp: data.fromTimestamp, 
 				toTimestamp: data.toTimestamp, 
 				fromTime: data.fromTime, 
-				toTime: data.toTime
+				toTime: data.toTime,
+				size: data.size
 			};
 			chartNav.push(navActual);
 			showNumericDataChart(url, dataPanel, sensorType, unit, filters);
@@ -102,9 +102,7 @@ function showNumericDataChart(url, dataPanel, sensorType, unit, filters) {
 				chartNav = [];
 				filters = {};					
 			} else {
-				filters = {
-					to: prevNav.toTime + 1000
-				};	
+				filters = createSampledChartFilters(prevNav.fromTime, prevNav.toTime, prevNav.size);
 			}
 			showNumericDataChart(url, dataPanel, sensorType, unit, filters);
 		});
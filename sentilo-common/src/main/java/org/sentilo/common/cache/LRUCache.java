@@ -28,6 +28,8 @@
  */
 package org.sentilo.common.cache;
 
+import java.util.Set;
+
 public interface LRUCache<K, V> {
 
   public void put(K key, V item);
@@ -41,4 +43,6 @@ public interface LRUCache<K, V> {
   public long size();
 
   public boolean contains(K key);
+
+  public Set<K> keys();
 }
@@ -28,6 +28,8 @@
  */
 package org.sentilo.common.cache.impl;
 
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.sentilo.common.cache.LRUCache;
@@ -106,4 +108,13 @@ public class LRUCacheImpl<K, V> implements LRUCache<K, V> {
   public boolean contains(final K key) {
     return get(key) != null;
   }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.sentilo.common.cache.LRUCache#keys()
+   */
+  public Set<K> keys() {
+    return new HashSet<K>(cache.asMap().keySet());
+  }
 }
@@ -28,6 +28,7 @@
  */
 package org.sentilo.common.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 
@@ -75,6 +76,10 @@ public class EventMessage {
   /** This field is deprecated. Rather than this field, the new field publisher should be used */
   private String sender;
 
+  /** Local time when the event was received by the process, never serialized */
+  @JsonIgnore
+  private Long receivedAt;
+
   public EventMessage() {
 
   }
@@ -244,4 +249,12 @@ public class EventMessage {
     this.retryAttempt = retryAttempt;
   }
 
+  public Long getReceivedAt() {
+    return receivedAt;
+  }
+
+  public void setReceivedAt(final Long receivedAt) {
+    this.receivedAt = receivedAt;
+  }
+
 }
@@ -30,6 +30,8 @@ package org.sentilo.common.domain;
 
 import java.util.Date;
 
+import org.sentilo.common.enums.DataAggregation;
+
 /**
  * Encapsula la información con la cual filtrar las busquedas dentro de la plataforma de datos,
  * alarmas y ordenes.
@@ -40,6 +42,11 @@ public class QueryFilterParams {
   private final Date to;
   private final Integer limit;
 
+  /** Optional sampling of the observations: grouped by interval (millis) or downsampled to N points */
+  private DataAggregation aggregation;
+  private Long interval;
+  private Integer downsample;
+
   public QueryFilterParams(final Integer limit) {
     this((Date) null, (Date) null, limit);
   }
@@ -58,6 +65,14 @@ public class QueryFilterParams {
     this.limit = limit;
   }
 
+  public QueryFilterParams(final Date from, final Date to, final Integer limit, final DataAggregation aggregation, final Long interval,
+      final Integer downsample) {
+    this(from, to, limit);
+    this.aggregation = aggregation;
+    this.interval = interval;
+    this.downsample = downsample;
+  }
+
   public Date getFrom() {
     return from;
   }
@@ -70,6 +85,22 @@ public class QueryFilterParams {
     return limit;
   }
 
+  public DataAggregation getAggregation() {
+    return aggregation;
+  }
+
+  public Long getInterval() {
+    return interval;
+  }
+
+  public Integer getDownsample() {
+    return downsample;
+  }
+
+  public boolean isSampled() {
+    return aggregation != null || downsample != null;
+  }
+
   @Override
   public String toString() {
     final StringBuilder sb = new StringBuilder();
@@ -78,6 +109,11 @@ public class QueryFilterParams {
     sb.append("\n\t from:").append(from);
     sb.append("\n\t to:").append(to);
     sb.append("\n\t limit:").append(limit);
+    if (isSampled()) {
+      sb.append("\n\t aggregation:").append(aggregation);
+      sb.append("\n\t interval:").append(interval);
+      sb.append("\n\t downsample:").append(downsample);
+    }
 
     return sb.toString();
   }
@@ -0,0 +1,104 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.common.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with fixed, roughly logarithmic, buckets from 100 microseconds to 10
+ * seconds. It is cheap enough to be updated on every request and its percentiles are approximated
+ * by the upper bound of the bucket where they fall.
+ */
+public class LatencyHistogram {
+
+  /** Upper bounds of the buckets, in microseconds. Last bucket holds any greater value. */
+  private static final long[] BOUNDS = {100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000, 1000000, 2500000, 5000000,
+      10000000};
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder totalMicros = new LongAdder();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  public void record(final long elapsed, final TimeUnit unit) {
+    final long micros = Math.max(0, unit.toMicros(elapsed));
+    buckets.incrementAndGet(getBucket(micros));
+    count.increment();
+    totalMicros.add(micros);
+    maxMicros.accumulateAndGet(micros, Math::max);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public float getMeanMillis() {
+    final long total = count.sum();
+    return total == 0 ? 0 : totalMicros.sum() / (total * 1000f);
+  }
+
+  public float getMaxMillis() {
+    return maxMicros.get() / 1000f;
+  }
+
+  /**
+   * Returns an approximation of the given percentile.
+   *
+   * @param percentile value between 0 and 100
+   * @return upper bound, in milliseconds, of the bucket where the percentile falls (or the max value
+   *         recorded, if it is lower)
+   */
+  public float getPercentileMillis(final double percentile) {
+    long pending = (long) Math.ceil(getCount() * percentile / 100);
+    if (pending == 0) {
+      return 0;
+    }
+
+    for (int i = 0; i < BOUNDS.length; i++) {
+      pending -= buckets.get(i);
+      if (pending <= 0) {
+        return Math.min(BOUNDS[i], maxMicros.get()) / 1000f;
+      }
+    }
+
+    return getMaxMillis();
+  }
+
+  private int getBucket(final long micros) {
+    for (int i = 0; i < BOUNDS.length; i++) {
+      if (micros <= BOUNDS[i]) {
+        return i;
+      }
+    }
+    return BOUNDS.length;
+  }
+}
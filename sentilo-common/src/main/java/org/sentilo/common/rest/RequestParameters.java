@@ -33,6 +33,7 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
+import org.sentilo.common.domain.QueryFilterParams;
 import org.sentilo.common.utils.DateUtils;
 import org.springframework.util.CollectionUtils;
 
@@ -41,6 +42,9 @@ public class RequestParameters {
   public static final String FROM = "from";
   public static final String TO = "to";
   public static final String LIMIT = "limit";
+  public static final String AGGREGATE = "aggregate";
+  public static final String INTERVAL = "interval";
+  public static final String DOWNSAMPLE = "downsample";
   public static final String METHOD = "method";
   public static final String DELETE = "delete";
 
@@ -70,6 +74,20 @@ public class RequestParameters {
     return parameters;
   }
 
+  public static RequestParameters build(final QueryFilterParams filters) {
+    final RequestParameters parameters = build(filters.getFrom(), filters.getTo(), filters.getLimit());
+    if (filters.getAggregation() != null) {
+      parameters.put(AGGREGATE, filters.getAggregation().name());
+    }
+    if (filters.getInterval() != null) {
+      parameters.put(INTERVAL, Long.toString(filters.getInterval()));
+    }
+    if (filters.getDownsample() != null) {
+      parameters.put(DOWNSAMPLE, filters.getDownsample());
+    }
+    return parameters;
+  }
+
   public void put(final String parameter, final Date date) {
     values.put(parameter, DateUtils.toStringTimestamp(date));
   }
@@ -0,0 +1,219 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.common.rest.impl;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sentilo.common.exception.RESTClientException;
+
+/**
+ * Runs the asynchronous HTTP calls of every {@link RESTClientImpl} of the JVM on a single bounded
+ * pool of threads.
+ *
+ * Calls to the same host are limited to <code>sentilo.rest.client.async.max-per-host</code>
+ * concurrent ones (16 by default): the rest wait in a per-host queue, without holding a thread, so
+ * a slow host can't take up the threads needed to call the others. Up to
+ * <code>sentilo.rest.client.async.max-pending-per-host</code> calls (10000 by default) can wait
+ * for each host; further calls fail straight away. The number of threads is given by
+ * <code>sentilo.rest.client.async.threads</code> (64 by default).
+ *
+ * Calls waiting for a host are started in the order they were submitted, but with more than one
+ * call per host in progress they may complete in any order. Callers which need the calls to a host
+ * to be made one after another, such as the pushes of notifications, must use a dispatcher with a
+ * max-per-host of 1.
+ */
+public class AsyncRequestDispatcher {
+
+  public static final String THREADS_PROPERTY = "sentilo.rest.client.async.threads";
+  public static final String MAX_PER_HOST_PROPERTY = "sentilo.rest.client.async.max-per-host";
+  public static final String MAX_PENDING_PER_HOST_PROPERTY = "sentilo.rest.client.async.max-pending-per-host";
+
+  private static final AsyncRequestDispatcher INSTANCE = new AsyncRequestDispatcher(Integer.getInteger(THREADS_PROPERTY, 64),
+      Integer.getInteger(MAX_PER_HOST_PROPERTY, 16), Integer.getInteger(MAX_PENDING_PER_HOST_PROPERTY, 10000));
+
+  private final ThreadPoolExecutor executor;
+  private final int maxPerHost;
+  private final int maxPendingPerHost;
+  private final ConcurrentMap<String, HostQueue> hosts = new ConcurrentHashMap<String, HostQueue>();
+
+  /**
+   * Builds a dispatcher with its own pool of threads and the given limit of calls in progress per
+   * host. The number of threads and of pending calls per host are given by the same system
+   * properties as the shared instance.
+   */
+  public AsyncRequestDispatcher(final int maxPerHost) {
+    this(Integer.getInteger(THREADS_PROPERTY, 64), maxPerHost, Integer.getInteger(MAX_PENDING_PER_HOST_PROPERTY, 10000));
+  }
+
+  public AsyncRequestDispatcher(final int threads, final int maxPerHost, final int maxPendingPerHost) {
+    this.maxPerHost = maxPerHost;
+    this.maxPendingPerHost = maxPendingPerHost;
+    executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(final Runnable r) {
+        final Thread thread = new Thread(r, "sentilo-rest-async-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    // Threads are only kept while there are calls to run
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  public static AsyncRequestDispatcher getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Runs <code>call</code> in background, once there are less than max-per-host calls in progress
+   * to <code>host</code>.
+   */
+  public <T> CompletableFuture<T> submit(final String host, final Callable<T> call) {
+    final CompletableFuture<T> future = new CompletableFuture<T>();
+    final HostQueue queue = getQueue(host);
+    final HostCall<T> task = new HostCall<T>(queue, call, future);
+
+    synchronized (queue) {
+      if (queue.inFlight >= maxPerHost) {
+        if (queue.waiting.size() < maxPendingPerHost) {
+          queue.waiting.add(task);
+        } else {
+          future.completeExceptionally(new RESTClientException(503, "Too many pending requests to host " + host));
+        }
+        return future;
+      }
+      queue.inFlight++;
+    }
+
+    dispatch(task);
+    return future;
+  }
+
+  public int getPendingRequests(final String host) {
+    final HostQueue queue = hosts.get(host);
+    if (queue == null) {
+      return 0;
+    }
+    synchronized (queue) {
+      return queue.inFlight + queue.waiting.size();
+    }
+  }
+
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  private HostQueue getQueue(final String host) {
+    HostQueue queue = hosts.get(host);
+    if (queue == null) {
+      final HostQueue newQueue = new HostQueue();
+      queue = hosts.putIfAbsent(host, newQueue);
+      if (queue == null) {
+        queue = newQueue;
+      }
+    }
+    return queue;
+  }
+
+  private void dispatch(final HostCall<?> task) {
+    HostCall<?> next = task;
+    while (next != null) {
+      try {
+        executor.execute(next);
+        return;
+      } catch (final RejectedExecutionException ree) {
+        // The call will never run (the dispatcher has been shut down), so its slot is released
+        next.future.completeExceptionally(ree);
+        next = releaseSlot(next.queue);
+      }
+    }
+  }
+
+  private void release(final HostQueue queue) {
+    final HostCall<?> next = releaseSlot(queue);
+    if (next != null) {
+      dispatch(next);
+    }
+  }
+
+  private HostCall<?> releaseSlot(final HostQueue queue) {
+    // The slot of the call finished is handed to the next call waiting for the same host, if any
+    synchronized (queue) {
+      final HostCall<?> next = queue.waiting.poll();
+      if (next == null) {
+        queue.inFlight--;
+      }
+      return next;
+    }
+  }
+
+  private class HostCall<T> implements Runnable {
+
+    private final HostQueue queue;
+    private final Callable<T> call;
+    private final CompletableFuture<T> future;
+
+    HostCall(final HostQueue queue, final Callable<T> call, final CompletableFuture<T> future) {
+      this.queue = queue;
+      this.call = call;
+      this.future = future;
+    }
+
+    @Override
+    public void run() {
+      try {
+        future.complete(call.call());
+      } catch (final Throwable t) {
+        future.completeExceptionally(t);
+      } finally {
+        release(queue);
+      }
+    }
+  }
+
+  private static class HostQueue {
+
+    private int inFlight;
+    private final Queue<HostCall<?>> waiting = new ArrayDeque<HostCall<?>>();
+  }
+}
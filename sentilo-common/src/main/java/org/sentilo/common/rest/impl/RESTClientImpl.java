@@ -35,6 +35,8 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLContext;
@@ -55,6 +57,7 @@ import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.HttpClientConnectionManager;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
@@ -73,6 +76,7 @@ import org.apache.http.ssl.SSLContextBuilder;
 import org.apache.http.ssl.TrustStrategy;
 import org.apache.http.util.EntityUtils;
 import org.sentilo.common.exception.RESTClientException;
+import org.sentilo.common.rest.AsyncRESTClient;
 import org.sentilo.common.rest.RESTClient;
 import org.sentilo.common.rest.RequestContext;
 import org.sentilo.common.rest.RequestParameters;
@@ -86,7 +90,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.util.StringUtils;
 
-public class RESTClientImpl implements RESTClient, InitializingBean {
+public class RESTClientImpl implements RESTClient, AsyncRESTClient, InitializingBean {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(RESTClientImpl.class);
 
@@ -111,6 +115,10 @@ public class RESTClientImpl implements RESTClient, InitializingBean {
   private String host;
   private String secretKey;
   private boolean noValidateCertificates = false;
+  // If true, connections are taken from the pool shared by all the clients of the JVM (see
+  // SharedHttpConnectionPool) instead of from a pool owned by this client
+  private boolean sharedPool = Boolean.getBoolean("sentilo.rest.client.shared-pool");
+  private AsyncRequestDispatcher asyncDispatcher = AsyncRequestDispatcher.getInstance();
 
   // Connection pool parameters
   private int maxTotalConnections = 400;
@@ -163,16 +171,72 @@ public class RESTClientImpl implements RESTClient, InitializingBean {
     return executeHttpCall(delete, rc.getBody(), rc);
   }
 
+  @Override
+  public CompletableFuture<String> getAsync(final RequestContext rc) {
+    return asyncDispatcher.submit(getRequestTargetAuthority(rc), new Callable<String>() {
+
+      @Override
+      public String call() {
+        return get(rc);
+      }
+    });
+  }
+
+  @Override
+  public CompletableFuture<String> postAsync(final RequestContext rc) {
+    return asyncDispatcher.submit(getRequestTargetAuthority(rc), new Callable<String>() {
+
+      @Override
+      public String call() {
+        return post(rc);
+      }
+    });
+  }
+
+  @Override
+  public CompletableFuture<String> putAsync(final RequestContext rc) {
+    return asyncDispatcher.submit(getRequestTargetAuthority(rc), new Callable<String>() {
+
+      @Override
+      public String call() {
+        return put(rc);
+      }
+    });
+  }
+
+  @Override
+  public CompletableFuture<String> deleteAsync(final RequestContext rc) {
+    return asyncDispatcher.submit(getRequestTargetAuthority(rc), new Callable<String>() {
+
+      @Override
+      public String call() {
+        return delete(rc);
+      }
+    });
+  }
+
   @Override
   public void afterPropertiesSet() throws Exception {
     if (httpClient == null) {
 
-      final PoolingHttpClientConnectionManager pccm = noValidateCertificates
-          ? new PoolingHttpClientConnectionManager(buildTrustSSLConnectionSocketFactory()) : new PoolingHttpClientConnectionManager();
-      // Set max total connection
-      pccm.setMaxTotal(maxTotalConnections);
-      // Set default max connection per route
-      pccm.setDefaultMaxPerRoute(maxTotalConnectionsPerRoute);
+      final HttpClientConnectionManager connectionManager;
+      if (sharedPool) {
+        // The shared pool has its own idle connection monitor and must outlive this client
+        connectionManager = SharedHttpConnectionPool.getConnectionManager(noValidateCertificates);
+      } else {
+        final PoolingHttpClientConnectionManager pccm = noValidateCertificates
+            ? new PoolingHttpClientConnectionManager(buildTrustSSLConnectionSocketFactory()) : new PoolingHttpClientConnectionManager();
+        // Set max total connection
+        pccm.setMaxTotal(maxTotalConnections);
+        // Set default max connection per route
+        pccm.setDefaultMaxPerRoute(maxTotalConnectionsPerRoute);
+
+        // idle connection monitor thread: runs every 30 seconds to remove from the pool both closed
+        // connections and idle connections with an inactivity time greater than 10s
+        idleConnectionMonitor = new IdleConnectionEvictor(pccm, 30, TimeUnit.SECONDS, 10, TimeUnit.SECONDS);
+        idleConnectionMonitor.start();
+        connectionManager = pccm;
+      }
 
       // Keep alive header definition:
       // https://tools.ietf.org/id/draft-thomson-hybi-http-timeout-01.html#rfc.section.2.1
@@ -189,11 +253,6 @@ public class RESTClientImpl implements RESTClient, InitializingBean {
         }
       };
 
-      // idle connection monitor thread: runs every 30 seconds to remove from the pool both closed
-      // connections and idle connections with an inactivity time greater than 10s
-      idleConnectionMonitor = new IdleConnectionEvictor(pccm, 30, TimeUnit.SECONDS, 10, TimeUnit.SECONDS);
-      idleConnectionMonitor.start();
-
       // Define timeouts
       RequestConfig.Builder requestBuilder = RequestConfig.custom();
       requestBuilder = requestBuilder.setSocketTimeout(DEFAULT_READ_TO_MS);
@@ -204,7 +263,8 @@ public class RESTClientImpl implements RESTClient, InitializingBean {
       httpClientBuilder.setDefaultRequestConfig(requestBuilder.build());
       httpClientBuilder.setKeepAliveStrategy(keepAliveStrategy);
       httpClientBuilder.setRetryHandler(new SentiloHttpRequestRetryHandler());
-      httpClientBuilder.setConnectionManager(pccm);
+      httpClientBuilder.setConnectionManager(connectionManager);
+      httpClientBuilder.setConnectionManagerShared(sharedPool);
 
       if (credentials != null) {
         final BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
@@ -225,7 +285,8 @@ public class RESTClientImpl implements RESTClient, InitializingBean {
 
   public void destroy() throws Exception {
     // As recommended by HttpClient API, when the client is destroyed the related connectionManager
-    // must be closed and the idle connection monitor thread must be stopped
+    // must be closed and the idle connection monitor thread must be stopped (the shared connection
+    // manager, if used, is not closed by the client)
     if (idleConnectionMonitor != null) {
       idleConnectionMonitor.shutdown();
     }
@@ -237,6 +298,20 @@ public class RESTClientImpl implements RESTClient, InitializingBean {
     return StringUtils.hasText(rc.getHost()) ? rc.getHost() : host;
   }
 
+  private String getRequestTargetAuthority(final RequestContext rc) {
+    // Async calls are limited per target host, independently of the path requested
+    final String targetHost = getRequestTargetHost(rc);
+    if (!StringUtils.hasText(targetHost)) {
+      return "";
+    }
+    try {
+      final String authority = URI.create(targetHost).getAuthority();
+      return authority != null ? authority : targetHost;
+    } catch (final IllegalArgumentException e) {
+      return targetHost;
+    }
+  }
+
   private void validateResponse(final HttpResponse response) {
     LOGGER.info("Response code: {}", response.getStatusLine().getStatusCode());
     // A response status code between 200 and 299 is considered a success status
@@ -311,7 +386,7 @@ public class RESTClientImpl implements RESTClient, InitializingBean {
     LOGGER.debug("Add header {} with value {}", SentiloConstants.DATE_HEADER, currentDate);
   }
 
-  private Registry<ConnectionSocketFactory> buildTrustSSLConnectionSocketFactory()
+  static Registry<ConnectionSocketFactory> buildTrustSSLConnectionSocketFactory()
       throws NoSuchAlgorithmException, KeyManagementException, KeyStoreException {
     // SSLContextFactory to allow all hosts. Without this an SSLException is thrown with either self
     // signed certs or certs signed by untrusted CA
@@ -352,4 +427,12 @@ public class RESTClientImpl implements RESTClient, InitializingBean {
     this.noValidateCertificates = noValidateCertificates;
   }
 
+  public void setSharedPool(final boolean sharedPool) {
+    this.sharedPool = sharedPool;
+  }
+
+  public void setAsyncDispatcher(final AsyncRequestDispatcher asyncDispatcher) {
+    this.asyncDispatcher = asyncDispatcher;
+  }
+
 }
@@ -0,0 +1,91 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.common.rest.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.config.Registry;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+/**
+ * Connection pool shared by every {@link RESTClientImpl} of the JVM configured to use it, so that
+ * the JVM holds a single pool, and a single idle connection evictor thread, instead of one per
+ * client. Clients which don't validate server certificates need their own socket factories, so
+ * they share a second pool.
+ *
+ * Pool size is given by <code>sentilo.rest.client.max-connections</code> (400 by default) and
+ * <code>sentilo.rest.client.max-connections-per-host</code> (50 by default).
+ */
+public final class SharedHttpConnectionPool {
+
+  public static final String MAX_CONNECTIONS_PROPERTY = "sentilo.rest.client.max-connections";
+  public static final String MAX_CONNECTIONS_PER_HOST_PROPERTY = "sentilo.rest.client.max-connections-per-host";
+
+  private static PoolingHttpClientConnectionManager defaultManager;
+  private static PoolingHttpClientConnectionManager trustAllManager;
+
+  private SharedHttpConnectionPool() {
+    throw new AssertionError();
+  }
+
+  /**
+   * Returns the shared connection manager. It must not be shut down by the clients, so they must be
+   * built as not owning it (see
+   * {@link org.apache.http.impl.client.HttpClientBuilder#setConnectionManagerShared(boolean)}).
+   */
+  public static synchronized HttpClientConnectionManager getConnectionManager(final boolean noValidateCertificates) throws Exception {
+    if (noValidateCertificates) {
+      if (trustAllManager == null) {
+        trustAllManager = buildConnectionManager(RESTClientImpl.buildTrustSSLConnectionSocketFactory());
+      }
+      return trustAllManager;
+    }
+
+    if (defaultManager == null) {
+      defaultManager = buildConnectionManager(null);
+    }
+    return defaultManager;
+  }
+
+  private static PoolingHttpClientConnectionManager buildConnectionManager(final Registry<ConnectionSocketFactory> socketFactoryRegistry) {
+    final PoolingHttpClientConnectionManager pccm =
+        socketFactoryRegistry != null ? new PoolingHttpClientConnectionManager(socketFactoryRegistry) : new PoolingHttpClientConnectionManager();
+    pccm.setMaxTotal(Integer.getInteger(MAX_CONNECTIONS_PROPERTY, 400));
+    pccm.setDefaultMaxPerRoute(Integer.getInteger(MAX_CONNECTIONS_PER_HOST_PROPERTY, 50));
+
+    // Same eviction policy as the pools of the non shared clients, with a daemon thread which lives
+    // as long as the JVM
+    new IdleConnectionEvictor(pccm, 30, TimeUnit.SECONDS, 10, TimeUnit.SECONDS).start();
+
+    return pccm;
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.common.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Naming rules of the Redis Streams used to deliver events when the stream transport is enabled.
+ *
+ * Events of each type are spread over a fixed number of partitions,
+ * <code>stream:{type}:{partition}</code>, using the first resource id of its topic (the provider for
+ * data and orders, the alert for alarms) so events of the same resource are always read in order.
+ */
+public abstract class EventStreamUtils {
+
+  public static final String STREAM_PREFIX = "stream";
+  public static final String TOPIC_FIELD = "topic";
+  public static final String MESSAGE_FIELD = "message";
+
+  private static final String TOKEN = ":";
+
+  private EventStreamUtils() {
+    throw new AssertionError();
+  }
+
+  /**
+   * Returns the stream where events published to <code>topic</code> are appended to.
+   *
+   * @param topic Event topic, such as <code>data:provider1:sensor1</code>
+   * @param partitions Number of partitions per event type
+   * @return stream key
+   */
+  public static String getStreamKey(final String topic, final int partitions) {
+    final String[] tokens = StringUtils.delimitedListToStringArray(topic, TOKEN);
+    final String resourceId = tokens.length > 1 ? tokens[1] : topic;
+    return buildStreamKey(tokens[0], (resourceId.hashCode() & Integer.MAX_VALUE) % Math.max(partitions, 1));
+  }
+
+  /**
+   * Returns every stream that could hold events matching the topic or pattern.
+   *
+   * @param topic Event topic or pattern, such as <code>data:*</code>
+   * @param partitions Number of partitions per event type
+   * @return stream keys
+   */
+  public static List<String> getStreamKeys(final String topic, final int partitions) {
+    final String eventType = StringUtils.delimitedListToStringArray(topic, TOKEN)[0];
+    final List<String> keys = new ArrayList<String>();
+    for (int i = 0; i < Math.max(partitions, 1); i++) {
+      keys.add(buildStreamKey(eventType, i));
+    }
+    return keys;
+  }
+
+  private static String buildStreamKey(final String eventType, final int partition) {
+    return STREAM_PREFIX + TOKEN + eventType.replace("*", "") + TOKEN + partition;
+  }
+}
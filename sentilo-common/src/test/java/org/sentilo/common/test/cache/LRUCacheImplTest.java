@@ -28,6 +28,9 @@
  */
 package org.sentilo.common.test.cache;
 
+import java.util.Arrays;
+import java.util.HashSet;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.sentilo.common.cache.impl.LRUCacheImpl;
@@ -79,4 +82,13 @@ public class LRUCacheImplTest {
     Assert.assertEquals(defaultValue, cache.get("mockKey", defaultValue));
   }
 
+  @Test
+  public void keys() {
+    final LRUCacheImpl<String, String> cache = new LRUCacheImpl<String, String>(maxSize);
+    cache.put("abc", "def");
+    cache.put("ghi", "jkl");
+
+    Assert.assertEquals(new HashSet<String>(Arrays.asList("abc", "ghi")), cache.keys());
+  }
+
 }
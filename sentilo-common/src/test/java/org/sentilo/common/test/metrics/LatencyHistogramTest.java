@@ -0,0 +1,77 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.common.test.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.sentilo.common.metrics.LatencyHistogram;
+
+public class LatencyHistogramTest {
+
+  private static final float DELTA = 0.0001f;
+
+  @Test
+  public void emptyHistogram() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMeanMillis(), DELTA);
+    assertEquals(0, histogram.getMaxMillis(), DELTA);
+    assertEquals(0, histogram.getPercentileMillis(99), DELTA);
+  }
+
+  @Test
+  public void record() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 98; i++) {
+      histogram.record(800, TimeUnit.MICROSECONDS);
+    }
+    histogram.record(40, TimeUnit.MILLISECONDS);
+    histogram.record(3, TimeUnit.SECONDS);
+
+    assertEquals(100, histogram.getCount());
+    assertEquals((98 * 0.8f + 40 + 3000) / 100, histogram.getMeanMillis(), 0.01);
+    assertEquals(3000, histogram.getMaxMillis(), DELTA);
+    assertEquals(1, histogram.getPercentileMillis(50), DELTA);
+    assertEquals(1, histogram.getPercentileMillis(98), DELTA);
+    assertEquals(50, histogram.getPercentileMillis(99), DELTA);
+    assertEquals(3000, histogram.getPercentileMillis(100), DELTA);
+  }
+
+  @Test
+  public void valuesOverLastBound() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(30, TimeUnit.SECONDS);
+
+    assertEquals(30000, histogram.getPercentileMillis(50), DELTA);
+  }
+}
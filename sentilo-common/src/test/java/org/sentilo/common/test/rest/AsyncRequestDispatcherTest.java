@@ -0,0 +1,180 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.common.test.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sentilo.common.exception.RESTClientException;
+import org.sentilo.common.rest.impl.AsyncRequestDispatcher;
+
+public class AsyncRequestDispatcherTest {
+
+  private static final int MAX_PER_HOST = 2;
+  private static final int MAX_PENDING_PER_HOST = 3;
+
+  private AsyncRequestDispatcher dispatcher;
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final AtomicInteger running = new AtomicInteger();
+  private final AtomicInteger maxRunning = new AtomicInteger();
+
+  @Before
+  public void setUp() {
+    dispatcher = new AsyncRequestDispatcher(8, MAX_PER_HOST, MAX_PENDING_PER_HOST);
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    dispatcher.shutdown();
+  }
+
+  @Test
+  public void callsAreLimitedPerHost() throws Exception {
+    final List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>();
+    for (int i = 0; i < MAX_PER_HOST + MAX_PENDING_PER_HOST; i++) {
+      futures.add(dispatcher.submit("slow-host:8080", blockingCall()));
+    }
+    // Calls to other hosts are not delayed by the calls waiting for the slow one
+    assertEquals("fast", dispatcher.submit("fast-host:8080", constantCall("fast")).get(5, TimeUnit.SECONDS));
+    assertEquals(MAX_PER_HOST + MAX_PENDING_PER_HOST, dispatcher.getPendingRequests("slow-host:8080"));
+    waitForRunningCalls(MAX_PER_HOST);
+
+    release.countDown();
+    for (final CompletableFuture<String> future : futures) {
+      assertEquals("done", future.get(5, TimeUnit.SECONDS));
+    }
+    assertEquals(MAX_PER_HOST, maxRunning.get());
+    // Host slots are released right after completing the futures
+    final long deadline = System.currentTimeMillis() + 5000;
+    while (dispatcher.getPendingRequests("slow-host:8080") > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, dispatcher.getPendingRequests("slow-host:8080"));
+  }
+
+  @Test
+  public void callsBeyondPendingLimitAreRejected() throws Exception {
+    for (int i = 0; i < MAX_PER_HOST + MAX_PENDING_PER_HOST; i++) {
+      dispatcher.submit("slow-host:8080", blockingCall());
+    }
+
+    final CompletableFuture<String> rejected = dispatcher.submit("slow-host:8080", constantCall("rejected"));
+    try {
+      rejected.get(5, TimeUnit.SECONDS);
+      fail("Call must be rejected when too many calls are pending");
+    } catch (final ExecutionException ee) {
+      assertTrue(ee.getCause() instanceof RESTClientException);
+      assertEquals(503, ((RESTClientException) ee.getCause()).getStatus());
+    }
+  }
+
+  @Test
+  public void errorCompletesFuture() throws Exception {
+    final CompletableFuture<String> future = dispatcher.submit("host:8080", new Callable<String>() {
+
+      @Override
+      public String call() {
+        throw new RESTClientException(500, "Internal error");
+      }
+    });
+
+    try {
+      future.get(5, TimeUnit.SECONDS);
+      fail("Future must complete with the call error");
+    } catch (final ExecutionException ee) {
+      assertEquals(500, ((RESTClientException) ee.getCause()).getStatus());
+    }
+    assertEquals("next", dispatcher.submit("host:8080", constantCall("next")).get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void slotIsReleasedWhenCallIsRejected() throws Exception {
+    dispatcher.shutdown();
+
+    final CompletableFuture<String> future = dispatcher.submit("host:8080", constantCall("rejected"));
+    try {
+      future.get(5, TimeUnit.SECONDS);
+      fail("Call must fail when the dispatcher can't run it");
+    } catch (final ExecutionException ee) {
+      assertTrue(ee.getCause() instanceof RejectedExecutionException);
+    }
+    assertEquals(0, dispatcher.getPendingRequests("host:8080"));
+  }
+
+  private void waitForRunningCalls(final int calls) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 5000;
+    while (running.get() < calls && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+
+  private Callable<String> blockingCall() {
+    return new Callable<String>() {
+
+      @Override
+      public String call() throws Exception {
+        final int current = running.incrementAndGet();
+        synchronized (maxRunning) {
+          maxRunning.set(Math.max(maxRunning.get(), current));
+        }
+        try {
+          release.await(5, TimeUnit.SECONDS);
+          return "done";
+        } finally {
+          running.decrementAndGet();
+        }
+      }
+    };
+  }
+
+  private Callable<String> constantCall(final String value) {
+    return new Callable<String>() {
+
+      @Override
+      public String call() {
+        return value;
+      }
+    };
+  }
+}
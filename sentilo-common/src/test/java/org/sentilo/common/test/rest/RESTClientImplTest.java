@@ -33,6 +33,9 @@ import static org.mockito.Matchers.notNull;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
 import javax.net.ssl.SSLHandshakeException;
 
 import org.apache.http.HttpRequestInterceptor;
@@ -59,6 +62,7 @@ import org.sentilo.common.exception.RESTClientException;
 import org.sentilo.common.rest.RequestContext;
 import org.sentilo.common.rest.RequestParameters;
 import org.sentilo.common.rest.impl.RESTClientImpl;
+import org.sentilo.common.rest.impl.SharedHttpConnectionPool;
 import org.sentilo.common.rest.interceptor.IdentityKeyInterceptor;
 import org.springframework.test.util.ReflectionTestUtils;
 
@@ -99,6 +103,18 @@ public class RESTClientImplTest {
     Assert.assertTrue(defaultHttpClient instanceof CloseableHttpClient);
   }
 
+  @Test
+  public void afterPropertiesSetWithSharedPool() throws Exception {
+    ReflectionTestUtils.setField(restClient, "httpClient", null);
+    restClient.setSharedPool(true);
+
+    restClient.afterPropertiesSet();
+
+    Assert.assertNotNull(ReflectionTestUtils.getField(restClient, "httpClient"));
+    Assert.assertNull(ReflectionTestUtils.getField(restClient, "idleConnectionMonitor"));
+    Assert.assertSame(SharedHttpConnectionPool.getConnectionManager(false), SharedHttpConnectionPool.getConnectionManager(false));
+  }
+
   @Test
   public void invalidGet() throws Exception {
     final String path = "data";
@@ -131,6 +147,37 @@ public class RESTClientImplTest {
     Assert.assertEquals(responseContent, result);
   }
 
+  @Test
+  public void getAsync() throws Exception {
+    final RequestContext rc = new RequestContext("/data");
+    final String responseContent = "Lorem ipsum";
+    final StatusLine statusLine = new BasicStatusLine(HttpVersion.HTTP_1_0, HttpStatus.SC_OK, "");
+
+    when(httpClient.execute(notNull(HttpGet.class))).thenReturn(httpResponse);
+    when(httpResponse.getStatusLine()).thenReturn(statusLine);
+    when(httpResponse.getEntity()).thenReturn(new StringEntity(responseContent));
+
+    final String result = restClient.getAsync(rc).get(5, TimeUnit.SECONDS);
+    Assert.assertEquals(responseContent, result);
+  }
+
+  @Test
+  public void invalidPostAsync() throws Exception {
+    final RequestContext rc = new RequestContext("/data", "body");
+    final StatusLine statusLine = new BasicStatusLine(HttpVersion.HTTP_1_0, HttpStatus.SC_FORBIDDEN, "Forbidden request");
+
+    when(httpClient.execute(notNull(HttpPost.class))).thenReturn(httpResponse);
+    when(httpResponse.getStatusLine()).thenReturn(statusLine);
+
+    try {
+      restClient.postAsync(rc).get(5, TimeUnit.SECONDS);
+      Assert.fail("Future must complete with the request error");
+    } catch (final ExecutionException ee) {
+      Assert.assertTrue(ee.getCause() instanceof RESTClientException);
+      Assert.assertEquals(HttpStatus.SC_FORBIDDEN, ((RESTClientException) ee.getCause()).getStatus());
+    }
+  }
+
   @Test
   public void getWithParameters() throws Exception {
     final String path = "/data";
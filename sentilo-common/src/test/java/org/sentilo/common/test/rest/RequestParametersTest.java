@@ -36,6 +36,8 @@ import static org.junit.Assert.assertTrue;
 import java.util.Date;
 
 import org.junit.Test;
+import org.sentilo.common.domain.QueryFilterParams;
+import org.sentilo.common.enums.DataAggregation;
 import org.sentilo.common.rest.RequestParameters;
 import org.sentilo.common.utils.SentiloConstants;
 
@@ -73,6 +75,18 @@ public class RequestParametersTest {
     assertTrue(request.size() == 4);
   }
 
+  @Test
+  public void buildSampledRequestParameters() {
+    final QueryFilterParams filters = new QueryFilterParams(new Date(), new Date(), null, DataAggregation.avg, 60000L, null);
+    final RequestParameters request = RequestParameters.build(filters);
+    assertNotNull(request.get(RequestParameters.FROM));
+    assertNull(request.get(RequestParameters.LIMIT));
+    assertEquals("avg", request.get(RequestParameters.AGGREGATE));
+    assertEquals("60000", request.get(RequestParameters.INTERVAL));
+    assertNull(request.get(RequestParameters.DOWNSAMPLE));
+    assertTrue(request.size() == 4);
+  }
+
   @Test
   public void buildDeleteRequestParameters() {
     final RequestParameters request = RequestParameters.buildDelete();
@@ -0,0 +1,75 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.common.test.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.sentilo.common.utils.EventStreamUtils;
+
+public class EventStreamUtilsTest {
+
+  @Test
+  public void getStreamKey() {
+    final String key = EventStreamUtils.getStreamKey("data:provider1:sensor1", 4);
+    assertTrue(key.matches("stream:data:[0-3]"));
+  }
+
+  @Test
+  public void sameProviderSameStream() {
+    assertEquals(EventStreamUtils.getStreamKey("data:provider1:sensor1", 8), EventStreamUtils.getStreamKey("data:provider1:sensor2", 8));
+  }
+
+  @Test
+  public void alarmStreamKey() {
+    assertTrue(EventStreamUtils.getStreamKey("alarm:alert1", 4).matches("stream:alarm:[0-3]"));
+  }
+
+  @Test
+  public void singlePartition() {
+    assertEquals("stream:order:0", EventStreamUtils.getStreamKey("order:provider1:sensor1", 0));
+  }
+
+  @Test
+  public void getStreamKeys() {
+    final List<String> keys = EventStreamUtils.getStreamKeys("data:*", 3);
+    assertEquals(3, keys.size());
+    assertEquals("stream:data:0", keys.get(0));
+    assertEquals("stream:data:2", keys.get(2));
+  }
+
+  @Test
+  public void getStreamKeysOfResource() {
+    final String key = EventStreamUtils.getStreamKey("data:provider1:sensor1", 4);
+    assertTrue(EventStreamUtils.getStreamKeys("data:provider1:sensor1", 4).contains(key));
+  }
+}
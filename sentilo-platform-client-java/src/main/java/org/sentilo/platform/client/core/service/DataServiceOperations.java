@@ -28,6 +28,8 @@
  */
 package org.sentilo.platform.client.core.service;
 
+import java.util.List;
+
 import org.sentilo.platform.client.core.domain.DataInputMessage;
 import org.sentilo.platform.client.core.domain.ObservationsOutputMessage;
 
@@ -35,6 +37,14 @@ public interface DataServiceOperations {
 
   ObservationsOutputMessage getLastObservations(DataInputMessage message);
 
+  /**
+   * Retrieves, with a single request, the last observations of a list of sensors which may belong
+   * to different providers. Each message identifies a sensor, whereas query filters and identity
+   * token are taken from the first one. Each returned observation is filled in with its provider
+   * and sensor.
+   */
+  ObservationsOutputMessage getLastObservations(List<DataInputMessage> messages);
+
   void removeLastObservations(DataInputMessage message);
 
   void sendObservations(DataInputMessage message);
@@ -28,8 +28,13 @@
  */
 package org.sentilo.platform.client.core.service.impl;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.sentilo.common.converter.StringMessageConverter;
 import org.sentilo.common.rest.RequestContext;
+import org.sentilo.common.rest.RequestParameters;
+import org.sentilo.common.utils.SentiloConstants;
 import org.sentilo.platform.client.core.domain.DataInputMessage;
 import org.sentilo.platform.client.core.domain.ObservationsOutputMessage;
 import org.sentilo.platform.client.core.parser.DataMessageConverter;
@@ -38,12 +43,16 @@ import org.sentilo.platform.client.core.utils.RequestUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
 
 @Service
 public class DefaultDataServiceOperationsImpl extends AbstractServiceOperationsImpl implements DataServiceOperations {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(DefaultDataServiceOperationsImpl.class);
 
+  private static final String SENSORS_PARAM = "sensors";
+
   private StringMessageConverter converter = new DataMessageConverter();
 
   @Override
@@ -55,6 +64,25 @@ public class DefaultDataServiceOperationsImpl extends AbstractServiceOperationsI
     return (ObservationsOutputMessage) converter.unmarshal(response, ObservationsOutputMessage.class);
   }
 
+  @Override
+  public ObservationsOutputMessage getLastObservations(final List<DataInputMessage> messages) {
+    if (CollectionUtils.isEmpty(messages)) {
+      return new ObservationsOutputMessage();
+    }
+
+    LOGGER.debug("Retrieving last observations of {} sensors", messages.size());
+    final DataInputMessage firstMessage = messages.get(0);
+    final RequestParameters parameters = firstMessage.hasQueryFilters() ? RequestUtils.buildParameters(firstMessage) : new RequestParameters();
+    parameters.put(SENSORS_PARAM, buildSensorsParam(messages));
+
+    final RequestContext rc = new RequestContext(SentiloConstants.DATA_TOKEN);
+    rc.setIdentityToken(firstMessage.getIdentityToken());
+    rc.setParameters(parameters);
+    final String response = getRestClient().get(rc);
+    LOGGER.debug("Retrieved last observations");
+    return (ObservationsOutputMessage) converter.unmarshal(response, ObservationsOutputMessage.class);
+  }
+
   @Override
   public void removeLastObservations(final DataInputMessage message) {
     LOGGER.debug("Removing last observations  {}", message);
@@ -71,4 +99,11 @@ public class DefaultDataServiceOperationsImpl extends AbstractServiceOperationsI
     LOGGER.debug("Observations has been sent");
   }
 
+  private String buildSensorsParam(final List<DataInputMessage> messages) {
+    final List<String> sensors = new ArrayList<String>();
+    for (final DataInputMessage message : messages) {
+      sensors.add(message.getProviderId() + "/" + message.getSensorId());
+    }
+    return StringUtils.collectionToCommaDelimitedString(sensors);
+  }
 }
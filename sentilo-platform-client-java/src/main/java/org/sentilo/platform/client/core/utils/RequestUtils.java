@@ -78,8 +78,7 @@ public abstract class RequestUtils {
     RequestParameters parameters = null;
 
     if (message.hasQueryFilters()) {
-      parameters =
-          RequestParameters.build(message.getQueryFilters().getFrom(), message.getQueryFilters().getTo(), message.getQueryFilters().getLimit());
+      parameters = RequestParameters.build(message.getQueryFilters());
     }
 
     return parameters;
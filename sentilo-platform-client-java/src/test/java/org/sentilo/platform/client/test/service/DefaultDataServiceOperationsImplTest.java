@@ -28,16 +28,22 @@
  */
 package org.sentilo.platform.client.test.service;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.verify;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.sentilo.common.converter.StringMessageConverter;
+import org.sentilo.common.domain.QueryFilterParams;
 import org.sentilo.common.rest.RESTClient;
 import org.sentilo.common.rest.RequestContext;
 import org.sentilo.platform.client.core.domain.DataInputMessage;
@@ -71,6 +77,21 @@ public class DefaultDataServiceOperationsImplTest {
     verify(converter).unmarshal(any(String.class), eq(ObservationsOutputMessage.class));
   }
 
+  @Test
+  public void getLastObservationsFromSensors() {
+    final ArgumentCaptor<RequestContext> rc = ArgumentCaptor.forClass(RequestContext.class);
+    final List<DataInputMessage> messages =
+        Arrays.asList(new DataInputMessage("prov1", "sensor1", new QueryFilterParams(1)), new DataInputMessage("prov2", "sensor2"));
+
+    service.getLastObservations(messages);
+
+    verify(restClient).get(rc.capture());
+    verify(converter).unmarshal(any(String.class), eq(ObservationsOutputMessage.class));
+    assertEquals("data", rc.getValue().getPath());
+    assertEquals("prov1/sensor1,prov2/sensor2", rc.getValue().getParameters().get("sensors"));
+    assertEquals("1", rc.getValue().getParameters().get("limit"));
+  }
+
   @Test
   public void removeLastObservations() {
     service.removeLastObservations(message);
@@ -0,0 +1,152 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.common.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Keeps snapshots of the in-memory caches on local disk, so that after a restart they can be loaded
+ * before the server accepts connections instead of being filled up again under full traffic.
+ *
+ * Each snapshot is a JSON file named after its cache in <code>api.cache.snapshot.dir</code>
+ * (snapshots are disabled if no dir is set), written to a temporary file and then moved so that a
+ * crash never leaves a partial snapshot. Snapshots hold credentials, such as the tokens of the
+ * entities, so on POSIX file systems they can only be read by the user who runs the server (the
+ * dir is created with 0700 permissions and the files with 0600). A snapshot is only loaded if it
+ * was written with the same version of the cache content and less than
+ * <code>api.cache.snapshot.max-age</code> millis ago. Caches must validate any other condition,
+ * and must keep refreshing their content as usual once loaded.
+ */
+@Component
+public class CacheSnapshotStore {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CacheSnapshotStore.class);
+
+  private static final String VERSION = "version";
+  private static final String CREATED_AT = "createdAt";
+  private static final String CONTENT = "content";
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @Value("${api.cache.snapshot.dir:}")
+  private String dir;
+
+  @Value("${api.cache.snapshot.max-age:3600000}")
+  private long maxAge = 3600000;
+
+  public boolean isEnabled() {
+    return StringUtils.hasText(dir);
+  }
+
+  public void save(final String name, final int version, final Object content) {
+    if (!isEnabled()) {
+      return;
+    }
+
+    final File file = getFile(name);
+    final File tmpFile = new File(file.getPath() + ".tmp");
+    try {
+      final ObjectNode snapshot = mapper.createObjectNode();
+      snapshot.put(VERSION, version);
+      snapshot.put(CREATED_AT, System.currentTimeMillis());
+      snapshot.set(CONTENT, mapper.valueToTree(content));
+
+      Files.createDirectories(file.getParentFile().toPath(), getPermissions("rwx------"));
+      Files.deleteIfExists(tmpFile.toPath());
+      final Path tmpPath = Files.createFile(tmpFile.toPath(), getPermissions("rw-------"));
+      try (OutputStream out = Files.newOutputStream(tmpPath)) {
+        mapper.writeValue(out, snapshot);
+      }
+      Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      LOGGER.debug("Saved snapshot of cache {} to {}", name, file);
+    } catch (final IOException | RuntimeException e) {
+      LOGGER.warn("Error saving snapshot of cache {} to {}", name, file, e);
+    }
+  }
+
+  /**
+   * Returns the content of the snapshot of the cache, or null if there is no valid one.
+   */
+  public <T> T load(final String name, final int version, final Class<T> type) {
+    if (!isEnabled()) {
+      return null;
+    }
+
+    final File file = getFile(name);
+    if (!file.exists()) {
+      LOGGER.info("There is no snapshot of cache {}", name);
+      return null;
+    }
+
+    try {
+      final JsonNode snapshot = mapper.readTree(file);
+      final int snapshotVersion = snapshot.path(VERSION).asInt();
+      final long age = System.currentTimeMillis() - snapshot.path(CREATED_AT).asLong();
+      if (snapshotVersion != version || age > maxAge) {
+        LOGGER.info("Snapshot of cache {} is discarded: its version is {} and its age {} ms", name, snapshotVersion, age);
+        return null;
+      }
+
+      LOGGER.info("Loading snapshot of cache {} from {}", name, file);
+      return mapper.treeToValue(snapshot.get(CONTENT), type);
+    } catch (final IOException | RuntimeException e) {
+      LOGGER.warn("Error loading snapshot of cache {} from {}. It is discarded", name, file, e);
+      return null;
+    }
+  }
+
+  private FileAttribute<?>[] getPermissions(final String permissions) {
+    if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+      return new FileAttribute<?>[] {PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString(permissions))};
+    }
+    return new FileAttribute<?>[0];
+  }
+
+  private File getFile(final String name) {
+    return new File(dir, name + ".json");
+  }
+}
@@ -42,7 +42,7 @@ import com.fasterxml.jackson.annotation.JsonInclude.Include;
 public class AdminInputMessage implements PlatformInputMessage {
 
   public static enum AdminType {
-    stats, subscriptions, delete, save, activity, performance, config, ping
+    stats, subscriptions, delete, save, activity, performance, config, ping, redis, hitters, purge
   };
 
   private String entity;
@@ -41,6 +41,12 @@ public class DataInputMessage implements PlatformInputMessage, PlatformSearchInp
   private final String sensorId;
   private final List<Observation> observations;
 
+  /** Sensors, possibly from different providers, whose last observations are requested at once. */
+  private List<Sensor> sensors;
+
+  /** Area where the sensors whose last observations are requested are located. */
+  private GeoArea area;
+
   private QueryFilterParams queryFilters;
 
   public DataInputMessage() {
@@ -56,7 +62,7 @@ public class DataInputMessage implements PlatformInputMessage, PlatformSearchInp
   }
 
   public DataInputMessage(final String providerId, final String sensorId) {
-    this(providerId, sensorId, null);
+    this(providerId, sensorId, (List<Observation>) null);
   }
 
   public DataInputMessage(final String providerId, final String sensorId, final List<Observation> observations) {
@@ -72,6 +78,21 @@ public class DataInputMessage implements PlatformInputMessage, PlatformSearchInp
     queryFilters = new QueryFilterParams(from, to, limit);
   }
 
+  public DataInputMessage(final String providerId, final String sensorId, final QueryFilterParams queryFilters) {
+    this(providerId, sensorId);
+    this.queryFilters = queryFilters;
+  }
+
+  public DataInputMessage(final List<Sensor> sensors, final Date from, final Date to, final Integer limit) {
+    this((String) null, (String) null, from, to, limit);
+    this.sensors = sensors;
+  }
+
+  public DataInputMessage(final GeoArea area, final Date from, final Date to, final Integer limit) {
+    this((String) null, (String) null, from, to, limit);
+    this.area = area;
+  }
+
   /*
    * (non-Javadoc)
    *
@@ -102,4 +123,20 @@ public class DataInputMessage implements PlatformInputMessage, PlatformSearchInp
     return observations;
   }
 
+  public List<Sensor> getSensors() {
+    return sensors;
+  }
+
+  public boolean hasSensors() {
+    return sensors != null;
+  }
+
+  public GeoArea getArea() {
+    return area;
+  }
+
+  public boolean hasArea() {
+    return area != null;
+  }
+
 }
@@ -0,0 +1,110 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.common.domain;
+
+/**
+ * Area where sensors are searched by their last known position: either a circle, defined by its
+ * center and its radius in meters, or a box, defined by its south-west and north-east corners.
+ *
+ * A box is searched as the circle circumscribed to it, whose results are then filtered with
+ * {@link #contains(double, double)}.
+ */
+public class GeoArea {
+
+  private static final double EARTH_RADIUS = 6372797.560856;
+
+  private final double latitude;
+  private final double longitude;
+  private final double radius;
+  private final double[] box;
+
+  private GeoArea(final double latitude, final double longitude, final double radius, final double[] box) {
+    this.latitude = latitude;
+    this.longitude = longitude;
+    this.radius = radius;
+    this.box = box;
+  }
+
+  public static GeoArea circle(final double latitude, final double longitude, final double radius) {
+    return new GeoArea(latitude, longitude, radius, null);
+  }
+
+  public static GeoArea box(final double swLatitude, final double swLongitude, final double neLatitude, final double neLongitude) {
+    final double latitude = (swLatitude + neLatitude) / 2;
+    final double longitude = (swLongitude + neLongitude) / 2;
+    final double radius = distance(latitude, longitude, neLatitude, neLongitude);
+    return new GeoArea(latitude, longitude, radius, new double[] {swLatitude, swLongitude, neLatitude, neLongitude});
+  }
+
+  public boolean contains(final double lat, final double lon) {
+    return box == null || lat >= box[0] && lat <= box[2] && lon >= box[1] && lon <= box[3];
+  }
+
+  /**
+   * Haversine distance in meters, computed with the same earth radius as Redis.
+   */
+  public static double distance(final double lat1, final double lon1, final double lat2, final double lon2) {
+    final double dLat = Math.toRadians(lat2 - lat1);
+    final double dLon = Math.toRadians(lon2 - lon1);
+    final double a = Math.pow(Math.sin(dLat / 2), 2) + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.pow(Math.sin(dLon / 2), 2);
+    return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(a));
+  }
+
+  public double getLatitude() {
+    return latitude;
+  }
+
+  public double getLongitude() {
+    return longitude;
+  }
+
+  public double getRadius() {
+    return radius;
+  }
+
+  public boolean isBox() {
+    return box != null;
+  }
+
+  public double getSwLatitude() {
+    return box[0];
+  }
+
+  public double getSwLongitude() {
+    return box[1];
+  }
+
+  public double getNeLatitude() {
+    return box[2];
+  }
+
+  public double getNeLongitude() {
+    return box[3];
+  }
+}
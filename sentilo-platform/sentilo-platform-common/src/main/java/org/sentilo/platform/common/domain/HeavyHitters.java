@@ -0,0 +1,132 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.common.domain;
+
+import java.util.List;
+
+/**
+ * Busiest sensors, providers and client addresses, by number of events (observations, orders and
+ * alarms) published, of the current time window and of the previous one.
+ *
+ * Counts are estimations: each one could overestimate the actual count at most by its
+ * <code>error</code>.
+ */
+public class HeavyHitters {
+
+  private Long ts;
+  private List<Window> windows;
+
+  public HeavyHitters() {
+    super();
+  }
+
+  public HeavyHitters(final Long ts, final List<Window> windows) {
+    super();
+    this.ts = ts;
+    this.windows = windows;
+  }
+
+  public Long getTs() {
+    return ts;
+  }
+
+  public List<Window> getWindows() {
+    return windows;
+  }
+
+  public static class Window {
+
+    private final Long from;
+    private final Long to;
+    private final Long total;
+    private final List<Item> sensors;
+    private final List<Item> providers;
+    private final List<Item> clients;
+
+    public Window(final Long from, final Long to, final Long total, final List<Item> sensors, final List<Item> providers, final List<Item> clients) {
+      super();
+      this.from = from;
+      this.to = to;
+      this.total = total;
+      this.sensors = sensors;
+      this.providers = providers;
+      this.clients = clients;
+    }
+
+    public Long getFrom() {
+      return from;
+    }
+
+    public Long getTo() {
+      return to;
+    }
+
+    public Long getTotal() {
+      return total;
+    }
+
+    public List<Item> getSensors() {
+      return sensors;
+    }
+
+    public List<Item> getProviders() {
+      return providers;
+    }
+
+    public List<Item> getClients() {
+      return clients;
+    }
+  }
+
+  public static class Item {
+
+    private final String key;
+    private final Long count;
+    private final Long error;
+
+    public Item(final String key, final Long count, final Long error) {
+      super();
+      this.key = key;
+      this.count = count;
+      this.error = error;
+    }
+
+    public String getKey() {
+      return key;
+    }
+
+    public Long getCount() {
+      return count;
+    }
+
+    public Long getError() {
+      return error;
+    }
+  }
+}
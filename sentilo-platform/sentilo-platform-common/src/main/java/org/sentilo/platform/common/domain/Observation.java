@@ -68,7 +68,9 @@ public class Observation {
   }
 
   public Long getTimestamp() {
-    return timestamp == null && RequesterContextHolder.getContext() != null ? RequesterContextHolder.getContext().getRequestTimestamp() : timestamp;
+    // Boxed explicitly: otherwise a null timestamp would be unboxed when there is no requester context
+    return timestamp == null && RequesterContextHolder.getContext() != null ? Long.valueOf(RequesterContextHolder.getContext().getRequestTimestamp())
+        : timestamp;
   }
 
   public void setTimestamp(final Long timestamp) {
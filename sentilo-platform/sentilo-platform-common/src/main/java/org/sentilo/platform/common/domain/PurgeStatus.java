@@ -0,0 +1,63 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.common.domain;
+
+/**
+ * Progress of the background removal of the keys of the resources deleted from the catalog: number
+ * of keys waiting to be removed and number of keys removed so far.
+ */
+public class PurgeStatus {
+
+  private Long ts;
+  private Long pending;
+  private Long purged;
+
+  public PurgeStatus() {
+    super();
+  }
+
+  public PurgeStatus(final Long ts, final Long pending, final Long purged) {
+    super();
+    this.ts = ts;
+    this.pending = pending;
+    this.purged = purged;
+  }
+
+  public Long getTs() {
+    return ts;
+  }
+
+  public Long getPending() {
+    return pending;
+  }
+
+  public Long getPurged() {
+    return purged;
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.common.domain;
+
+import java.util.List;
+
+/**
+ * Client-side figures about the commands sent by the platform to Redis, grouped by command and
+ * key family, together with the state of the connection pools and the last slow commands.
+ */
+public class RedisMetrics {
+
+  private Long ts;
+  private List<Command> commands;
+  private List<Pool> pools;
+  private List<SlowCommand> slowCommands;
+
+  public RedisMetrics() {
+    super();
+  }
+
+  public RedisMetrics(final Long ts, final List<Command> commands, final List<Pool> pools, final List<SlowCommand> slowCommands) {
+    super();
+    this.ts = ts;
+    this.commands = commands;
+    this.pools = pools;
+    this.slowCommands = slowCommands;
+  }
+
+  public Long getTs() {
+    return ts;
+  }
+
+  public List<Command> getCommands() {
+    return commands;
+  }
+
+  public List<Pool> getPools() {
+    return pools;
+  }
+
+  public List<SlowCommand> getSlowCommands() {
+    return slowCommands;
+  }
+
+  public static class Command {
+
+    private final String command;
+    private final String keyFamily;
+    private final Long count;
+    private final Long errors;
+    private final Float avgMillis;
+    private final Float p95Millis;
+    private final Float p99Millis;
+    private final Float maxMillis;
+
+    public Command(final String command, final String keyFamily, final Long count, final Long errors, final Float avgMillis, final Float p95Millis,
+        final Float p99Millis, final Float maxMillis) {
+      super();
+      this.command = command;
+      this.keyFamily = keyFamily;
+      this.count = count;
+      this.errors = errors;
+      this.avgMillis = avgMillis;
+      this.p95Millis = p95Millis;
+      this.p99Millis = p99Millis;
+      this.maxMillis = maxMillis;
+    }
+
+    public String getCommand() {
+      return command;
+    }
+
+    public String getKeyFamily() {
+      return keyFamily;
+    }
+
+    public Long getCount() {
+      return count;
+    }
+
+    public Long getErrors() {
+      return errors;
+    }
+
+    public Float getAvgMillis() {
+      return avgMillis;
+    }
+
+    public Float getP95Millis() {
+      return p95Millis;
+    }
+
+    public Float getP99Millis() {
+      return p99Millis;
+    }
+
+    public Float getMaxMillis() {
+      return maxMillis;
+    }
+  }
+
+  public static class Pool {
+
+    private final String name;
+    private final Integer active;
+    private final Integer idle;
+    private final Integer waiters;
+    private final Float avgBorrowWaitMillis;
+    private final Float maxBorrowWaitMillis;
+
+    public Pool(final String name, final Integer active, final Integer idle, final Integer waiters, final Float avgBorrowWaitMillis,
+        final Float maxBorrowWaitMillis) {
+      super();
+      this.name = name;
+      this.active = active;
+      this.idle = idle;
+      this.waiters = waiters;
+      this.avgBorrowWaitMillis = avgBorrowWaitMillis;
+      this.maxBorrowWaitMillis = maxBorrowWaitMillis;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public Integer getActive() {
+      return active;
+    }
+
+    public Integer getIdle() {
+      return idle;
+    }
+
+    public Integer getWaiters() {
+      return waiters;
+    }
+
+    public Float getAvgBorrowWaitMillis() {
+      return avgBorrowWaitMillis;
+    }
+
+    public Float getMaxBorrowWaitMillis() {
+      return maxBorrowWaitMillis;
+    }
+  }
+
+  public static class SlowCommand {
+
+    private final Long ts;
+    private final String command;
+    private final String keyPattern;
+    private final Float millis;
+
+    public SlowCommand(final Long ts, final String command, final String keyPattern, final Float millis) {
+      super();
+      this.ts = ts;
+      this.command = command;
+      this.keyPattern = keyPattern;
+      this.millis = millis;
+    }
+
+    public Long getTs() {
+      return ts;
+    }
+
+    public String getCommand() {
+      return command;
+    }
+
+    public String getKeyPattern() {
+      return keyPattern;
+    }
+
+    public Float getMillis() {
+      return millis;
+    }
+  }
+}
@@ -39,6 +39,7 @@ public class RequesterContext {
   private String token;
   private String tenantId;
   private long requestTimestamp;
+  private String remoteAddress;
 
   private EntityMetadataMessage entityMetadata;
 
@@ -88,4 +89,12 @@ public class RequesterContext {
     return requestTimestamp;
   }
 
+  public String getRemoteAddress() {
+    return remoteAddress;
+  }
+
+  public void setRemoteAddress(final String remoteAddress) {
+    this.remoteAddress = remoteAddress;
+  }
+
 }
@@ -33,6 +33,9 @@ import java.util.Map;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import javax.annotation.PostConstruct;
+
+import org.sentilo.platform.common.cache.CacheSnapshotStore;
 import org.sentilo.platform.common.domain.EntitiesMetadataMessage;
 import org.sentilo.platform.common.domain.EntityMetadataMessage;
 import org.sentilo.platform.common.exception.CatalogAccessException;
@@ -49,6 +52,9 @@ public class EntityMetadataRepositoryImpl implements EntityMetadataRepository {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(EntityMetadataRepositoryImpl.class);
 
+  private static final String SNAPSHOT_NAME = "entities-metadata";
+  private static final int SNAPSHOT_VERSION = 1;
+
   /**
    * Map where the lookup is done with token, i.e. each entry follows the pattern <entity token,
    * entity metadata>
@@ -63,6 +69,9 @@ public class EntityMetadataRepositoryImpl implements EntityMetadataRepository {
   @Autowired
   private CatalogService catalogService;
 
+  @Autowired(required = false)
+  private CacheSnapshotStore snapshotStore;
+
   private final Lock lock = new ReentrantLock();
 
   @Override
@@ -80,21 +89,29 @@ public class EntityMetadataRepositoryImpl implements EntityMetadataRepository {
     return idEntitiesMetadataMap.containsKey(entity) ? idEntitiesMetadataMap.get(entity).getTenantId() : null;
   }
 
+  /**
+   * Fills the cache with the last snapshot saved, if any, until it is loaded from the catalog.
+   */
+  @PostConstruct
+  public void loadSnapshot() {
+    final EntitiesMetadataMessage entitiesMetadata =
+        snapshotStore != null ? snapshotStore.load(SNAPSHOT_NAME, SNAPSHOT_VERSION, EntitiesMetadataMessage.class) : null;
+    if (entitiesMetadata != null) {
+      replaceActiveEntitiesMetadata(entitiesMetadata);
+      LOGGER.info("Entity metadata cache loaded from snapshot with {} entities", idEntitiesMetadataMap.size());
+    }
+  }
+
   @Scheduled(initialDelay = 1000, fixedRate = 300000)
   public void loadActiveEntitiesMetadata() {
     try {
       LOGGER.info("Upgrading entity metadata cache");
       final EntitiesMetadataMessage entitiesMetadata = catalogService.getEntitiesMetadata();
-      final Map<String, EntityMetadataMessage> auxTokensEntityMetadataMap = new HashMap<String, EntityMetadataMessage>();
-      final Map<String, EntityMetadataMessage> auxIdEntitiesMetadataMap = new HashMap<String, EntityMetadataMessage>();
-      if (entitiesMetadata != null && !CollectionUtils.isEmpty(entitiesMetadata.getEntitiesMetadata())) {
-        for (final EntityMetadataMessage entityMetadata : entitiesMetadata.getEntitiesMetadata()) {
-          auxTokensEntityMetadataMap.put(entityMetadata.getToken(), entityMetadata);
-          auxIdEntitiesMetadataMap.put(entityMetadata.getEntity(), entityMetadata);
-        }
-      }
+      replaceActiveEntitiesMetadata(entitiesMetadata);
 
-      replaceActiveEntitiesMetadata(auxTokensEntityMetadataMap, auxIdEntitiesMetadataMap);
+      if (snapshotStore != null && entitiesMetadata != null) {
+        snapshotStore.save(SNAPSHOT_NAME, SNAPSHOT_VERSION, entitiesMetadata);
+      }
       LOGGER.info("Process finished successfully");
     } catch (final CatalogAccessException e) {
       LOGGER.warn("Error while processing sync request with Catalog to get the entity metadata list", e);
@@ -105,6 +122,19 @@ public class EntityMetadataRepositoryImpl implements EntityMetadataRepository {
     return tokensEntityMetadataMap.containsKey(token);
   }
 
+  private void replaceActiveEntitiesMetadata(final EntitiesMetadataMessage entitiesMetadata) {
+    final Map<String, EntityMetadataMessage> auxTokensEntityMetadataMap = new HashMap<String, EntityMetadataMessage>();
+    final Map<String, EntityMetadataMessage> auxIdEntitiesMetadataMap = new HashMap<String, EntityMetadataMessage>();
+    if (entitiesMetadata != null && !CollectionUtils.isEmpty(entitiesMetadata.getEntitiesMetadata())) {
+      for (final EntityMetadataMessage entityMetadata : entitiesMetadata.getEntitiesMetadata()) {
+        auxTokensEntityMetadataMap.put(entityMetadata.getToken(), entityMetadata);
+        auxIdEntitiesMetadataMap.put(entityMetadata.getEntity(), entityMetadata);
+      }
+    }
+
+    replaceActiveEntitiesMetadata(auxTokensEntityMetadataMap, auxIdEntitiesMetadataMap);
+  }
+
   private void replaceActiveEntitiesMetadata(final Map<String, EntityMetadataMessage> updatedTokensEntityMetadataMap,
       final Map<String, EntityMetadataMessage> updatedIdEntitiesMetadataMap) {
     lock.lock();
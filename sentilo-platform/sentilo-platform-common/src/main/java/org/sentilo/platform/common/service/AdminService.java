@@ -33,6 +33,9 @@ import java.util.List;
 import org.sentilo.common.domain.PlatformConfigMessage;
 import org.sentilo.common.domain.PlatformMetricsMessage;
 import org.sentilo.platform.common.domain.AdminInputMessage;
+import org.sentilo.platform.common.domain.HeavyHitters;
+import org.sentilo.platform.common.domain.PurgeStatus;
+import org.sentilo.platform.common.domain.RedisMetrics;
 import org.sentilo.platform.common.domain.Statistics;
 import org.sentilo.platform.common.domain.Subscription;
 
@@ -50,6 +53,12 @@ public interface AdminService {
 
   PlatformMetricsMessage getActivity();
 
+  RedisMetrics getRedisMetrics();
+
+  HeavyHitters getHeavyHitters();
+
+  PurgeStatus getPurgeStatus();
+
   PlatformConfigMessage getPlatformConfig();
 
   void saveArtifactConfig(AdminInputMessage message);
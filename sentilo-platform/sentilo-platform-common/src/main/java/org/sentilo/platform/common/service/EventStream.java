@@ -0,0 +1,61 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.common.service;
+
+import java.util.List;
+
+/**
+ * Events published on the topics a client is subscribed to through a long-lived connection, kept
+ * in a bounded buffer until they are written to the client. If the client doesn't keep pace, the
+ * oldest buffered events are discarded.
+ */
+public interface EventStream {
+
+  String getEntityId();
+
+  /**
+   * Waits up to <code>timeout</code> millis for an event and returns it together with those already
+   * buffered, up to <code>maxEvents</code>. Returns an empty list if there are no events or the
+   * stream has been closed.
+   */
+  List<String> poll(int maxEvents, long timeout) throws InterruptedException;
+
+  /**
+   * Returns the number of events discarded since the last call.
+   */
+  long drainDroppedEvents();
+
+  boolean isClosed();
+
+  /**
+   * Registers an action to run when the stream is closed, e.g. to shut down the connection of a
+   * writer blocked on a client which doesn't read. It runs at once if the stream is already closed.
+   */
+  void onClose(Runnable action);
+}
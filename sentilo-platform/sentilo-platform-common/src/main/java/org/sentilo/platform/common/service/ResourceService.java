@@ -28,6 +28,7 @@
  */
 package org.sentilo.platform.common.service;
 
+import java.util.List;
 import java.util.Set;
 
 import org.sentilo.common.domain.CatalogAlert;
@@ -44,6 +45,8 @@ public interface ResourceService {
 
   Long registerSensorIfNeedBe(final CatalogSensor sensor, boolean update);
 
+  void registerSensorsIfNeedBe(final List<CatalogSensor> sensors, boolean update);
+
   SensorState getSensorState(final String providerId, final String sensorId);
 
   Set<String> getSensorsFromProvider(String providerId);
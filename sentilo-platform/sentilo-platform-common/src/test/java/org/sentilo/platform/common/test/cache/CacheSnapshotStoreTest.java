@@ -0,0 +1,143 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.common.test.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sentilo.platform.common.cache.CacheSnapshotStore;
+import org.sentilo.platform.common.domain.EntitiesMetadataMessage;
+import org.sentilo.platform.common.domain.EntityMetadataMessage;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class CacheSnapshotStoreTest {
+
+  private static final String NAME = "entities-metadata";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private CacheSnapshotStore store;
+
+  @Before
+  public void setUp() {
+    store = new CacheSnapshotStore();
+    ReflectionTestUtils.setField(store, "dir", folder.getRoot().getPath());
+  }
+
+  @Test
+  public void saveAndLoad() {
+    store.save(NAME, 1, buildEntitiesMetadata());
+
+    final EntitiesMetadataMessage snapshot = store.load(NAME, 1, EntitiesMetadataMessage.class);
+
+    assertEquals(1, snapshot.getEntitiesMetadata().size());
+    final EntityMetadataMessage entityMetadata = snapshot.getEntitiesMetadata().get(0);
+    assertEquals("app1", entityMetadata.getEntity());
+    assertEquals("token1", entityMetadata.getToken());
+    assertEquals("tenant1", entityMetadata.getTenantId());
+    assertTrue(entityMetadata.isRestHttps());
+    assertFalse(new File(folder.getRoot(), NAME + ".json.tmp").exists());
+  }
+
+  @Test
+  public void snapshotIsOnlyReadableByOwner() throws Exception {
+    assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+    ReflectionTestUtils.setField(store, "dir", new File(folder.getRoot(), "snapshots").getPath());
+
+    store.save(NAME, 1, buildEntitiesMetadata());
+
+    final File dir = new File(folder.getRoot(), "snapshots");
+    assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(dir.toPath())));
+    assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(new File(dir, NAME + ".json").toPath())));
+  }
+
+  @Test
+  public void otherVersionIsDiscarded() {
+    store.save(NAME, 1, buildEntitiesMetadata());
+
+    assertNull(store.load(NAME, 2, EntitiesMetadataMessage.class));
+  }
+
+  @Test
+  public void oldSnapshotIsDiscarded() throws Exception {
+    store.save(NAME, 1, buildEntitiesMetadata());
+    Thread.sleep(5);
+    ReflectionTestUtils.setField(store, "maxAge", 1L);
+
+    assertNull(store.load(NAME, 1, EntitiesMetadataMessage.class));
+  }
+
+  @Test
+  public void corruptSnapshotIsDiscarded() throws Exception {
+    Files.write(new File(folder.getRoot(), NAME + ".json").toPath(), "{\"version\":1,\"createdAt\":".getBytes("UTF-8"));
+
+    assertNull(store.load(NAME, 1, EntitiesMetadataMessage.class));
+  }
+
+  @Test
+  public void missingSnapshot() {
+    assertNull(store.load(NAME, 1, EntitiesMetadataMessage.class));
+  }
+
+  @Test
+  public void disabled() {
+    ReflectionTestUtils.setField(store, "dir", "");
+    store.save(NAME, 1, buildEntitiesMetadata());
+
+    assertFalse(store.isEnabled());
+    assertNull(store.load(NAME, 1, EntitiesMetadataMessage.class));
+    assertEquals(0, folder.getRoot().list().length);
+  }
+
+  private EntitiesMetadataMessage buildEntitiesMetadata() {
+    final EntityMetadataMessage entityMetadata = new EntityMetadataMessage();
+    entityMetadata.setEntity("app1");
+    entityMetadata.setToken("token1");
+    entityMetadata.setTenantId("tenant1");
+    entityMetadata.setRestHttps(true);
+
+    final EntitiesMetadataMessage entitiesMetadata = new EntitiesMetadataMessage();
+    entitiesMetadata.setEntitiesMetadata(Arrays.asList(entityMetadata));
+    return entitiesMetadata;
+  }
+}
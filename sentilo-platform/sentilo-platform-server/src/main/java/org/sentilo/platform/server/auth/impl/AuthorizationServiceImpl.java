@@ -33,7 +33,10 @@ import java.util.Set;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import javax.annotation.PostConstruct;
+
 import org.sentilo.common.utils.SentiloConstants;
+import org.sentilo.platform.common.cache.CacheSnapshotStore;
 import org.sentilo.platform.common.domain.PermissionMessage;
 import org.sentilo.platform.common.domain.PermissionsMessage;
 import org.sentilo.platform.common.exception.CatalogAccessException;
@@ -52,6 +55,9 @@ public class AuthorizationServiceImpl implements AuthorizationService {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(AuthorizationServiceImpl.class);
 
+  private static final String SNAPSHOT_NAME = "permissions";
+  private static final int SNAPSHOT_VERSION = 1;
+
   private final Set<String> adminAccessSet = new HashSet<String>();
   private final Set<String> writesAccessSet = new HashSet<String>();
   private final Set<String> readsAccessSet = new HashSet<String>();
@@ -61,6 +67,9 @@ public class AuthorizationServiceImpl implements AuthorizationService {
   @Autowired
   private CatalogService catalogService;
 
+  @Autowired(required = false)
+  private CacheSnapshotStore snapshotStore;
+
   public AuthorizationServiceImpl() {
     super();
   }
@@ -119,35 +128,28 @@ public class AuthorizationServiceImpl implements AuthorizationService {
     return source + SentiloConstants.SENTILO_INTERNAL_TOKEN + target;
   }
 
+  /**
+   * Fills the cache with the last snapshot saved, if any, until it is loaded from the catalog.
+   */
+  @PostConstruct
+  public void loadSnapshot() {
+    final PermissionsMessage permissions = snapshotStore != null ? snapshotStore.load(SNAPSHOT_NAME, SNAPSHOT_VERSION, PermissionsMessage.class) : null;
+    if (permissions != null) {
+      replaceActivePermissions(permissions);
+      LOGGER.info("Permissions cache loaded from snapshot");
+    }
+  }
+
   @Scheduled(initialDelay = 1000, fixedRate = 300000)
   public void loadActivePermissions() {
     try {
       LOGGER.info("Updating permissions cache");
       final PermissionsMessage permissions = catalogService.getPermissions();
-      final Set<String> auxAdminAccessSet = new HashSet<String>();
-      final Set<String> auxWritesAccessSet = new HashSet<String>();
-      final Set<String> auxReadsAccessSet = new HashSet<String>();
-
-      if (permissions != null && !CollectionUtils.isEmpty(permissions.getPermissions())) {
-        for (final PermissionMessage permission : permissions.getPermissions()) {
-          final String key = buildKeyAccess(permission.getSource(), permission.getTarget());
-          switch (permission.getType()) {
-            case ADMIN:
-              auxAdminAccessSet.add(key);
-              break;
-            case WRITE:
-              auxWritesAccessSet.add(key);
-              break;
-            case READ:
-              auxReadsAccessSet.add(key);
-              break;
-            default:
-              break;
-          }
-        }
-      }
+      replaceActivePermissions(permissions);
 
-      replaceActivePermissions(auxAdminAccessSet, auxWritesAccessSet, auxReadsAccessSet);
+      if (snapshotStore != null && permissions != null) {
+        snapshotStore.save(SNAPSHOT_NAME, SNAPSHOT_VERSION, permissions);
+      }
       LOGGER.info("Process finished successfully");
 
     } catch (final CatalogAccessException e) {
@@ -155,6 +157,33 @@ public class AuthorizationServiceImpl implements AuthorizationService {
     }
   }
 
+  private void replaceActivePermissions(final PermissionsMessage permissions) {
+    final Set<String> auxAdminAccessSet = new HashSet<String>();
+    final Set<String> auxWritesAccessSet = new HashSet<String>();
+    final Set<String> auxReadsAccessSet = new HashSet<String>();
+
+    if (permissions != null && !CollectionUtils.isEmpty(permissions.getPermissions())) {
+      for (final PermissionMessage permission : permissions.getPermissions()) {
+        final String key = buildKeyAccess(permission.getSource(), permission.getTarget());
+        switch (permission.getType()) {
+          case ADMIN:
+            auxAdminAccessSet.add(key);
+            break;
+          case WRITE:
+            auxWritesAccessSet.add(key);
+            break;
+          case READ:
+            auxReadsAccessSet.add(key);
+            break;
+          default:
+            break;
+        }
+      }
+    }
+
+    replaceActivePermissions(auxAdminAccessSet, auxWritesAccessSet, auxReadsAccessSet);
+  }
+
   private void replaceActivePermissions(final Set<String> updateAdminsAccesSet, final Set<String> updateWritesAccesSet,
       final Set<String> updateReadsAccesSet) {
 
@@ -33,8 +33,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.sentilo.common.domain.QueryFilterParams;
+import org.sentilo.common.enums.DataAggregation;
+import org.sentilo.common.exception.MessageNotReadableException;
 import org.sentilo.platform.common.domain.DataInputMessage;
+import org.sentilo.platform.common.domain.GeoArea;
 import org.sentilo.platform.common.domain.Observation;
+import org.sentilo.platform.common.domain.Sensor;
+import org.sentilo.platform.server.exception.MessageValidationException;
 import org.sentilo.platform.server.dto.ObservationMessage;
 import org.sentilo.platform.server.dto.ObservationsMessage;
 import org.sentilo.platform.server.dto.SensorMessage;
@@ -46,6 +52,15 @@ import org.springframework.util.StringUtils;
 
 public class DataConverter extends PlatformJsonMessageConverter {
 
+  private static final String SENSORS_PARAM = "sensors";
+  private static final String SENSOR_ID_TOKEN = "/";
+  private static final String NEAR_PARAM = "near";
+  private static final String RADIUS_PARAM = "radius";
+  private static final String BOX_PARAM = "box";
+  private static final String AGGREGATE_PARAM = "aggregate";
+  private static final String INTERVAL_PARAM = "interval";
+  private static final String DOWNSAMPLE_PARAM = "downsample";
+
   public DataInputMessage parsePutRequest(final SentiloRequest request) {
     final SentiloResource resource = request.getResource();
     List<Observation> observations = null;
@@ -74,6 +89,21 @@ public class DataConverter extends PlatformJsonMessageConverter {
     return message;
   }
 
+  /**
+   * Parses the observations of several sensors of a provider from a JSON message with the same
+   * format as the body of PUT /data/{providerId} (used by the MQTT listener).
+   */
+  public List<Observation> parseObservations(final String providerId, final String json) {
+    final SensorsMessage inputMessage;
+    try {
+      inputMessage = (SensorsMessage) readInternal(SensorsMessage.class, json);
+    } catch (final MessageNotReadableException ex) {
+      throw buildUnmarshallJsonException(SensorsMessage.class, ex);
+    }
+
+    return inputMessageToDomain(providerId, inputMessage);
+  }
+
   public DataInputMessage parseDeleteRequest(final SentiloRequest request) {
     final SentiloResource resource = request.getResource();
     final String providerId = resource.getResourcePart(0);
@@ -84,13 +114,110 @@ public class DataConverter extends PlatformJsonMessageConverter {
 
   public DataInputMessage parseGetRequest(final SentiloRequest request) {
     final SentiloResource resource = request.getResource();
+    if (isMultiSensorRequest(request)) {
+      return parseMultiSensorGetRequest(request);
+    }
+
+    if (isAreaRequest(request)) {
+      return parseAreaGetRequest(request);
+    }
+
     final String providerId = resource.getResourcePart(0);
     final String sensorId = resource.getResourcePart(1);
+    final String from = request.getRequestParameter("from");
+    final String to = request.getRequestParameter("to");
+    final String limit = request.getRequestParameter("limit");
+    final String aggregate = request.getRequestParameter(AGGREGATE_PARAM);
+    final String interval = request.getRequestParameter(INTERVAL_PARAM);
+    final String downsample = request.getRequestParameter(DOWNSAMPLE_PARAM);
+
+    final QueryFilterParams filters = new QueryFilterParams(parseDate(from), parseDate(to), parseInteger(limit), parseAggregation(aggregate),
+        parseLong(interval), parseInteger(downsample));
+    return new DataInputMessage(providerId, sensorId, filters);
+  }
+
+  /**
+   * Returns true if the request follows the pattern GET /data?sensors={provider}/{sensor},... i.e.
+   * it asks for the last observations of a list of sensors that may belong to different providers.
+   */
+  public boolean isMultiSensorRequest(final SentiloRequest request) {
+    final String[] parts = request.getResource().getParts();
+    return (parts == null || parts.length == 0) && StringUtils.hasText(request.getRequestParameter(SENSORS_PARAM));
+  }
+
+  /**
+   * Returns true if the request follows the pattern GET /data?near={lat},{lon}&radius={meters} or
+   * GET /data?box={swLat},{swLon},{neLat},{neLon} i.e. it asks for the last observations of the
+   * sensors located within an area.
+   */
+  public boolean isAreaRequest(final SentiloRequest request) {
+    final String[] parts = request.getResource().getParts();
+    return (parts == null || parts.length == 0)
+        && (StringUtils.hasText(request.getRequestParameter(NEAR_PARAM)) || StringUtils.hasText(request.getRequestParameter(BOX_PARAM)));
+  }
+
+  private DataInputMessage parseAreaGetRequest(final SentiloRequest request) {
+    final GeoArea area;
+    if (StringUtils.hasText(request.getRequestParameter(BOX_PARAM))) {
+      final double[] corners = parseCoordinates(BOX_PARAM, request.getRequestParameter(BOX_PARAM), 4);
+      area = GeoArea.box(corners[0], corners[1], corners[2], corners[3]);
+    } else {
+      final double[] center = parseCoordinates(NEAR_PARAM, request.getRequestParameter(NEAR_PARAM), 2);
+      final Integer radius = parseInteger(request.getRequestParameter(RADIUS_PARAM));
+      if (radius == null) {
+        throw new MessageValidationException("To search sensors near a position is mandatory to fill in the radius parameter");
+      }
+      area = GeoArea.circle(center[0], center[1], radius);
+    }
+
+    final String from = request.getRequestParameter("from");
+    final String to = request.getRequestParameter("to");
+    final String limit = request.getRequestParameter("limit");
+
+    return new DataInputMessage(area, parseDate(from), parseDate(to), parseInteger(limit));
+  }
+
+  private double[] parseCoordinates(final String param, final String value, final int size) {
+    final String[] tokens = StringUtils.commaDelimitedListToStringArray(value);
+    if (tokens.length != size) {
+      throw new MessageValidationException(String.format("Invalid %s %s: %d comma separated coordinates are expected", param, value, size));
+    }
+
+    final double[] coordinates = new double[size];
+    try {
+      for (int i = 0; i < size; i++) {
+        coordinates[i] = Double.parseDouble(tokens[i].trim());
+      }
+    } catch (final NumberFormatException e) {
+      throw new MessageValidationException(String.format("Invalid %s %s: coordinates must be decimal numbers", param, value));
+    }
+
+    return coordinates;
+  }
+
+  private DataInputMessage parseMultiSensorGetRequest(final SentiloRequest request) {
+    final List<Sensor> sensors = new ArrayList<Sensor>();
+    for (final String sensorId : StringUtils.commaDelimitedListToSet(request.getRequestParameter(SENSORS_PARAM))) {
+      final String[] tokens = StringUtils.delimitedListToStringArray(sensorId.trim(), SENSOR_ID_TOKEN);
+      if (tokens.length != 2 || !StringUtils.hasText(tokens[0]) || !StringUtils.hasText(tokens[1])) {
+        throw new MessageValidationException(String.format("Invalid sensor %s: sensors must be identified as {provider}/{sensor}", sensorId));
+      }
+      sensors.add(new Sensor(tokens[0], tokens[1]));
+    }
+
     final String from = request.getRequestParameter("from");
     final String to = request.getRequestParameter("to");
     final String limit = request.getRequestParameter("limit");
 
-    return new DataInputMessage(providerId, sensorId, parseDate(from), parseDate(to), parseInteger(limit));
+    return new DataInputMessage(sensors, parseDate(from), parseDate(to), parseInteger(limit));
+  }
+
+  private DataAggregation parseAggregation(final String aggregate) {
+    try {
+      return StringUtils.hasText(aggregate) ? DataAggregation.valueOf(aggregate) : null;
+    } catch (final IllegalArgumentException e) {
+      throw buildJsonFieldError(AGGREGATE_PARAM, aggregate, e);
+    }
   }
 
   public void writeResponse(final SentiloRequest request, final SentiloResponse response, final List<Observation> observations) {
@@ -103,10 +230,12 @@ public class DataConverter extends PlatformJsonMessageConverter {
   private Object parseObservationsListToMessage(final SentiloRequest request, final List<Observation> observations) {
     final SentiloResource resource = request.getResource();
 
-    if (resource.getParts().length == 1) {
+    if (isMultiSensorRequest(request) || isAreaRequest(request)) {
+      return parseObservationsListToObservationsMessage(observations, true);
+    } else if (resource.getParts().length == 1) {
       return parseObservationsListToSensorsMessage(observations);
     } else {
-      return parseObservationsListToObservationsMessage(observations);
+      return parseObservationsListToObservationsMessage(observations, false);
     }
   }
 
@@ -129,10 +258,15 @@ public class DataConverter extends PlatformJsonMessageConverter {
     return sensorsMessage;
   }
 
-  private ObservationsMessage parseObservationsListToObservationsMessage(final List<Observation> observationsList) {
+  private ObservationsMessage parseObservationsListToObservationsMessage(final List<Observation> observationsList, final boolean addSensorId) {
     final ObservationsMessage observations = new ObservationsMessage();
     for (final Observation observation : observationsList) {
-      observations.addObservation(parseObservationToObservationMessage(observation));
+      final ObservationMessage obsMessage = parseObservationToObservationMessage(observation);
+      if (addSensorId) {
+        obsMessage.setProvider(observation.getProvider());
+        obsMessage.setSensor(observation.getSensor());
+      }
+      observations.addObservation(obsMessage);
     }
 
     return observations;
@@ -149,7 +283,10 @@ public class DataConverter extends PlatformJsonMessageConverter {
   }
 
   private List<Observation> inputMessageToDomain(final SentiloResource resource, final SensorsMessage inputMessage) {
-    final String providerId = resource.getResourcePart(0);
+    return inputMessageToDomain(resource.getResourcePart(0), inputMessage);
+  }
+
+  private List<Observation> inputMessageToDomain(final String providerId, final SensorsMessage inputMessage) {
     final List<Observation> observations = new ArrayList<Observation>();
 
     for (final SensorMessage sensorMessage : inputMessage.getSensors()) {
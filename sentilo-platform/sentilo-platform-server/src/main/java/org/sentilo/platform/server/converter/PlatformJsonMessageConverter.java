@@ -102,6 +102,14 @@ public class PlatformJsonMessageConverter extends BaseJsonMessageConverter {
     }
   }
 
+  protected Long parseLong(final String number) throws JsonConverterException {
+    try {
+      return StringUtils.hasText(number) ? Long.valueOf(number) : null;
+    } catch (final NumberFormatException e) {
+      throw buildJsonFieldError("long", number, e);
+    }
+  }
+
   protected JsonConverterException buildJsonFieldError(final String type, final String value, final Throwable cause) {
     final String internalErrorCode = SentiloUtils.buildNewInternalErrorCode(SentiloConstants.JSON_UNMARSHAL_ERROR);
     getLogger().error("{} - Error unmarshalling JSON payload. Wrong {} value: {}.", internalErrorCode, type, value, cause);
@@ -28,6 +28,7 @@
  */
 package org.sentilo.platform.server.converter;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.http.HttpStatus;
@@ -41,12 +42,15 @@ import org.sentilo.platform.common.domain.Subscription;
 import org.sentilo.platform.common.exception.PlatformException;
 import org.sentilo.platform.server.dto.SubscriptionMessage;
 import org.sentilo.platform.server.dto.SubscriptionsMessage;
+import org.sentilo.platform.server.exception.MessageValidationException;
 import org.sentilo.platform.server.request.SentiloRequest;
 import org.sentilo.platform.server.response.SentiloResponse;
 import org.springframework.util.StringUtils;
 
 public class SubscribeConverter extends PlatformJsonMessageConverter {
 
+  private static final String TOPICS_PARAM = "topics";
+
   public Subscription parseRequest(final SentiloRequest request) {
     return parseRequest(request, false);
   }
@@ -74,6 +78,42 @@ public class SubscribeConverter extends PlatformJsonMessageConverter {
     return subscription;
   }
 
+  /**
+   * Parses the topics of a request which follows the pattern GET
+   * /subscribe/stream?topics={eventType}/{resourceId},... where {resourceId} may be composite (e.g.
+   * data/provider1/sensor1, order/provider1 or alarm/alert1).
+   */
+  public List<Subscription> parseStreamRequest(final SentiloRequest request) {
+    final String entityId = request.getEntitySource();
+    final List<Subscription> subscriptions = new ArrayList<Subscription>();
+    for (final String topic : StringUtils.commaDelimitedListToSet(request.getRequestParameter(TOPICS_PARAM))) {
+      final String[] tokens = StringUtils.tokenizeToStringArray(topic, SentiloConstants.SLASH);
+      final SubscribeType subscribeType = tokens.length > 1 ? parseSubscribeType(tokens[0]) : null;
+      if (subscribeType == null || tokens.length > 3 || subscribeType == SubscribeType.ALARM && tokens.length > 2) {
+        throw new MessageValidationException("Invalid topic to stream: " + topic);
+      }
+
+      final String sensorId = tokens.length > 2 ? tokens[2] : null;
+      switch (subscribeType) {
+        case DATA:
+          subscriptions.add(new DataSubscription(entityId, tokens[1], sensorId, null));
+          break;
+        case ORDER:
+          subscriptions.add(new OrderSubscription(entityId, tokens[1], sensorId, null));
+          break;
+        default:
+          subscriptions.add(new AlarmSubscription(entityId, null, tokens[1], null));
+          break;
+      }
+    }
+
+    if (subscriptions.isEmpty()) {
+      throw new MessageValidationException("To open an event stream is mandatory to fill in the topics parameter");
+    }
+
+    return subscriptions;
+  }
+
   private Subscription buildSubscriptionFromRequest(final SentiloRequest request, final SubscribeType subscribeType,
       final NotificationParams notificationParams) {
     Subscription subscription;
@@ -177,11 +217,14 @@ public class SubscribeConverter extends PlatformJsonMessageConverter {
   }
 
   public SubscribeType getSubscribeType(final SentiloRequest request) {
+    return parseSubscribeType(request.getResourcePart(0));
+  }
+
+  private SubscribeType parseSubscribeType(final String value) {
     SubscribeType subscribeType = null;
     try {
-      final String resourcePart = request.getResourcePart(0);
-      if (StringUtils.hasText(resourcePart)) {
-        subscribeType = SubscribeType.valueOf(resourcePart.toUpperCase());
+      if (StringUtils.hasText(value)) {
+        subscribeType = SubscribeType.valueOf(value.toUpperCase());
       }
     } catch (final IllegalArgumentException e) {
     }
@@ -33,6 +33,11 @@ import com.fasterxml.jackson.annotation.JsonInclude.Include;
 
 public class ObservationMessage {
 
+  /** Only filled in when observations of many sensors are returned together */
+  @JsonInclude(value = Include.NON_NULL)
+  private String provider;
+  @JsonInclude(value = Include.NON_NULL)
+  private String sensor;
   @JsonInclude(value = Include.NON_NULL)
   private String value;
   @JsonInclude(value = Include.NON_NULL)
@@ -46,6 +51,22 @@ public class ObservationMessage {
     super();
   }
 
+  public String getProvider() {
+    return provider;
+  }
+
+  public void setProvider(final String provider) {
+    this.provider = provider;
+  }
+
+  public String getSensor() {
+    return sensor;
+  }
+
+  public void setSensor(final String sensor) {
+    this.sensor = sensor;
+  }
+
   public String getValue() {
     return value;
   }
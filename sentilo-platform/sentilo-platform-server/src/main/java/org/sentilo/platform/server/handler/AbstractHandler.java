@@ -28,7 +28,10 @@
  */
 package org.sentilo.platform.server.handler;
 
+import java.util.concurrent.Callable;
+
 import org.apache.http.HttpStatus;
+import org.sentilo.common.enums.EventType;
 import org.sentilo.platform.common.exception.PlatformException;
 import org.sentilo.platform.common.security.ResourceOwnerContext;
 import org.sentilo.platform.common.security.ResourceOwnerContextHolder;
@@ -37,6 +40,8 @@ import org.sentilo.platform.server.auth.AuthorizationService;
 import org.sentilo.platform.server.exception.ForbiddenAccessException;
 import org.sentilo.platform.server.request.SentiloRequest;
 import org.sentilo.platform.server.response.SentiloResponse;
+import org.sentilo.platform.service.monitor.CounterAspect;
+import org.sentilo.platform.service.monitor.RequestType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -53,6 +58,12 @@ public abstract class AbstractHandler {
   @Autowired
   private EntityMetadataRepository entityMetadataRepository;
 
+  @Autowired
+  private RequestCoalescer requestCoalescer;
+
+  @Autowired
+  private CounterAspect counterAspect;
+
   @Value("${catalog.id}")
   protected String catalogId;
 
@@ -117,6 +128,24 @@ public abstract class AbstractHandler {
     }
   }
 
+  /**
+   * Runs a backend read on behalf of the request, sharing it with identical reads in flight. Access
+   * to the resources read must have been validated before.
+   *
+   * @see RequestCoalescer
+   */
+  protected <T> T coalesce(final String key, final Callable<T> read) {
+    return requestCoalescer.execute(key, read);
+  }
+
+  /**
+   * As {@link #coalesce(String, Callable)}, for reads of last events: every request is counted, even
+   * when it is served with the events read by an identical request.
+   */
+  protected <T> T coalesce(final String key, final Callable<T> read, final EventType eventType) {
+    return requestCoalescer.execute(key, read, lastEvents -> counterAspect.countLastEvents(RequestType.GET, eventType, lastEvents));
+  }
+
   protected void validateResourceNumberParts(final SentiloRequest request, final int min, final int max) {
     // Path tokens must be between min and max
     if (!numberArgumentsValid(request.getResource().getParts(), min, max)) {
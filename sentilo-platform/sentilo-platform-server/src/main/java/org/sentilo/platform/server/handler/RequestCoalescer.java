@@ -0,0 +1,177 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.server.handler;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.apache.http.HttpStatus;
+import org.sentilo.platform.common.exception.PlatformException;
+import org.sentilo.platform.server.request.SentiloRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.CollectionUtils;
+
+/**
+ * Single-flight execution of read requests: while a backend read identified by a given key is in
+ * progress, identical concurrent reads don't run it again but wait for it and share its result (or
+ * its exception).
+ *
+ * Reads are shared only while they are in flight, so no result is ever served once its execution
+ * has finished. The key must identify both the query and the scope of its result: access rights
+ * must be validated by each request before asking for a shared read, and results which depend on
+ * the requester must include it in their key.
+ *
+ * Shared results are the same instances for every waiting request, so they must be handled as
+ * read-only.
+ */
+@Component
+public class RequestCoalescer {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RequestCoalescer.class);
+
+  @Value("${api.coalescing.enabled:true}")
+  private boolean enabled = true;
+
+  private final ConcurrentMap<String, FutureTask<Object>> inFlightReads = new ConcurrentHashMap<String, FutureTask<Object>>();
+  private final AtomicLong coalescedReads = new AtomicLong();
+
+  /**
+   * Runs <code>read</code>, or waits for the identical read already in flight, and returns its
+   * result.
+   */
+  public <T> T execute(final String key, final Callable<T> read) {
+    return execute(key, read, null);
+  }
+
+  /**
+   * As {@link #execute(String, Callable)}, but <code>onShared</code> (if not null) is called with
+   * the result when it comes from the read of another request, so that the work done by the read
+   * itself, such as counting the events read, can be done for this request as well.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T execute(final String key, final Callable<T> read, final Consumer<? super T> onShared) {
+    if (!enabled) {
+      return call(read);
+    }
+
+    final FutureTask<Object> task = new FutureTask<Object>((Callable<Object>) read);
+    FutureTask<Object> inFlight = inFlightReads.putIfAbsent(key, task);
+    if (inFlight == null) {
+      inFlight = task;
+      try {
+        task.run();
+      } finally {
+        inFlightReads.remove(key, task);
+      }
+    } else {
+      coalescedReads.incrementAndGet();
+      LOGGER.debug("Read {} is already in flight. Waiting for its result", key);
+      final T result = (T) getResult(inFlight);
+      if (onShared != null) {
+        onShared.accept(result);
+      }
+      return result;
+    }
+
+    return (T) getResult(inFlight);
+  }
+
+  /**
+   * Builds the key of a read request from its service, resource and parameters, followed by the
+   * scope components given (if any).
+   */
+  public static String buildKey(final SentiloRequest request, final String... scope) {
+    final StringBuilder sb = new StringBuilder().append(request.getHandlerPath());
+    if (request.getResource() != null) {
+      sb.append('/').append(request.getResource().getPath());
+    }
+
+    final Map<String, String> parameters = request.getParameters();
+    if (!CollectionUtils.isEmpty(parameters)) {
+      // Parameters are sorted so that the order in which they are sent doesn't matter
+      char separator = '?';
+      for (final Entry<String, String> parameter : new TreeMap<String, String>(parameters).entrySet()) {
+        sb.append(separator).append(parameter.getKey()).append('=').append(parameter.getValue());
+        separator = '&';
+      }
+    }
+
+    for (final String component : scope) {
+      sb.append('#').append(component);
+    }
+
+    return sb.toString();
+  }
+
+  public long getCoalescedReads() {
+    return coalescedReads.get();
+  }
+
+  public int getInFlightReads() {
+    return inFlightReads.size();
+  }
+
+  private Object getResult(final FutureTask<Object> task) {
+    try {
+      return task.get();
+    } catch (final ExecutionException ee) {
+      final Throwable cause = ee.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new PlatformException(cause);
+    } catch (final InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new PlatformException(HttpStatus.SC_SERVICE_UNAVAILABLE, "Interrupted while waiting for an identical read in progress");
+    }
+  }
+
+  static <T> T call(final Callable<T> read) {
+    try {
+      return read.call();
+    } catch (final RuntimeException re) {
+      throw re;
+    } catch (final Exception e) {
+      throw new PlatformException(e);
+    }
+  }
+}
@@ -34,6 +34,9 @@ import org.sentilo.common.domain.PlatformConfigMessage;
 import org.sentilo.common.domain.PlatformMetricsMessage;
 import org.sentilo.common.enums.HttpMethod;
 import org.sentilo.platform.common.domain.AdminInputMessage;
+import org.sentilo.platform.common.domain.HeavyHitters;
+import org.sentilo.platform.common.domain.PurgeStatus;
+import org.sentilo.platform.common.domain.RedisMetrics;
 import org.sentilo.platform.common.domain.Statistics;
 import org.sentilo.platform.common.domain.Subscription;
 import org.sentilo.platform.common.service.AdminService;
@@ -101,6 +104,18 @@ public class AdminHandler extends AbstractHandler {
         final PlatformMetricsMessage performanceMetrics = adminService.getPerformance();
         parser.writeResponse(response, performanceMetrics);
         break;
+      case redis:
+        final RedisMetrics redisMetrics = adminService.getRedisMetrics();
+        parser.writeResponse(response, redisMetrics);
+        break;
+      case hitters:
+        final HeavyHitters heavyHitters = adminService.getHeavyHitters();
+        parser.writeResponse(response, heavyHitters);
+        break;
+      case purge:
+        final PurgeStatus purgeStatus = adminService.getPurgeStatus();
+        parser.writeResponse(response, purgeStatus);
+        break;
       case subscriptions:
         final List<Subscription> subscriptions = adminService.getSubscriptions(inputMessage.getEntity());
         parser.writeSubscriptionsResponse(response, subscriptions);
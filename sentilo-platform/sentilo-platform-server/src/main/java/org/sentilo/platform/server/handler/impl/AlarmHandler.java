@@ -29,7 +29,9 @@
 package org.sentilo.platform.server.handler.impl;
 
 import java.util.List;
+import java.util.concurrent.Callable;
 
+import org.sentilo.common.enums.EventType;
 import org.sentilo.common.enums.HttpMethod;
 import org.sentilo.platform.common.domain.Alarm;
 import org.sentilo.platform.common.domain.AlarmInputMessage;
@@ -37,6 +39,7 @@ import org.sentilo.platform.common.service.AlarmService;
 import org.sentilo.platform.server.converter.AlarmConverter;
 import org.sentilo.platform.server.exception.MethodNotAllowedException;
 import org.sentilo.platform.server.handler.AbstractHandler;
+import org.sentilo.platform.server.handler.RequestCoalescer;
 import org.sentilo.platform.server.request.SentiloRequest;
 import org.sentilo.platform.server.response.SentiloResponse;
 import org.sentilo.platform.server.validation.AlarmValidator;
@@ -81,7 +84,13 @@ public class AlarmHandler extends AbstractHandler {
     final String alertOwner = alarmService.getAlertOwner(inputMessage.getAlertId());
     validateReadAccess(request.getEntitySource(), alertOwner);
 
-    final List<Alarm> lastAlarmsMessages = alarmService.getLastAlarms(inputMessage);
+    final List<Alarm> lastAlarmsMessages = coalesce(RequestCoalescer.buildKey(request), new Callable<List<Alarm>>() {
+
+      @Override
+      public List<Alarm> call() {
+        return alarmService.getLastAlarms(inputMessage);
+      }
+    }, EventType.ALARM);
 
     parser.writeResponse(response, lastAlarmsMessages);
   }
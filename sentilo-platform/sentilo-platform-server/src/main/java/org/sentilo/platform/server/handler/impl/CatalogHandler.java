@@ -28,6 +28,8 @@
  */
 package org.sentilo.platform.server.handler.impl;
 
+import java.util.concurrent.Callable;
+
 import org.sentilo.common.domain.CatalogDeleteInputMessage;
 import org.sentilo.common.domain.CatalogInputMessage;
 import org.sentilo.common.domain.CatalogResponseMessage;
@@ -35,6 +37,7 @@ import org.sentilo.platform.common.service.CatalogService;
 import org.sentilo.platform.server.converter.CatalogConverter;
 import org.sentilo.platform.server.exception.CatalogErrorException;
 import org.sentilo.platform.server.handler.AbstractHandler;
+import org.sentilo.platform.server.handler.RequestCoalescer;
 import org.sentilo.platform.server.request.SentiloRequest;
 import org.sentilo.platform.server.response.SentiloResponse;
 import org.sentilo.platform.server.validation.CatalogValidator;
@@ -79,7 +82,15 @@ public class CatalogHandler extends AbstractHandler {
     validator.validateRequestMessageOnGet(inputMessage);
     validateAdminAcess(request.getEntitySource(), inputMessage.getProviderId());
 
-    final CatalogResponseMessage responseMessage = catalogService.getAuthorizedProviders(inputMessage);
+    // Authorized providers depend on the requester, so it is part of the key
+    final String key = RequestCoalescer.buildKey(request, inputMessage.getEntityId());
+    final CatalogResponseMessage responseMessage = coalesce(key, new Callable<CatalogResponseMessage>() {
+
+      @Override
+      public CatalogResponseMessage call() {
+        return catalogService.getAuthorizedProviders(inputMessage);
+      }
+    });
     checkCatalogResponseMessage(responseMessage);
 
     parser.writeResponse(response, responseMessage);
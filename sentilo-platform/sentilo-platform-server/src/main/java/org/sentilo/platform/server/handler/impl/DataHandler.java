@@ -28,15 +28,24 @@
  */
 package org.sentilo.platform.server.handler.impl;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
+import org.sentilo.common.enums.EventType;
 import org.sentilo.common.enums.HttpMethod;
 import org.sentilo.platform.common.domain.DataInputMessage;
 import org.sentilo.platform.common.domain.Observation;
+import org.sentilo.platform.common.domain.Sensor;
 import org.sentilo.platform.common.service.DataService;
 import org.sentilo.platform.server.converter.DataConverter;
 import org.sentilo.platform.server.exception.MethodNotAllowedException;
 import org.sentilo.platform.server.handler.AbstractHandler;
+import org.sentilo.platform.server.handler.RequestCoalescer;
 import org.sentilo.platform.server.request.SentiloRequest;
 import org.sentilo.platform.server.response.SentiloResponse;
 import org.sentilo.platform.server.validation.DataValidator;
@@ -84,17 +93,80 @@ public class DataHandler extends AbstractHandler {
     // GET /data/{providerId}/{sensorId}
     // where URI parameter {sensorId} is not mandatory
     // Furthermore, it could have parameters
+    // or the pattern GET /data?sensors={providerId}/{sensorId},{providerId}/{sensorId},...
+    // to retrieve at once the last observations of sensors from different providers
+
+    if (parser.isMultiSensorRequest(request)) {
+      onMultiSensorGet(request, response);
+      return;
+    }
+
+    // or the pattern GET /data?near={lat},{lon}&radius={meters} (or box={swLat},{swLon},{neLat},{neLon})
+    // to retrieve the last observations of the sensors located within an area
+    if (parser.isAreaRequest(request)) {
+      onAreaGet(request, response);
+      return;
+    }
 
     validateResourceNumberParts(request, 1, 2);
     final DataInputMessage inputMessage = parser.parseGetRequest(request);
     validator.validateRequestMessageOnGet(inputMessage);
     validateReadAccess(request.getEntitySource(), inputMessage.getProviderId());
 
-    final List<Observation> lastObservations = dataService.getLastObservations(inputMessage);
+    final List<Observation> lastObservations = getLastObservations(request, inputMessage);
+
+    parser.writeResponse(request, response, lastObservations);
+  }
+
+  private void onMultiSensorGet(final SentiloRequest request, final SentiloResponse response) {
+    final DataInputMessage inputMessage = parser.parseGetRequest(request);
+    validator.validateRequestMessageOnGet(inputMessage);
+
+    final Set<String> providers = new HashSet<String>();
+    for (final Sensor sensor : inputMessage.getSensors()) {
+      if (providers.add(sensor.getProvider())) {
+        validateReadAccess(request.getEntitySource(), sensor.getProvider());
+      }
+    }
+
+    final List<Observation> lastObservations = getLastObservations(request, inputMessage);
+
+    parser.writeResponse(request, response, lastObservations);
+  }
+
+  private void onAreaGet(final SentiloRequest request, final SentiloResponse response) {
+    final DataInputMessage inputMessage = parser.parseGetRequest(request);
+    validator.validateRequestMessageOnGet(inputMessage);
+
+    // Sensors found could belong to any provider, so only those that could be read are returned
+    final Map<String, Boolean> readableProviders = new HashMap<String, Boolean>();
+    final List<Observation> lastObservations = new ArrayList<Observation>();
+    for (final Observation observation : getLastObservations(request, inputMessage)) {
+      Boolean readable = readableProviders.get(observation.getProvider());
+      if (readable == null) {
+        readable = authorizationService.hasAccessToRead(request.getEntitySource(), observation.getProvider());
+        readableProviders.put(observation.getProvider(), readable);
+      }
+
+      if (readable) {
+        lastObservations.add(observation);
+      }
+    }
 
     parser.writeResponse(request, response, lastObservations);
   }
 
+  private List<Observation> getLastObservations(final SentiloRequest request, final DataInputMessage inputMessage) {
+    // Last observations don't depend on who reads them, so identical reads in flight are shared
+    return coalesce(RequestCoalescer.buildKey(request), new Callable<List<Observation>>() {
+
+      @Override
+      public List<Observation> call() {
+        return dataService.getLastObservations(inputMessage);
+      }
+    }, EventType.DATA);
+  }
+
   @Override
   public void onPost(final SentiloRequest request, final SentiloResponse response) {
     final String method = request.getRequestParameter("method");
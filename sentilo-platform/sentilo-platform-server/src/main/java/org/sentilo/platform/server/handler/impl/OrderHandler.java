@@ -29,7 +29,9 @@
 package org.sentilo.platform.server.handler.impl;
 
 import java.util.List;
+import java.util.concurrent.Callable;
 
+import org.sentilo.common.enums.EventType;
 import org.sentilo.common.enums.HttpMethod;
 import org.sentilo.platform.common.domain.Order;
 import org.sentilo.platform.common.domain.OrderInputMessage;
@@ -37,6 +39,7 @@ import org.sentilo.platform.common.service.OrderService;
 import org.sentilo.platform.server.converter.OrderConverter;
 import org.sentilo.platform.server.exception.MethodNotAllowedException;
 import org.sentilo.platform.server.handler.AbstractHandler;
+import org.sentilo.platform.server.handler.RequestCoalescer;
 import org.sentilo.platform.server.request.SentiloRequest;
 import org.sentilo.platform.server.response.SentiloResponse;
 import org.sentilo.platform.server.validation.OrderValidator;
@@ -77,7 +80,13 @@ public class OrderHandler extends AbstractHandler {
     validator.validateRequestMessageOnGet(inputMessage);
     validateReadAccess(request.getEntitySource(), inputMessage.getProviderId());
 
-    final List<Order> lastOrders = orderService.getLastOrders(inputMessage);
+    final List<Order> lastOrders = coalesce(RequestCoalescer.buildKey(request), new Callable<List<Order>>() {
+
+      @Override
+      public List<Order> call() {
+        return orderService.getLastOrders(inputMessage);
+      }
+    }, EventType.ORDER);
 
     parser.writeResponse(request, response, lastOrders);
   }
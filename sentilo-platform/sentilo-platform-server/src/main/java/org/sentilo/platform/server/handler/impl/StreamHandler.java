@@ -0,0 +1,132 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.server.handler.impl;
+
+import java.util.List;
+
+import org.apache.http.HttpStatus;
+import org.sentilo.common.enums.HttpMethod;
+import org.sentilo.common.enums.SubscribeType;
+import org.sentilo.platform.common.domain.AlarmSubscription;
+import org.sentilo.platform.common.domain.Subscription;
+import org.sentilo.platform.common.exception.PlatformException;
+import org.sentilo.platform.common.service.AlarmService;
+import org.sentilo.platform.common.service.EventStream;
+import org.sentilo.platform.common.service.StreamService;
+import org.sentilo.platform.server.converter.SubscribeConverter;
+import org.sentilo.platform.server.exception.MessageValidationException;
+import org.sentilo.platform.server.exception.MethodNotAllowedException;
+import org.sentilo.platform.server.handler.AbstractHandler;
+import org.sentilo.platform.server.request.SentiloRequest;
+import org.sentilo.platform.server.response.EventStreamEntity;
+import org.sentilo.platform.server.response.SentiloResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Controller;
+
+/**
+ * Streams to the client, through a single long-lived connection, the events published on a set of
+ * topics, as an alternative to polling the data API. Each open stream holds a server thread while
+ * it lasts.
+ */
+@Controller
+public class StreamHandler extends AbstractHandler {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(StreamHandler.class);
+
+  @Autowired
+  private StreamService streamService;
+
+  @Autowired
+  private AlarmService alarmService;
+
+  @Value("${api.stream.max-topics:100}")
+  private int maxTopics = 100;
+
+  @Value("${api.stream.batch-size:100}")
+  private int batchSize = 100;
+
+  @Value("${api.stream.batch-window:100}")
+  private long batchWindow = 100;
+
+  @Value("${api.stream.heartbeat:15000}")
+  private long heartbeat = 15000;
+
+  @Value("${api.stream.max-duration:3600000}")
+  private long maxDuration = 3600000;
+
+  private SubscribeConverter parser = new SubscribeConverter();
+
+  @Override
+  public void onDelete(final SentiloRequest request, final SentiloResponse response) {
+    throw new MethodNotAllowedException(HttpMethod.DELETE);
+  }
+
+  @Override
+  public void onGet(final SentiloRequest request, final SentiloResponse response) {
+    LOGGER.debug("Executing stream GET request");
+    debug(request);
+
+    // The request follows the following pattern:
+    // GET /subscribe/stream?topics={eventType}/{resourceId},...
+    // where {resourceId} may be composite (e.g. <providerId>/<sensorId>)
+
+    validateResourceNumberParts(request, 0, 0);
+    final List<Subscription> subscriptions = parser.parseStreamRequest(request);
+    if (subscriptions.size() > maxTopics) {
+      throw new MessageValidationException(String.format("An event stream can not have more than %d topics", maxTopics));
+    }
+
+    for (final Subscription subscription : subscriptions) {
+      if (subscription.getType().equals(SubscribeType.ALARM)) {
+        subscription.setOwnerEntityId(alarmService.getAlertOwner(((AlarmSubscription) subscription).getAlertId()));
+      }
+      validateReadAccess(request.getEntitySource(), subscription.getOwnerEntityId());
+    }
+
+    final EventStream stream = streamService.open(request.getEntitySource(), subscriptions);
+    if (stream == null) {
+      throw new PlatformException(HttpStatus.SC_SERVICE_UNAVAILABLE, "Max number of open event streams reached. Please try again later");
+    }
+
+    response.setStream(new EventStreamEntity(stream, streamService, request.getConnection(), batchSize, batchWindow, heartbeat, maxDuration));
+  }
+
+  @Override
+  public void onPost(final SentiloRequest request, final SentiloResponse response) {
+    throw new MethodNotAllowedException(HttpMethod.POST);
+  }
+
+  @Override
+  public void onPut(final SentiloRequest request, final SentiloResponse response) {
+    throw new MethodNotAllowedException(HttpMethod.PUT);
+  }
+}
@@ -57,6 +57,7 @@ import org.sentilo.platform.server.auth.AuthenticationService;
 import org.sentilo.platform.server.handler.AbstractHandler;
 import org.sentilo.platform.server.handler.HandlerLocator;
 import org.sentilo.platform.server.handler.HandlerPath;
+import org.sentilo.platform.server.pool.BulkheadManager;
 import org.sentilo.platform.server.pool.ThreadPool;
 import org.sentilo.platform.server.request.SentiloRequestHandler;
 import org.slf4j.Logger;
@@ -79,6 +80,9 @@ public class RequestListenerThread extends Thread {
   @Autowired
   private ThreadPool threadPool;
 
+  @Autowired(required = false)
+  private BulkheadManager bulkheadManager;
+
   private int port;
   private int socketTcpBacklog;
   private int socketMillisecondsTimeout;
@@ -109,6 +113,9 @@ public class RequestListenerThread extends Thread {
   @Autowired
   @Qualifier("catalogAlertHandler")
   private AbstractHandler catalogAlertHandler;
+  @Autowired
+  @Qualifier("streamHandler")
+  private AbstractHandler streamHandler;
 
   @Override
   public void run() {
@@ -156,6 +163,7 @@ public class RequestListenerThread extends Thread {
     registerHandler(HandlerPath.DATA, dataHandler);
     registerHandler(HandlerPath.ADMIN, adminHandler);
     registerHandler(HandlerPath.CATALOG_ALERT, catalogAlertHandler);
+    registerHandler(HandlerPath.STREAM, streamHandler);
 
     LOGGER.info("Services registered");
   }
@@ -187,7 +195,7 @@ public class RequestListenerThread extends Thread {
     final HttpProcessor httpproc = new ImmutableHttpProcessor(new HttpRequestInterceptor[] {new RequestExpectContinue()},
         new HttpResponseInterceptor[] {new ResponseDate(), new ResponseServer(), new ResponseContent(), new ResponseConnControl()});
     final HttpRequestHandlerRegistry reqistry = new HttpRequestHandlerRegistry();
-    reqistry.register(getRegisteredURLs(), new SentiloRequestHandler(handlerLocator, authenticationService));
+    reqistry.register(getRegisteredURLs(), new SentiloRequestHandler(handlerLocator, authenticationService, bulkheadManager));
 
     httpService = new HttpService(httpproc, new DefaultConnectionReuseStrategy(), new DefaultHttpResponseFactory(), reqistry, params);
   }
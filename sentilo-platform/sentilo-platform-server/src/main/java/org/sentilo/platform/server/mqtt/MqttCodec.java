@@ -0,0 +1,157 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.server.mqtt;
+
+import java.net.ProtocolException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Encoding and decoding of the MQTT 3.1.1 control packets used to ingest data: CONNECT, PUBLISH
+ * (QoS 0 and 1), SUBSCRIBE and UNSUBSCRIBE (always refused), PINGREQ and DISCONNECT.
+ */
+public final class MqttCodec {
+
+  public static final int CONNECT = 1;
+  public static final int CONNACK = 2;
+  public static final int PUBLISH = 3;
+  public static final int PUBACK = 4;
+  public static final int SUBSCRIBE = 8;
+  public static final int SUBACK = 9;
+  public static final int UNSUBSCRIBE = 10;
+  public static final int UNSUBACK = 11;
+  public static final int PINGREQ = 12;
+  public static final int PINGRESP = 13;
+  public static final int DISCONNECT = 14;
+
+  public static final int CONNECTION_ACCEPTED = 0;
+  public static final int UNACCEPTABLE_PROTOCOL_VERSION = 1;
+  public static final int BAD_USERNAME_OR_PASSWORD = 4;
+  public static final int NOT_AUTHORIZED = 5;
+
+  private static final int SUBSCRIPTION_FAILURE = 0x80;
+  private static final int MAX_REMAINING_LENGTH_BYTES = 4;
+
+  public static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private MqttCodec() {
+    throw new AssertionError();
+  }
+
+  /**
+   * Reads the next complete packet from <code>buffer</code> (in read mode), or returns null, leaving
+   * the buffer untouched, if it has not been fully received yet.
+   */
+  public static MqttPacket decode(final ByteBuffer buffer, final int maxPacketSize) throws ProtocolException {
+    final int start = buffer.position();
+    if (buffer.remaining() < 2) {
+      return null;
+    }
+
+    int length = 0;
+    int multiplier = 1;
+    int offset = 1;
+    byte digit;
+    do {
+      if (offset > MAX_REMAINING_LENGTH_BYTES) {
+        throw new ProtocolException("Malformed remaining length");
+      }
+      if (start + offset >= buffer.limit()) {
+        return null;
+      }
+      digit = buffer.get(start + offset++);
+      length += (digit & 0x7F) * multiplier;
+      multiplier *= 128;
+    } while ((digit & 0x80) != 0);
+
+    if (length > maxPacketSize) {
+      throw new ProtocolException("Packet of " + length + " bytes exceeds the max packet size");
+    }
+    if (buffer.remaining() < offset + length) {
+      return null;
+    }
+
+    final int header = buffer.get(start) & 0xFF;
+    final byte[] body = new byte[length];
+    buffer.position(start + offset);
+    buffer.get(body);
+    return new MqttPacket(header >> 4, header & 0x0F, ByteBuffer.wrap(body));
+  }
+
+  public static String readString(final ByteBuffer body) throws ProtocolException {
+    return new String(readBinary(body), UTF8);
+  }
+
+  public static byte[] readBinary(final ByteBuffer body) throws ProtocolException {
+    try {
+      final byte[] value = new byte[body.getShort() & 0xFFFF];
+      body.get(value);
+      return value;
+    } catch (final BufferUnderflowException bue) {
+      throw new ProtocolException("Truncated packet");
+    }
+  }
+
+  public static ByteBuffer connack(final int returnCode) {
+    return packet(CONNACK << 4, 0, returnCode);
+  }
+
+  public static ByteBuffer puback(final int packetId) {
+    return packet(PUBACK << 4, packetId >> 8, packetId);
+  }
+
+  public static ByteBuffer unsuback(final int packetId) {
+    return packet(UNSUBACK << 4, packetId >> 8, packetId);
+  }
+
+  public static ByteBuffer suback(final int packetId, final int topics) {
+    final ByteBuffer packet = ByteBuffer.allocate(4 + topics);
+    packet.put((byte) (SUBACK << 4)).put((byte) (2 + topics)).putShort((short) packetId);
+    for (int i = 0; i < topics; i++) {
+      packet.put((byte) SUBSCRIPTION_FAILURE);
+    }
+    packet.flip();
+    return packet;
+  }
+
+  public static ByteBuffer pingresp() {
+    return packet(PINGRESP << 4);
+  }
+
+  private static ByteBuffer packet(final int header, final int... body) {
+    final ByteBuffer packet = ByteBuffer.allocate(2 + body.length);
+    packet.put((byte) header).put((byte) body.length);
+    for (final int b : body) {
+      packet.put((byte) b);
+    }
+    packet.flip();
+    return packet;
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.server.mqtt;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.sentilo.platform.common.domain.EntityMetadataMessage;
+
+/**
+ * State of a client connected to the MQTT listener. Packets are read by the listener thread whereas
+ * acknowledgements of stored messages are sent by the thread which stores them.
+ *
+ * QoS 1 messages are acknowledged in the order they have been received, as MQTT 3.1.1 requires,
+ * regardless of the order they are stored in: the PUBACK of a message waits for those of the
+ * messages received before it.
+ */
+public class MqttConnection {
+
+  private static final int INITIAL_BUFFER_SIZE = 256;
+
+  private final SocketChannel channel;
+  private final String remoteAddress;
+  private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+  private EntityMetadataMessage identity;
+  private String clientId;
+  private long keepAlive;
+  private volatile long lastActivity = System.currentTimeMillis();
+  /** QoS 1 messages received whose PUBACK has not been sent yet, in the order they were received */
+  private final Deque<PendingAck> pendingAcks = new ArrayDeque<PendingAck>();
+
+  public MqttConnection(final SocketChannel channel, final long connectTimeout) {
+    this.channel = channel;
+    remoteAddress = channel.socket().getInetAddress() != null ? channel.socket().getInetAddress().getHostAddress() : null;
+    keepAlive = connectTimeout;
+  }
+
+  /**
+   * Reads the bytes available on the channel and returns the number of bytes read, or -1 if the
+   * client has closed the connection.
+   */
+  public int read(final int maxPacketSize) throws IOException {
+    if (!buffer.hasRemaining()) {
+      if (buffer.capacity() >= maxPacketSize + 5) {
+        throw new ProtocolException("Packet exceeds the max packet size");
+      }
+      final ByteBuffer larger = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, maxPacketSize + 5));
+      buffer.flip();
+      larger.put(buffer);
+      buffer = larger;
+    }
+
+    final int read = channel.read(buffer);
+    if (read > 0) {
+      lastActivity = System.currentTimeMillis();
+    }
+    return read;
+  }
+
+  /**
+   * Returns the next packet received, or null if there are no complete packets.
+   */
+  public MqttPacket nextPacket(final int maxPacketSize) throws ProtocolException {
+    buffer.flip();
+    try {
+      return MqttCodec.decode(buffer, maxPacketSize);
+    } finally {
+      buffer.compact();
+    }
+  }
+
+  /**
+   * Control packets sent to clients are a few bytes long, so a write which doesn't complete means
+   * that the client is not reading them.
+   */
+  public synchronized void send(final ByteBuffer packet) throws IOException {
+    channel.write(packet);
+    if (packet.hasRemaining()) {
+      throw new IOException("Client " + clientId + " is not reading from the connection");
+    }
+  }
+
+  /**
+   * Registers a QoS 1 message received, to be acknowledged with {@link #acknowledge(PendingAck)}.
+   */
+  public synchronized PendingAck expectAck(final int packetId) {
+    final PendingAck ack = new PendingAck(packetId);
+    pendingAcks.add(ack);
+    return ack;
+  }
+
+  /**
+   * Marks the message as acknowledged and sends the PUBACK of every message acknowledged which is
+   * not waiting for a message received before it.
+   */
+  public synchronized void acknowledge(final PendingAck ack) throws IOException {
+    ack.acknowledged = true;
+    while (!pendingAcks.isEmpty() && pendingAcks.peek().acknowledged) {
+      send(MqttCodec.puback(pendingAcks.poll().packetId));
+    }
+  }
+
+  public void close() {
+    try {
+      channel.close();
+    } catch (final IOException ioe) {
+      // Nothing to do
+    }
+  }
+
+  public boolean isExpired(final long now) {
+    // Clients are disconnected after one and a half times the keep alive period without activity
+    return keepAlive > 0 && now - lastActivity > keepAlive + keepAlive / 2;
+  }
+
+  public boolean isConnected() {
+    return identity != null;
+  }
+
+  public void connect(final String clientId, final EntityMetadataMessage identity, final long keepAlive) {
+    this.clientId = clientId;
+    this.identity = identity;
+    this.keepAlive = keepAlive;
+  }
+
+  public boolean isOpen() {
+    return channel.isOpen();
+  }
+
+  public EntityMetadataMessage getIdentity() {
+    return identity;
+  }
+
+  public String getClientId() {
+    return clientId;
+  }
+
+  public String getRemoteAddress() {
+    return remoteAddress;
+  }
+
+  public static class PendingAck {
+
+    private final int packetId;
+    private boolean acknowledged;
+
+    public PendingAck(final int packetId) {
+      this.packetId = packetId;
+    }
+
+    public int getPacketId() {
+      return packetId;
+    }
+  }
+}
@@ -0,0 +1,598 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.server.mqtt;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.sentilo.platform.common.domain.DataInputMessage;
+import org.sentilo.platform.common.domain.EntityMetadataMessage;
+import org.sentilo.platform.common.domain.Observation;
+import org.sentilo.platform.common.exception.PlatformException;
+import org.sentilo.platform.common.security.RequesterContextHolder;
+import org.sentilo.platform.server.auth.AuthenticationService;
+import org.sentilo.platform.server.auth.AuthorizationService;
+import org.sentilo.platform.server.converter.DataConverter;
+import org.sentilo.platform.server.mqtt.MqttConnection.PendingAck;
+import org.sentilo.platform.server.mqtt.MqttObservationBatcher.PendingMessage;
+import org.sentilo.platform.server.validation.DataValidator;
+import org.sentilo.platform.server.validation.RequestMessageValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * MQTT front end to publish observations from devices for which the overhead of an HTTP request per
+ * reading is too high. Devices keep a connection open and publish their readings as MQTT messages:
+ * <ul>
+ * <li>on topic <code>{prefix}data/{providerId}/{sensorId}</code> the payload is the observation
+ * value.</li>
+ * <li>on topic <code>{prefix}data/{providerId}</code> the payload is a JSON message with the same
+ * format as the body of PUT /data/{providerId}.</li>
+ * </ul>
+ *
+ * Clients authenticate with their Sentilo token, sent as the password of the CONNECT packet or, if
+ * it has no password, as its user name. Write access to the provider of each message is checked as
+ * in the HTTP API. Messages with QoS 0 and 1 are accepted; the listener doesn't deliver messages to
+ * subscribers.
+ *
+ * Every connection is served by a single thread through non blocking I/O, whereas observations are
+ * stored in batches by the {@link MqttObservationBatcher}. If its queue is full, the connection
+ * whose message could not be queued is not read until it is, so the client is slowed down by TCP
+ * flow control instead of having its messages discarded.
+ *
+ * Credentials and permissions could have to be looked up in the catalog or in Redis, so CONNECT and
+ * PUBLISH packets are handled by a pool of <code>mqtt.worker-threads</code> threads, as HTTP
+ * requests are, and the listener thread only sends their reply. The connection is not read while
+ * one of its packets is being handled, so its packets are still handled one at a time and in the
+ * order they were received.
+ */
+@Component
+public class MqttListener implements Runnable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MqttListener.class);
+
+  private static final String DATA_TOPIC = "data";
+  private static final String MQTT_PROTOCOL = "MQTT";
+  private static final String MQTT_V31_PROTOCOL = "MQIsdp";
+  private static final long SELECT_TIMEOUT = 1000;
+  private static final long STALLED_RETRY_INTERVAL = 10;
+  private static final int MAX_SUBSCRIBE_TOPICS = 125;
+
+  @Autowired
+  private AuthenticationService authenticationService;
+
+  @Autowired
+  private AuthorizationService authorizationService;
+
+  @Autowired
+  private MqttObservationBatcher batcher;
+
+  @Value("${mqtt.enabled:false}")
+  private boolean enabled = false;
+
+  @Value("${mqtt.port:1883}")
+  private int port = 1883;
+
+  @Value("${mqtt.max-connections:10000}")
+  private int maxConnections = 10000;
+
+  @Value("${mqtt.max-packet-size:8192}")
+  private int maxPacketSize = 8192;
+
+  @Value("${mqtt.connect-timeout:10000}")
+  private long connectTimeout = 10000;
+
+  @Value("${mqtt.topic-prefix:sentilo/}")
+  private String topicPrefix = "sentilo/";
+
+  @Value("${mqtt.worker-threads:4}")
+  private int workerThreads = 4;
+
+  private final DataConverter parser = new DataConverter();
+  private final RequestMessageValidator<DataInputMessage> validator = new DataValidator();
+  /** Connections not read until their message could be queued. Only used by the listener thread */
+  private final Map<SelectionKey, PendingMessage> stalledMessages = new LinkedHashMap<SelectionKey, PendingMessage>();
+  /** Connections not read until the packet being handled by a worker is replied. Only used by the listener thread */
+  private final Set<SelectionKey> busyConnections = new HashSet<SelectionKey>();
+  /** Replies of the packets handled by the workers, to be sent by the listener thread */
+  private final Queue<PacketReply> replies = new ConcurrentLinkedQueue<PacketReply>();
+
+  private Selector selector;
+  private ServerSocketChannel serverChannel;
+  private volatile boolean running;
+  private Thread worker;
+  private ExecutorService packetWorkers;
+
+  @PostConstruct
+  public void init() throws IOException {
+    if (enabled) {
+      start();
+    }
+  }
+
+  public synchronized void start() throws IOException {
+    if (worker == null) {
+      selector = Selector.open();
+      serverChannel = ServerSocketChannel.open();
+      serverChannel.configureBlocking(false);
+      serverChannel.socket().bind(new InetSocketAddress(port));
+      serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+      batcher.start();
+      // There is at most one packet of each connection waiting for a worker, so the queue is bounded
+      // by the max number of connections
+      final AtomicInteger count = new AtomicInteger();
+      packetWorkers = Executors.newFixedThreadPool(workerThreads, r -> {
+        final Thread thread = new Thread(r, "MqttWorker-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+
+      running = true;
+      worker = new Thread(this, "MqttListener");
+      worker.setDaemon(true);
+      worker.start();
+      LOGGER.info("MQTT listener initialized and listening on port {}", getPort());
+    }
+  }
+
+  @PreDestroy
+  public synchronized void stop() {
+    running = false;
+    if (worker != null) {
+      selector.wakeup();
+      try {
+        worker.join(SELECT_TIMEOUT * 2);
+      } catch (final InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+      worker = null;
+      packetWorkers.shutdownNow();
+    }
+  }
+
+  public int getPort() {
+    return serverChannel != null ? serverChannel.socket().getLocalPort() : port;
+  }
+
+  @Override
+  public void run() {
+    long lastExpirationCheck = System.currentTimeMillis();
+    try {
+      while (running) {
+        selector.select(stalledMessages.isEmpty() ? SELECT_TIMEOUT : STALLED_RETRY_INTERVAL);
+        final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+          final SelectionKey key = it.next();
+          it.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+
+          if (key.isAcceptable()) {
+            accept();
+          } else if (key.isReadable()) {
+            read(key);
+          }
+        }
+
+        sendReplies();
+        resumeStalledConnections();
+
+        final long now = System.currentTimeMillis();
+        if (now - lastExpirationCheck >= SELECT_TIMEOUT) {
+          closeExpiredConnections(now);
+          lastExpirationCheck = now;
+        }
+      }
+    } catch (final IOException ioe) {
+      LOGGER.error("Error while running MQTT listener on port {}", port, ioe);
+    } finally {
+      closeAll();
+    }
+  }
+
+  private void accept() throws IOException {
+    final SocketChannel channel = serverChannel.accept();
+    if (channel == null) {
+      return;
+    }
+
+    // Keys are the server channel and one for each client connection
+    if (selector.keys().size() > maxConnections) {
+      LOGGER.warn("MQTT connection from {} rejected: max number of connections reached", channel.socket().getInetAddress());
+      channel.close();
+      return;
+    }
+
+    channel.configureBlocking(false);
+    channel.socket().setTcpNoDelay(true);
+    channel.register(selector, SelectionKey.OP_READ, new MqttConnection(channel, connectTimeout));
+  }
+
+  private void read(final SelectionKey key) {
+    final MqttConnection connection = (MqttConnection) key.attachment();
+    try {
+      if (connection.read(maxPacketSize) < 0) {
+        close(key, connection);
+        return;
+      }
+
+      handlePackets(key, connection);
+    } catch (final IOException ioe) {
+      LOGGER.debug("Closing MQTT connection of client {}: {}", connection.getClientId(), ioe.getMessage());
+      close(key, connection);
+    } catch (final BufferUnderflowException bue) {
+      LOGGER.debug("Closing MQTT connection of client {}: truncated packet", connection.getClientId());
+      close(key, connection);
+    } catch (final RuntimeException re) {
+      LOGGER.warn("Closing MQTT connection of client {} after an unexpected error", connection.getClientId(), re);
+      close(key, connection);
+    }
+  }
+
+  private void handlePackets(final SelectionKey key, final MqttConnection connection) throws IOException {
+    MqttPacket packet;
+    while (key.isValid() && !isPaused(key) && (packet = connection.nextPacket(maxPacketSize)) != null) {
+      handle(key, connection, packet);
+    }
+  }
+
+  /**
+   * Goes on handling the packets already read from a connection which is no longer paused, and
+   * reading it again.
+   */
+  private void resume(final SelectionKey key, final MqttConnection connection) throws IOException {
+    handlePackets(key, connection);
+    if (key.isValid() && !isPaused(key)) {
+      key.interestOps(SelectionKey.OP_READ);
+    }
+  }
+
+  private boolean isPaused(final SelectionKey key) {
+    return stalledMessages.containsKey(key) || busyConnections.contains(key);
+  }
+
+  /**
+   * Hands the packet to a worker, and stops reading the connection until the reply is sent.
+   */
+  private void dispatch(final SelectionKey key, final MqttConnection connection, final Callable<Reply> work) {
+    busyConnections.add(key);
+    key.interestOps(0);
+    packetWorkers.execute(() -> {
+      Reply reply;
+      try {
+        reply = work.call();
+      } catch (final Exception e) {
+        reply = () -> {
+          LOGGER.debug("Closing MQTT connection of client {}: {}", connection.getClientId(), e.getMessage());
+          close(key, connection);
+        };
+      }
+      replies.add(new PacketReply(key, reply));
+      selector.wakeup();
+    });
+  }
+
+  private void sendReplies() {
+    PacketReply packetReply;
+    while ((packetReply = replies.poll()) != null) {
+      final SelectionKey key = packetReply.key;
+      final MqttConnection connection = (MqttConnection) key.attachment();
+      busyConnections.remove(key);
+      if (!key.isValid()) {
+        continue;
+      }
+
+      try {
+        packetReply.reply.send();
+        resume(key, connection);
+      } catch (final IOException | RuntimeException e) {
+        LOGGER.debug("Closing MQTT connection of client {}: {}", connection.getClientId(), e.getMessage());
+        close(key, connection);
+      }
+    }
+  }
+
+  /**
+   * Queues the messages of the stalled connections, in the order they stalled, and goes on handling
+   * the packets already read from them and reading them again.
+   */
+  private void resumeStalledConnections() {
+    for (final SelectionKey key : new ArrayList<SelectionKey>(stalledMessages.keySet())) {
+      final MqttConnection connection = (MqttConnection) key.attachment();
+      if (!key.isValid()) {
+        stalledMessages.remove(key);
+      } else if (!batcher.add(stalledMessages.get(key))) {
+        return;
+      } else {
+        stalledMessages.remove(key);
+        try {
+          resume(key, connection);
+        } catch (final IOException | RuntimeException e) {
+          LOGGER.debug("Closing MQTT connection of client {}: {}", connection.getClientId(), e.getMessage());
+          close(key, connection);
+        }
+      }
+    }
+  }
+
+  private void handle(final SelectionKey key, final MqttConnection connection, final MqttPacket packet) throws IOException {
+    if (!connection.isConnected() && packet.getType() != MqttCodec.CONNECT) {
+      throw new ProtocolException("First packet must be CONNECT");
+    }
+
+    switch (packet.getType()) {
+      case MqttCodec.CONNECT:
+        dispatch(key, connection, () -> onConnect(key, connection, packet.getBody()));
+        break;
+      case MqttCodec.PUBLISH:
+        dispatch(key, connection, () -> onPublish(key, connection, packet));
+        break;
+      case MqttCodec.SUBSCRIBE:
+        onSubscribe(connection, packet.getBody());
+        break;
+      case MqttCodec.UNSUBSCRIBE:
+        connection.send(MqttCodec.unsuback(packet.getBody().getShort() & 0xFFFF));
+        break;
+      case MqttCodec.PINGREQ:
+        connection.send(MqttCodec.pingresp());
+        break;
+      case MqttCodec.DISCONNECT:
+        close(key, connection);
+        break;
+      default:
+        throw new ProtocolException("Unsupported packet type " + packet.getType());
+    }
+  }
+
+  /** Run by a worker */
+  private Reply onConnect(final SelectionKey key, final MqttConnection connection, final ByteBuffer body) throws IOException {
+    if (connection.isConnected()) {
+      throw new ProtocolException("Client " + connection.getClientId() + " sent a second CONNECT");
+    }
+
+    final String protocol = MqttCodec.readString(body);
+    body.get(); // protocol level
+    final int flags = body.get() & 0xFF;
+    final int keepAlive = body.getShort() & 0xFFFF;
+    final String clientId = MqttCodec.readString(body);
+    if ((flags & 0x04) != 0) {
+      // Will topic and message are ignored
+      MqttCodec.readString(body);
+      MqttCodec.readBinary(body);
+    }
+    final String userName = (flags & 0x80) != 0 ? MqttCodec.readString(body) : null;
+    final String password = (flags & 0x40) != 0 ? new String(MqttCodec.readBinary(body), MqttCodec.UTF8) : null;
+
+    if (!MQTT_PROTOCOL.equals(protocol) && !MQTT_V31_PROTOCOL.equals(protocol)) {
+      return () -> refuse(key, connection, MqttCodec.UNACCEPTABLE_PROTOCOL_VERSION);
+    }
+
+    final EntityMetadataMessage identity = authenticate(StringUtils.hasText(password) ? password : userName);
+    if (identity == null) {
+      return () -> refuse(key, connection, MqttCodec.BAD_USERNAME_OR_PASSWORD);
+    } else if (identity.isRestHttps()) {
+      // Connections are not encrypted, so entities which must use HTTPS are not allowed
+      return () -> refuse(key, connection, MqttCodec.NOT_AUTHORIZED);
+    }
+
+    return () -> {
+      connection.connect(clientId, identity, keepAlive * 1000L);
+      connection.send(MqttCodec.connack(MqttCodec.CONNECTION_ACCEPTED));
+      LOGGER.debug("MQTT client {} of entity {} connected from {}", clientId, identity.getEntity(), connection.getRemoteAddress());
+    };
+  }
+
+  private EntityMetadataMessage authenticate(final String token) {
+    try {
+      authenticationService.checkCredential(token);
+      return RequesterContextHolder.getContext() != null ? RequesterContextHolder.getContext().getMetadata() : null;
+    } catch (final PlatformException pe) {
+      return null;
+    } finally {
+      RequesterContextHolder.clearContext();
+    }
+  }
+
+  /** Run by a worker */
+  private Reply onPublish(final SelectionKey key, final MqttConnection connection, final MqttPacket packet) throws IOException {
+    final int qos = (packet.getFlags() >> 1) & 0x03;
+    if (qos > 1) {
+      throw new ProtocolException("QoS " + qos + " is not supported");
+    }
+
+    final ByteBuffer body = packet.getBody();
+    final String topic = MqttCodec.readString(body);
+    final PendingAck ack = qos > 0 ? connection.expectAck(body.getShort() & 0xFFFF) : null;
+    final byte[] payload = new byte[body.remaining()];
+    body.get(payload);
+
+    final String[] tokens = parseTopic(topic);
+    if (tokens == null) {
+      LOGGER.warn("MQTT client {} has published on an invalid topic {}", connection.getClientId(), topic);
+      return () -> acknowledge(connection, ack);
+    }
+
+    final String entityId = connection.getIdentity().getEntity();
+    final String providerId = tokens[1];
+    if (!authorizationService.hasAccessToWrite(entityId, providerId)) {
+      // MQTT 3.1.1 has no way to refuse a message other than closing the connection
+      LOGGER.warn("Closing MQTT connection of client {}: entity {} has not permission to write on {}", connection.getClientId(), entityId,
+          providerId);
+      return () -> close(key, connection);
+    }
+
+    final List<Observation> observations;
+    try {
+      observations = parseObservations(tokens, new String(payload, MqttCodec.UTF8));
+      validator.validateRequestMessageOnPut(new DataInputMessage(providerId, observations));
+    } catch (final PlatformException pe) {
+      // Invalid messages are acknowledged so they are not sent again
+      LOGGER.warn("Invalid message published through MQTT by {} on topic {}: {}", entityId, topic, pe.getMessage());
+      return () -> acknowledge(connection, ack);
+    }
+
+    final PendingMessage message = new PendingMessage(connection, providerId, observations, ack);
+    return () -> {
+      if (!batcher.add(message)) {
+        LOGGER.debug("Queue is full: MQTT connection of client {} is not read until its message could be queued", connection.getClientId());
+        stalledMessages.put(key, message);
+        key.interestOps(0);
+      }
+    };
+  }
+
+  private String[] parseTopic(final String topic) {
+    if (!topic.startsWith(topicPrefix)) {
+      return null;
+    }
+
+    final String[] tokens = StringUtils.tokenizeToStringArray(topic.substring(topicPrefix.length()), "/");
+    return tokens.length >= 2 && tokens.length <= 3 && DATA_TOPIC.equals(tokens[0]) ? tokens : null;
+  }
+
+  private List<Observation> parseObservations(final String[] tokens, final String payload) {
+    final List<Observation> observations =
+        tokens.length == 3 ? Collections.singletonList(new Observation(tokens[1], tokens[2], payload)) : parser.parseObservations(tokens[1], payload);
+
+    // Observations without timestamp are stored with the time they were received, not the time of
+    // their batch
+    final long now = System.currentTimeMillis();
+    for (final Observation observation : observations) {
+      if (observation.getTimestamp() == null) {
+        observation.setTimestamp(now);
+      }
+    }
+    return observations;
+  }
+
+  private void onSubscribe(final MqttConnection connection, final ByteBuffer body) throws IOException {
+    final int packetId = body.getShort() & 0xFFFF;
+    int topics = 0;
+    while (body.hasRemaining()) {
+      MqttCodec.readString(body);
+      body.get();
+      topics++;
+    }
+
+    if (topics > MAX_SUBSCRIBE_TOPICS) {
+      throw new ProtocolException("Too many topics to subscribe to");
+    }
+    // Subscriptions are not supported: every topic is refused
+    connection.send(MqttCodec.suback(packetId, topics));
+  }
+
+  private void acknowledge(final MqttConnection connection, final PendingAck ack) throws IOException {
+    if (ack != null) {
+      connection.acknowledge(ack);
+    }
+  }
+
+  private void refuse(final SelectionKey key, final MqttConnection connection, final int returnCode) throws IOException {
+    LOGGER.warn("MQTT connection from {} refused with return code {}", connection.getRemoteAddress(), returnCode);
+    connection.send(MqttCodec.connack(returnCode));
+    close(key, connection);
+  }
+
+  private void closeExpiredConnections(final long now) {
+    for (final SelectionKey key : selector.keys()) {
+      // Paused connections are not read, so they could not get the packets which keep them alive
+      if (key.attachment() instanceof MqttConnection && !isPaused(key) && ((MqttConnection) key.attachment()).isExpired(now)) {
+        LOGGER.debug("Closing MQTT connection of client {}: keep alive expired", ((MqttConnection) key.attachment()).getClientId());
+        close(key, (MqttConnection) key.attachment());
+      }
+    }
+  }
+
+  private void close(final SelectionKey key, final MqttConnection connection) {
+    stalledMessages.remove(key);
+    busyConnections.remove(key);
+    key.cancel();
+    connection.close();
+  }
+
+  private void closeAll() {
+    try {
+      for (final SelectionKey key : selector.keys()) {
+        if (key.attachment() instanceof MqttConnection) {
+          ((MqttConnection) key.attachment()).close();
+        }
+      }
+      serverChannel.close();
+      selector.close();
+    } catch (final IOException ioe) {
+      LOGGER.warn("Error closing MQTT listener", ioe);
+    }
+  }
+
+  /** Reply of a packet handled by a worker, sent by the listener thread */
+  private interface Reply {
+
+    void send() throws IOException;
+  }
+
+  private static class PacketReply {
+
+    private final SelectionKey key;
+    private final Reply reply;
+
+    PacketReply(final SelectionKey key, final Reply reply) {
+      this.key = key;
+      this.reply = reply;
+    }
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.server.mqtt;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.sentilo.platform.common.domain.DataInputMessage;
+import org.sentilo.platform.common.domain.EntityMetadataMessage;
+import org.sentilo.platform.common.domain.Observation;
+import org.sentilo.platform.common.exception.EventRejectedException;
+import org.sentilo.platform.common.security.RequesterContext;
+import org.sentilo.platform.common.security.RequesterContextHolder;
+import org.sentilo.platform.common.security.ResourceOwnerContext;
+import org.sentilo.platform.common.security.ResourceOwnerContextHolder;
+import org.sentilo.platform.common.security.repository.EntityMetadataRepository;
+import org.sentilo.platform.common.service.DataService;
+import org.sentilo.platform.server.mqtt.MqttConnection.PendingAck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stores the observations published through MQTT in batches: messages received within
+ * <code>mqtt.batch-window</code> millis, up to <code>mqtt.batch-size</code>, are grouped by
+ * publisher and provider, and the observations of each group are stored with a single call to
+ * {@link DataService#setObservations(DataInputMessage)}, regardless of the connection they come
+ * from.
+ *
+ * QoS 1 messages are acknowledged once stored, in the order each connection received them. If they
+ * could not be stored (i.e. Redis is not available) their connections are closed, so clients send
+ * them again, in order, once reconnected. When the queue is full no message is discarded: the
+ * {@link MqttListener} stops reading the connection until its message could be queued.
+ */
+@Component
+public class MqttObservationBatcher implements Runnable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MqttObservationBatcher.class);
+
+  private static final long IDLE_POLL_TIMEOUT = 1000;
+
+  @Autowired
+  private DataService dataService;
+
+  @Autowired
+  private EntityMetadataRepository entityMetadataRepository;
+
+  @Value("${mqtt.batch-size:500}")
+  private int batchSize = 500;
+
+  @Value("${mqtt.batch-window:100}")
+  private long batchWindow = 100;
+
+  @Value("${mqtt.queue-size:10000}")
+  private int queueSize = 10000;
+
+  private BlockingQueue<PendingMessage> queue;
+  private volatile boolean running;
+  private Thread worker;
+
+  public synchronized void start() {
+    if (worker == null) {
+      queue = new ArrayBlockingQueue<PendingMessage>(queueSize);
+      running = true;
+      worker = new Thread(this, "MqttObservationBatcher");
+      worker.setDaemon(true);
+      worker.start();
+    }
+  }
+
+  @PreDestroy
+  public synchronized void stop() {
+    running = false;
+    if (worker != null) {
+      worker.interrupt();
+      worker = null;
+    }
+  }
+
+  /**
+   * Enqueues the observations of a message to be stored. Returns false, and the message is not
+   * queued, if the queue is full.
+   */
+  public boolean add(final PendingMessage message) {
+    return queue.offer(message);
+  }
+
+  @Override
+  public void run() {
+    while (running) {
+      try {
+        final List<PendingMessage> batch = nextBatch();
+        if (!batch.isEmpty()) {
+          flush(batch);
+        }
+      } catch (final InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        running = false;
+      }
+    }
+  }
+
+  private List<PendingMessage> nextBatch() throws InterruptedException {
+    final List<PendingMessage> batch = new ArrayList<PendingMessage>();
+    final PendingMessage first = queue.poll(IDLE_POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+    if (first != null) {
+      batch.add(first);
+      final long deadline = System.currentTimeMillis() + batchWindow;
+      long wait = batchWindow;
+      while (batch.size() < batchSize && wait > 0) {
+        final PendingMessage message = queue.poll(wait, TimeUnit.MILLISECONDS);
+        if (message == null) {
+          break;
+        }
+        batch.add(message);
+        queue.drainTo(batch, batchSize - batch.size());
+        wait = deadline - System.currentTimeMillis();
+      }
+    }
+    return batch;
+  }
+
+  public void flush(final List<PendingMessage> batch) {
+    final Map<String, List<PendingMessage>> groups = new LinkedHashMap<String, List<PendingMessage>>();
+    for (final PendingMessage message : batch) {
+      final String key = message.connection.getIdentity().getEntity() + "#" + message.providerId;
+      List<PendingMessage> group = groups.get(key);
+      if (group == null) {
+        group = new ArrayList<PendingMessage>();
+        groups.put(key, group);
+      }
+      group.add(message);
+    }
+
+    for (final List<PendingMessage> group : groups.values()) {
+      store(group);
+    }
+  }
+
+  private void store(final List<PendingMessage> group) {
+    final PendingMessage first = group.get(0);
+    final List<Observation> observations = new ArrayList<Observation>();
+    for (final PendingMessage message : group) {
+      observations.addAll(message.observations);
+    }
+
+    try {
+      setContext(first.connection, first.providerId);
+      dataService.setObservations(new DataInputMessage(first.providerId, observations));
+      LOGGER.info("Entity {} has published through MQTT {} observations associated with {} sensors", first.connection.getIdentity().getEntity(),
+          observations.size(), first.providerId);
+    } catch (final EventRejectedException ere) {
+      // Rejected observations (i.e. of unknown sensors) will never be accepted, so they are
+      // acknowledged as well
+      LOGGER.warn("Some observations published through MQTT by {} have been rejected: {}", first.connection.getIdentity().getEntity(),
+          ere.getMessage());
+    } catch (final Exception e) {
+      LOGGER.error("Error storing {} observations published through MQTT by {}", observations.size(), first.connection.getIdentity().getEntity(),
+          e);
+      // Messages received after these ones could not be acknowledged before them
+      for (final PendingMessage message : group) {
+        if (message.ack != null) {
+          message.connection.close();
+        }
+      }
+      return;
+    } finally {
+      RequesterContextHolder.clearContext();
+      ResourceOwnerContextHolder.clearContext();
+    }
+
+    acknowledge(group);
+  }
+
+  private void setContext(final MqttConnection connection, final String providerId) {
+    final RequesterContext requesterContext = new RequesterContext(connection.getIdentity());
+    requesterContext.setRemoteAddress(connection.getRemoteAddress());
+    RequesterContextHolder.setContext(requesterContext);
+
+    final EntityMetadataMessage owner = entityMetadataRepository.getEntityMetadataFromId(providerId);
+    if (owner != null) {
+      ResourceOwnerContextHolder.setContext(new ResourceOwnerContext(owner));
+    }
+  }
+
+  private void acknowledge(final List<PendingMessage> group) {
+    for (final PendingMessage message : group) {
+      if (message.ack != null && message.connection.isOpen()) {
+        try {
+          message.connection.acknowledge(message.ack);
+        } catch (final IOException ioe) {
+          LOGGER.warn("Error acknowledging message {} to client {}: {}", message.ack.getPacketId(), message.connection.getClientId(),
+              ioe.getMessage());
+          message.connection.close();
+        }
+      }
+    }
+  }
+
+  public int getQueueSize() {
+    return queue != null ? queue.size() : 0;
+  }
+
+  public static class PendingMessage {
+
+    private final MqttConnection connection;
+    private final String providerId;
+    private final List<Observation> observations;
+    /** Acknowledgement to send once stored, or null for QoS 0 messages */
+    private final PendingAck ack;
+
+    public PendingMessage(final MqttConnection connection, final String providerId, final List<Observation> observations, final PendingAck ack) {
+      this.connection = connection;
+      this.providerId = providerId;
+      this.observations = observations;
+      this.ack = ack;
+    }
+  }
+}
@@ -0,0 +1,375 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.server.pool;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.sentilo.common.enums.HttpMethod;
+import org.sentilo.platform.common.exception.PlatformException;
+import org.sentilo.platform.common.security.RequesterContext;
+import org.sentilo.platform.common.security.RequesterContextHolder;
+import org.sentilo.platform.server.handler.HandlerPath;
+import org.sentilo.platform.server.request.SentiloRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+/**
+ * Partitions the worker threads of the server into bulkheads, so that a requester which floods the
+ * platform can't take up the threads needed to serve the others.
+ *
+ * Once a request is authenticated, it must get a permit from the partition of its requester and
+ * request type (read, write or admin) before being handled. The requester is its tenant or its
+ * entity, according to <code>partitionBy</code>, and can be mapped to a shared partition class.
+ * Each partition can handle up to <code>readPermits</code>, <code>writePermits</code> or
+ * <code>adminPermits</code> requests at once. When they are all in use, the partition borrows an
+ * idle permit while less than <code>maxCapacity - borrowReserve</code> requests are being handled
+ * by the whole server or waiting in the queues of the other partitions, so that borrowing doesn't
+ * take the threads those requests are waiting for; otherwise the request waits in the queue of the
+ * partition, for up to <code>queueTimeoutMillis</code>, and is rejected with a 429 status if the
+ * queue is full or the timeout expires.
+ *
+ * Partitions are only kept while they have requests in progress or waiting, so requesters which
+ * have stopped sending requests don't take up memory.
+ *
+ * Event streams are not partitioned, since they hold their thread for their whole life.
+ */
+public class BulkheadManager {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BulkheadManager.class);
+
+  public static final int TOO_MANY_REQUESTS = 429;
+
+  public enum RequestType {
+    READ, WRITE, ADMIN
+  }
+
+  private boolean enabled;
+  private String partitionBy = "tenant";
+  private final Map<String, String> partitionClasses = new HashMap<String, String>();
+  private int readPermits = 4;
+  private int writePermits = 4;
+  private int adminPermits = 2;
+  private int queueSize = 20;
+  private long queueTimeoutMillis = 1000;
+  private boolean borrowEnabled = true;
+  private int borrowReserve = 2;
+  private int maxCapacity = 10;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Map<String, Partition> partitions = new HashMap<String, Partition>();
+  private int inFlight;
+  private int waiting;
+  private long rejectedRequests;
+
+  /**
+   * Returns the permit to handle <code>request</code>, waiting for it if needed, or null if the
+   * request is not partitioned. The permit must be released once the request has been handled.
+   */
+  public Permit acquire(final SentiloRequest request) {
+    if (!enabled || HandlerPath.STREAM.getPath().equals(request.getHandlerPath())) {
+      return null;
+    }
+
+    return acquire(getPartitionKey(RequesterContextHolder.getContext()), getRequestType(request));
+  }
+
+  public Permit acquire(final String owner, final RequestType type) {
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+
+    lock.lock();
+    try {
+      final Partition partition = getPartition(owner + ":" + type.name(), type);
+      Permit permit = tryAcquire(partition);
+      if (permit != null) {
+        return permit;
+      }
+
+      if (partition.waiting >= queueSize) {
+        evictIfIdle(partition);
+        throw reject(partition, "queue is full");
+      }
+
+      partition.waiting++;
+      waiting++;
+      try {
+        long remaining = deadline - System.nanoTime();
+        while ((permit = tryAcquire(partition)) == null) {
+          if (remaining <= 0) {
+            throw reject(partition, "timeout waiting for a thread expired");
+          }
+          remaining = partition.released.awaitNanos(remaining);
+        }
+        return permit;
+      } catch (final InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw reject(partition, "interrupted while waiting for a thread");
+      } finally {
+        partition.waiting--;
+        waiting--;
+        evictIfIdle(partition);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void release(final Permit permit) {
+    if (permit == null) {
+      return;
+    }
+
+    lock.lock();
+    try {
+      final Partition partition = permit.partition;
+      if (permit.borrowed) {
+        partition.borrowed--;
+      } else {
+        partition.inUse--;
+      }
+      inFlight--;
+      evictIfIdle(partition);
+
+      // Waiters of the partition are woken first, but a waiter that can't take the slot freed goes
+      // back to sleep, so one waiter of every partition that could take it is woken too
+      if (partition.waiting > 0 && canAcquire(partition)) {
+        partition.released.signal();
+      }
+      for (final Partition other : partitions.values()) {
+        if (other != partition && other.waiting > 0 && canAcquire(other)) {
+          other.released.signal();
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getInFlightRequests() {
+    lock.lock();
+    try {
+      return inFlight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getActivePartitions() {
+    lock.lock();
+    try {
+      return partitions.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getRejectedRequests() {
+    lock.lock();
+    try {
+      return rejectedRequests;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public static RequestType getRequestType(final SentiloRequest request) {
+    if (HandlerPath.ADMIN.getPath().equals(request.getHandlerPath())) {
+      return RequestType.ADMIN;
+    }
+    return request.getMethod() == HttpMethod.GET ? RequestType.READ : RequestType.WRITE;
+  }
+
+  private String getPartitionKey(final RequesterContext context) {
+    String owner = null;
+    if (context != null) {
+      // Requests without tenant are partitioned by entity
+      owner = "entity".equals(partitionBy) ? null : context.getTenantId();
+      owner = StringUtils.hasText(owner) ? owner : context.getEntityId();
+    }
+    if (!StringUtils.hasText(owner)) {
+      owner = "anonymous";
+    }
+
+    final String partitionClass = partitionClasses.get(owner);
+    return partitionClass != null ? partitionClass : owner;
+  }
+
+  private Partition getPartition(final String key, final RequestType type) {
+    Partition partition = partitions.get(key);
+    if (partition == null) {
+      partition = new Partition(key, getPermits(type), lock.newCondition());
+      partitions.put(key, partition);
+    }
+    return partition;
+  }
+
+  private int getPermits(final RequestType type) {
+    switch (type) {
+      case ADMIN:
+        return adminPermits;
+      case WRITE:
+        return writePermits;
+      default:
+        return readPermits;
+    }
+  }
+
+  private Permit tryAcquire(final Partition partition) {
+    if (partition.inUse < partition.permits) {
+      partition.inUse++;
+      inFlight++;
+      return new Permit(partition, false);
+    }
+
+    if (canBorrow(partition)) {
+      partition.borrowed++;
+      inFlight++;
+      return new Permit(partition, true);
+    }
+
+    return null;
+  }
+
+  private boolean canAcquire(final Partition partition) {
+    return partition.inUse < partition.permits || canBorrow(partition);
+  }
+
+  private boolean canBorrow(final Partition partition) {
+    // Requests waiting in other partitions count as in progress: they will take the next threads freed
+    return borrowEnabled && inFlight + waiting - partition.waiting < maxCapacity - borrowReserve;
+  }
+
+  private void evictIfIdle(final Partition partition) {
+    if (partition.inUse == 0 && partition.borrowed == 0 && partition.waiting == 0) {
+      partitions.remove(partition.key);
+    }
+  }
+
+  private PlatformException reject(final Partition partition, final String reason) {
+    rejectedRequests++;
+    LOGGER.warn("Request rejected by bulkhead {}: {}. In use: {} (borrowed: {}), waiting: {}", partition.key, reason, partition.inUse,
+        partition.borrowed, partition.waiting);
+    return new PlatformException(TOO_MANY_REQUESTS, "Too many requests. Please, try again later");
+  }
+
+  public void setEnabled(final boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public void setPartitionBy(final String partitionBy) {
+    this.partitionBy = partitionBy;
+  }
+
+  /**
+   * Maps requesters to shared partitions, given as a comma-separated list of
+   * <code>requester:class</code> pairs.
+   */
+  public void setPartitionClasses(final String partitionClasses) {
+    this.partitionClasses.clear();
+    for (final String mapping : StringUtils.commaDelimitedListToStringArray(partitionClasses)) {
+      final String[] tokens = mapping.trim().split(":");
+      if (tokens.length == 2) {
+        this.partitionClasses.put(tokens[0].trim(), tokens[1].trim());
+      } else if (StringUtils.hasText(mapping)) {
+        LOGGER.warn("Invalid bulkhead partition class mapping {}. It will be ignored", mapping);
+      }
+    }
+  }
+
+  public void setReadPermits(final int readPermits) {
+    this.readPermits = readPermits;
+  }
+
+  public void setWritePermits(final int writePermits) {
+    this.writePermits = writePermits;
+  }
+
+  public void setAdminPermits(final int adminPermits) {
+    this.adminPermits = adminPermits;
+  }
+
+  public void setQueueSize(final int queueSize) {
+    this.queueSize = queueSize;
+  }
+
+  public void setQueueTimeoutMillis(final long queueTimeoutMillis) {
+    this.queueTimeoutMillis = queueTimeoutMillis;
+  }
+
+  public void setBorrowEnabled(final boolean borrowEnabled) {
+    this.borrowEnabled = borrowEnabled;
+  }
+
+  public void setBorrowReserve(final int borrowReserve) {
+    this.borrowReserve = borrowReserve;
+  }
+
+  public void setMaxCapacity(final int maxCapacity) {
+    this.maxCapacity = maxCapacity;
+  }
+
+  public static final class Permit {
+
+    private final Partition partition;
+    private final boolean borrowed;
+
+    private Permit(final Partition partition, final boolean borrowed) {
+      this.partition = partition;
+      this.borrowed = borrowed;
+    }
+
+    public boolean isBorrowed() {
+      return borrowed;
+    }
+
+    public String getPartition() {
+      return partition.key;
+    }
+  }
+
+  private static class Partition {
+
+    private final String key;
+    private final int permits;
+    private final Condition released;
+    private int inUse;
+    private int borrowed;
+    private int waiting;
+
+    Partition(final String key, final int permits, final Condition released) {
+      this.key = key;
+      this.permits = permits;
+      this.released = released;
+    }
+  }
+}
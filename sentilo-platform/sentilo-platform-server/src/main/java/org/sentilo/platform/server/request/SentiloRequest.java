@@ -35,6 +35,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.http.Header;
+import org.apache.http.HttpConnection;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpInetConnection;
@@ -84,6 +85,9 @@ public class SentiloRequest {
   public void checkCredentialIntegrity(final AuthenticationService authenticationService) {
     final String credential = extractHeader(HttpHeader.IDENTITY_KEY);
     authenticationService.checkCredential(credential);
+    if (RequesterContextHolder.getContext() != null) {
+      RequesterContextHolder.getContext().setRemoteAddress(getRemoteClientAddress());
+    }
   }
 
   public void checkSSLAAccess() {
@@ -176,6 +180,13 @@ public class SentiloRequest {
     return remoteAddr;
   }
 
+  /**
+   * Returns the connection the request has been received through.
+   */
+  public HttpConnection getConnection() {
+    return (HttpConnection) httpContext.getAttribute("http.connection");
+  }
+
   private String extractRemoteAddress() {
     final HttpInetConnection conn = (HttpInetConnection) httpContext.getAttribute("http.connection");
     return conn.getRemoteAddress().getHostAddress();
@@ -33,6 +33,7 @@ import java.util.Collections;
 import java.util.List;
 
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
@@ -53,6 +54,8 @@ import org.sentilo.platform.server.converter.PlatformJsonMessageConverter;
 import org.sentilo.platform.server.dto.ErrorMessage;
 import org.sentilo.platform.server.handler.AbstractHandler;
 import org.sentilo.platform.server.handler.HandlerLocator;
+import org.sentilo.platform.server.pool.BulkheadManager;
+import org.sentilo.platform.server.pool.BulkheadManager.Permit;
 import org.sentilo.platform.server.response.SentiloResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -63,11 +66,18 @@ public class SentiloRequestHandler implements HttpRequestHandler {
 
   private final HandlerLocator handlerLocator;
   private final AuthenticationService authenticationService;
+  private final BulkheadManager bulkheadManager;
   private final ErrorConverter errorParser;
 
   public SentiloRequestHandler(final HandlerLocator handlerLocator, final AuthenticationService authService) {
+    this(handlerLocator, authService, null);
+  }
+
+  public SentiloRequestHandler(final HandlerLocator handlerLocator, final AuthenticationService authService,
+      final BulkheadManager bulkheadManager) {
     this.handlerLocator = handlerLocator;
     authenticationService = authService;
+    this.bulkheadManager = bulkheadManager;
     errorParser = new ErrorConverter();
   }
 
@@ -82,7 +92,14 @@ public class SentiloRequestHandler implements HttpRequestHandler {
       request.checkSSLAAccess();
 
       final AbstractHandler handler = lookupHandlerForRequest(request);
-      handler.manageRequest(request, response);
+      final Permit permit = bulkheadManager != null ? bulkheadManager.acquire(request) : null;
+      try {
+        handler.manageRequest(request, response);
+      } finally {
+        if (permit != null) {
+          bulkheadManager.release(permit);
+        }
+      }
 
       prepareResponse(httpResponse, request.getContentType().toString());
     } catch (final PlatformException e) {
@@ -130,7 +147,10 @@ public class SentiloRequestHandler implements HttpRequestHandler {
 
   private void prepareResponse(final HttpResponse httpResponse, final String contentType) {
     httpResponse.setStatusCode(HttpStatus.SC_OK);
-    httpResponse.setHeader(HttpHeader.CONTENT_TYPE.toString(), contentType);
+    // Streamed entities (i.e. event streams) define their own content type
+    final HttpEntity entity = httpResponse.getEntity();
+    final boolean isStream = entity != null && entity.isStreaming() && entity.getContentType() != null;
+    httpResponse.setHeader(HttpHeader.CONTENT_TYPE.toString(), isStream ? entity.getContentType().getValue() : contentType);
   }
 
   private AbstractHandler lookupHandlerForRequest(final SentiloRequest request) throws PlatformException {
@@ -160,7 +180,8 @@ public class SentiloRequestHandler implements HttpRequestHandler {
       LOGGER.debug("{} : {}", HttpHeader.CONTENT_TYPE.toString(), contentType);
     }
 
-    if (httpResponse.getEntity() != null) {
+    // Streamed entities can be written only once, when the request handling is over
+    if (LOGGER.isTraceEnabled() && httpResponse.getEntity() != null && !httpResponse.getEntity().isStreaming()) {
       try {
         LOGGER.trace("Entity body: {} ", EntityUtils.toString(httpResponse.getEntity()));
       } catch (final Exception e) {
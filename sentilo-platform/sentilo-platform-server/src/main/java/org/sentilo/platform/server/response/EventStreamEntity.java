@@ -0,0 +1,166 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.server.response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.apache.http.HttpConnection;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.sentilo.platform.common.service.EventStream;
+import org.sentilo.platform.common.service.StreamService;
+import org.sentilo.platform.server.converter.PlatformJsonMessageConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the events of an {@link EventStream} to the client following the Server-Sent Events
+ * format, until the client closes the connection or the stream reaches its max duration (clients
+ * are expected to reconnect then).
+ *
+ * Events are sent in batches: each <code>data</code> frame holds a JSON array with the events
+ * buffered in the stream, up to <code>batchSize</code>, waiting up to <code>batchWindow</code>
+ * millis for more events once the first one has arrived. If events have been discarded because the
+ * client was not reading them fast enough, a <code>dropped</code> frame tells how many before the
+ * next batch. When there are no events, a comment is sent every <code>heartbeat</code> millis so
+ * that closed connections are detected.
+ *
+ * As a write to a client which doesn't read blocks until the socket buffers drain, if the stream is
+ * closed while it is being written (e.g. because it has not been polled for a while) the connection
+ * is shut down, so the blocked write fails and the thread is freed.
+ */
+public class EventStreamEntity extends AbstractHttpEntity {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(EventStreamEntity.class);
+
+  public static final ContentType EVENT_STREAM_CONTENT_TYPE =
+      ContentType.create("text/event-stream", PlatformJsonMessageConverter.DEFAULT_CHARSET);
+
+  private static final String HEARTBEAT_FRAME = ": heartbeat\n\n";
+  private static final String DROPPED_FRAME = "event: dropped\ndata: {\"dropped\":%d}\n\n";
+
+  private final EventStream stream;
+  private final StreamService streamService;
+  private final HttpConnection connection;
+  private final int batchSize;
+  private final long batchWindow;
+  private final long heartbeat;
+  private final long maxDuration;
+  private volatile boolean writing;
+
+  public EventStreamEntity(final EventStream stream, final StreamService streamService, final HttpConnection connection, final int batchSize,
+      final long batchWindow, final long heartbeat, final long maxDuration) {
+    this.stream = stream;
+    this.streamService = streamService;
+    this.connection = connection;
+    this.batchSize = batchSize;
+    this.batchWindow = batchWindow;
+    this.heartbeat = heartbeat;
+    this.maxDuration = maxDuration;
+    setContentType(EVENT_STREAM_CONTENT_TYPE.toString());
+    setChunked(true);
+  }
+
+  @Override
+  public void writeTo(final OutputStream out) throws IOException {
+    final long deadline = maxDuration > 0 ? System.currentTimeMillis() + maxDuration : Long.MAX_VALUE;
+    writing = true;
+    stream.onClose(this::shutdownConnection);
+    try {
+      write(out, HEARTBEAT_FRAME);
+      while (!stream.isClosed() && System.currentTimeMillis() < deadline) {
+        final List<String> events = stream.poll(batchSize, heartbeat);
+        if (!events.isEmpty() && events.size() < batchSize && batchWindow > 0) {
+          events.addAll(stream.poll(batchSize - events.size(), batchWindow));
+        }
+
+        final long dropped = stream.drainDroppedEvents();
+        if (dropped > 0) {
+          write(out, String.format(DROPPED_FRAME, dropped));
+        }
+
+        write(out, events.isEmpty() ? HEARTBEAT_FRAME : buildDataFrame(events));
+      }
+    } catch (final InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    } catch (final IOException ioe) {
+      LOGGER.debug("Event stream of {} closed by the client: {}", stream.getEntityId(), ioe.getMessage());
+    } finally {
+      writing = false;
+      streamService.close(stream);
+    }
+  }
+
+  private void shutdownConnection() {
+    if (writing && connection != null) {
+      LOGGER.info("Event stream of {} closed while it was being written. Its connection is shut down", stream.getEntityId());
+      try {
+        connection.shutdown();
+      } catch (final IOException e) {
+        LOGGER.debug("Error shutting down connection of event stream of {}: {}", stream.getEntityId(), e.getMessage());
+      }
+    }
+  }
+
+  private String buildDataFrame(final List<String> events) {
+    final StringBuilder sb = new StringBuilder("data: [");
+    for (int i = 0; i < events.size(); i++) {
+      sb.append(i > 0 ? "," : "").append(events.get(i));
+    }
+    return sb.append("]\n\n").toString();
+  }
+
+  private void write(final OutputStream out, final String frame) throws IOException {
+    out.write(frame.getBytes(PlatformJsonMessageConverter.DEFAULT_CHARSET));
+    out.flush();
+  }
+
+  @Override
+  public boolean isRepeatable() {
+    return false;
+  }
+
+  @Override
+  public long getContentLength() {
+    return -1;
+  }
+
+  @Override
+  public InputStream getContent() {
+    throw new UnsupportedOperationException("Event stream content can only be written");
+  }
+
+  @Override
+  public boolean isStreaming() {
+    return true;
+  }
+}
@@ -30,6 +30,7 @@ package org.sentilo.platform.server.response;
 
 import java.io.ByteArrayOutputStream;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
@@ -53,4 +54,12 @@ public class SentiloResponse {
   public void setBody(final ByteArrayOutputStream out, final ContentType contentType) {
     httpResponse.setEntity(new ByteArrayEntity(out.toByteArray(), contentType));
   }
+
+  /**
+   * Sets an entity whose content is written to the client as it is produced, once the request has
+   * been handled.
+   */
+  public void setStream(final HttpEntity entity) {
+    httpResponse.setEntity(entity);
+  }
 }
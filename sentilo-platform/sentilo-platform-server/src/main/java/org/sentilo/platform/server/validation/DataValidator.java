@@ -28,7 +28,9 @@
  */
 package org.sentilo.platform.server.validation;
 
+import org.sentilo.common.domain.QueryFilterParams;
 import org.sentilo.platform.common.domain.DataInputMessage;
+import org.sentilo.platform.common.domain.GeoArea;
 import org.sentilo.platform.common.domain.Observation;
 import org.sentilo.platform.server.exception.MessageValidationException;
 import org.springframework.util.Assert;
@@ -36,6 +38,15 @@ import org.springframework.util.CollectionUtils;
 
 public class DataValidator extends AbstractRequestMessageValidator<DataInputMessage> {
 
+  /** Max number of sensors whose last observations could be requested at once */
+  public static final int MAX_SENSORS = 500;
+
+  /** Max radius, in meters, of the area where sensors could be searched */
+  public static final int MAX_AREA_RADIUS = 50000;
+
+  /** Downsampling always keeps the first and last observations, so at least one more is needed */
+  public static final int MIN_DOWNSAMPLE = 3;
+
   @Override
   public void validateRequestMessageOnPut(final DataInputMessage requestMessage) throws MessageValidationException {
     Assert.notNull(requestMessage, "[Assertion failed] - DataInputMessage argument is required; it must not be null");
@@ -52,4 +63,75 @@ public class DataValidator extends AbstractRequestMessageValidator<DataInputMess
     super.validateRequestMessageOnPut(requestMessage);
   }
 
+  @Override
+  public void validateRequestMessageOnGet(final DataInputMessage requestMessage) throws MessageValidationException {
+    if (requestMessage.hasSensors() && requestMessage.getSensors().size() > MAX_SENSORS) {
+      throw new MessageValidationException(String.format("The last observations of up to %d sensors could be requested at once", MAX_SENSORS));
+    }
+
+    if (requestMessage.hasArea()) {
+      validateArea(requestMessage.getArea());
+    }
+
+    if (requestMessage.hasQueryFilters() && requestMessage.getQueryFilters().isSampled()) {
+      validateSampling(requestMessage);
+    }
+
+    super.validateRequestMessageOnGet(requestMessage);
+  }
+
+  private void validateArea(final GeoArea area) throws MessageValidationException {
+    if (area.isBox()) {
+      validateBox(area);
+    }
+
+    if (Math.abs(area.getLatitude()) > 90 || Math.abs(area.getLongitude()) > 180) {
+      throw new MessageValidationException("Latitude must be between -90 and 90 and longitude between -180 and 180");
+    }
+
+    if (area.getRadius() <= 0 || area.getRadius() > MAX_AREA_RADIUS) {
+      throw new MessageValidationException(String.format("Sensors could only be searched within an area of up to %d meters of radius", MAX_AREA_RADIUS));
+    }
+  }
+
+  /**
+   * Corners of a box must be valid positions, with the south-west one below and to the left of the
+   * north-east one. Boxes crossing the antimeridian are rejected as the area searched would be the
+   * rest of the world: they have to be requested as two boxes, one on each side.
+   */
+  private void validateBox(final GeoArea area) throws MessageValidationException {
+    if (Math.abs(area.getSwLatitude()) > 90 || Math.abs(area.getNeLatitude()) > 90 || Math.abs(area.getSwLongitude()) > 180
+        || Math.abs(area.getNeLongitude()) > 180) {
+      throw new MessageValidationException("Latitude must be between -90 and 90 and longitude between -180 and 180");
+    }
+
+    if (area.getSwLatitude() >= area.getNeLatitude()) {
+      throw new MessageValidationException("Latitude of the south-west corner of the box must be lower than the north-east one");
+    }
+
+    if (area.getSwLongitude() >= area.getNeLongitude()) {
+      throw new MessageValidationException(
+          "Longitude of the south-west corner of the box must be lower than the north-east one. Boxes crossing the antimeridian must be split in two");
+    }
+  }
+
+  private void validateSampling(final DataInputMessage requestMessage) throws MessageValidationException {
+    final QueryFilterParams filters = requestMessage.getQueryFilters();
+    if (requestMessage.hasSensors() || requestMessage.hasArea()) {
+      throw new MessageValidationException("Observations could not be aggregated or downsampled when they are requested for a list of sensors");
+    }
+
+    if (filters.getAggregation() != null && filters.getDownsample() != null) {
+      throw new MessageValidationException("Parameters aggregate and downsample could not be used at the same time");
+    }
+
+    if (filters.getAggregation() != null && (filters.getInterval() == null || filters.getInterval() <= 0)) {
+      throw new MessageValidationException("To aggregate observations is mandatory to fill in the interval parameter with a positive value");
+    }
+
+    if (filters.getDownsample() != null && filters.getDownsample() < MIN_DOWNSAMPLE) {
+      throw new MessageValidationException(String.format("Observations could not be downsampled to less than %d points", MIN_DOWNSAMPLE));
+    }
+  }
+
 }
@@ -29,6 +29,7 @@
 package org.sentilo.platform.server.test.converter;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
@@ -50,6 +51,7 @@ import org.sentilo.platform.common.domain.DataInputMessage;
 import org.sentilo.platform.common.domain.Observation;
 import org.sentilo.platform.common.exception.PlatformException;
 import org.sentilo.platform.server.converter.DataConverter;
+import org.sentilo.platform.server.exception.MessageValidationException;
 import org.sentilo.platform.server.request.SentiloRequest;
 import org.sentilo.platform.server.request.SentiloResource;
 import org.sentilo.platform.server.response.SentiloResponse;
@@ -121,6 +123,41 @@ public class DataParserTest {
     assertEquals(message.getQueryFilters().getTo(), DateUtils.stringToDate(to));
   }
 
+  @Test
+  public void parseNearGetRequest() throws Exception {
+    when(resource.getParts()).thenReturn(new String[0]);
+    when(sentiloRequest.getRequestParameter("near")).thenReturn("41.3851,2.1734");
+    when(sentiloRequest.getRequestParameter("radius")).thenReturn("500");
+
+    final DataInputMessage message = parser.parseGetRequest(sentiloRequest);
+
+    assertTrue(message.hasArea());
+    assertEquals(41.3851, message.getArea().getLatitude(), 0);
+    assertEquals(2.1734, message.getArea().getLongitude(), 0);
+    assertEquals(500, message.getArea().getRadius(), 0);
+  }
+
+  @Test
+  public void parseBoxGetRequest() throws Exception {
+    when(resource.getParts()).thenReturn(new String[0]);
+    when(sentiloRequest.getRequestParameter("box")).thenReturn("41.38,2.17,41.39,2.18");
+
+    final DataInputMessage message = parser.parseGetRequest(sentiloRequest);
+
+    assertTrue(message.getArea().isBox());
+    assertEquals(41.385, message.getArea().getLatitude(), 0.0001);
+    assertTrue(message.getArea().contains(41.3851, 2.1734));
+    assertFalse(message.getArea().contains(41.3851, 2.1834));
+  }
+
+  @Test(expected = MessageValidationException.class)
+  public void parseNearGetRequestWithoutRadius() throws Exception {
+    when(resource.getParts()).thenReturn(new String[0]);
+    when(sentiloRequest.getRequestParameter("near")).thenReturn("41.3851,2.1734");
+
+    parser.parseGetRequest(sentiloRequest);
+  }
+
   @Test
   public void parsePutObservationsList() throws Exception {
     final String json =
@@ -53,6 +53,7 @@ import org.sentilo.platform.common.domain.NotificationParams;
 import org.sentilo.platform.common.domain.OrderSubscription;
 import org.sentilo.platform.common.domain.Subscription;
 import org.sentilo.platform.server.converter.SubscribeConverter;
+import org.sentilo.platform.server.exception.MessageValidationException;
 import org.sentilo.platform.server.request.SentiloRequest;
 import org.sentilo.platform.server.request.SentiloResource;
 import org.sentilo.platform.server.response.SentiloResponse;
@@ -202,4 +203,34 @@ public class SubscribeParserTest {
 
     return Arrays.asList(subscriptions);
   }
+
+  @Test
+  public void parseStreamRequest() {
+    when(sentiloRequest.getRequestParameter("topics")).thenReturn("data/prov1/sensor1,order/prov2,alarm/alert1");
+
+    final List<Subscription> subscriptions = parser.parseStreamRequest(sentiloRequest);
+
+    assertEquals(3, subscriptions.size());
+    assertTrue(subscriptions.get(0) instanceof DataSubscription);
+    assertEquals("prov1", ((DataSubscription) subscriptions.get(0)).getProviderId());
+    assertEquals("sensor1", ((DataSubscription) subscriptions.get(0)).getSensorId());
+    assertTrue(subscriptions.get(1) instanceof OrderSubscription);
+    assertEquals("prov2", subscriptions.get(1).getOwnerEntityId());
+    assertNull(((OrderSubscription) subscriptions.get(1)).getSensorId());
+    assertTrue(subscriptions.get(2) instanceof AlarmSubscription);
+    assertEquals("alert1", ((AlarmSubscription) subscriptions.get(2)).getAlertId());
+    assertNull(subscriptions.get(0).getNotificationParams());
+  }
+
+  @Test(expected = MessageValidationException.class)
+  public void parseStreamRequestWithInvalidTopic() {
+    when(sentiloRequest.getRequestParameter("topics")).thenReturn("data/prov1/sensor1,foo/prov2");
+
+    parser.parseStreamRequest(sentiloRequest);
+  }
+
+  @Test(expected = MessageValidationException.class)
+  public void parseStreamRequestWithoutTopics() {
+    parser.parseStreamRequest(sentiloRequest);
+  }
 }
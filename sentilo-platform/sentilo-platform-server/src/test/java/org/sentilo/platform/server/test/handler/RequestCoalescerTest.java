@@ -0,0 +1,247 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.server.test.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.sentilo.platform.common.exception.PlatformException;
+import org.sentilo.platform.server.handler.RequestCoalescer;
+import org.sentilo.platform.server.request.SentiloRequest;
+import org.sentilo.platform.server.request.SentiloResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class RequestCoalescerTest {
+
+  private static final int READERS = 4;
+
+  private RequestCoalescer coalescer;
+  private ExecutorService executor;
+
+  @Mock
+  private SentiloRequest request;
+  @Mock
+  private SentiloResource resource;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    coalescer = new RequestCoalescer();
+    executor = Executors.newFixedThreadPool(READERS);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void identicalReadsInFlightAreShared() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger executions = new AtomicInteger();
+    final List<String> result = new ArrayList<String>();
+    final Callable<List<String>> read = new Callable<List<String>>() {
+
+      @Override
+      public List<String> call() throws Exception {
+        executions.incrementAndGet();
+        release.await(5, TimeUnit.SECONDS);
+        return result;
+      }
+    };
+
+    final List<Future<List<String>>> futures = submitReaders("/data/provider1/sensor1", read);
+    waitForFollowers(READERS - 1);
+    release.countDown();
+
+    for (final Future<List<String>> future : futures) {
+      assertSame(result, future.get(5, TimeUnit.SECONDS));
+    }
+    assertEquals(1, executions.get());
+    assertEquals(READERS - 1, coalescer.getCoalescedReads());
+    assertEquals(0, coalescer.getInFlightReads());
+  }
+
+  @Test
+  public void sharedResultIsHandedToFollowers() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger sharedResults = new AtomicInteger();
+    final String result = "value";
+    final Callable<String> read = new Callable<String>() {
+
+      @Override
+      public String call() throws Exception {
+        release.await(5, TimeUnit.SECONDS);
+        return result;
+      }
+    };
+
+    final List<Future<String>> futures = new ArrayList<Future<String>>();
+    for (int i = 0; i < READERS; i++) {
+      futures.add(executor.submit(new Callable<String>() {
+
+        @Override
+        public String call() {
+          return coalescer.execute("/data/provider1", read, value -> {
+            assertSame(result, value);
+            sharedResults.incrementAndGet();
+          });
+        }
+      }));
+    }
+    waitForFollowers(READERS - 1);
+    release.countDown();
+
+    for (final Future<String> future : futures) {
+      assertSame(result, future.get(5, TimeUnit.SECONDS));
+    }
+    assertEquals(READERS - 1, sharedResults.get());
+  }
+
+  @Test
+  public void readsAreNotSharedOnceFinished() {
+    final AtomicInteger executions = new AtomicInteger();
+    final Callable<Integer> read = new Callable<Integer>() {
+
+      @Override
+      public Integer call() {
+        return executions.incrementAndGet();
+      }
+    };
+
+    assertEquals(Integer.valueOf(1), coalescer.execute("/data/provider1", read));
+    assertEquals(Integer.valueOf(2), coalescer.execute("/data/provider1", read));
+    assertEquals(0, coalescer.getCoalescedReads());
+  }
+
+  @Test
+  public void errorIsSharedWithFollowers() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final Callable<String> read = new Callable<String>() {
+
+      @Override
+      public String call() throws Exception {
+        release.await(5, TimeUnit.SECONDS);
+        throw new PlatformException(500, "Redis unavailable");
+      }
+    };
+
+    final List<Future<String>> futures = submitReaders("/order/provider1", read);
+    waitForFollowers(READERS - 1);
+    release.countDown();
+
+    for (final Future<String> future : futures) {
+      try {
+        future.get(5, TimeUnit.SECONDS);
+        fail("Read error must be thrown to every request");
+      } catch (final ExecutionException ee) {
+        assertEquals(PlatformException.class, ee.getCause().getClass());
+      }
+    }
+    assertEquals(0, coalescer.getInFlightReads());
+  }
+
+  @Test
+  public void disabled() {
+    ReflectionTestUtils.setField(coalescer, "enabled", false);
+    final Callable<String> read = new Callable<String>() {
+
+      @Override
+      public String call() {
+        return "value";
+      }
+    };
+
+    assertEquals("value", coalescer.execute("/alarm/alert1", read));
+    assertEquals(0, coalescer.getInFlightReads());
+  }
+
+  @Test
+  public void buildKey() {
+    final Map<String, String> parameters = new LinkedHashMap<String, String>();
+    parameters.put("limit", "5");
+    parameters.put("from", "10/01/2024T10:00:00");
+    final Map<String, String> sortedParameters = new LinkedHashMap<String, String>();
+    sortedParameters.put("from", "10/01/2024T10:00:00");
+    sortedParameters.put("limit", "5");
+
+    when(request.getHandlerPath()).thenReturn("/data");
+    when(request.getResource()).thenReturn(resource);
+    when(resource.getPath()).thenReturn("provider1/sensor1");
+    when(request.getParameters()).thenReturn(parameters, sortedParameters);
+
+    final String key = RequestCoalescer.buildKey(request);
+    assertEquals("/data/provider1/sensor1?from=10/01/2024T10:00:00&limit=5", key);
+    assertEquals(key, RequestCoalescer.buildKey(request));
+    assertNotEquals(key, RequestCoalescer.buildKey(request, "app1"));
+    assertEquals(key + "#app1", RequestCoalescer.buildKey(request, "app1"));
+  }
+
+  private <T> List<Future<T>> submitReaders(final String key, final Callable<T> read) {
+    final List<Future<T>> futures = new ArrayList<Future<T>>();
+    for (int i = 0; i < READERS; i++) {
+      futures.add(executor.submit(new Callable<T>() {
+
+        @Override
+        public T call() {
+          return coalescer.execute(key, read);
+        }
+      }));
+    }
+    return futures;
+  }
+
+  private void waitForFollowers(final int followers) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 5000;
+    while (coalescer.getCoalescedReads() < followers && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+}
@@ -45,6 +45,9 @@ import org.sentilo.common.domain.PlatformPerformance;
 import org.sentilo.common.enums.HttpMethod;
 import org.sentilo.platform.common.domain.AdminInputMessage;
 import org.sentilo.platform.common.domain.AdminInputMessage.AdminType;
+import org.sentilo.platform.common.domain.HeavyHitters;
+import org.sentilo.platform.common.domain.PurgeStatus;
+import org.sentilo.platform.common.domain.RedisMetrics;
 import org.sentilo.platform.common.domain.Statistics;
 import org.sentilo.platform.common.exception.PlatformException;
 import org.sentilo.platform.common.service.AdminService;
@@ -206,6 +209,48 @@ public class AdminHandlerTest extends AbstractBaseHandlerTest {
     verify(parser).writeResponse(response, metricsMessage);
   }
 
+  @Test
+  public void redisRequest() throws Exception {
+    final RedisMetrics redisMetrics = new RedisMetrics();
+    when(parser.parseGetRequest(request)).thenReturn(message);
+    when(message.getType()).thenReturn(AdminType.redis);
+    when(service.getRedisMetrics()).thenReturn(redisMetrics);
+
+    simulateRequest(HttpMethod.GET, "sentilo-catalog", "/admin/redis");
+    handler.manageRequest(request, response);
+
+    verify(parser).parseGetRequest(request);
+    verify(parser).writeResponse(response, redisMetrics);
+  }
+
+  @Test
+  public void hittersRequest() throws Exception {
+    final HeavyHitters heavyHitters = new HeavyHitters();
+    when(parser.parseGetRequest(request)).thenReturn(message);
+    when(message.getType()).thenReturn(AdminType.hitters);
+    when(service.getHeavyHitters()).thenReturn(heavyHitters);
+
+    simulateRequest(HttpMethod.GET, "sentilo-catalog", "/admin/hitters");
+    handler.manageRequest(request, response);
+
+    verify(parser).parseGetRequest(request);
+    verify(parser).writeResponse(response, heavyHitters);
+  }
+
+  @Test
+  public void purgeRequest() throws Exception {
+    final PurgeStatus purgeStatus = new PurgeStatus();
+    when(parser.parseGetRequest(request)).thenReturn(message);
+    when(message.getType()).thenReturn(AdminType.purge);
+    when(service.getPurgeStatus()).thenReturn(purgeStatus);
+
+    simulateRequest(HttpMethod.GET, "sentilo-catalog", "/admin/purge");
+    handler.manageRequest(request, response);
+
+    verify(parser).parseGetRequest(request);
+    verify(parser).writeResponse(response, purgeStatus);
+  }
+
   @Override
   protected HandlerPath getHandlerPath() {
     return HandlerPath.ADMIN;
@@ -42,6 +42,7 @@ import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.sentilo.common.enums.HttpMethod;
 import org.sentilo.platform.common.domain.Alarm;
 import org.sentilo.platform.common.domain.AlarmInputMessage;
@@ -53,6 +54,7 @@ import org.sentilo.platform.common.service.AlarmService;
 import org.sentilo.platform.server.auth.AuthorizationService;
 import org.sentilo.platform.server.converter.AlarmConverter;
 import org.sentilo.platform.server.handler.HandlerPath;
+import org.sentilo.platform.server.handler.RequestCoalescer;
 import org.sentilo.platform.server.handler.impl.AlarmHandler;
 import org.sentilo.platform.server.request.SentiloRequest;
 import org.sentilo.platform.server.request.SentiloResource;
@@ -63,6 +65,8 @@ public class AlarmHandlerTest extends AbstractBaseHandlerTest {
   private static final String PROVIDER1 = "provider1";
   @InjectMocks
   private AlarmHandler handler;
+  @Spy
+  private RequestCoalescer requestCoalescer = new RequestCoalescer();
   @Mock
   private AlarmService service;
   @Mock
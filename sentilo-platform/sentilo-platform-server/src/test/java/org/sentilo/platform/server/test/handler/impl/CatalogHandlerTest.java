@@ -41,6 +41,7 @@ import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.sentilo.common.domain.CatalogDeleteInputMessage;
 import org.sentilo.common.domain.CatalogInputMessage;
 import org.sentilo.common.domain.CatalogResponseMessage;
@@ -54,6 +55,7 @@ import org.sentilo.platform.server.auth.AuthorizationService;
 import org.sentilo.platform.server.converter.CatalogConverter;
 import org.sentilo.platform.server.exception.ForbiddenAccessException;
 import org.sentilo.platform.server.handler.HandlerPath;
+import org.sentilo.platform.server.handler.RequestCoalescer;
 import org.sentilo.platform.server.handler.impl.CatalogHandler;
 import org.sentilo.platform.server.request.SentiloRequest;
 import org.sentilo.platform.server.request.SentiloResource;
@@ -65,6 +67,8 @@ public class CatalogHandlerTest extends AbstractBaseHandlerTest {
   private static final String PROVIDER2 = "provider2";
   @InjectMocks
   private CatalogHandler handler;
+  @Spy
+  private RequestCoalescer requestCoalescer = new RequestCoalescer();
   @Mock
   private CatalogService service;
   @Mock
@@ -30,10 +30,12 @@ package org.sentilo.platform.server.test.handler.impl;
 
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Assert;
@@ -42,9 +44,11 @@ import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.sentilo.common.enums.HttpMethod;
 import org.sentilo.platform.common.domain.DataInputMessage;
 import org.sentilo.platform.common.domain.EntityMetadataMessage;
+import org.sentilo.platform.common.domain.GeoArea;
 import org.sentilo.platform.common.domain.Observation;
 import org.sentilo.platform.common.exception.EventRejectedException;
 import org.sentilo.platform.common.exception.PlatformException;
@@ -53,6 +57,7 @@ import org.sentilo.platform.common.service.DataService;
 import org.sentilo.platform.server.auth.AuthorizationService;
 import org.sentilo.platform.server.converter.DataConverter;
 import org.sentilo.platform.server.handler.HandlerPath;
+import org.sentilo.platform.server.handler.RequestCoalescer;
 import org.sentilo.platform.server.handler.impl.DataHandler;
 import org.sentilo.platform.server.request.SentiloRequest;
 import org.sentilo.platform.server.request.SentiloResource;
@@ -63,6 +68,8 @@ public class DataHandlerTest extends AbstractBaseHandlerTest {
   private static final String PROVIDER1 = "provider1";
   @InjectMocks
   private DataHandler handler;
+  @Spy
+  private RequestCoalescer requestCoalescer = new RequestCoalescer();
   @Mock
   private DataService service;
   @Mock
@@ -156,6 +163,57 @@ public class DataHandlerTest extends AbstractBaseHandlerTest {
     verify(parser).writeResponse(request, response, observations);
   }
 
+  @Test
+  public void areaRequest() throws Exception {
+    final Observation readable = new Observation("prov1", "sensor1", "1", System.currentTimeMillis());
+    final Observation forbidden = new Observation("prov2", "sensor1", "1", System.currentTimeMillis());
+    final DataInputMessage message = new DataInputMessage(GeoArea.circle(41.3851, 2.1734, 500), null, null, null);
+    when(parser.isAreaRequest(request)).thenReturn(true);
+    when(parser.parseGetRequest(request)).thenReturn(message);
+    when(service.getLastObservations(message)).thenReturn(Arrays.asList(readable, forbidden));
+    when(authorizationService.hasAccessToRead(PROVIDER1, "prov2")).thenReturn(false);
+
+    simulateRequest(HttpMethod.GET, PROVIDER1, "/data");
+    handler.manageRequest(request, response);
+
+    verify(parser).writeResponse(request, response, Arrays.asList(readable));
+  }
+
+  @Test
+  public void boxCrossingAntimeridianRequest() throws Exception {
+    boolean errorThrown = false;
+    final DataInputMessage message = new DataInputMessage(GeoArea.box(-18.3, 177.2, -16.1, -179.8), null, null, null);
+    when(parser.isAreaRequest(request)).thenReturn(true);
+    when(parser.parseGetRequest(request)).thenReturn(message);
+    simulateRequest(HttpMethod.GET, PROVIDER1, "/data");
+    try {
+      handler.manageRequest(request, response);
+    } catch (final PlatformException e) {
+      assertBadRequest(e);
+      errorThrown = true;
+    } finally {
+      Assert.assertTrue(errorThrown);
+    }
+  }
+
+  @Test
+  public void boxWithSwappedCornersRequest() throws Exception {
+    boolean errorThrown = false;
+    final DataInputMessage message = new DataInputMessage(GeoArea.box(41.39, 2.17, 41.38, 2.18), null, null, null);
+    when(parser.isAreaRequest(request)).thenReturn(true);
+    when(parser.parseGetRequest(request)).thenReturn(message);
+    simulateRequest(HttpMethod.GET, PROVIDER1, "/data");
+    try {
+      handler.manageRequest(request, response);
+    } catch (final PlatformException e) {
+      assertBadRequest(e);
+      errorThrown = true;
+    } finally {
+      Assert.assertTrue(errorThrown);
+    }
+    verify(service, never()).getLastObservations(message);
+  }
+
   @Test
   public void simulatePutRequest() throws Exception {
     final DataInputMessage message = new DataInputMessage("provider1", "sensor1", getObservations());
@@ -0,0 +1,174 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.server.test.handler.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.http.HttpStatus;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.sentilo.common.enums.HttpMethod;
+import org.sentilo.platform.common.domain.AlarmSubscription;
+import org.sentilo.platform.common.domain.DataSubscription;
+import org.sentilo.platform.common.domain.EntityMetadataMessage;
+import org.sentilo.platform.common.domain.Subscription;
+import org.sentilo.platform.common.exception.PlatformException;
+import org.sentilo.platform.common.security.repository.EntityMetadataRepository;
+import org.sentilo.platform.common.service.AlarmService;
+import org.sentilo.platform.common.service.EventStream;
+import org.sentilo.platform.common.service.StreamService;
+import org.sentilo.platform.server.auth.AuthorizationService;
+import org.sentilo.platform.server.converter.SubscribeConverter;
+import org.sentilo.platform.server.handler.HandlerPath;
+import org.sentilo.platform.server.handler.impl.StreamHandler;
+import org.sentilo.platform.server.request.SentiloRequest;
+import org.sentilo.platform.server.request.SentiloResource;
+import org.sentilo.platform.server.response.EventStreamEntity;
+import org.sentilo.platform.server.response.SentiloResponse;
+
+public class StreamHandlerTest extends AbstractBaseHandlerTest {
+
+  private static final String CLIENT = "app1";
+  @InjectMocks
+  private StreamHandler handler;
+  @Mock
+  private StreamService streamService;
+  @Mock
+  private AlarmService alarmService;
+  @Mock
+  private EventStream stream;
+  @Mock
+  private SentiloRequest request;
+  @Mock
+  private SentiloResource resource;
+  @Mock
+  private SentiloResponse response;
+  @Mock
+  private SubscribeConverter parser;
+  @Mock
+  private AuthorizationService authorizationService;
+  @Mock
+  private EntityMetadataRepository entityMetadataRepository;
+  @Mock
+  private EntityMetadataMessage entityMetadataMessage;
+
+  private List<Subscription> subscriptions;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+
+    subscriptions = Arrays.<Subscription>asList(new DataSubscription(CLIENT, "prov1", "sensor1", null),
+        new AlarmSubscription(CLIENT, null, "alert1", null));
+    when(request.getResource()).thenReturn(resource);
+    when(parser.parseStreamRequest(request)).thenReturn(subscriptions);
+    when(alarmService.getAlertOwner("alert1")).thenReturn("prov2");
+    when(authorizationService.hasAccessToRead(anyString(), anyString())).thenReturn(true);
+    when(entityMetadataRepository.getEntityMetadataFromId(anyString())).thenReturn(entityMetadataMessage);
+  }
+
+  @Test
+  public void getRequest() throws Exception {
+    when(streamService.open(CLIENT, subscriptions)).thenReturn(stream);
+
+    simulateRequest(HttpMethod.GET, CLIENT, "/subscribe/stream");
+    handler.manageRequest(request, response);
+
+    verify(authorizationService).hasAccessToRead(CLIENT, "prov1");
+    verify(authorizationService).hasAccessToRead(CLIENT, "prov2");
+    verify(streamService).open(CLIENT, subscriptions);
+    verify(response).setStream(any(EventStreamEntity.class));
+  }
+
+  @Test
+  public void getRequestWithoutReadAccess() throws Exception {
+    when(authorizationService.hasAccessToRead(CLIENT, "prov2")).thenReturn(false);
+
+    simulateRequest(HttpMethod.GET, CLIENT, "/subscribe/stream");
+    try {
+      handler.manageRequest(request, response);
+      fail("Must throw a forbidden exception");
+    } catch (final PlatformException e) {
+      assertForbiddenCall(e);
+    }
+
+    verify(streamService, never()).open(anyString(), any(List.class));
+  }
+
+  @Test
+  public void getRequestWhenStreamsAreExhausted() throws Exception {
+    simulateRequest(HttpMethod.GET, CLIENT, "/subscribe/stream");
+    try {
+      handler.manageRequest(request, response);
+      fail("Must throw a service unavailable exception");
+    } catch (final PlatformException e) {
+      assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, e.getHttpStatus());
+    }
+
+    verify(response, never()).setStream(any(EventStreamEntity.class));
+  }
+
+  @Test
+  public void putRequest() throws Exception {
+    simulateRequest(HttpMethod.PUT, CLIENT, "/subscribe/stream");
+    try {
+      handler.manageRequest(request, response);
+      fail("Must throw a method not allowed exception");
+    } catch (final PlatformException e) {
+      assertMethodNotAllowed(e);
+    }
+  }
+
+  @Override
+  protected HandlerPath getHandlerPath() {
+    return HandlerPath.STREAM;
+  }
+
+  @Override
+  protected SentiloResource getSentiloResource() {
+    return resource;
+  }
+
+  @Override
+  protected SentiloRequest getSentiloRequest() {
+    return request;
+  }
+}
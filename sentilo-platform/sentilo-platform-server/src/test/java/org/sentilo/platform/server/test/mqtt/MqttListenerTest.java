@@ -0,0 +1,317 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.server.test.mqtt;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sentilo.platform.common.domain.DataInputMessage;
+import org.sentilo.platform.common.domain.EntityMetadataMessage;
+import org.sentilo.platform.common.security.RequesterContext;
+import org.sentilo.platform.common.security.RequesterContextHolder;
+import org.sentilo.platform.common.security.repository.EntityMetadataRepository;
+import org.sentilo.platform.common.service.DataService;
+import org.sentilo.platform.server.auth.AuthenticationService;
+import org.sentilo.platform.server.auth.AuthorizationService;
+import org.sentilo.platform.server.exception.UnauthorizedException;
+import org.sentilo.platform.server.mqtt.MqttCodec;
+import org.sentilo.platform.server.mqtt.MqttListener;
+import org.sentilo.platform.server.mqtt.MqttObservationBatcher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class MqttListenerTest {
+
+  private static final String TOKEN = "token-prov1";
+  private static final String PROVIDER = "prov1";
+
+  @Mock
+  private AuthenticationService authenticationService;
+  @Mock
+  private AuthorizationService authorizationService;
+  @Mock
+  private DataService dataService;
+  @Mock
+  private EntityMetadataRepository entityMetadataRepository;
+
+  private MqttListener listener;
+  private Socket socket;
+  private DataInputStream in;
+
+  @Before
+  public void setUp() throws Exception {
+    MockitoAnnotations.initMocks(this);
+
+    final EntityMetadataMessage identity = new EntityMetadataMessage();
+    identity.setEntity(PROVIDER);
+    identity.setToken(TOKEN);
+    doAnswer(new Answer<Void>() {
+
+      @Override
+      public Void answer(final InvocationOnMock invocation) {
+        RequesterContextHolder.setContext(new RequesterContext(identity));
+        return null;
+      }
+    }).when(authenticationService).checkCredential(TOKEN);
+    doThrow(new UnauthorizedException("Invalid credential")).when(authenticationService).checkCredential("wrong");
+    when(authorizationService.hasAccessToWrite(PROVIDER, PROVIDER)).thenReturn(true);
+    when(entityMetadataRepository.getEntityMetadataFromId(PROVIDER)).thenReturn(identity);
+
+    final MqttObservationBatcher batcher = new MqttObservationBatcher();
+    ReflectionTestUtils.setField(batcher, "dataService", dataService);
+    ReflectionTestUtils.setField(batcher, "entityMetadataRepository", entityMetadataRepository);
+    ReflectionTestUtils.setField(batcher, "batchWindow", 10L);
+    ReflectionTestUtils.setField(batcher, "batchSize", 1);
+    ReflectionTestUtils.setField(batcher, "queueSize", 1);
+
+    listener = new MqttListener();
+    ReflectionTestUtils.setField(listener, "authenticationService", authenticationService);
+    ReflectionTestUtils.setField(listener, "authorizationService", authorizationService);
+    ReflectionTestUtils.setField(listener, "batcher", batcher);
+    ReflectionTestUtils.setField(listener, "port", 0);
+    listener.start();
+
+    socket = new Socket("localhost", listener.getPort());
+    socket.setSoTimeout(5000);
+    in = new DataInputStream(socket.getInputStream());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    socket.close();
+    listener.stop();
+  }
+
+  @Test
+  public void publish() throws Exception {
+    connect(TOKEN);
+    assertArrayEquals(new byte[] {0x20, 0x02, 0x00, MqttCodec.CONNECTION_ACCEPTED}, read(4));
+
+    publish("sentilo/data/prov1/sensor1", "12.5", 7);
+    assertArrayEquals(new byte[] {0x40, 0x02, 0x00, 0x07}, read(4));
+
+    final ArgumentCaptor<DataInputMessage> captor = ArgumentCaptor.forClass(DataInputMessage.class);
+    verify(dataService, timeout(2000)).setObservations(captor.capture());
+    assertEquals(PROVIDER, captor.getValue().getProviderId());
+    assertEquals(1, captor.getValue().getObservations().size());
+    assertEquals("sensor1", captor.getValue().getObservations().get(0).getSensor());
+    assertEquals("12.5", captor.getValue().getObservations().get(0).getValue());
+  }
+
+  @Test
+  public void publishSeveralSensors() throws Exception {
+    connect(TOKEN);
+    read(4);
+
+    publish("sentilo/data/prov1", "{\"sensors\":[{\"sensor\":\"s1\",\"observations\":[{\"value\":\"1\"}]},"
+        + "{\"sensor\":\"s2\",\"observations\":[{\"value\":\"2\"}]}]}", 8);
+    assertArrayEquals(new byte[] {0x40, 0x02, 0x00, 0x08}, read(4));
+
+    final ArgumentCaptor<DataInputMessage> captor = ArgumentCaptor.forClass(DataInputMessage.class);
+    verify(dataService, timeout(2000)).setObservations(captor.capture());
+    assertEquals(2, captor.getValue().getObservations().size());
+  }
+
+  @Test
+  public void acknowledgeInReceiveOrder() throws Exception {
+    connect(TOKEN);
+    read(4);
+
+    publish("sentilo/data/prov1/sensor1", "12.5", 7);
+    publish("sentilo/other/prov1", "12.5", 8);
+
+    assertArrayEquals(new byte[] {0x40, 0x02, 0x00, 0x07, 0x40, 0x02, 0x00, 0x08}, read(8));
+  }
+
+  @Test
+  public void stopReadingWhileQueueIsFull() throws Exception {
+    final CountDownLatch storing = new CountDownLatch(1);
+    doAnswer(new Answer<Void>() {
+
+      @Override
+      public Void answer(final InvocationOnMock invocation) throws InterruptedException {
+        storing.await();
+        return null;
+      }
+    }).when(dataService).setObservations(any(DataInputMessage.class));
+    connect(TOKEN);
+    read(4);
+
+    publish("sentilo/data/prov1/sensor1", "1", 1);
+    publish("sentilo/data/prov1/sensor1", "2", 2);
+    publish("sentilo/data/prov1/sensor1", "3", 3);
+    verify(dataService, timeout(2000)).setObservations(any(DataInputMessage.class));
+    storing.countDown();
+
+    assertArrayEquals(new byte[] {0x40, 0x02, 0x00, 0x01, 0x40, 0x02, 0x00, 0x02, 0x40, 0x02, 0x00, 0x03}, read(12));
+    verify(dataService, times(3)).setObservations(any(DataInputMessage.class));
+  }
+
+  @Test
+  public void refuseInvalidCredential() throws Exception {
+    connect("wrong");
+
+    assertArrayEquals(new byte[] {0x20, 0x02, 0x00, MqttCodec.BAD_USERNAME_OR_PASSWORD}, read(4));
+    assertEquals(-1, in.read());
+  }
+
+  @Test
+  public void slowAuthenticationDoesNotStallOtherConnections() throws Exception {
+    final CountDownLatch authenticating = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    doAnswer(new Answer<Void>() {
+
+      @Override
+      public Void answer(final InvocationOnMock invocation) throws InterruptedException {
+        authenticating.countDown();
+        release.await();
+        throw new UnauthorizedException("Invalid credential");
+      }
+    }).when(authenticationService).checkCredential("slow");
+
+    try (final Socket slowSocket = new Socket("localhost", listener.getPort())) {
+      slowSocket.setSoTimeout(5000);
+      send(slowSocket, 0x10, connectBody("slow"));
+      authenticating.await();
+
+      connect(TOKEN);
+      assertArrayEquals(new byte[] {0x20, 0x02, 0x00, MqttCodec.CONNECTION_ACCEPTED}, read(4));
+      publish("sentilo/data/prov1/sensor1", "12.5", 7);
+      assertArrayEquals(new byte[] {0x40, 0x02, 0x00, 0x07}, read(4));
+
+      release.countDown();
+      final byte[] connack = new byte[4];
+      new DataInputStream(slowSocket.getInputStream()).readFully(connack);
+      assertArrayEquals(new byte[] {0x20, 0x02, 0x00, MqttCodec.BAD_USERNAME_OR_PASSWORD}, connack);
+    }
+  }
+
+  @Test
+  public void closeConnectionWithoutWriteAccess() throws Exception {
+    when(authorizationService.hasAccessToWrite(anyString(), anyString())).thenReturn(false);
+    connect(TOKEN);
+    read(4);
+
+    publish("sentilo/data/prov1/sensor1", "12.5", 1);
+
+    assertEquals(-1, in.read());
+    verify(dataService, never()).setObservations(any(DataInputMessage.class));
+  }
+
+  @Test
+  public void ping() throws Exception {
+    connect(TOKEN);
+    read(4);
+
+    socket.getOutputStream().write(new byte[] {(byte) 0xC0, 0x00});
+
+    assertArrayEquals(new byte[] {(byte) 0xD0, 0x00}, read(2));
+  }
+
+  private void connect(final String token) throws IOException {
+    send(0x10, connectBody(token));
+  }
+
+  private ByteArrayOutputStream connectBody(final String token) throws IOException {
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    writeString(body, "MQTT");
+    body.write(4);
+    body.write(0xC2);
+    body.write(0);
+    body.write(60);
+    writeString(body, "device1");
+    writeString(body, "device1");
+    writeString(body, token);
+    return body;
+  }
+
+  private void publish(final String topic, final String payload, final int packetId) throws IOException {
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    writeString(body, topic);
+    body.write(packetId >> 8);
+    body.write(packetId);
+    body.write(payload.getBytes(MqttCodec.UTF8));
+    send(0x32, body);
+  }
+
+  private void send(final int header, final ByteArrayOutputStream body) throws IOException {
+    send(socket, header, body);
+  }
+
+  private void send(final Socket target, final int header, final ByteArrayOutputStream body) throws IOException {
+    final ByteArrayOutputStream packet = new ByteArrayOutputStream();
+    packet.write(header);
+    int length = body.size();
+    do {
+      int digit = length % 128;
+      length /= 128;
+      if (length > 0) {
+        digit |= 0x80;
+      }
+      packet.write(digit);
+    } while (length > 0);
+    body.writeTo(packet);
+    target.getOutputStream().write(packet.toByteArray());
+  }
+
+  private void writeString(final ByteArrayOutputStream out, final String value) throws IOException {
+    final byte[] bytes = value.getBytes(MqttCodec.UTF8);
+    out.write(bytes.length >> 8);
+    out.write(bytes.length);
+    out.write(bytes);
+  }
+
+  private byte[] read(final int length) throws IOException {
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return bytes;
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.server.test.mqtt;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.sentilo.platform.common.domain.DataInputMessage;
+import org.sentilo.platform.common.domain.EntityMetadataMessage;
+import org.sentilo.platform.common.domain.Observation;
+import org.sentilo.platform.common.security.repository.EntityMetadataRepository;
+import org.sentilo.platform.common.service.DataService;
+import org.sentilo.platform.server.mqtt.MqttConnection;
+import org.sentilo.platform.server.mqtt.MqttConnection.PendingAck;
+import org.sentilo.platform.server.mqtt.MqttObservationBatcher;
+import org.sentilo.platform.server.mqtt.MqttObservationBatcher.PendingMessage;
+
+public class MqttObservationBatcherTest {
+
+  @Mock
+  private DataService dataService;
+  @Mock
+  private EntityMetadataRepository entityMetadataRepository;
+  @Mock
+  private MqttConnection connection1;
+  @Mock
+  private MqttConnection connection2;
+  @Mock
+  private EntityMetadataMessage identity;
+
+  @InjectMocks
+  private MqttObservationBatcher batcher;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    when(identity.getEntity()).thenReturn("prov1");
+    when(connection1.getIdentity()).thenReturn(identity);
+    when(connection2.getIdentity()).thenReturn(identity);
+    when(connection1.isOpen()).thenReturn(true);
+    when(connection2.isOpen()).thenReturn(true);
+  }
+
+  @Test
+  public void storeGroupedByProvider() throws Exception {
+    final List<PendingMessage> batch = Arrays.asList(message(connection1, "prov1", "s1", 1), message(connection2, "prov1", "s2", -1),
+        message(connection1, "prov2", "s3", 2));
+
+    batcher.flush(batch);
+
+    final ArgumentCaptor<DataInputMessage> captor = ArgumentCaptor.forClass(DataInputMessage.class);
+    verify(dataService, times(2)).setObservations(captor.capture());
+    assertEquals("prov1", captor.getAllValues().get(0).getProviderId());
+    assertEquals(2, captor.getAllValues().get(0).getObservations().size());
+    assertEquals("prov2", captor.getAllValues().get(1).getProviderId());
+    verify(connection1, times(2)).acknowledge(any(PendingAck.class));
+    verify(connection2, never()).acknowledge(any(PendingAck.class));
+  }
+
+  @Test
+  public void notAcknowledgeWhenStoreFails() throws Exception {
+    doThrow(new RuntimeException("Redis is down")).when(dataService).setObservations(any(DataInputMessage.class));
+
+    batcher.flush(Collections.singletonList(message(connection1, "prov1", "s1", 1)));
+
+    verify(connection1, never()).acknowledge(any(PendingAck.class));
+    verify(connection1).close();
+  }
+
+  private PendingMessage message(final MqttConnection connection, final String providerId, final String sensorId, final int packetId) {
+    return new PendingMessage(connection, providerId, Collections.singletonList(new Observation(providerId, sensorId, "1")),
+        packetId >= 0 ? new PendingAck(packetId) : null);
+  }
+}
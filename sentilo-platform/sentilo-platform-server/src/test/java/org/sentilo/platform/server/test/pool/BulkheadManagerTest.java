@@ -0,0 +1,272 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.server.test.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.sentilo.common.enums.HttpMethod;
+import org.sentilo.platform.common.exception.PlatformException;
+import org.sentilo.platform.common.security.RequesterContext;
+import org.sentilo.platform.common.security.RequesterContextHolder;
+import org.sentilo.platform.server.handler.HandlerPath;
+import org.sentilo.platform.server.pool.BulkheadManager;
+import org.sentilo.platform.server.pool.BulkheadManager.Permit;
+import org.sentilo.platform.server.pool.BulkheadManager.RequestType;
+import org.sentilo.platform.server.request.SentiloRequest;
+
+public class BulkheadManagerTest {
+
+  private BulkheadManager bulkheads;
+  private ExecutorService executor;
+
+  @Mock
+  private SentiloRequest request;
+  @Mock
+  private RequesterContext requesterContext;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    bulkheads = new BulkheadManager();
+    bulkheads.setEnabled(true);
+    bulkheads.setReadPermits(2);
+    bulkheads.setWritePermits(1);
+    bulkheads.setQueueSize(1);
+    bulkheads.setQueueTimeoutMillis(50);
+    bulkheads.setBorrowEnabled(false);
+    bulkheads.setMaxCapacity(10);
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    RequesterContextHolder.clearContext();
+  }
+
+  @Test
+  public void partitionsAreIsolated() {
+    bulkheads.acquire("tenant1", RequestType.READ);
+    bulkheads.acquire("tenant1", RequestType.READ);
+
+    assertRejected("tenant1", RequestType.READ);
+    assertNotNull(bulkheads.acquire("tenant1", RequestType.WRITE));
+    assertNotNull(bulkheads.acquire("tenant2", RequestType.READ));
+    assertEquals(4, bulkheads.getInFlightRequests());
+    assertEquals(1, bulkheads.getRejectedRequests());
+  }
+
+  @Test
+  public void waitingRequestGetsReleasedPermit() throws Exception {
+    bulkheads.setQueueTimeoutMillis(5000);
+    final Permit permit = bulkheads.acquire("tenant1", RequestType.WRITE);
+
+    final Future<Permit> waiting = executor.submit(new Callable<Permit>() {
+
+      @Override
+      public Permit call() {
+        return bulkheads.acquire("tenant1", RequestType.WRITE);
+      }
+    });
+    Thread.sleep(100);
+    assertFalse(waiting.isDone());
+
+    // The queue of the partition is full while the request waits
+    assertRejected("tenant1", RequestType.WRITE);
+
+    bulkheads.release(permit);
+    assertNotNull(waiting.get(5, TimeUnit.SECONDS));
+    assertEquals(1, bulkheads.getInFlightRequests());
+  }
+
+  @Test
+  public void idleCapacityIsBorrowed() {
+    bulkheads.setBorrowEnabled(true);
+    bulkheads.setBorrowReserve(7);
+
+    bulkheads.acquire("tenant1", RequestType.WRITE);
+    final Permit borrowed = bulkheads.acquire("tenant1", RequestType.WRITE);
+    bulkheads.acquire("tenant1", RequestType.WRITE);
+    assertTrue(borrowed.isBorrowed());
+
+    // Capacity reserved is not borrowed, but partitions still get their own permits
+    assertRejected("tenant1", RequestType.WRITE);
+    final Permit own = bulkheads.acquire("tenant2", RequestType.WRITE);
+    assertFalse(own.isBorrowed());
+
+    bulkheads.release(own);
+    bulkheads.release(borrowed);
+    assertTrue(bulkheads.acquire("tenant1", RequestType.WRITE).isBorrowed());
+  }
+
+  @Test
+  public void waitingRequestsAreNotStarvedByBorrowing() throws Exception {
+    bulkheads.setBorrowEnabled(true);
+    bulkheads.setBorrowReserve(7);
+    bulkheads.setQueueTimeoutMillis(5000);
+    final Permit permit = bulkheads.acquire("tenant2", RequestType.WRITE);
+    final Future<Permit> waiting = executor.submit(new Callable<Permit>() {
+
+      @Override
+      public Permit call() {
+        return bulkheads.acquire("tenant2", RequestType.WRITE);
+      }
+    });
+    Thread.sleep(100);
+    bulkheads.setQueueTimeoutMillis(50);
+
+    // Borrowing the last idle thread would take it from the request waiting in tenant2
+    bulkheads.acquire("tenant1", RequestType.WRITE);
+    assertRejected("tenant1", RequestType.WRITE);
+
+    bulkheads.release(permit);
+    assertNotNull(waiting.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void releasedThreadIsOfferedToEveryPartitionThatCanTakeIt() throws Exception {
+    bulkheads.setBorrowEnabled(true);
+    bulkheads.setBorrowReserve(0);
+    bulkheads.setMaxCapacity(4);
+    bulkheads.setQueueSize(2);
+    bulkheads.setQueueTimeoutMillis(5000);
+    final ExecutorService waiters = Executors.newFixedThreadPool(3);
+    try {
+      final Permit permit1 = bulkheads.acquire("tenant1", RequestType.WRITE);
+      bulkheads.acquire("tenant2", RequestType.WRITE);
+      bulkheads.acquire("tenant3", RequestType.WRITE);
+      final Permit permit4 = bulkheads.acquire("tenant4", RequestType.WRITE);
+      final Future<Permit> waiting3 = waiters.submit(acquireTask("tenant3"));
+      Thread.sleep(100);
+      waiters.submit(acquireTask("tenant3"));
+      Thread.sleep(100);
+      final Future<Permit> waiting2 = waiters.submit(acquireTask("tenant2"));
+      Thread.sleep(100);
+
+      // Requests waiting in tenant3 leave it room to borrow the second thread freed, but tenant2,
+      // which is visited first, can't borrow it and must not swallow the wakeup
+      bulkheads.release(permit4);
+      bulkheads.release(permit1);
+
+      assertTrue(waiting3.get(1, TimeUnit.SECONDS).isBorrowed());
+      assertFalse(waiting2.isDone());
+    } finally {
+      waiters.shutdownNow();
+    }
+  }
+
+  @Test
+  public void idlePartitionsAreEvicted() {
+    bulkheads.setAdminPermits(0);
+    final Permit permit = bulkheads.acquire("tenant1", RequestType.WRITE);
+    bulkheads.acquire("tenant2", RequestType.READ);
+    assertRejected("tenant3", RequestType.ADMIN);
+    assertEquals(2, bulkheads.getActivePartitions());
+
+    bulkheads.release(permit);
+    assertEquals(1, bulkheads.getActivePartitions());
+  }
+
+  @Test
+  public void requestsArePartitionedByTenantAndClass() {
+    bulkheads.setPartitionClasses("tenant1:gold, tenant2:gold");
+    RequesterContextHolder.setContext(requesterContext);
+    when(requesterContext.getTenantId()).thenReturn("tenant1", "tenant2", "tenant3");
+    when(request.getHandlerPath()).thenReturn(HandlerPath.DATA.getPath());
+    when(request.getMethod()).thenReturn(HttpMethod.GET);
+
+    assertEquals("gold:READ", bulkheads.acquire(request).getPartition());
+    assertEquals("gold:READ", bulkheads.acquire(request).getPartition());
+    assertEquals("tenant3:READ", bulkheads.acquire(request).getPartition());
+  }
+
+  @Test
+  public void requestsArePartitionedByEntity() {
+    bulkheads.setPartitionBy("entity");
+    RequesterContextHolder.setContext(requesterContext);
+    when(requesterContext.getTenantId()).thenReturn("tenant1");
+    when(requesterContext.getEntityId()).thenReturn("app1");
+    when(request.getHandlerPath()).thenReturn(HandlerPath.ADMIN.getPath());
+    when(request.getMethod()).thenReturn(HttpMethod.GET);
+
+    assertEquals("app1:ADMIN", bulkheads.acquire(request).getPartition());
+  }
+
+  @Test
+  public void streamsAreNotPartitioned() {
+    when(request.getHandlerPath()).thenReturn(HandlerPath.STREAM.getPath());
+
+    assertNull(bulkheads.acquire(request));
+  }
+
+  @Test
+  public void disabled() {
+    bulkheads.setEnabled(false);
+    when(request.getHandlerPath()).thenReturn(HandlerPath.DATA.getPath());
+
+    assertNull(bulkheads.acquire(request));
+    assertEquals(0, bulkheads.getInFlightRequests());
+  }
+
+  private Callable<Permit> acquireTask(final String owner) {
+    return new Callable<Permit>() {
+
+      @Override
+      public Permit call() {
+        return bulkheads.acquire(owner, RequestType.WRITE);
+      }
+    };
+  }
+
+  private void assertRejected(final String owner, final RequestType type) {
+    try {
+      bulkheads.acquire(owner, type);
+      fail("Request must be rejected");
+    } catch (final PlatformException pe) {
+      assertEquals(BulkheadManager.TOO_MANY_REQUESTS, pe.getHttpStatus());
+    }
+  }
+}
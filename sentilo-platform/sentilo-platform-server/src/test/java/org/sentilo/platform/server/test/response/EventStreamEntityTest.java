@@ -0,0 +1,143 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.server.test.response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.http.HttpConnection;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.sentilo.platform.common.service.EventStream;
+import org.sentilo.platform.common.service.StreamService;
+import org.sentilo.platform.server.response.EventStreamEntity;
+
+public class EventStreamEntityTest {
+
+  @Mock
+  private EventStream stream;
+  @Mock
+  private StreamService streamService;
+  @Mock
+  private HttpConnection connection;
+
+  private EventStreamEntity entity;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    entity = new EventStreamEntity(stream, streamService, connection, 10, 0, 1000, 0);
+  }
+
+  @Test
+  public void writeBatches() throws Exception {
+    when(stream.isClosed()).thenReturn(false, false, false, true);
+    when(stream.poll(eq(10), anyLong())).thenReturn(new ArrayList<String>(Arrays.asList("{\"a\":1}", "{\"a\":2}")),
+        new ArrayList<String>(), new ArrayList<String>(Collections.singletonList("{\"a\":3}")));
+    when(stream.drainDroppedEvents()).thenReturn(0L, 0L, 5L);
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    entity.writeTo(out);
+
+    final String expected = ": heartbeat\n\n" + "data: [{\"a\":1},{\"a\":2}]\n\n" + ": heartbeat\n\n" + "event: dropped\ndata: {\"dropped\":5}\n\n"
+        + "data: [{\"a\":3}]\n\n";
+    assertEquals(expected, out.toString("UTF-8"));
+    assertTrue(entity.getContentType().getValue().startsWith("text/event-stream"));
+    verify(streamService).close(stream);
+  }
+
+  @Test
+  public void closeStreamWhenClientIsGone() throws Exception {
+    final OutputStream out = mock(OutputStream.class);
+    doThrow(new IOException("Broken pipe")).when(out).flush();
+
+    entity.writeTo(out);
+
+    verify(streamService).close(stream);
+  }
+
+  @Test
+  public void shutdownConnectionWhenClosedWhileWriting() throws Exception {
+    final ArgumentCaptor<Runnable> closeAction = ArgumentCaptor.forClass(Runnable.class);
+    final OutputStream out = mock(OutputStream.class);
+    // Stream is closed by the idle streams check while the writer is blocked
+    doAnswer(invocation -> {
+      verify(stream).onClose(closeAction.capture());
+      closeAction.getValue().run();
+      throw new IOException("Socket closed");
+    }).when(out).write(any(byte[].class));
+
+    entity.writeTo(out);
+
+    verify(connection).shutdown();
+    verify(streamService).close(stream);
+  }
+
+  @Test
+  public void keepConnectionWhenClosedOnceWritten() throws Exception {
+    final ArgumentCaptor<Runnable> closeAction = ArgumentCaptor.forClass(Runnable.class);
+    when(stream.isClosed()).thenReturn(true);
+
+    entity.writeTo(new ByteArrayOutputStream());
+    verify(stream).onClose(closeAction.capture());
+    closeAction.getValue().run();
+
+    verify(connection, never()).shutdown();
+  }
+
+  @Test
+  public void endAfterMaxDuration() throws Exception {
+    entity = new EventStreamEntity(stream, streamService, connection, 10, 0, 1000, 1);
+    when(stream.poll(anyInt(), anyLong())).thenReturn(new ArrayList<String>());
+
+    entity.writeTo(new ByteArrayOutputStream());
+
+    verify(streamService).close(stream);
+  }
+}
@@ -30,10 +30,25 @@ package org.sentilo.platform.service.dao;
 
 import org.sentilo.platform.service.utils.PubSubConstants;
 
+/**
+ * Builds the keys used to store the platform resources into Redis.
+ *
+ * When the data store is distributed (sharded or cluster topologies), keys related to the same
+ * sensor or alert are built with a hash tag (i.e. the internal id wrapped into braces) so that all
+ * of them are stored into the same node: <code>sid:{12}</code>, <code>sid:{12}:observations</code>,
+ * <code>sdid:{12}:345</code>, ... Otherwise, the original keys format is kept.
+ */
 public class JedisKeysBuilder {
 
+  private final boolean hashTags;
+
   public JedisKeysBuilder() {
+    this(false);
+  }
+
+  public JedisKeysBuilder(final boolean hashTags) {
     super();
+    this.hashTags = hashTags;
   }
 
   public String getSensorObservationsKey(final Long sid) {
@@ -41,7 +56,7 @@ public class JedisKeysBuilder {
   }
 
   public String getSensorObservationsKey(final String sid) {
-    return "sid:" + sid + ":observations";
+    return "sid:" + tag(sid) + ":observations";
   }
 
   public String getObservationKey(final Long sdid) {
@@ -52,16 +67,36 @@ public class JedisKeysBuilder {
     return "sdid:" + sdid;
   }
 
+  /**
+   * Returns the key of the observation <code>sdid</code>, which is co-located with the sensor
+   * <code>sid</code> keys if hash tags are enabled.
+   */
+  public String getObservationKey(final Long sid, final String sdid) {
+    return hashTags ? "sdid:" + tag(sid) + ":" + sdid : getObservationKey(sdid);
+  }
+
+  public String getObservationKey(final Long sid, final Long sdid) {
+    return getObservationKey(sid, sdid.toString());
+  }
+
   public String getAlertAlarmsKey(final Long aid) {
-    return "aid:" + aid + ":alarms";
+    return "aid:" + tag(aid) + ":alarms";
   }
 
   public String getAlarmKey(final Long amid) {
     return "amid:" + amid;
   }
 
+  /**
+   * Returns the key of the alarm <code>amid</code>, which is co-located with the alert
+   * <code>aid</code> keys if hash tags are enabled.
+   */
+  public String getAlarmKey(final Long aid, final Long amid) {
+    return hashTags ? "amid:" + tag(aid) + ":" + amid : getAlarmKey(amid);
+  }
+
   public String getSensorOrdersKey(final Long sid) {
-    return "sid:" + sid + ":orders";
+    return "sid:" + tag(sid) + ":orders";
   }
 
   public String getOrderKey(final Long soid) {
@@ -69,7 +104,7 @@ public class JedisKeysBuilder {
   }
 
   public String getProviderKey(final Long pid) {
-    return "pid:" + pid;
+    return "pid:" + tag(pid);
   }
 
   public String getReverseProviderKey(final String providerId) {
@@ -77,11 +112,11 @@ public class JedisKeysBuilder {
   }
 
   public String getSensorKey(final Long sid) {
-    return "sid:" + sid;
+    return "sid:" + tag(sid);
   }
 
   public String getProviderSensorsKey(final Long pid) {
-    return "pid:" + pid + ":sensors";
+    return "pid:" + tag(pid) + ":sensors";
   }
 
   public String getReverseSensorKey(final String providerId, final String sensorId) {
@@ -89,7 +124,7 @@ public class JedisKeysBuilder {
   }
 
   public String getAlertKey(final Long aid) {
-    return "aid:" + aid;
+    return "aid:" + tag(aid);
   }
 
   public String getReverseAlertKey(final String alertId) {
@@ -99,4 +134,47 @@ public class JedisKeysBuilder {
   public String getSubscriptionKey(final String entityId) {
     return "subs" + PubSubConstants.REDIS_KEY_TOKEN + entityId;
   }
+
+  /**
+   * Set with the ids of the entities which have subscriptions stored, so they could be loaded
+   * without walking the keyspace.
+   */
+  public String getSubscriptionsIndexKey() {
+    return "subscribers";
+  }
+
+  /** Sorted set with the platform nodes sharing the subscriptions, scored by their last heartbeat */
+  public String getSubscribersNodesKey() {
+    return "subscribers:nodes";
+  }
+
+  public String getSubscribersLeaseKey(final int partition) {
+    return "subscribers:lease:" + partition;
+  }
+
+  /** Geospatial index with the last known position of every sensor */
+  public String getSensorsGeoKey() {
+    return "sensors:geo";
+  }
+
+  /** List with the keys of removed resources waiting to be purged */
+  public String getPurgeQueueKey() {
+    return "purge:queue";
+  }
+
+  public String getPurgedCountKey() {
+    return "purge:purged";
+  }
+
+  public String getPurgeLeaseKey() {
+    return "purge:lease";
+  }
+
+  public boolean isHashTagsEnabled() {
+    return hashTags;
+  }
+
+  private String tag(final Object id) {
+    return hashTags ? "{" + id + "}" : String.valueOf(id);
+  }
 }
@@ -29,8 +29,12 @@
 package org.sentilo.platform.service.dao;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 
 import org.sentilo.platform.common.exception.SentiloDataAccessException;
+import org.sentilo.platform.service.dao.topology.JedisPoolLocator;
+import org.sentilo.platform.service.monitor.RedisCommandMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -44,8 +48,58 @@ public class JedisPoolUtils {
   @Autowired
   private JedisPool pool;
 
+  @Autowired(required = false)
+  private JedisPoolLocator poolLocator;
+
+  @Autowired(required = false)
+  private RedisCommandMetrics commandMetrics;
+
   public Jedis getResource() {
-    return pool.getResource();
+    return getResource(pool);
+  }
+
+  /**
+   * Returns a connection to the Redis node which owns the key. If data store is not distributed,
+   * the connection is always taken from the default pool.
+   */
+  public Jedis getResource(final String key) {
+    return isDistributed() ? getResource(poolLocator.getPool(key)) : getResource();
+  }
+
+  private Jedis getResource(final JedisPool jedisPool) {
+    final long start = System.nanoTime();
+    try {
+      return jedisPool.getResource();
+    } finally {
+      if (commandMetrics != null) {
+        commandMetrics.recordBorrow(start);
+      }
+    }
+  }
+
+  /**
+   * Returns the pool of the Redis node which owns the key, or the default pool if data store is not
+   * distributed or key is null.
+   */
+  public JedisPool getPool(final String key) {
+    return key != null && isDistributed() ? poolLocator.getPool(key) : pool;
+  }
+
+  /**
+   * Returns the pools of every node that stores data.
+   */
+  public Collection<JedisPool> getPools() {
+    return isDistributed() ? poolLocator.getPools() : Collections.singletonList(pool);
+  }
+
+  public boolean isDistributed() {
+    return poolLocator != null && poolLocator.getTopology().isDistributed();
+  }
+
+  public void refreshTopology() {
+    if (poolLocator != null) {
+      poolLocator.refresh();
+    }
   }
 
   public void returnResource(final Jedis jedis) {
@@ -64,6 +118,10 @@ public class JedisPoolUtils {
     if (pool != null) {
       pool.destroy();
     }
+
+    if (poolLocator != null) {
+      poolLocator.destroy();
+    }
   }
 
   public void releaseConnection(final Jedis jedis, final boolean broken) throws SentiloDataAccessException {
@@ -74,7 +132,11 @@ public class JedisPoolUtils {
     // Is possible try to use JedisConnectionException as synonym to
     // "connection is broken and I should return is broken".
     try {
-      if (broken) {
+      if (isDistributed() && jedis != null) {
+        // Connection could belong to any of the nodes pools: Jedis knows the pool to which it must
+        // be returned
+        jedis.close();
+      } else if (broken) {
         returnBrokenResource(jedis);
       } else {
         returnResource(jedis);
@@ -98,4 +160,8 @@ public class JedisPoolUtils {
   public void setPool(final JedisPool pool) {
     this.pool = pool;
   }
+
+  public void setPoolLocator(final JedisPoolLocator poolLocator) {
+    this.poolLocator = poolLocator;
+  }
 }
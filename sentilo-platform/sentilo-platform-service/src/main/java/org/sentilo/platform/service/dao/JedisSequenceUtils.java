@@ -28,19 +28,43 @@
  */
 package org.sentilo.platform.service.dao;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.Function;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.sentilo.platform.common.cache.CacheSnapshotStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 /**
  * Cachea los ids internos en Redis de las diferentes entidades del modelo: proveedores, sensores,
  * ... evitando de esta manera tener que acceder a Redis para recuperarlos.
+ *
+ * The ids cached are saved periodically, and on shutdown, as a snapshot which is loaded on startup
+ * so that they don't have to be read again one by one. Each id of the snapshot is only loaded if
+ * its reverse key in Redis still holds it, so ids of entities removed since it was saved (or of a
+ * flushed Redis) are discarded; they are checked in batches of reverse keys.
  */
 @Component
 public class JedisSequenceUtils {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(JedisSequenceUtils.class);
+
+  private static final String SNAPSHOT_NAME = "sequences";
+  private static final int SNAPSHOT_VERSION = 1;
+  private static final int SNAPSHOT_VALIDATION_BATCH_SIZE = 1000;
+
   private static final String PID_KEY = "global:pid";
   private static final String SID_KEY = "global:sid";
   private static final String SDID_KEY = "global:sdid";
@@ -52,9 +76,49 @@ public class JedisSequenceUtils {
   @Autowired
   private JedisTemplate<String, String> jedisTemplate;
 
-  private final Map<String, Long> pids = new HashMap<String, Long>();
-  private final Map<String, Long> sids = new HashMap<String, Long>();
-  private final Map<String, Long> aids = new HashMap<String, Long>();
+  @Autowired(required = false)
+  private CacheSnapshotStore snapshotStore;
+
+  private final Map<String, Long> pids = Collections.synchronizedMap(new HashMap<String, Long>());
+  private final Map<String, Long> sids = Collections.synchronizedMap(new HashMap<String, Long>());
+  private final Map<String, Long> aids = Collections.synchronizedMap(new HashMap<String, Long>());
+
+  @PostConstruct
+  public void loadSnapshot() {
+    if (snapshotStore == null || !snapshotStore.isEnabled()) {
+      return;
+    }
+
+    final Snapshot snapshot = snapshotStore.load(SNAPSHOT_NAME, SNAPSHOT_VERSION, Snapshot.class);
+    try {
+      if (snapshot != null) {
+        final int discarded = loadValidIds(pids, snapshot.getPids(), JedisSequenceUtils::getPidReverseKey)
+            + loadValidIds(sids, snapshot.getSids(), JedisSequenceUtils::getSidReverseKey)
+            + loadValidIds(aids, snapshot.getAids(), JedisSequenceUtils::getAidReverseKey);
+        LOGGER.info("Sequences cache loaded from snapshot with {} providers, {} sensors and {} alerts ({} ids discarded)", pids.size(),
+            sids.size(), aids.size(), discarded);
+      }
+    } catch (final RuntimeException e) {
+      pids.clear();
+      sids.clear();
+      aids.clear();
+      LOGGER.warn("Error validating snapshot of sequences cache. It is discarded", e);
+    }
+  }
+
+  @PreDestroy
+  @Scheduled(initialDelayString = "${api.cache.snapshot.interval:300000}", fixedDelayString = "${api.cache.snapshot.interval:300000}")
+  public void saveSnapshot() {
+    if (snapshotStore == null || !snapshotStore.isEnabled()) {
+      return;
+    }
+
+    final Snapshot snapshot = new Snapshot();
+    snapshot.setPids(copy(pids));
+    snapshot.setSids(copy(sids));
+    snapshot.setAids(copy(aids));
+    snapshotStore.save(SNAPSHOT_NAME, SNAPSHOT_VERSION, snapshot);
+  }
 
   public Long getPid(final String providerId) {
 
@@ -67,7 +131,7 @@ public class JedisSequenceUtils {
     // 2.2 No exista, y por lo tanto se retorne NULL.
     final String internalKey = providerId;
     if (!pids.containsKey(internalKey)) {
-      final String reverseKey = "provider:" + providerId + ":pid";
+      final String reverseKey = getPidReverseKey(providerId);
       final Long pid = getReverseKeyValue(reverseKey);
       if (pid != null) {
         pids.put(providerId, pid);
@@ -93,7 +157,7 @@ public class JedisSequenceUtils {
   public Long getSid(final String providerId, final String sensorId) {
     final String internalKey = providerId + "#" + sensorId;
     if (!sids.containsKey(internalKey)) {
-      final String reverseKey = "sensor:" + providerId + ":" + sensorId + ":sid";
+      final String reverseKey = getSidReverseKey(providerId, sensorId);
       final Long sid = getReverseKeyValue(reverseKey);
       if (sid != null) {
         sids.put(internalKey, sid);
@@ -112,6 +176,58 @@ public class JedisSequenceUtils {
     return sids.get(internalKey);
   }
 
+  /**
+   * Returns the sids of the sensors, belonging to the same provider, which are already registered.
+   * Sids not cached yet are read in a single batch.
+   */
+  public Map<String, Long> getSids(final String providerId, final List<String> sensorIds) {
+    final Map<String, Long> result = new HashMap<String, Long>();
+    final List<String> missingSensorIds = new ArrayList<String>();
+    final List<String> reverseKeys = new ArrayList<String>();
+    for (final String sensorId : sensorIds) {
+      final Long sid = sids.get(providerId + "#" + sensorId);
+      if (sid != null) {
+        result.put(sensorId, sid);
+      } else {
+        missingSensorIds.add(sensorId);
+        reverseKeys.add(getSidReverseKey(providerId, sensorId));
+      }
+    }
+
+    if (!reverseKeys.isEmpty()) {
+      final List<String> values = jedisTemplate.getFromMaster(reverseKeys);
+      for (int i = 0; i < values.size(); i++) {
+        final String value = values.get(i);
+        if (value != null && !NIL.equals(value)) {
+          final Long sid = Long.valueOf(value);
+          sids.put(providerId + "#" + missingSensorIds.get(i), sid);
+          result.put(missingSensorIds.get(i), sid);
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Allocates new sids for the sensors, belonging to the same provider, with a single INCRBY of
+   * the sequence.
+   */
+  public Map<String, Long> setSids(final String providerId, final Collection<String> sensorIds) {
+    final Map<String, Long> result = new HashMap<String, Long>();
+    if (!sensorIds.isEmpty()) {
+      final long last = jedisTemplate.incrBy(SID_KEY, sensorIds.size());
+      long next = last - sensorIds.size() + 1;
+      for (final String sensorId : sensorIds) {
+        final Long sid = next++;
+        sids.put(providerId + "#" + sensorId, sid);
+        result.put(sensorId, sid);
+      }
+    }
+
+    return result;
+  }
+
   public void removeSid(final String providerId, final String sensorId) {
     final String internalKey = providerId + "#" + sensorId;
     sids.remove(internalKey);
@@ -120,7 +236,7 @@ public class JedisSequenceUtils {
   public Long getAid(final String alertId) {
     final String internalKey = alertId;
     if (!aids.containsKey(internalKey)) {
-      final String reverseKey = "alert:" + alertId + ":aid";
+      final String reverseKey = getAidReverseKey(alertId);
       final Long aid = getReverseKeyValue(reverseKey);
       if (aid != null) {
         aids.put(alertId, aid);
@@ -168,8 +284,63 @@ public class JedisSequenceUtils {
     return getCurrentValue(AMID_KEY);
   }
 
+  /**
+   * Puts into <code>cache</code> the ids of the snapshot which are still held by their reverse keys,
+   * and returns the number of ids discarded.
+   */
+  private int loadValidIds(final Map<String, Long> cache, final Map<String, Long> ids, final Function<String, String> reverseKeyBuilder) {
+    if (ids == null) {
+      return 0;
+    }
+
+    int discarded = 0;
+    final List<Entry<String, Long>> entries = new ArrayList<Entry<String, Long>>(ids.entrySet());
+    for (int from = 0; from < entries.size(); from += SNAPSHOT_VALIDATION_BATCH_SIZE) {
+      final List<Entry<String, Long>> batch = entries.subList(from, Math.min(from + SNAPSHOT_VALIDATION_BATCH_SIZE, entries.size()));
+      final List<String> reverseKeys = new ArrayList<String>(batch.size());
+      for (final Entry<String, Long> entry : batch) {
+        reverseKeys.add(reverseKeyBuilder.apply(entry.getKey()));
+      }
+
+      final List<String> values = jedisTemplate.getFromMaster(reverseKeys);
+      for (int i = 0; i < batch.size(); i++) {
+        final Entry<String, Long> entry = batch.get(i);
+        if (entry.getValue() != null && entry.getValue().toString().equals(values.get(i))) {
+          cache.put(entry.getKey(), entry.getValue());
+        } else {
+          discarded++;
+        }
+      }
+    }
+
+    return discarded;
+  }
+
+  private static String getPidReverseKey(final String providerId) {
+    return "provider:" + providerId + ":pid";
+  }
+
+  private static String getSidReverseKey(final String providerId, final String sensorId) {
+    return "sensor:" + providerId + ":" + sensorId + ":sid";
+  }
+
+  private static String getSidReverseKey(final String internalKey) {
+    final int separator = internalKey.indexOf('#');
+    return getSidReverseKey(internalKey.substring(0, separator), internalKey.substring(separator + 1));
+  }
+
+  private static String getAidReverseKey(final String alertId) {
+    return "alert:" + alertId + ":aid";
+  }
+
+  private Map<String, Long> copy(final Map<String, Long> ids) {
+    synchronized (ids) {
+      return new HashMap<String, Long>(ids);
+    }
+  }
+
   private Long getReverseKeyValue(final String reverseKey) {
-    final String value = jedisTemplate.get(reverseKey);
+    final String value = jedisTemplate.getFromMaster(reverseKey);
     return NIL.equals(value) || value == null ? null : Long.valueOf(value);
   }
 
@@ -178,7 +349,38 @@ public class JedisSequenceUtils {
   }
 
   private Long getCurrentValue(final String key) {
-    final String value = jedisTemplate.get(key);
+    final String value = jedisTemplate.getFromMaster(key);
     return NIL.equals(value) || value == null ? new Long(0) : Long.valueOf(value);
   }
+
+  public static class Snapshot {
+
+    private Map<String, Long> pids;
+    private Map<String, Long> sids;
+    private Map<String, Long> aids;
+
+    public Map<String, Long> getPids() {
+      return pids;
+    }
+
+    public void setPids(final Map<String, Long> pids) {
+      this.pids = pids;
+    }
+
+    public Map<String, Long> getSids() {
+      return sids;
+    }
+
+    public void setSids(final Map<String, Long> sids) {
+      this.sids = sids;
+    }
+
+    public Map<String, Long> getAids() {
+      return aids;
+    }
+
+    public void setAids(final Map<String, Long> aids) {
+      this.aids = aids;
+    }
+  }
 }
@@ -28,16 +28,42 @@
  */
 package org.sentilo.platform.service.dao;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
+import org.sentilo.platform.common.exception.SentiloDataAccessException;
+import org.sentilo.platform.service.dao.pipeline.JedisPipelineExecutor;
+import org.sentilo.platform.service.dao.replica.JedisReplicaRouter;
+import org.sentilo.platform.service.dao.replica.ReplicaReadContextHolder;
+import org.sentilo.platform.service.monitor.RedisCommandMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 
+import redis.clients.jedis.GeoRadiusResponse;
+import redis.clients.jedis.GeoUnit;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.Tuple;
 import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.jedis.params.geo.GeoRadiusParam;
+import redis.clients.util.SafeEncoder;
 
 /**
  * Based on RedisTemplate from spring-data-redis.
@@ -50,227 +76,1431 @@ import redis.clients.jedis.exceptions.JedisConnectionException;
  * Upgrade: new versions of spring-data-redis already implements the unsubscribe functionality (see
  * https://jira.springsource.org/browse/DATAREDIS-107)
  *
+ * Commands are sent, depending on <code>jedis.template.mode</code>, either through a connection
+ * borrowed from the pool for each of them (default) or through the {@link JedisPipelineExecutor},
+ * which pipelines the commands of concurrent callers. In both cases, every command has a
+ * synchronous variant and an asynchronous one, which returns a future (in pooled mode, the future
+ * is already completed when it is returned).
+ *
  * @see RedisMessageListenerContainer
  * @see DefaultZSetOperations
  */
 @Component
 public class JedisTemplate<K, V> {
 
-  @Autowired
-  private JedisPoolUtils jedisPoolUtils;
+  private static final Logger LOGGER = LoggerFactory.getLogger(JedisTemplate.class);
+
+  /**
+   * Entry ids are generated by the server (<code>*</code>), so script effects, and not the script
+   * itself, must be replicated.
+   */
+  private static final String XADD_SCRIPT =
+      "redis.replicate_commands() return redis.call('XADD', KEYS[1], 'MAXLEN', '~', ARGV[1], '*', unpack(ARGV, 2))";
+  private static final byte[] XADD_SCRIPT_BYTES = SafeEncoder.encode(XADD_SCRIPT);
+
+  /** Takes the lease if it is free, or extends it if it is already held by the same owner */
+  private static final String ACQUIRE_LEASE_SCRIPT = "local owner = redis.call('GET', KEYS[1]) "
+      + "if owner == ARGV[1] then redis.call('PEXPIRE', KEYS[1], ARGV[2]) return 1 end "
+      + "if not owner then redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2]) return 1 end return 0";
+
+  /** Frees the lease only if it is still held by the owner */
+  private static final String RELEASE_LEASE_SCRIPT =
+      "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end return 0";
+
+  @Autowired
+  private JedisPoolUtils jedisPoolUtils;
+
+  @Autowired(required = false)
+  private JedisReplicaRouter replicaRouter;
+
+  @Autowired(required = false)
+  private JedisPipelineExecutor pipelineExecutor;
+
+  @Autowired(required = false)
+  private RedisCommandMetrics commandMetrics;
+
+  // Merece la pena utilizar este template? Internamente realiza diversos pasos (pipeline,
+  // transaccionalidad, .... ) que para nosotros no son necesarios
+  // y simplemente añaden una nueva capa de abstracción sobre la comunicacion con Redis.
+  // private RedisTemplate<String, String> redisTemplate;
+
+  /**
+   * Executes the given action object within a connection that can be exposed or not. Additionally,
+   * the connection can be pipelined. Note the results of the pipeline are discarded (making it
+   * suitable for write-only scenarios).
+   *
+   * @param <T> return type
+   * @param action callback object to execute
+   * @return object returned by the action
+   */
+  public <T> T execute(final JedisCallback<T> action) {
+    return execute(null, action);
+  }
+
+  /**
+   * Executes the given action object within a connection to the Redis node that owns the key. If
+   * key is null, or data store is not distributed, the connection is taken from the default pool.
+   *
+   * @param <T> return type
+   * @param key key used to route the action
+   * @param action callback object to execute
+   * @return object returned by the action
+   */
+  public <T> T execute(final String key, final JedisCallback<T> action) {
+    markWritten(key);
+    return executeOnMaster(key, action);
+  }
+
+  private <T> T executeOnMaster(final String key, final JedisCallback<T> action) {
+    try {
+      return doExecute(key, action);
+    } catch (final SentiloDataAccessException sdae) {
+      if (!(sdae.getCause() instanceof JedisMovedDataException)) {
+        throw sdae;
+      }
+      // Cluster topology has changed (i.e. slots have been migrated): reload it and retry once
+      jedisPoolUtils.refreshTopology();
+      return doExecute(key, action);
+    }
+  }
+
+  /**
+   * Executes the command and waits for its reply. If commands are pipelined, the command is queued
+   * together with the commands of the other callers.
+   *
+   * @param <T> return type
+   * @param key key used to route the command
+   * @param command command to execute
+   * @return command reply
+   */
+  public <T> T execute(final String key, final JedisCommand<T> command) {
+    markWritten(key);
+    return executeOnMaster(key, command);
+  }
+
+  private <T> T executeOnMaster(final String key, final JedisCommand<T> command) {
+    final long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      final T result = executeCommand(key, command);
+      failed = false;
+      return result;
+    } finally {
+      recordMetrics(command, key, start, failed);
+    }
+  }
+
+  private <T> T executeCommand(final String key, final JedisCommand<T> command) {
+    if (!isPipelined()) {
+      return executeOnMaster(key, (JedisCallback<T>) command);
+    }
+
+    try {
+      return await(pipelineExecutor.submit(key, command));
+    } catch (final SentiloDataAccessException sdae) {
+      if (!(sdae.getCause() instanceof JedisMovedDataException)) {
+        throw sdae;
+      }
+      jedisPoolUtils.refreshTopology();
+      return await(pipelineExecutor.submit(key, command));
+    }
+  }
+
+  /**
+   * Executes the command without waiting for its reply.
+   *
+   * @param <T> return type
+   * @param key key used to route the command
+   * @param command command to execute
+   * @return future completed with the command reply or with a
+   *         {@link SentiloDataAccessException} if the command fails
+   */
+  public <T> CompletableFuture<T> executeAsync(final String key, final JedisCommand<T> command) {
+    markWritten(key);
+    return executeOnMasterAsync(key, command);
+  }
+
+  private <T> CompletableFuture<T> executeOnMasterAsync(final String key, final JedisCommand<T> command) {
+    if (isPipelined()) {
+      final long start = System.nanoTime();
+      final CompletableFuture<T> future = pipelineExecutor.submit(key, command);
+      if (commandMetrics != null) {
+        future.whenComplete((result, error) -> recordMetrics(command, key, start, error != null));
+      }
+      return future;
+    }
+
+    final CompletableFuture<T> future = new CompletableFuture<T>();
+    try {
+      future.complete(executeOnMaster(key, command));
+    } catch (final SentiloDataAccessException sdae) {
+      future.completeExceptionally(sdae);
+    }
+    return future;
+  }
+
+  /**
+   * Executes a read-only command. If the current thread is allowed to read from replicas (see
+   * {@link org.sentilo.platform.service.dao.replica.ReplicaRead}) and there is an eligible replica,
+   * the command is executed on it, unless the key has been written by this node in the last
+   * seconds (see {@link JedisReplicaRouter#isRecentlyWritten(String)}). Otherwise, or if the
+   * replica fails, the command is executed on the master.
+   *
+   * @param <T> return type
+   * @param key key read by the command
+   * @param command command to execute
+   * @return command reply
+   */
+  public <T> T executeRead(final String key, final JedisCommand<T> command) {
+    final JedisPool replica = getReplica(Collections.singletonList(key));
+    if (replica == null) {
+      return executeOnMaster(key, command);
+    }
+
+    return executeOnReplica(replica, key, command);
+  }
+
+  /**
+   * Executes a read-only command without waiting for its reply. The command is routed as in
+   * {@link #executeRead(String, JedisCommand)}, and, as a read, it doesn't stop the key from being
+   * read from replicas. Replicas are not pipelined, so if the command is sent to a replica the
+   * future is already completed when it is returned.
+   *
+   * @param <T> return type
+   * @param key key read by the command
+   * @param command command to execute
+   * @return future completed with the command reply or with a
+   *         {@link SentiloDataAccessException} if the command fails
+   */
+  public <T> CompletableFuture<T> executeReadAsync(final String key, final JedisCommand<T> command) {
+    final JedisPool replica = getReplica(Collections.singletonList(key));
+    if (replica == null) {
+      return executeOnMasterAsync(key, command);
+    }
+
+    final CompletableFuture<T> future = new CompletableFuture<T>();
+    try {
+      future.complete(executeOnReplica(replica, key, command));
+    } catch (final SentiloDataAccessException sdae) {
+      future.completeExceptionally(sdae);
+    }
+    return future;
+  }
+
+  private <T> T executeOnReplica(final JedisPool replica, final String key, final JedisCommand<T> command) {
+    final long start = System.nanoTime();
+    Jedis conn = null;
+    try {
+      conn = replica.getResource();
+      final T result = command.doInRedis(conn);
+      recordMetrics(command, key, start, false);
+      return result;
+    } catch (final Exception e) {
+      recordMetrics(command, key, start, true);
+      LOGGER.warn("Error reading key {} from replica, it will be read from master. Error: {}", key, e.getMessage());
+      replicaRouter.discard(replica);
+      return executeOnMaster(key, command);
+    } finally {
+      if (conn != null) {
+        conn.close();
+      }
+    }
+  }
+
+  /**
+   * Executes a batch of read-only commands. Commands are grouped by the node that owns their keys
+   * and each group is sent in a single pipeline, so the whole batch costs one round trip per node
+   * instead of one per command. As in {@link #executeRead(String, JedisCommand)}, commands are sent
+   * to a replica if the current thread is allowed to read from replicas.
+   *
+   * @param <T> return type
+   * @param keys keys read by the commands, in the same order as the commands
+   * @param commands commands to execute
+   * @return command replies, in the same order as the commands
+   */
+  public <T> List<T> executeReadBatch(final List<String> keys, final List<JedisCommand<T>> commands) {
+    Assert.isTrue(keys.size() == commands.size(), "Each command must have its key");
+    if (commands.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    if (isPipelined()) {
+      return executeAsyncBatch(keys, commands);
+    }
+
+    final JedisPool replica = getReplica(keys);
+    if (replica != null) {
+      try {
+        return doExecuteBatch(keys, commands, replica);
+      } catch (final SentiloDataAccessException sdae) {
+        LOGGER.warn("Error reading batch of {} keys from replica, it will be read from master. Error: {}", keys.size(), sdae.getMessage());
+        replicaRouter.discard(replica);
+      }
+    }
+
+    return executeOnMasterBatch(keys, commands);
+  }
+
+  /**
+   * Executes a batch of commands on the master nodes, with one round trip per node, in the same way
+   * as {@link #executeReadBatch(List, List)}. Commands of the batch are not executed atomically, and
+   * they are sent again to the right node if the cluster topology has changed, so they must be
+   * idempotent.
+   *
+   * @param <T> return type
+   * @param keys keys written by the commands, in the same order as the commands
+   * @param commands commands to execute
+   * @return command replies, in the same order as the commands
+   */
+  public <T> List<T> executeBatch(final List<String> keys, final List<JedisCommand<T>> commands) {
+    Assert.isTrue(keys.size() == commands.size(), "Each command must have its key");
+    for (final String key : keys) {
+      markWritten(key);
+    }
+
+    return executeOnMasterBatch(keys, commands);
+  }
+
+  private <T> List<T> executeOnMasterBatch(final List<String> keys, final List<JedisCommand<T>> commands) {
+    if (commands.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    if (isPipelined()) {
+      return executeAsyncBatch(keys, commands);
+    }
+
+    try {
+      return doExecuteBatch(keys, commands, null);
+    } catch (final SentiloDataAccessException sdae) {
+      if (!(sdae.getCause() instanceof JedisMovedDataException)) {
+        throw sdae;
+      }
+      jedisPoolUtils.refreshTopology();
+      return doExecuteBatch(keys, commands, null);
+    }
+  }
+
+  private <T> List<T> executeAsyncBatch(final List<String> keys, final List<JedisCommand<T>> commands) {
+    // Commands are already pipelined by the executor together with those of other callers
+    final List<CompletableFuture<T>> futures = new ArrayList<CompletableFuture<T>>(commands.size());
+    for (int i = 0; i < commands.size(); i++) {
+      futures.add(executeOnMasterAsync(keys.get(i), commands.get(i)));
+    }
+    final List<T> replies = new ArrayList<T>(commands.size());
+    for (final CompletableFuture<T> future : futures) {
+      replies.add(await(future));
+    }
+    return replies;
+  }
+
+  private <T> List<T> doExecuteBatch(final List<String> keys, final List<JedisCommand<T>> commands, final JedisPool replica) {
+    final Map<JedisPool, List<Integer>> commandsByPool = new LinkedHashMap<JedisPool, List<Integer>>();
+    for (int i = 0; i < commands.size(); i++) {
+      final JedisPool pool = replica != null ? replica : jedisPoolUtils.getPool(keys.get(i));
+      List<Integer> positions = commandsByPool.get(pool);
+      if (positions == null) {
+        positions = new ArrayList<Integer>();
+        commandsByPool.put(pool, positions);
+      }
+      positions.add(i);
+    }
+
+    final List<T> replies = new ArrayList<T>(Collections.<T>nCopies(commands.size(), null));
+    for (final Entry<JedisPool, List<Integer>> entry : commandsByPool.entrySet()) {
+      final long start = System.nanoTime();
+      boolean failed = true;
+      Jedis conn = null;
+      try {
+        conn = entry.getKey().getResource();
+        final Pipeline pipeline = conn.pipelined();
+        final List<Response<T>> responses = new ArrayList<Response<T>>(entry.getValue().size());
+        for (final Integer position : entry.getValue()) {
+          responses.add(commands.get(position).doInPipeline(pipeline));
+        }
+        pipeline.sync();
+        for (int i = 0; i < responses.size(); i++) {
+          replies.set(entry.getValue().get(i), responses.get(i).get());
+        }
+        failed = false;
+      } catch (final Exception e) {
+        throw jedisPoolUtils.convertJedisAccessException(e);
+      } finally {
+        if (conn != null) {
+          // Broken connections are detected by Jedis and are not returned to the pool
+          conn.close();
+        }
+        for (final Integer position : entry.getValue()) {
+          recordMetrics(commands.get(position), keys.get(position), start, failed);
+        }
+      }
+    }
+
+    return replies;
+  }
+
+  private void recordMetrics(final JedisCommand<?> command, final String key, final long start, final boolean failed) {
+    if (commandMetrics != null) {
+      commandMetrics.record(command.getName(), key, start, failed);
+    }
+  }
+
+  private boolean isPipelined() {
+    return pipelineExecutor != null && pipelineExecutor.isEnabled();
+  }
+
+  private <T> T await(final CompletableFuture<T> future) {
+    try {
+      return future.get();
+    } catch (final InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new SentiloDataAccessException("Interrupted while waiting for Redis reply", ie);
+    } catch (final ExecutionException ee) {
+      if (ee.getCause() instanceof SentiloDataAccessException) {
+        throw (SentiloDataAccessException) ee.getCause();
+      }
+      throw jedisPoolUtils.convertJedisAccessException((Exception) ee.getCause());
+    }
+  }
+
+  private JedisPool getReplica(final List<String> keys) {
+    // Replicas are only supported when data is stored into a single master node
+    if (replicaRouter == null || !ReplicaReadContextHolder.isReplicaReadAllowed() || jedisPoolUtils.isDistributed()) {
+      return null;
+    }
+
+    // Keys written by this node within the replication lag allowed are read from the master, so
+    // that a request sees the writes of the previous ones
+    for (final String key : keys) {
+      if (replicaRouter.isRecentlyWritten(key)) {
+        return null;
+      }
+    }
+
+    return replicaRouter.getReplica();
+  }
+
+  private void markWritten(final String key) {
+    if (replicaRouter != null && key != null) {
+      replicaRouter.markWritten(key);
+    }
+  }
+
+  private <T> T doExecute(final String key, final JedisCallback<T> action) {
+    Assert.notNull(action, "Callback object must not be null");
+
+    Jedis conn = null;
+    boolean broken = false;
+    try {
+      conn = key != null && jedisPoolUtils.isDistributed() ? jedisPoolUtils.getResource(key) : jedisPoolUtils.getResource();
+      return action.doInRedis(conn);
+    } catch (final Exception e) {
+      if (e instanceof JedisConnectionException) {
+        broken = true;
+      }
+      throw jedisPoolUtils.convertJedisAccessException(e);
+    } finally {
+      jedisPoolUtils.releaseConnection(conn, broken);
+    }
+  }
+
+  public Set<String> keys(final String pattern) {
+    final long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      final Set<String> keys = doKeys(pattern);
+      failed = false;
+      return keys;
+    } finally {
+      if (commandMetrics != null) {
+        commandMetrics.record("KEYS", pattern, start, failed);
+      }
+    }
+  }
+
+  private Set<String> doKeys(final String pattern) {
+    if (!jedisPoolUtils.isDistributed()) {
+      return execute(new JedisCallback<Set<String>>() {
+
+        public Set<String> doInRedis(final Jedis connection) {
+          return connection.keys(pattern);
+        }
+      });
+    }
+
+    // Keys are spread over many nodes so the command must be fanned out to all of them
+    final Set<String> keys = new HashSet<String>();
+    for (final JedisPool pool : jedisPoolUtils.getPools()) {
+      final Jedis connection = pool.getResource();
+      try {
+        keys.addAll(connection.keys(pattern));
+      } catch (final Exception e) {
+        throw jedisPoolUtils.convertJedisAccessException(e);
+      } finally {
+        connection.close();
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * Incremental alternative to {@link #keys(String)}: the keyspace of every node is walked with
+   * SCAN, fetching about <code>count</code> keys per call, so Redis is never blocked while the whole
+   * keyspace is inspected. As with SCAN, keys added or removed during the walk may be missed.
+   */
+  public Set<String> scan(final String pattern, final int count) {
+    final long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      final Set<String> keys = new HashSet<String>();
+      final ScanParams params = new ScanParams().match(pattern).count(count);
+      for (final JedisPool pool : jedisPoolUtils.getPools()) {
+        final Jedis connection = pool.getResource();
+        try {
+          String cursor = ScanParams.SCAN_POINTER_START;
+          do {
+            final ScanResult<String> result = connection.scan(cursor, params);
+            keys.addAll(result.getResult());
+            cursor = result.getStringCursor();
+          } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        } catch (final Exception e) {
+          throw jedisPoolUtils.convertJedisAccessException(e);
+        } finally {
+          connection.close();
+        }
+      }
+      failed = false;
+      return keys;
+    } finally {
+      if (commandMetrics != null) {
+        commandMetrics.record("SCAN", pattern, start, failed);
+      }
+    }
+  }
+
+  public String get(final String key) {
+    return executeRead(key, getCommand(key));
+  }
+
+  public CompletableFuture<String> getAsync(final String key) {
+    return executeReadAsync(key, getCommand(key));
+  }
+
+  /**
+   * Runs GET over every key in a single batch. Unlike MGET, keys could be stored in different nodes.
+   */
+  public List<String> get(final List<String> keys) {
+    final List<JedisCommand<String>> commands = new ArrayList<JedisCommand<String>>(keys.size());
+    for (final String key : keys) {
+      commands.add(getCommand(key));
+    }
+    return executeReadBatch(keys, commands);
+  }
+
+  /**
+   * Runs GET on the master even if the current thread is allowed to read from replicas, for values
+   * which must not be read stale, e.g. the internal ids of resources which could have just been
+   * registered by another node.
+   */
+  public String getFromMaster(final String key) {
+    return executeOnMaster(key, getCommand(key));
+  }
+
+  /**
+   * Runs GET over every key in a single batch on the master, as {@link #getFromMaster(String)}.
+   */
+  public List<String> getFromMaster(final List<String> keys) {
+    final List<JedisCommand<String>> commands = new ArrayList<JedisCommand<String>>(keys.size());
+    for (final String key : keys) {
+      commands.add(getCommand(key));
+    }
+    return executeOnMasterBatch(keys, commands);
+  }
+
+  /** Esta es la unica operacion que implica dos llamadas a Redis. --> Usar pipeline? */
+  public Long getKeyNextValue(final String key) {
+    return execute(key, getKeyNextValueCommand(key));
+  }
+
+  public CompletableFuture<Long> getKeyNextValueAsync(final String key) {
+    return executeAsync(key, getKeyNextValueCommand(key));
+  }
+
+  public String set(final String key, final String value) {
+    return execute(key, setCommand(key, value));
+  }
+
+  public CompletableFuture<String> setAsync(final String key, final String value) {
+    return executeAsync(key, setCommand(key, value));
+  }
+
+  /**
+   * Runs SET over every pair <key, value> in a single batch.
+   */
+  public List<String> set(final List<String> keys, final List<String> values) {
+    final List<JedisCommand<String>> commands = new ArrayList<JedisCommand<String>>(keys.size());
+    for (int i = 0; i < keys.size(); i++) {
+      commands.add(setCommand(keys.get(i), values.get(i)));
+    }
+    return executeBatch(keys, commands);
+  }
+
+  public Long del(final String key) {
+    return execute(key, delCommand(key));
+  }
+
+  public CompletableFuture<Long> delAsync(final String key) {
+    return executeAsync(key, delCommand(key));
+  }
+
+  /**
+   * Runs UNLINK over every key in a single batch: keys are removed from the keyspace right away but
+   * their memory is reclaimed by Redis in background, so big keys don't block the server.
+   */
+  public List<Long> unlink(final List<String> keys) {
+    final List<JedisCommand<Long>> commands = new ArrayList<JedisCommand<Long>>(keys.size());
+    for (final String key : keys) {
+      commands.add(unlinkCommand(key));
+    }
+    return executeBatch(keys, commands);
+  }
+
+  public Long incrBy(final String key, final long increment) {
+    return execute(key, incrByCommand(key, increment));
+  }
+
+  public Long rPush(final String key, final String... values) {
+    return execute(key, rPushCommand(key, values));
+  }
+
+  public List<String> lRange(final String key, final long start, final long end) {
+    return executeRead(key, lRangeCommand(key, start, end));
+  }
+
+  /**
+   * Runs LRANGE on the master even if the current thread is allowed to read from replicas, for lists
+   * that are trimmed right after being read and so must not be read stale.
+   */
+  public List<String> lRangeFromMaster(final String key, final long start, final long end) {
+    return executeOnMaster(key, lRangeCommand(key, start, end));
+  }
+
+  public String lTrim(final String key, final long start, final long end) {
+    return execute(key, lTrimCommand(key, start, end));
+  }
+
+  public Long lLen(final String key) {
+    return executeRead(key, lLenCommand(key));
+  }
+
+  public Set<String> sMembers(final String key) {
+    return executeRead(key, sMembersCommand(key));
+  }
+
+  public CompletableFuture<Set<String>> sMembersAsync(final String key) {
+    return executeReadAsync(key, sMembersCommand(key));
+  }
+
+  public Long sAdd(final String key, final String... members) {
+    return execute(key, sAddCommand(key, members));
+  }
+
+  public CompletableFuture<Long> sAddAsync(final String key, final String... members) {
+    return executeAsync(key, sAddCommand(key, members));
+  }
+
+  public Long sRem(final String key, final String... members) {
+    return execute(key, sRemCommand(key, members));
+  }
+
+  public CompletableFuture<Long> sRemAsync(final String key, final String... members) {
+    return executeAsync(key, sRemCommand(key, members));
+  }
+
+  public Set<String> zRevRangeByScore(final String key, final double max, final double min, final int offset, final int count) {
+    return executeRead(key, zRevRangeByScoreCommand(key, max, min, offset, count));
+  }
+
+  public CompletableFuture<Set<String>> zRevRangeByScoreAsync(final String key, final double max, final double min, final int offset, final int count) {
+    return executeReadAsync(key, zRevRangeByScoreCommand(key, max, min, offset, count));
+  }
+
+  public Set<Tuple> zRevRangeByScoreWithScores(final String key, final double max, final double min, final int offset, final int count) {
+    return executeRead(key, zRevRangeByScoreWithScoresCommand(key, max, min, offset, count));
+  }
+
+  public Set<String> zRange(final String key, final long start, final long end) {
+    return executeRead(key, zRangeCommand(key, start, end));
+  }
+
+  public CompletableFuture<Set<String>> zRangeAsync(final String key, final long start, final long end) {
+    return executeReadAsync(key, zRangeCommand(key, start, end));
+  }
+
+  /**
+   * Runs ZREVRANGEBYSCORE, with the same arguments, over every key in a single batch.
+   */
+  public List<Set<String>> zRevRangeByScore(final List<String> keys, final double max, final double min, final int offset, final int count) {
+    final List<JedisCommand<Set<String>>> commands = new ArrayList<JedisCommand<Set<String>>>(keys.size());
+    for (final String key : keys) {
+      commands.add(zRevRangeByScoreCommand(key, max, min, offset, count));
+    }
+    return executeReadBatch(keys, commands);
+  }
+
+  public Long zAdd(final String key, final double score, final String member) {
+    return execute(key, zAddCommand(key, score, member));
+  }
+
+  public CompletableFuture<Long> zAddAsync(final String key, final double score, final String member) {
+    return executeAsync(key, zAddCommand(key, score, member));
+  }
+
+  /**
+   * Adds the same member, with the same score, to every sorted set in a single batch.
+   */
+  public List<Long> zAdd(final List<String> keys, final double score, final String member) {
+    final List<JedisCommand<Long>> commands = new ArrayList<JedisCommand<Long>>(keys.size());
+    for (final String key : keys) {
+      commands.add(zAddCommand(key, score, member));
+    }
+    return executeBatch(keys, commands);
+  }
+
+  public Long zRem(final String key, final String... members) {
+    return execute(key, zRemCommand(key, members));
+  }
+
+  public Long geoAdd(final String key, final double longitude, final double latitude, final String member) {
+    return execute(key, geoAddCommand(key, longitude, latitude, member));
+  }
+
+  /**
+   * Returns the members of the geospatial index within radius meters of the given point, with
+   * their coordinates and sorted from the nearest to the farthest, up to count members.
+   */
+  public List<GeoRadiusResponse> geoRadius(final String key, final double longitude, final double latitude, final double radius, final int count) {
+    return executeRead(key, geoRadiusCommand(key, longitude, latitude, radius, count));
+  }
+
+  public Set<String> zRangeByScore(final String key, final double min, final double max) {
+    return executeRead(key, zRangeByScoreCommand(key, min, max));
+  }
+
+  public Long zRemRangeByScore(final String key, final double min, final double max) {
+    return execute(key, zRemRangeByScoreCommand(key, min, max));
+  }
+
+  public Long zRemRangeByRank(final String key, final long start, final long end) {
+    return execute(key, zRemRangeByRankCommand(key, start, end));
+  }
+
+  public CompletableFuture<Long> zRemRangeByRankAsync(final String key, final long start, final long end) {
+    return executeAsync(key, zRemRangeByRankCommand(key, start, end));
+  }
+
+  public String hmSet(final String key, final Map<String, String> hash) {
+    return execute(key, hmSetCommand(key, hash));
+  }
+
+  public CompletableFuture<String> hmSetAsync(final String key, final Map<String, String> hash) {
+    return executeAsync(key, hmSetCommand(key, hash));
+  }
+
+  /**
+   * Runs HMSET over every pair <key, hash> in a single batch.
+   */
+  public List<String> hmSet(final List<String> keys, final List<Map<String, String>> hashes) {
+    final List<JedisCommand<String>> commands = new ArrayList<JedisCommand<String>>(keys.size());
+    for (int i = 0; i < keys.size(); i++) {
+      commands.add(hmSetCommand(keys.get(i), hashes.get(i)));
+    }
+    return executeBatch(keys, commands);
+  }
+
+  public Map<String, String> hGetAll(final String key) {
+    return executeRead(key, hGetAllCommand(key));
+  }
+
+  public CompletableFuture<Map<String, String>> hGetAllAsync(final String key) {
+    return executeReadAsync(key, hGetAllCommand(key));
+  }
+
+  /**
+   * Runs HGETALL over every key in a single batch.
+   */
+  public List<Map<String, String>> hGetAll(final List<String> keys) {
+    final List<JedisCommand<Map<String, String>>> commands = new ArrayList<JedisCommand<Map<String, String>>>(keys.size());
+    for (final String key : keys) {
+      commands.add(hGetAllCommand(key));
+    }
+    return executeReadBatch(keys, commands);
+  }
+
+  public String hGet(final String key, final String field) {
+    return executeRead(key, hGetCommand(key, field));
+  }
+
+  public CompletableFuture<String> hGetAsync(final String key, final String field) {
+    return executeReadAsync(key, hGetCommand(key, field));
+  }
 
-  // Merece la pena utilizar este template? Internamente realiza diversos pasos (pipeline,
-  // transaccionalidad, .... ) que para nosotros no son necesarios
-  // y simplemente añaden una nueva capa de abstracción sobre la comunicacion con Redis.
-  // private RedisTemplate<String, String> redisTemplate;
+  /**
+   * Runs HGET, with the same field, over every key in a single batch.
+   */
+  public List<String> hGet(final List<String> keys, final String field) {
+    final List<JedisCommand<String>> commands = new ArrayList<JedisCommand<String>>(keys.size());
+    for (final String key : keys) {
+      commands.add(hGetCommand(key, field));
+    }
+    return executeReadBatch(keys, commands);
+  }
+
+  public Long hSet(final String key, final String field, final String value) {
+    return execute(key, hSetCommand(key, field, value));
+  }
+
+  public CompletableFuture<Long> hSetAsync(final String key, final String field, final String value) {
+    return executeAsync(key, hSetCommand(key, field, value));
+  }
+
+  public Long hDel(final String key, final String... fields) {
+    return execute(key, hDelCommand(key, fields));
+  }
+
+  public CompletableFuture<Long> hDelAsync(final String key, final String... fields) {
+    return executeAsync(key, hDelCommand(key, fields));
+  }
+
+  public Set<String> hKeys(final String key) {
+    return executeRead(key, hKeysCommand(key));
+  }
+
+  public CompletableFuture<Set<String>> hKeysAsync(final String key) {
+    return executeReadAsync(key, hKeysCommand(key));
+  }
 
   /**
-   * Executes the given action object within a connection that can be exposed or not. Additionally,
-   * the connection can be pipelined. Note the results of the pipeline are discarded (making it
-   * suitable for write-only scenarios).
+   * Messages are always published through the default node, which is the one the listener
+   * containers are connected to (in a Redis Cluster, messages are propagated to every node).
+   */
+  public Long publish(final String channel, final String message) {
+    return execute(null, publishCommand(channel, message));
+  }
+
+  public CompletableFuture<Long> publishAsync(final String channel, final String message) {
+    return executeAsync(null, publishCommand(channel, message));
+  }
+
+  public Long publish(final byte[] channel, final byte[] message) {
+    return execute(null, publishCommand(channel, message));
+  }
+
+  /**
+   * Publishes a batch of messages, as {@link #publish(byte[], byte[])} does, in a single round trip.
    *
-   * @param <T> return type
-   * @param action callback object to execute
-   * @return object returned by the action
+   * @param channels channels to publish to, in the same order as the messages
+   * @param messages messages to publish
+   * @return number of clients that received each message
    */
-  public <T> T execute(final JedisCallback<T> action) {
-    Assert.notNull(action, "Callback object must not be null");
+  public List<Long> publish(final List<byte[]> channels, final List<byte[]> messages) {
+    Assert.isTrue(channels.size() == messages.size(), "Each message must have its channel");
+    final List<JedisCommand<Long>> commands = new ArrayList<JedisCommand<Long>>(messages.size());
+    for (int i = 0; i < messages.size(); i++) {
+      commands.add(publishCommand(channels.get(i), messages.get(i)));
+    }
+    return executeBatch(Collections.<String>nCopies(commands.size(), null), commands);
+  }
 
-    Jedis conn = null;
-    boolean broken = false;
-    try {
-      conn = jedisPoolUtils.getResource();
-      return action.doInRedis(conn);
-    } catch (final Exception e) {
-      if (e instanceof JedisConnectionException) {
-        broken = true;
-      }
-      throw jedisPoolUtils.convertJedisAccessException(e);
-    } finally {
-      jedisPoolUtils.releaseConnection(conn, broken);
+  /**
+   * Appends an entry to a stream, trimming it to approximately <code>maxLen</code> entries. Jedis
+   * has no support for stream commands, so XADD is sent through a Lua script.
+   *
+   * @param key Stream key
+   * @param maxLen Approximate max number of entries to retain
+   * @param fieldsAndValues Entry fields, as a sequence of field, value pairs
+   * @return the id of the new entry
+   */
+  public String xAdd(final String key, final long maxLen, final String... fieldsAndValues) {
+    return (String) execute(key, xAddCommand(key, maxLen, fieldsAndValues));
+  }
+
+  public Object xAdd(final String key, final long maxLen, final byte[]... fieldsAndValues) {
+    return execute(key, xAddCommand(key, maxLen, fieldsAndValues));
+  }
+
+  /**
+   * Appends a batch of entries, as {@link #xAdd(String, long, String...)} does, with one round trip
+   * per node.
+   *
+   * @param keys Stream key of each entry
+   * @param maxLen Approximate max number of entries to retain in each stream
+   * @param entries Fields of each entry, as a sequence of field, value pairs
+   * @return the id of each new entry
+   */
+  public List<Object> xAdd(final List<String> keys, final long maxLen, final List<byte[][]> entries) {
+    Assert.isTrue(keys.size() == entries.size(), "Each entry must have its key");
+    final List<JedisCommand<Object>> commands = new ArrayList<JedisCommand<Object>>(entries.size());
+    for (int i = 0; i < entries.size(); i++) {
+      commands.add(xAddCommand(keys.get(i), maxLen, entries.get(i)));
     }
+    return executeBatch(keys, commands);
   }
 
-  public Set<String> keys(final String pattern) {
-    return execute(new JedisCallback<Set<String>>() {
+  public CompletableFuture<Object> xAddAsync(final String key, final long maxLen, final String... fieldsAndValues) {
+    return executeAsync(key, xAddCommand(key, maxLen, fieldsAndValues));
+  }
 
-      public Set<String> doInRedis(final Jedis connection) {
-        return connection.keys(pattern);
-      }
-    });
+  /**
+   * Tries to take, or to extend if <code>owner</code> already holds them, the leases identified by
+   * <code>keys</code> for <code>ttlMillis</code> millis, in a single batch.
+   *
+   * @return for each lease, true if it is held by <code>owner</code>
+   */
+  public List<Boolean> acquireLeases(final List<String> keys, final String owner, final long ttlMillis) {
+    final List<JedisCommand<Object>> commands = new ArrayList<JedisCommand<Object>>(keys.size());
+    for (final String key : keys) {
+      commands.add(evalCommand("LEASE", ACQUIRE_LEASE_SCRIPT, key, owner, Long.toString(ttlMillis)));
+    }
+    return toBooleans(executeBatch(keys, commands));
   }
 
-  public String get(final String key) {
-    return execute(new JedisCallback<String>() {
+  /**
+   * Frees, in a single batch, the leases identified by <code>keys</code> which are still held by
+   * <code>owner</code>.
+   */
+  public List<Boolean> releaseLeases(final List<String> keys, final String owner) {
+    final List<JedisCommand<Object>> commands = new ArrayList<JedisCommand<Object>>(keys.size());
+    for (final String key : keys) {
+      commands.add(evalCommand("UNLEASE", RELEASE_LEASE_SCRIPT, key, owner));
+    }
+    return toBooleans(executeBatch(keys, commands));
+  }
+
+  private List<Boolean> toBooleans(final List<Object> replies) {
+    final List<Boolean> result = new ArrayList<Boolean>(replies.size());
+    for (final Object reply : replies) {
+      result.add(reply instanceof Long && (Long) reply > 0);
+    }
+    return result;
+  }
+
+  public Long expire(final String key, final int seconds) {
+    return execute(key, expireCommand(key, seconds));
+  }
+
+  public CompletableFuture<Long> expireAsync(final String key, final int seconds) {
+    return executeAsync(key, expireCommand(key, seconds));
+  }
+
+  private JedisCommand<String> getCommand(final String key) {
+    return new JedisCommand<String>("GET") {
 
       public String doInRedis(final Jedis connection) {
         return connection.get(key);
       }
-    });
+
+      @Override
+      public Response<String> doInPipeline(final Pipeline pipeline) {
+        return pipeline.get(key);
+      }
+    };
   }
 
-  /** Esta es la unica operacion que implica dos llamadas a Redis. --> Usar pipeline? */
-  public Long getKeyNextValue(final String key) {
-    return execute(new JedisCallback<Long>() {
+  private JedisCommand<Long> getKeyNextValueCommand(final String key) {
+    return new JedisCommand<Long>("INCR") {
 
       public Long doInRedis(final Jedis connection) {
         connection.setnx(key, "0");
         return connection.incr(key);
       }
-    });
+
+      @Override
+      public Response<Long> doInPipeline(final Pipeline pipeline) {
+        pipeline.setnx(key, "0");
+        return pipeline.incr(key);
+      }
+    };
   }
 
-  public String set(final String key, final String value) {
-    return execute(new JedisCallback<String>() {
+  private JedisCommand<String> setCommand(final String key, final String value) {
+    return new JedisCommand<String>("SET") {
 
       public String doInRedis(final Jedis connection) {
         return connection.set(key, value);
       }
-    });
+
+      @Override
+      public Response<String> doInPipeline(final Pipeline pipeline) {
+        return pipeline.set(key, value);
+      }
+    };
   }
 
-  public Long del(final String key) {
-    return execute(new JedisCallback<Long>() {
+  private JedisCommand<Long> delCommand(final String key) {
+    return new JedisCommand<Long>("DEL") {
 
       public Long doInRedis(final Jedis connection) {
         return connection.del(key);
       }
-    });
+
+      @Override
+      public Response<Long> doInPipeline(final Pipeline pipeline) {
+        return pipeline.del(key);
+      }
+    };
   }
 
-  public Set<String> sMembers(final String key) {
-    return execute(new JedisCallback<Set<String>>() {
+  private JedisCommand<Long> unlinkCommand(final String key) {
+    return new JedisCommand<Long>("UNLINK") {
+
+      public Long doInRedis(final Jedis connection) {
+        return connection.unlink(key);
+      }
+
+      @Override
+      public Response<Long> doInPipeline(final Pipeline pipeline) {
+        return pipeline.unlink(key);
+      }
+    };
+  }
+
+  private JedisCommand<Long> incrByCommand(final String key, final long increment) {
+    return new JedisCommand<Long>("INCRBY") {
+
+      public Long doInRedis(final Jedis connection) {
+        return connection.incrBy(key, increment);
+      }
+
+      @Override
+      public Response<Long> doInPipeline(final Pipeline pipeline) {
+        return pipeline.incrBy(key, increment);
+      }
+    };
+  }
+
+  private JedisCommand<Long> rPushCommand(final String key, final String... values) {
+    return new JedisCommand<Long>("RPUSH") {
+
+      public Long doInRedis(final Jedis connection) {
+        return connection.rpush(key, values);
+      }
+
+      @Override
+      public Response<Long> doInPipeline(final Pipeline pipeline) {
+        return pipeline.rpush(key, values);
+      }
+    };
+  }
+
+  private JedisCommand<List<String>> lRangeCommand(final String key, final long start, final long end) {
+    return new JedisCommand<List<String>>("LRANGE") {
+
+      public List<String> doInRedis(final Jedis connection) {
+        return connection.lrange(key, start, end);
+      }
+
+      @Override
+      public Response<List<String>> doInPipeline(final Pipeline pipeline) {
+        return pipeline.lrange(key, start, end);
+      }
+    };
+  }
+
+  private JedisCommand<String> lTrimCommand(final String key, final long start, final long end) {
+    return new JedisCommand<String>("LTRIM") {
+
+      public String doInRedis(final Jedis connection) {
+        return connection.ltrim(key, start, end);
+      }
+
+      @Override
+      public Response<String> doInPipeline(final Pipeline pipeline) {
+        return pipeline.ltrim(key, start, end);
+      }
+    };
+  }
+
+  private JedisCommand<Long> lLenCommand(final String key) {
+    return new JedisCommand<Long>("LLEN") {
+
+      public Long doInRedis(final Jedis connection) {
+        return connection.llen(key);
+      }
+
+      @Override
+      public Response<Long> doInPipeline(final Pipeline pipeline) {
+        return pipeline.llen(key);
+      }
+    };
+  }
+
+  private JedisCommand<Set<String>> sMembersCommand(final String key) {
+    return new JedisCommand<Set<String>>("SMEMBERS") {
 
       public Set<String> doInRedis(final Jedis connection) {
         return connection.smembers(key);
       }
-    });
+
+      @Override
+      public Response<Set<String>> doInPipeline(final Pipeline pipeline) {
+        return pipeline.smembers(key);
+      }
+    };
   }
 
-  public Long sAdd(final String key, final String... members) {
-    return execute(new JedisCallback<Long>() {
+  private JedisCommand<Long> sAddCommand(final String key, final String... members) {
+    return new JedisCommand<Long>("SADD") {
 
       public Long doInRedis(final Jedis connection) {
         return connection.sadd(key, members);
       }
-    });
+
+      @Override
+      public Response<Long> doInPipeline(final Pipeline pipeline) {
+        return pipeline.sadd(key, members);
+      }
+    };
   }
 
-  public Long sRem(final String key, final String... members) {
-    return execute(new JedisCallback<Long>() {
+  private JedisCommand<Long> sRemCommand(final String key, final String... members) {
+    return new JedisCommand<Long>("SREM") {
 
       public Long doInRedis(final Jedis connection) {
         return connection.srem(key, members);
       }
-    });
+
+      @Override
+      public Response<Long> doInPipeline(final Pipeline pipeline) {
+        return pipeline.srem(key, members);
+      }
+    };
   }
 
-  public Set<String> zRevRangeByScore(final String key, final double max, final double min, final int offset, final int count) {
-    return execute(new JedisCallback<Set<String>>() {
+  private JedisCommand<Set<String>> zRevRangeByScoreCommand(final String key, final double max, final double min, final int offset, final int count) {
+    return new JedisCommand<Set<String>>("ZREVRANGEBYSCORE") {
 
       public Set<String> doInRedis(final Jedis connection) {
         return connection.zrevrangeByScore(key, max, min, offset, count);
       }
-    });
+
+      @Override
+      public Response<Set<String>> doInPipeline(final Pipeline pipeline) {
+        return pipeline.zrevrangeByScore(key, max, min, offset, count);
+      }
+    };
   }
 
-  public Set<String> zRange(final String key, final long start, final long end) {
-    return execute(new JedisCallback<Set<String>>() {
+  private JedisCommand<Set<Tuple>> zRevRangeByScoreWithScoresCommand(final String key, final double max, final double min, final int offset,
+      final int count) {
+    return new JedisCommand<Set<Tuple>>("ZREVRANGEBYSCORE") {
+
+      public Set<Tuple> doInRedis(final Jedis connection) {
+        return connection.zrevrangeByScoreWithScores(key, max, min, offset, count);
+      }
+
+      @Override
+      public Response<Set<Tuple>> doInPipeline(final Pipeline pipeline) {
+        return pipeline.zrevrangeByScoreWithScores(key, max, min, offset, count);
+      }
+    };
+  }
+
+  private JedisCommand<Set<String>> zRangeCommand(final String key, final long start, final long end) {
+    return new JedisCommand<Set<String>>("ZRANGE") {
 
       public Set<String> doInRedis(final Jedis connection) {
         return connection.zrange(key, start, end);
       }
-    });
+
+      @Override
+      public Response<Set<String>> doInPipeline(final Pipeline pipeline) {
+        return pipeline.zrange(key, start, end);
+      }
+    };
   }
 
-  public Long zAdd(final String key, final double score, final String member) {
-    return execute(new JedisCallback<Long>() {
+  private JedisCommand<Long> zAddCommand(final String key, final double score, final String member) {
+    return new JedisCommand<Long>("ZADD") {
 
       public Long doInRedis(final Jedis connection) {
         return connection.zadd(key, score, member);
       }
-    });
+
+      @Override
+      public Response<Long> doInPipeline(final Pipeline pipeline) {
+        return pipeline.zadd(key, score, member);
+      }
+    };
   }
 
-  public Long zRemRangeByRank(final String key, final long start, final long end) {
-    return execute(new JedisCallback<Long>() {
+  private JedisCommand<Long> zRemCommand(final String key, final String... members) {
+    return new JedisCommand<Long>("ZREM") {
+
+      public Long doInRedis(final Jedis connection) {
+        return connection.zrem(key, members);
+      }
+
+      @Override
+      public Response<Long> doInPipeline(final Pipeline pipeline) {
+        return pipeline.zrem(key, members);
+      }
+    };
+  }
+
+  private JedisCommand<Long> geoAddCommand(final String key, final double longitude, final double latitude, final String member) {
+    return new JedisCommand<Long>("GEOADD") {
+
+      public Long doInRedis(final Jedis connection) {
+        return connection.geoadd(key, longitude, latitude, member);
+      }
+
+      @Override
+      public Response<Long> doInPipeline(final Pipeline pipeline) {
+        return pipeline.geoadd(key, longitude, latitude, member);
+      }
+    };
+  }
+
+  private JedisCommand<List<GeoRadiusResponse>> geoRadiusCommand(final String key, final double longitude, final double latitude, final double radius,
+      final int count) {
+    // Read-only variant, so it could be sent to replicas
+    final GeoRadiusParam param = GeoRadiusParam.geoRadiusParam().withCoord().sortAscending().count(count);
+    return new JedisCommand<List<GeoRadiusResponse>>("GEORADIUS_RO") {
+
+      public List<GeoRadiusResponse> doInRedis(final Jedis connection) {
+        return connection.georadiusReadonly(key, longitude, latitude, radius, GeoUnit.M, param);
+      }
+
+      @Override
+      public Response<List<GeoRadiusResponse>> doInPipeline(final Pipeline pipeline) {
+        return pipeline.georadiusReadonly(key, longitude, latitude, radius, GeoUnit.M, param);
+      }
+    };
+  }
+
+  private JedisCommand<Set<String>> zRangeByScoreCommand(final String key, final double min, final double max) {
+    return new JedisCommand<Set<String>>("ZRANGEBYSCORE") {
+
+      public Set<String> doInRedis(final Jedis connection) {
+        return connection.zrangeByScore(key, min, max);
+      }
+
+      @Override
+      public Response<Set<String>> doInPipeline(final Pipeline pipeline) {
+        return pipeline.zrangeByScore(key, min, max);
+      }
+    };
+  }
+
+  private JedisCommand<Long> zRemRangeByScoreCommand(final String key, final double min, final double max) {
+    return new JedisCommand<Long>("ZREMRANGEBYSCORE") {
+
+      public Long doInRedis(final Jedis connection) {
+        return connection.zremrangeByScore(key, min, max);
+      }
+
+      @Override
+      public Response<Long> doInPipeline(final Pipeline pipeline) {
+        return pipeline.zremrangeByScore(key, min, max);
+      }
+    };
+  }
+
+  private JedisCommand<Long> zRemRangeByRankCommand(final String key, final long start, final long end) {
+    return new JedisCommand<Long>("ZREMRANGEBYRANK") {
 
       public Long doInRedis(final Jedis connection) {
         return connection.zremrangeByRank(key, start, end);
       }
-    });
+
+      @Override
+      public Response<Long> doInPipeline(final Pipeline pipeline) {
+        return pipeline.zremrangeByRank(key, start, end);
+      }
+    };
   }
 
-  public String hmSet(final String key, final Map<String, String> hash) {
-    return execute(new JedisCallback<String>() {
+  private JedisCommand<String> hmSetCommand(final String key, final Map<String, String> hash) {
+    return new JedisCommand<String>("HMSET") {
 
       public String doInRedis(final Jedis connection) {
         return connection.hmset(key, hash);
       }
-    });
+
+      @Override
+      public Response<String> doInPipeline(final Pipeline pipeline) {
+        return pipeline.hmset(key, hash);
+      }
+    };
   }
 
-  public Map<String, String> hGetAll(final String key) {
-    return execute(new JedisCallback<Map<String, String>>() {
+  private JedisCommand<Map<String, String>> hGetAllCommand(final String key) {
+    return new JedisCommand<Map<String, String>>("HGETALL") {
 
       public Map<String, String> doInRedis(final Jedis connection) {
         return connection.hgetAll(key);
       }
-    });
+
+      @Override
+      public Response<Map<String, String>> doInPipeline(final Pipeline pipeline) {
+        return pipeline.hgetAll(key);
+      }
+    };
   }
 
-  public String hGet(final String key, final String field) {
-    return execute(new JedisCallback<String>() {
+  private JedisCommand<String> hGetCommand(final String key, final String field) {
+    return new JedisCommand<String>("HGET") {
 
       public String doInRedis(final Jedis connection) {
         return connection.hget(key, field);
       }
-    });
+
+      @Override
+      public Response<String> doInPipeline(final Pipeline pipeline) {
+        return pipeline.hget(key, field);
+      }
+    };
   }
 
-  public Long hSet(final String key, final String field, final String value) {
-    return execute(new JedisCallback<Long>() {
+  private JedisCommand<Long> hSetCommand(final String key, final String field, final String value) {
+    return new JedisCommand<Long>("HSET") {
 
       public Long doInRedis(final Jedis connection) {
         return connection.hset(key, field, value);
       }
-    });
+
+      @Override
+      public Response<Long> doInPipeline(final Pipeline pipeline) {
+        return pipeline.hset(key, field, value);
+      }
+    };
   }
 
-  public Long hDel(final String key, final String... fields) {
-    return execute(new JedisCallback<Long>() {
+  private JedisCommand<Long> hDelCommand(final String key, final String... fields) {
+    return new JedisCommand<Long>("HDEL") {
 
       public Long doInRedis(final Jedis connection) {
         return connection.hdel(key, fields);
       }
-    });
+
+      @Override
+      public Response<Long> doInPipeline(final Pipeline pipeline) {
+        return pipeline.hdel(key, fields);
+      }
+    };
   }
 
-  public Set<String> hKeys(final String key) {
-    return execute(new JedisCallback<Set<String>>() {
+  private JedisCommand<Set<String>> hKeysCommand(final String key) {
+    return new JedisCommand<Set<String>>("HKEYS") {
 
       public Set<String> doInRedis(final Jedis connection) {
         return connection.hkeys(key);
       }
-    });
+
+      @Override
+      public Response<Set<String>> doInPipeline(final Pipeline pipeline) {
+        return pipeline.hkeys(key);
+      }
+    };
   }
 
-  public Long publish(final String channel, final String message) {
-    return execute(new JedisCallback<Long>() {
+  private JedisCommand<Long> publishCommand(final String channel, final String message) {
+    return new JedisCommand<Long>("PUBLISH") {
+
+      public Long doInRedis(final Jedis connection) {
+        return connection.publish(channel, message);
+      }
+
+      @Override
+      public Response<Long> doInPipeline(final Pipeline pipeline) {
+        return pipeline.publish(channel, message);
+      }
+    };
+  }
+
+  private JedisCommand<Long> publishCommand(final byte[] channel, final byte[] message) {
+    return new JedisCommand<Long>("PUBLISH") {
 
       public Long doInRedis(final Jedis connection) {
         return connection.publish(channel, message);
       }
-    });
+
+      @Override
+      public Response<Long> doInPipeline(final Pipeline pipeline) {
+        return pipeline.publish(channel, message);
+      }
+    };
   }
 
-  public Long expire(final String key, final int seconds) {
-    return execute(new JedisCallback<Long>() {
+  private JedisCommand<Object> xAddCommand(final String key, final long maxLen, final byte[]... fieldsAndValues) {
+    final byte[][] params = new byte[fieldsAndValues.length + 2][];
+    params[0] = SafeEncoder.encode(key);
+    params[1] = SafeEncoder.encode(Long.toString(maxLen));
+    System.arraycopy(fieldsAndValues, 0, params, 2, fieldsAndValues.length);
+
+    return new JedisCommand<Object>("XADD") {
+
+      public Object doInRedis(final Jedis connection) {
+        return connection.eval(XADD_SCRIPT_BYTES, 1, params);
+      }
+
+      @Override
+      public Response<Object> doInPipeline(final Pipeline pipeline) {
+        return pipeline.eval(XADD_SCRIPT_BYTES, 1, params);
+      }
+    };
+  }
+
+  private JedisCommand<Object> xAddCommand(final String key, final long maxLen, final String... fieldsAndValues) {
+    final String[] params = new String[fieldsAndValues.length + 2];
+    params[0] = key;
+    params[1] = Long.toString(maxLen);
+    System.arraycopy(fieldsAndValues, 0, params, 2, fieldsAndValues.length);
+
+    return new JedisCommand<Object>("XADD") {
+
+      public Object doInRedis(final Jedis connection) {
+        return connection.eval(XADD_SCRIPT, 1, params);
+      }
+
+      @Override
+      public Response<Object> doInPipeline(final Pipeline pipeline) {
+        return pipeline.eval(XADD_SCRIPT, 1, params);
+      }
+    };
+  }
+
+  private JedisCommand<Object> evalCommand(final String name, final String script, final String key, final String... args) {
+    final String[] params = new String[args.length + 1];
+    params[0] = key;
+    System.arraycopy(args, 0, params, 1, args.length);
+
+    return new JedisCommand<Object>(name) {
+
+      public Object doInRedis(final Jedis connection) {
+        return connection.eval(script, 1, params);
+      }
+
+      @Override
+      public Response<Object> doInPipeline(final Pipeline pipeline) {
+        return pipeline.eval(script, 1, params);
+      }
+    };
+  }
+
+  private JedisCommand<Long> expireCommand(final String key, final int seconds) {
+    return new JedisCommand<Long>("EXPIRE") {
 
       public Long doInRedis(final Jedis connection) {
         return connection.expire(key, seconds);
       }
-    });
+
+      @Override
+      public Response<Long> doInPipeline(final Pipeline pipeline) {
+        return pipeline.expire(key, seconds);
+      }
+    };
   }
 
   // Definir en esta clase cada uno de los métodos de Jedis que estamos invocando.
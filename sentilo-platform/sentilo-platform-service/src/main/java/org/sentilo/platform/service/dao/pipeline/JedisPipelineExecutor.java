@@ -0,0 +1,249 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.dao.pipeline;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.sentilo.platform.common.exception.SentiloDataAccessException;
+import org.sentilo.platform.service.dao.JedisCommand;
+import org.sentilo.platform.service.dao.JedisPoolUtils;
+import org.sentilo.platform.service.dao.topology.ConsistentHashPoolLocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+/**
+ * Automatic pipelining of the commands sent by concurrent callers.
+ *
+ * Commands are queued into one of a fixed number of workers, chosen by the hash tag of the key, so
+ * commands on the same key are always written in submission order. Each worker drains its queue in
+ * batches of up to <code>batchSize</code> commands and writes every batch in a single pipeline, so
+ * the round trip is paid once per batch and not once per command, and no more than
+ * <code>connections</code> connections are used regardless of the number of callers. Callers get
+ * a future which is completed once the pipeline has been synced.
+ */
+public class JedisPipelineExecutor {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(JedisPipelineExecutor.class);
+
+  private JedisPoolUtils jedisPoolUtils;
+  private JedisTemplateMode mode = JedisTemplateMode.pooled;
+  private int connections = 4;
+  private int batchSize = 128;
+
+  private PipelineWorker[] workers;
+  private volatile boolean running;
+
+  public void init() {
+    if (!isEnabled()) {
+      return;
+    }
+
+    running = true;
+    workers = new PipelineWorker[connections];
+    for (int i = 0; i < connections; i++) {
+      workers[i] = new PipelineWorker();
+      final Thread thread = new Thread(workers[i], "JedisPipeline-" + i);
+      thread.setDaemon(true);
+      workers[i].thread = thread;
+      thread.start();
+    }
+
+    LOGGER.info("Redis commands will be pipelined over {} connections in batches of up to {} commands", connections, batchSize);
+  }
+
+  public boolean isEnabled() {
+    return mode == JedisTemplateMode.pipelined;
+  }
+
+  /**
+   * Queues the command to be sent to the Redis node which owns the key.
+   *
+   * @param key key used to route the command (null for commands which aren't bound to a key, such
+   *        as PUBLISH)
+   * @param command command to send
+   * @return future completed with the command reply, or with a {@link SentiloDataAccessException}
+   *         if it fails
+   */
+  public <T> CompletableFuture<T> submit(final String key, final JedisCommand<T> command) {
+    final PendingCommand<T> pending = new PendingCommand<T>(key, command);
+    if (!running) {
+      pending.future.completeExceptionally(new SentiloDataAccessException("Redis pipeline executor is not running"));
+    } else {
+      workers[getWorkerIndex(key)].queue.add(pending);
+    }
+
+    return pending.future;
+  }
+
+  public void destroy() {
+    running = false;
+    if (workers == null) {
+      return;
+    }
+
+    for (final PipelineWorker worker : workers) {
+      worker.thread.interrupt();
+      final List<PendingCommand<?>> unsent = new ArrayList<PendingCommand<?>>();
+      worker.queue.drainTo(unsent);
+      for (final PendingCommand<?> pending : unsent) {
+        pending.future.completeExceptionally(new SentiloDataAccessException("Redis pipeline executor has been stopped"));
+      }
+    }
+  }
+
+  private int getWorkerIndex(final String key) {
+    return key == null ? 0 : (ConsistentHashPoolLocator.getKeyTag(key).hashCode() & Integer.MAX_VALUE) % workers.length;
+  }
+
+  private class PipelineWorker implements Runnable {
+
+    private final BlockingQueue<PendingCommand<?>> queue = new LinkedBlockingQueue<PendingCommand<?>>();
+    private Thread thread;
+
+    @Override
+    public void run() {
+      final List<PendingCommand<?>> batch = new ArrayList<PendingCommand<?>>(batchSize);
+      while (running) {
+        try {
+          batch.add(queue.take());
+          queue.drainTo(batch, batchSize - 1);
+          flush(batch);
+        } catch (final InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          return;
+        } catch (final Exception e) {
+          LOGGER.error("Unexpected error flushing pipeline of {} commands", batch.size(), e);
+        } finally {
+          for (final PendingCommand<?> pending : batch) {
+            pending.future.completeExceptionally(new SentiloDataAccessException("Command has not been sent to Redis"));
+          }
+          batch.clear();
+        }
+      }
+    }
+
+    private void flush(final List<PendingCommand<?>> batch) {
+      // If data is distributed, commands of the same batch could belong to different nodes
+      final Map<JedisPool, List<PendingCommand<?>>> commandsByPool = new LinkedHashMap<JedisPool, List<PendingCommand<?>>>();
+      for (final PendingCommand<?> pending : batch) {
+        final JedisPool pool = jedisPoolUtils.getPool(pending.key);
+        List<PendingCommand<?>> commands = commandsByPool.get(pool);
+        if (commands == null) {
+          commands = new ArrayList<PendingCommand<?>>();
+          commandsByPool.put(pool, commands);
+        }
+        commands.add(pending);
+      }
+
+      for (final Entry<JedisPool, List<PendingCommand<?>>> entry : commandsByPool.entrySet()) {
+        send(entry.getKey(), entry.getValue());
+      }
+    }
+
+    private void send(final JedisPool pool, final List<PendingCommand<?>> commands) {
+      Jedis connection = null;
+      try {
+        connection = pool.getResource();
+        final Pipeline pipeline = connection.pipelined();
+        for (final PendingCommand<?> pending : commands) {
+          pending.queue(pipeline);
+        }
+        pipeline.sync();
+        for (final PendingCommand<?> pending : commands) {
+          pending.complete();
+        }
+      } catch (final Exception e) {
+        // Connection has failed: none of the replies can be trusted
+        final SentiloDataAccessException sdae = jedisPoolUtils.convertJedisAccessException(e);
+        for (final PendingCommand<?> pending : commands) {
+          pending.future.completeExceptionally(sdae);
+        }
+      } finally {
+        if (connection != null) {
+          // Broken connections are detected by Jedis and are not returned to the pool
+          connection.close();
+        }
+      }
+    }
+  }
+
+  private class PendingCommand<T> {
+
+    private final String key;
+    private final JedisCommand<T> command;
+    private final CompletableFuture<T> future = new CompletableFuture<T>();
+    private Response<T> response;
+
+    PendingCommand(final String key, final JedisCommand<T> command) {
+      this.key = key;
+      this.command = command;
+    }
+
+    void queue(final Pipeline pipeline) {
+      response = command.doInPipeline(pipeline);
+    }
+
+    void complete() {
+      try {
+        future.complete(response.get());
+      } catch (final Exception e) {
+        // Error reply, such as WRONGTYPE or MOVED, for this single command
+        future.completeExceptionally(jedisPoolUtils.convertJedisAccessException(e));
+      }
+    }
+  }
+
+  public void setJedisPoolUtils(final JedisPoolUtils jedisPoolUtils) {
+    this.jedisPoolUtils = jedisPoolUtils;
+  }
+
+  public void setMode(final JedisTemplateMode mode) {
+    this.mode = mode;
+  }
+
+  public void setConnections(final int connections) {
+    this.connections = connections;
+  }
+
+  public void setBatchSize(final int batchSize) {
+    this.batchSize = batchSize;
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.dao.replica;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.StringUtils;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+/**
+ * Selects the replica of the master node that must serve a read, if any.
+ *
+ * Replicas are defined by <code>jedis.replicas.nodes</code>. Their health is checked periodically
+ * asking the master for its replication info: a replica is only eligible if its link with the
+ * master is online and the time since its last ACK (i.e. the <code>lag</code> field reported by
+ * the master, that replicas refresh every second) is not greater than
+ * <code>jedis.replicas.maxlag</code> seconds. Thus, replicas should announce to the master the
+ * same address that is configured here (see <code>replica-announce-ip</code>).
+ *
+ * If no replica is eligible, {@link #getReplica()} returns null and reads fall back to the master.
+ *
+ * In order to give read-your-writes consistency to the clients of this node, keys written through
+ * it are read from the master until the replicas must have received the write, i.e. for
+ * <code>maxlag + 1</code> seconds plus the check interval (see {@link #isRecentlyWritten(String)}).
+ * Keys written by other nodes may still be read stale from a replica within that window.
+ */
+public class JedisReplicaRouter {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(JedisReplicaRouter.class);
+  private static final int RECENT_WRITES_SLOTS = 1 << 14;
+
+  private JedisPool masterPool;
+  private JedisPoolConfig poolConfig;
+  private String nodes;
+  private int maxLag;
+  private int timeout;
+  private String password;
+  private long checkInterval = 5000;
+
+  private final Map<String, JedisPool> replicas = new LinkedHashMap<String, JedisPool>();
+  private volatile List<JedisPool> eligibleReplicas = Collections.emptyList();
+  private final AtomicInteger next = new AtomicInteger();
+  /** Time of the last write of the keys hashed to every slot. Collisions only cause extra reads on master */
+  private final AtomicLongArray recentWrites = new AtomicLongArray(RECENT_WRITES_SLOTS);
+
+  public void init() {
+    for (final String node : StringUtils.commaDelimitedListToStringArray(nodes)) {
+      if (StringUtils.hasText(node)) {
+        final HostAndPort hostAndPort = HostAndPort.parseString(node.trim());
+        replicas.put(toReplicaId(hostAndPort.getHost(), hostAndPort.getPort()),
+            new JedisPool(poolConfig, hostAndPort.getHost(), hostAndPort.getPort(), timeout, StringUtils.hasText(password) ? password : null));
+      }
+    }
+
+    if (isEnabled()) {
+      LOGGER.info("Reads from replicas enabled. Replicas: {}. Max lag allowed: {} seconds", replicas.keySet(), maxLag);
+      checkReplicas();
+    }
+  }
+
+  public boolean isEnabled() {
+    return !replicas.isEmpty();
+  }
+
+  /**
+   * Returns the pool of one of the eligible replicas, chosen in a round-robin fashion, or null if
+   * there is none.
+   */
+  public JedisPool getReplica() {
+    final List<JedisPool> candidates = eligibleReplicas;
+    if (candidates.isEmpty()) {
+      return null;
+    }
+
+    return candidates.get((next.getAndIncrement() & Integer.MAX_VALUE) % candidates.size());
+  }
+
+  /**
+   * Excludes the replica from the eligible ones until the next health check confirms it is
+   * working again.
+   */
+  public void discard(final JedisPool replica) {
+    final List<JedisPool> candidates = new ArrayList<JedisPool>(eligibleReplicas);
+    if (candidates.remove(replica)) {
+      eligibleReplicas = Collections.unmodifiableList(candidates);
+    }
+  }
+
+  /**
+   * Records that the key has just been written through this node.
+   */
+  public void markWritten(final String key) {
+    if (isEnabled()) {
+      recentWrites.set(toSlot(key), System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * Returns true if the key has been written through this node recently enough that an eligible
+   * replica may not have received the write yet. The window covers the max lag allowed (rounded up
+   * to the next second, as lag is reported in seconds) plus the time elapsed since the last health
+   * check.
+   */
+  public boolean isRecentlyWritten(final String key) {
+    final long lastWrite = recentWrites.get(toSlot(key));
+    return lastWrite != 0 && System.currentTimeMillis() - lastWrite <= (maxLag + 1) * 1000L + checkInterval;
+  }
+
+  @Scheduled(initialDelayString = "${jedis.replicas.check.interval:5000}", fixedDelayString = "${jedis.replicas.check.interval:5000}")
+  public void checkReplicas() {
+    if (!isEnabled()) {
+      return;
+    }
+
+    Map<String, Long> lags;
+    try {
+      lags = getReplicationLags();
+    } catch (final Exception e) {
+      LOGGER.warn("Unable to get replication info from master, replicas will not be read until next check: {}", e.getMessage());
+      lags = Collections.emptyMap();
+    }
+
+    final List<JedisPool> candidates = new ArrayList<JedisPool>();
+    for (final Entry<String, JedisPool> replica : replicas.entrySet()) {
+      final Long lag = lags.get(replica.getKey());
+      if (lag != null && lag <= maxLag) {
+        candidates.add(replica.getValue());
+      } else {
+        LOGGER.debug("Replica {} is not eligible for reads. Lag: {}", replica.getKey(), lag);
+      }
+    }
+
+    if (candidates.size() != eligibleReplicas.size()) {
+      LOGGER.info("Eligible replicas for reads: {} of {}", candidates.size(), replicas.size());
+    }
+    eligibleReplicas = Collections.unmodifiableList(candidates);
+  }
+
+  public void destroy() {
+    for (final JedisPool replica : replicas.values()) {
+      replica.destroy();
+    }
+  }
+
+  /**
+   * Parses the replicas section of the master <code>INFO replication</code> output, i.e. lines
+   * such as <code>slave0:ip=10.0.0.2,port=6379,state=online,offset=2870,lag=0</code>, and returns
+   * the lag, in seconds, of every online replica.
+   */
+  private Map<String, Long> getReplicationLags() {
+    final String info;
+    try (Jedis jedis = masterPool.getResource()) {
+      info = jedis.info("replication");
+    }
+
+    final Map<String, Long> lags = new HashMap<String, Long>();
+    for (final String line : info.split("\r?\n")) {
+      if (!line.startsWith("slave") || line.indexOf(':') == -1) {
+        continue;
+      }
+
+      final Map<String, String> fields = new HashMap<String, String>();
+      for (final String field : line.substring(line.indexOf(':') + 1).split(",")) {
+        final String[] tokens = field.split("=", 2);
+        if (tokens.length == 2) {
+          fields.put(tokens[0], tokens[1]);
+        }
+      }
+
+      if ("online".equals(fields.get("state")) && fields.containsKey("lag")) {
+        lags.put(fields.get("ip") + ":" + fields.get("port"), Long.valueOf(fields.get("lag")));
+      }
+    }
+
+    return lags;
+  }
+
+  private int toSlot(final String key) {
+    final int h = key.hashCode();
+    return (h ^ h >>> 16) & RECENT_WRITES_SLOTS - 1;
+  }
+
+  private String toReplicaId(final String host, final int port) {
+    try {
+      return InetAddress.getByName(host).getHostAddress() + ":" + port;
+    } catch (final UnknownHostException uhe) {
+      return host + ":" + port;
+    }
+  }
+
+  public void setMasterPool(final JedisPool masterPool) {
+    this.masterPool = masterPool;
+  }
+
+  public void setPoolConfig(final JedisPoolConfig poolConfig) {
+    this.poolConfig = poolConfig;
+  }
+
+  public void setNodes(final String nodes) {
+    this.nodes = nodes;
+  }
+
+  public void setMaxLag(final int maxLag) {
+    this.maxLag = maxLag;
+  }
+
+  public void setTimeout(final int timeout) {
+    this.timeout = timeout;
+  }
+
+  public void setPassword(final String password) {
+    this.password = password;
+  }
+
+  public void setCheckInterval(final long checkInterval) {
+    this.checkInterval = checkInterval;
+  }
+}
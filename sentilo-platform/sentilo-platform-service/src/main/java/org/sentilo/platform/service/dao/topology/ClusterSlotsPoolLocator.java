@@ -0,0 +1,170 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.dao.topology;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.sentilo.platform.common.exception.SentiloDataAccessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Routes every key to the master that owns its hash slot in a Redis Cluster. Slots map is read
+ * with CLUSTER SLOTS from any of the seed nodes at startup and every time {@link #refresh()} is
+ * called (e.g. when a MOVED redirection is received).
+ */
+public class ClusterSlotsPoolLocator implements JedisPoolLocator {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ClusterSlotsPoolLocator.class);
+  private static final int SLOTS = 16384;
+
+  private final List<HostAndPort> seedNodes;
+  private final JedisPoolConfig poolConfig;
+  private final int timeout;
+  private final String password;
+
+  private final Map<String, JedisPool> pools = new ConcurrentHashMap<String, JedisPool>();
+  private volatile JedisPool[] slots = new JedisPool[SLOTS];
+
+  public ClusterSlotsPoolLocator(final List<HostAndPort> seedNodes, final JedisPoolConfig poolConfig, final int timeout, final String password) {
+    Assert.notEmpty(seedNodes, "At least one seed node must be defined");
+    this.seedNodes = seedNodes;
+    this.poolConfig = poolConfig;
+    this.timeout = timeout;
+    this.password = password;
+    refresh();
+  }
+
+  @Override
+  public JedisPool getPool(final String key) {
+    final JedisPool pool = slots[JedisClusterCRC16.getSlot(key)];
+    if (pool == null) {
+      throw new SentiloDataAccessException("No Redis node found for key " + key);
+    }
+    return pool;
+  }
+
+  @Override
+  public Collection<JedisPool> getPools() {
+    final Set<JedisPool> masters = new HashSet<JedisPool>();
+    for (final JedisPool pool : slots) {
+      if (pool != null) {
+        masters.add(pool);
+      }
+    }
+    return new ArrayList<JedisPool>(masters);
+  }
+
+  @Override
+  public synchronized void refresh() {
+    for (final HostAndPort seed : getRefreshCandidates()) {
+      Jedis jedis = null;
+      try {
+        jedis = new Jedis(seed.getHost(), seed.getPort(), timeout);
+        if (password != null && password.length() > 0) {
+          jedis.auth(password);
+        }
+        slots = buildSlotsMap(jedis.clusterSlots());
+        LOGGER.info("Redis Cluster slots map loaded from node {}", seed);
+        return;
+      } catch (final Exception e) {
+        LOGGER.warn("Unable to read cluster slots from node {}: {}", seed, e.getMessage());
+      } finally {
+        if (jedis != null) {
+          jedis.close();
+        }
+      }
+    }
+
+    throw new SentiloDataAccessException("Unable to read Redis Cluster slots from any node");
+  }
+
+  @Override
+  public JedisTopology getTopology() {
+    return JedisTopology.cluster;
+  }
+
+  @Override
+  public void destroy() {
+    for (final JedisPool pool : pools.values()) {
+      pool.destroy();
+    }
+  }
+
+  private List<HostAndPort> getRefreshCandidates() {
+    // Known nodes first, as the seed list may be out of date
+    final List<HostAndPort> candidates = new ArrayList<HostAndPort>();
+    for (final String node : pools.keySet()) {
+      candidates.add(HostAndPort.parseString(node));
+    }
+    candidates.addAll(seedNodes);
+    return candidates;
+  }
+
+  private JedisPool[] buildSlotsMap(final List<Object> clusterSlots) {
+    // Each entry has the format [start slot, end slot, [master host, master port, id], replicas...]
+    final JedisPool[] newSlots = new JedisPool[SLOTS];
+    for (final Object entry : clusterSlots) {
+      final List<?> slotInfo = (List<?>) entry;
+      final int start = ((Long) slotInfo.get(0)).intValue();
+      final int end = ((Long) slotInfo.get(1)).intValue();
+      final List<?> master = (List<?>) slotInfo.get(2);
+      final JedisPool pool = getOrCreatePool(SafeEncoder.encode((byte[]) master.get(0)), ((Long) master.get(1)).intValue());
+      for (int slot = start; slot <= end; slot++) {
+        newSlots[slot] = pool;
+      }
+    }
+    return newSlots;
+  }
+
+  private JedisPool getOrCreatePool(final String host, final int port) {
+    final String node = host + ":" + port;
+    JedisPool pool = pools.get(node);
+    if (pool == null) {
+      final String nodePassword = password != null && password.length() > 0 ? password : null;
+      pool = new JedisPool(poolConfig, host, port, timeout, nodePassword);
+      pools.put(node, pool);
+    }
+    return pool;
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.dao.topology;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.springframework.util.Assert;
+
+import redis.clients.jedis.JedisPool;
+import redis.clients.util.Hashing;
+
+/**
+ * Client-side sharding over a static list of Redis nodes. Keys are distributed using a consistent
+ * hash ring (with virtual nodes, as Jedis' Sharded does) so adding or removing a node only moves a
+ * fraction of the keys.
+ *
+ * Only the hash tag of a key, i.e. the substring between the first <code>{</code> and the next
+ * <code>}</code>, is hashed if it is present, so keys sharing the same tag are always stored in the
+ * same node.
+ */
+public class ConsistentHashPoolLocator implements JedisPoolLocator {
+
+  private static final int VIRTUAL_NODES = 160;
+
+  private final TreeMap<Long, JedisPool> ring = new TreeMap<Long, JedisPool>();
+  private final Map<String, JedisPool> nodes;
+  private final Hashing algo = Hashing.MURMUR_HASH;
+
+  /**
+   * @param nodes Pools indexed by node name (i.e. <code>host:port</code>). Node name, and not its
+   *        position in the list, is what fixes its place in the ring.
+   */
+  public ConsistentHashPoolLocator(final Map<String, JedisPool> nodes) {
+    Assert.notEmpty(nodes, "At least one node must be defined");
+    this.nodes = nodes;
+    for (final Entry<String, JedisPool> node : nodes.entrySet()) {
+      for (int n = 0; n < VIRTUAL_NODES; n++) {
+        ring.put(algo.hash(node.getKey() + "*" + n), node.getValue());
+      }
+    }
+  }
+
+  @Override
+  public JedisPool getPool(final String key) {
+    final SortedMap<Long, JedisPool> tail = ring.tailMap(algo.hash(getKeyTag(key)));
+    return tail.isEmpty() ? ring.firstEntry().getValue() : tail.get(tail.firstKey());
+  }
+
+  @Override
+  public Collection<JedisPool> getPools() {
+    return new ArrayList<JedisPool>(nodes.values());
+  }
+
+  @Override
+  public void refresh() {
+    // Nothing to do: ring is static
+  }
+
+  @Override
+  public JedisTopology getTopology() {
+    return JedisTopology.sharded;
+  }
+
+  @Override
+  public void destroy() {
+    for (final JedisPool pool : nodes.values()) {
+      pool.destroy();
+    }
+  }
+
+  /**
+   * Returns the hash tag of the key, following the same rules as Redis Cluster, or the key itself
+   * if it has no tag.
+   */
+  public static String getKeyTag(final String key) {
+    final int start = key.indexOf('{');
+    if (start != -1) {
+      final int end = key.indexOf('}', start + 1);
+      if (end != -1 && end != start + 1) {
+        return key.substring(start + 1, end);
+      }
+    }
+    return key;
+  }
+}
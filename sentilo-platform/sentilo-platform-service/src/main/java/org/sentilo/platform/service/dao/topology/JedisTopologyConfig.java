@@ -0,0 +1,150 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.dao.topology;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.util.StringUtils;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+/**
+ * Builds the Redis connection objects used by the platform according to the configured topology.
+ *
+ * The node defined by <code>jedis.pool.host</code> and <code>jedis.pool.port</code> is always the
+ * default node: messages are published through it and it is where the pub/sub listener container
+ * is connected to. In <code>sharded</code> mode, data keys are spread over the nodes listed in
+ * <code>jedis.topology.nodes</code> whereas in <code>cluster</code> mode these nodes are the seeds
+ * used to discover the cluster.
+ */
+public class JedisTopologyConfig {
+
+  private JedisTopology topology = JedisTopology.single;
+  private String nodes;
+  private String host;
+  private int port;
+  private int timeout;
+  private String password;
+  private JedisPoolConfig poolConfig;
+
+  public JedisPoolLocator buildPoolLocator(final JedisPool defaultPool) {
+    switch (topology) {
+      case sharded:
+        final Map<String, JedisPool> shards = new LinkedHashMap<String, JedisPool>();
+        for (final HostAndPort node : getNodes()) {
+          shards.put(node.toString(), new JedisPool(poolConfig, node.getHost(), node.getPort(), timeout, getPassword()));
+        }
+        return new ConsistentHashPoolLocator(shards);
+      case cluster:
+        return new ClusterSlotsPoolLocator(getNodes(), poolConfig, timeout, password);
+      default:
+        return new SingleNodePoolLocator(defaultPool);
+    }
+  }
+
+  public JedisConnectionFactory buildConnectionFactory() {
+    if (topology == JedisTopology.cluster) {
+      final RedisClusterConfiguration clusterConfig = new RedisClusterConfiguration();
+      for (final HostAndPort node : getNodes()) {
+        clusterConfig.clusterNode(node.getHost(), node.getPort());
+      }
+      clusterConfig.setPassword(RedisPassword.of(getPassword()));
+      return new JedisConnectionFactory(clusterConfig, poolConfig);
+    }
+
+    final RedisStandaloneConfiguration standaloneConfig = new RedisStandaloneConfiguration(host, port);
+    standaloneConfig.setPassword(RedisPassword.of(getPassword()));
+    final JedisClientConfiguration clientConfig = JedisClientConfiguration.builder().readTimeout(Duration.ofMillis(timeout))
+        .connectTimeout(Duration.ofMillis(timeout)).usePooling().poolConfig(poolConfig).build();
+
+    return new JedisConnectionFactory(standaloneConfig, clientConfig);
+  }
+
+  private List<HostAndPort> getNodes() {
+    final List<HostAndPort> hostsAndPorts = new ArrayList<HostAndPort>();
+    for (final String node : StringUtils.commaDelimitedListToStringArray(nodes)) {
+      if (StringUtils.hasText(node)) {
+        hostsAndPorts.add(HostAndPort.parseString(node.trim()));
+      }
+    }
+
+    if (hostsAndPorts.isEmpty()) {
+      hostsAndPorts.add(new HostAndPort(host, port));
+    }
+
+    return hostsAndPorts;
+  }
+
+  private String getPassword() {
+    return StringUtils.hasText(password) ? password : null;
+  }
+
+  public JedisTopology getTopology() {
+    return topology;
+  }
+
+  public void setTopology(final JedisTopology topology) {
+    this.topology = topology;
+  }
+
+  public void setNodes(final String nodes) {
+    this.nodes = nodes;
+  }
+
+  public void setHost(final String host) {
+    this.host = host;
+  }
+
+  public void setPort(final int port) {
+    this.port = port;
+  }
+
+  public void setTimeout(final int timeout) {
+    this.timeout = timeout;
+  }
+
+  public void setPassword(final String password) {
+    this.password = password;
+  }
+
+  public void setPoolConfig(final JedisPoolConfig poolConfig) {
+    this.poolConfig = poolConfig;
+  }
+}
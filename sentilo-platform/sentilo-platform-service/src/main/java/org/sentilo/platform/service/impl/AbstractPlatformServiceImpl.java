@@ -28,13 +28,22 @@
  */
 package org.sentilo.platform.service.impl;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.sentilo.common.enums.EventTransport;
+import org.sentilo.common.utils.EventStreamUtils;
 import org.sentilo.platform.service.dao.JedisKeysBuilder;
 import org.sentilo.platform.service.dao.JedisSequenceUtils;
 import org.sentilo.platform.service.dao.JedisTemplate;
+import org.sentilo.platform.service.dao.topology.JedisTopology;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.listener.Topic;
 import org.springframework.util.StringUtils;
 
+import redis.clients.util.SafeEncoder;
+
 public abstract class AbstractPlatformServiceImpl {
 
   protected static final String SID = "sid";
@@ -65,10 +74,96 @@ public abstract class AbstractPlatformServiceImpl {
   @Value("${redis.expire.data.seconds}")
   protected int expireSeconds;
 
+  @Value("${jedis.events.transport:pubsub}")
+  protected EventTransport eventTransport = EventTransport.pubsub;
+
+  @Value("${jedis.events.stream.partitions:4}")
+  protected int streamPartitions = 4;
+
+  @Value("${jedis.events.stream.maxlen:100000}")
+  protected long streamMaxLen = 100000;
+
   public JedisKeysBuilder getKeysBuilder() {
     return keysBuilder;
   }
 
+  /**
+   * Keys must be built using hash tags if data is distributed among many Redis nodes.
+   */
+  @Value("${jedis.topology:single}")
+  public void setTopology(final JedisTopology topology) {
+    keysBuilder = new JedisKeysBuilder(topology.isDistributed());
+  }
+
+  /** Events of the current request waiting to be delivered, if they are being batched */
+  private final ThreadLocal<List<PendingEvent>> pendingEvents = new ThreadLocal<List<PendingEvent>>();
+
+  /**
+   * Delivers an event to its subscribers: it is always published to its channel, as HTTP push
+   * subscriptions and SSE streams are fed from pub/sub, and, if the stream transport is enabled, it
+   * is also appended to the stream partition which holds the events of its resource.
+   *
+   * If a batch of events has been started by the current thread, the event is delivered when the
+   * batch is flushed.
+   */
+  protected void publishEvent(final Topic topic, final byte[] content) {
+    final List<PendingEvent> batch = pendingEvents.get();
+    if (batch != null) {
+      batch.add(new PendingEvent(topic.getTopic(), content));
+      return;
+    }
+
+    jedisTemplate.publish(SafeEncoder.encode(topic.getTopic()), content);
+
+    if (eventTransport.isStream()) {
+      final String streamKey = EventStreamUtils.getStreamKey(topic.getTopic(), streamPartitions);
+      jedisTemplate.xAdd(streamKey, streamMaxLen, toStreamEntry(topic.getTopic(), content));
+    }
+  }
+
+  /**
+   * Starts batching the events published by the current thread, so that all of them are delivered
+   * in a single round trip by {@link #flushEvents()}, which must always be called afterwards.
+   */
+  protected void startEventsBatch() {
+    pendingEvents.set(new ArrayList<PendingEvent>());
+  }
+
+  /**
+   * Delivers, in the same order they were published, the events batched since
+   * {@link #startEventsBatch()} and stops batching them.
+   */
+  protected void flushEvents() {
+    final List<PendingEvent> batch = pendingEvents.get();
+    pendingEvents.remove();
+    if (batch == null || batch.isEmpty()) {
+      return;
+    }
+
+    final List<byte[]> channels = new ArrayList<byte[]>(batch.size());
+    final List<byte[]> messages = new ArrayList<byte[]>(batch.size());
+    for (final PendingEvent event : batch) {
+      channels.add(SafeEncoder.encode(event.topic));
+      messages.add(event.content);
+    }
+    jedisTemplate.publish(channels, messages);
+
+    if (eventTransport.isStream()) {
+      final List<String> streamKeys = new ArrayList<String>(batch.size());
+      final List<byte[][]> entries = new ArrayList<byte[][]>(batch.size());
+      for (final PendingEvent event : batch) {
+        streamKeys.add(EventStreamUtils.getStreamKey(event.topic, streamPartitions));
+        entries.add(toStreamEntry(event.topic, event.content));
+      }
+      jedisTemplate.xAdd(streamKeys, streamMaxLen, entries);
+    }
+  }
+
+  private byte[][] toStreamEntry(final String topic, final byte[] content) {
+    return new byte[][] {SafeEncoder.encode(EventStreamUtils.TOPIC_FIELD), SafeEncoder.encode(topic),
+        SafeEncoder.encode(EventStreamUtils.MESSAGE_FIELD), content};
+  }
+
   protected Integer ttlToExpiredTime(final String redisSensorSecondsTtl) {
     return StringUtils.hasText(redisSensorSecondsTtl) ? getExpiredTime(Integer.valueOf(redisSensorSecondsTtl)) : expireSeconds;
   }
@@ -82,4 +177,14 @@ public abstract class AbstractPlatformServiceImpl {
     return (sensorSecondsTtl != null && sensorSecondsTtl > 0) ? sensorSecondsTtl : expireSeconds;
   }
 
+  private static class PendingEvent {
+
+    private final String topic;
+    private final byte[] content;
+
+    PendingEvent(final String topic, final byte[] content) {
+      this.topic = topic;
+      this.content = content;
+    }
+  }
 }
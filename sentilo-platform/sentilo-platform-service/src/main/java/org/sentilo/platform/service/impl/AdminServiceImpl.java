@@ -28,7 +28,10 @@
  */
 package org.sentilo.platform.service.impl;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.sentilo.common.config.SentiloArtifactConfigRepository;
 import org.sentilo.common.domain.CatalogAlert;
@@ -37,19 +40,28 @@ import org.sentilo.common.domain.CatalogSensor;
 import org.sentilo.common.domain.PlatformConfigMessage;
 import org.sentilo.common.domain.PlatformMetricsMessage;
 import org.sentilo.platform.common.domain.AdminInputMessage;
+import org.sentilo.platform.common.domain.HeavyHitters;
+import org.sentilo.platform.common.domain.PurgeStatus;
+import org.sentilo.platform.common.domain.RedisMetrics;
 import org.sentilo.platform.common.domain.Statistics;
 import org.sentilo.platform.common.domain.Subscription;
 import org.sentilo.platform.common.service.AdminService;
 import org.sentilo.platform.common.service.ResourceService;
 import org.sentilo.platform.common.service.SubscribeService;
+import org.sentilo.platform.service.dao.JedisPoolUtils;
 import org.sentilo.platform.service.monitor.CounterService;
 import org.sentilo.platform.service.monitor.MetricService;
+import org.sentilo.platform.service.monitor.HeavyHittersTracker;
+import org.sentilo.platform.service.monitor.RedisCommandMetrics;
+import org.sentilo.platform.service.purge.ResourcePurgeService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
+import redis.clients.jedis.JedisPool;
+
 @Service
 public class AdminServiceImpl extends AbstractPlatformServiceImpl implements AdminService {
 
@@ -70,6 +82,18 @@ public class AdminServiceImpl extends AbstractPlatformServiceImpl implements Adm
   @Autowired
   private SentiloArtifactConfigRepository configRepository;
 
+  @Autowired
+  private RedisCommandMetrics redisCommandMetrics;
+
+  @Autowired
+  private JedisPoolUtils jedisPoolUtils;
+
+  @Autowired
+  private HeavyHittersTracker heavyHittersTracker;
+
+  @Autowired
+  private ResourcePurgeService purgeService;
+
   @Override
   public Statistics getStatistics() {
     return null;
@@ -89,6 +113,29 @@ public class AdminServiceImpl extends AbstractPlatformServiceImpl implements Adm
     return metricsMessage;
   }
 
+  @Override
+  public RedisMetrics getRedisMetrics() {
+    final List<RedisMetrics.Pool> pools = new ArrayList<RedisMetrics.Pool>();
+    int index = 0;
+    for (final JedisPool pool : jedisPoolUtils.getPools()) {
+      final String name = jedisPoolUtils.isDistributed() ? "node-" + index++ : "default";
+      pools.add(new RedisMetrics.Pool(name, pool.getNumActive(), pool.getNumIdle(), pool.getNumWaiters(), (float) pool.getMeanBorrowWaitTimeMillis(),
+          (float) pool.getMaxBorrowWaitTimeMillis()));
+    }
+
+    return new RedisMetrics(System.currentTimeMillis(), redisCommandMetrics.getCommands(), pools, redisCommandMetrics.getSlowCommands());
+  }
+
+  @Override
+  public HeavyHitters getHeavyHitters() {
+    return heavyHittersTracker.getHeavyHitters();
+  }
+
+  @Override
+  public PurgeStatus getPurgeStatus() {
+    return purgeService.getStatus();
+  }
+
   @Override
   public List<Subscription> getSubscriptions(final String entityId) {
     final Subscription subscription = new Subscription(entityId);
@@ -176,10 +223,20 @@ public class AdminServiceImpl extends AbstractPlatformServiceImpl implements Adm
   }
 
   private void saveSensors(final AdminInputMessage message) {
-    for (final CatalogSensor sensor : message.getSensors()) {
-      LOGGER.debug("Saving sensor [{}] belonging to provider [{}]", sensor.getSensor(), sensor.getProvider());
-      registerProviderAndSensorIfNeedBe(sensor);
+    // Providers should be created if they don't exist in Redis yet. But if sensors exist, they
+    // should be updated
+    final List<CatalogSensor> sensors = message.getSensors();
+    final Set<String> providers = new LinkedHashSet<String>();
+    for (final CatalogSensor sensor : sensors) {
+      providers.add(sensor.getProvider());
+    }
+
+    for (final String providerId : providers) {
+      resourceService.registerProviderIfNeedBe(providerId);
     }
+
+    LOGGER.debug("Saving {} sensors belonging to providers {}", sensors.size(), providers);
+    resourceService.registerSensorsIfNeedBe(sensors, true);
   }
 
   private void saveAlerts(final AdminInputMessage message) {
@@ -191,11 +248,4 @@ public class AdminServiceImpl extends AbstractPlatformServiceImpl implements Adm
     }
   }
 
-  private void registerProviderAndSensorIfNeedBe(final CatalogSensor sensor) {
-    // Provider should be created if it doesn't exist in Redis yet. But if sensor exists, it should
-    // be updated
-    resourceService.registerProviderIfNeedBe(sensor.getProvider());
-    resourceService.registerSensorIfNeedBe(sensor, true);
-  }
-
 }
@@ -48,6 +48,7 @@ import org.sentilo.platform.common.exception.ResourceNotFoundException;
 import org.sentilo.platform.common.exception.ResourceOfflineException;
 import org.sentilo.platform.common.service.AlarmService;
 import org.sentilo.platform.common.service.ResourceService;
+import org.sentilo.platform.service.dao.replica.ReplicaRead;
 import org.sentilo.platform.service.monitor.Metric;
 import org.sentilo.platform.service.monitor.RequestType;
 import org.sentilo.platform.service.utils.ChannelUtils;
@@ -126,6 +127,7 @@ public class AlarmServiceImpl extends AbstractPlatformServiceImpl implements Ala
    * domain.AlarmInputMessage)
    */
   @Metric(requestType = RequestType.GET, eventType = EventType.ALARM)
+  @ReplicaRead
   public List<Alarm> getLastAlarms(final AlarmInputMessage message) {
     // Para recuperar las alarmas asociadas a una alerta, debemos hacer lo siguiente:
     // 1. Recuperar el identificador interno de la alerta en Redis
@@ -168,7 +170,7 @@ public class AlarmServiceImpl extends AbstractPlatformServiceImpl implements Ala
     final Long aid = jedisSequenceUtils.getAid(message.getAlertId());
     final Long amid = jedisSequenceUtils.getAmid();
     final Long timestamp = System.currentTimeMillis();
-    final String alarmKey = keysBuilder.getAlarmKey(amid);
+    final String alarmKey = keysBuilder.getAlarmKey(aid, amid);
 
     // Build a new hash with key amid:{amid} and values source, message, timestamp and alertType.
     final Map<String, String> fields = new HashMap<String, String>();
@@ -201,7 +203,7 @@ public class AlarmServiceImpl extends AbstractPlatformServiceImpl implements Ala
   private void publish(final AlarmInputMessage message) {
     LOGGER.debug("Publish alarm event message [{}] associated with alert [{}]", message.getMessage(), message.getAlertId());
     final Topic topic = ChannelUtils.buildTopic(PubSubChannelPrefix.alarm, message.getAlertId());
-    jedisTemplate.publish(topic.getTopic(), PublishMessageUtils.buildContentToPublish(message, topic));
+    publishEvent(topic, PublishMessageUtils.buildContentToPublish(message, topic));
   }
 
   private List<Alarm> getLastAlarms(final Long aid, final AlarmInputMessage message) {
@@ -213,16 +215,16 @@ public class AlarmServiceImpl extends AbstractPlatformServiceImpl implements Ala
     // ZREVRANGEBYSCORE aid:{aid}:alarms to from LIMIT 0 limit
 
     final Set<String> amids = jedisTemplate.zRevRangeByScore(keysBuilder.getAlertAlarmsKey(aid), to, from, 0, limit);
-    return !CollectionUtils.isEmpty(amids) ? getAlarms(amids, message.getAlertId()) : Collections.<Alarm>emptyList();
+    return !CollectionUtils.isEmpty(amids) ? getAlarms(aid, amids, message.getAlertId()) : Collections.<Alarm>emptyList();
   }
 
-  private List<Alarm> getAlarms(final Set<String> amids, final String alarmId) {
+  private List<Alarm> getAlarms(final Long aid, final Set<String> amids, final String alarmId) {
     final List<Alarm> alarmMessages = new ArrayList<Alarm>();
     final Iterator<String> it = amids.iterator();
 
     while (it.hasNext()) {
       final Long amid = Long.parseLong(it.next());
-      final Alarm alarm = getAlarm(amid, alarmId);
+      final Alarm alarm = getAlarm(aid, amid, alarmId);
       if (alarm != null) {
         alarmMessages.add(alarm);
       }
@@ -230,13 +232,13 @@ public class AlarmServiceImpl extends AbstractPlatformServiceImpl implements Ala
     return alarmMessages;
   }
 
-  private Alarm getAlarm(final Long amid, final String alertId) {
+  private Alarm getAlarm(final Long aid, final Long amid, final String alertId) {
     Alarm alarm = null;
     String message = null;
     String ts = null;
     String sender = null;
 
-    final Map<String, String> infoSoid = jedisTemplate.hGetAll(keysBuilder.getAlarmKey(amid));
+    final Map<String, String> infoSoid = jedisTemplate.hGetAll(keysBuilder.getAlarmKey(aid, amid));
     if (!CollectionUtils.isEmpty(infoSoid)) {
       message = infoSoid.get(MESSAGE);
       ts = infoSoid.get(TIMESTAMP);
@@ -29,19 +29,27 @@
 package org.sentilo.platform.service.impl;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import org.sentilo.common.cache.LRUCache;
 import org.sentilo.common.cache.impl.LRUCacheImpl;
+import org.sentilo.common.domain.QueryFilterParams;
 import org.sentilo.common.enums.EventType;
 import org.sentilo.common.enums.SensorState;
 import org.sentilo.common.utils.SentiloConstants;
+import org.sentilo.platform.common.cache.CacheSnapshotStore;
 import org.sentilo.platform.common.domain.AlarmInputMessage;
 import org.sentilo.platform.common.domain.DataInputMessage;
+import org.sentilo.platform.common.domain.GeoArea;
 import org.sentilo.platform.common.domain.Observation;
 import org.sentilo.platform.common.domain.Sensor;
 import org.sentilo.platform.common.exception.EventRejectedException;
@@ -50,8 +58,12 @@ import org.sentilo.platform.common.exception.ResourceNotFoundException;
 import org.sentilo.platform.common.exception.ResourceOfflineException;
 import org.sentilo.platform.common.service.DataService;
 import org.sentilo.platform.common.service.ResourceService;
+import org.sentilo.platform.service.dao.replica.ReplicaRead;
 import org.sentilo.platform.service.monitor.Metric;
 import org.sentilo.platform.service.monitor.RequestType;
+import org.sentilo.platform.service.sampling.AggregationSampler;
+import org.sentilo.platform.service.sampling.LttbSampler;
+import org.sentilo.platform.service.sampling.ObservationSampler;
 import org.sentilo.platform.service.utils.ChannelUtils;
 import org.sentilo.platform.service.utils.ChannelUtils.PubSubChannelPrefix;
 import org.sentilo.platform.service.utils.PublishMessageUtils;
@@ -61,6 +73,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.listener.Topic;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
@@ -68,6 +81,10 @@ import org.springframework.util.StringUtils;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 
+import redis.clients.jedis.GeoCoordinate;
+import redis.clients.jedis.GeoRadiusResponse;
+import redis.clients.jedis.Tuple;
+
 @Service
 public class DataServiceImpl extends AbstractPlatformServiceImpl implements DataService {
 
@@ -76,12 +93,67 @@ public class DataServiceImpl extends AbstractPlatformServiceImpl implements Data
   @Autowired
   private ResourceService resourceService;
 
-  /** Internal cache to evict spam with ghost alarms notifications. */
+  @Autowired(required = false)
+  private CacheSnapshotStore snapshotStore;
+
+  private static final double MAX_GEO_LATITUDE = 85.05112878;
+  private static final String GHOST_SENSOR_MESSAGE_TEMPLATE = "Detected ghost sensor %s belonging to provider %s";
+  private static final String GHOST_SENSORS_SNAPSHOT_NAME = "ghost-sensors";
+  private static final int GHOST_SENSORS_SNAPSHOT_VERSION = 1;
+
+  /**
+   * Internal cache to evict spam with ghost alarms notifications. Its keys are saved as a snapshot,
+   * as the sequences cache, so that alarms of ghost sensors already notified are not published
+   * again after a restart.
+   */
   private final LRUCache<String, String> ghostSensors = new LRUCacheImpl<String, String>(1000, 10);
 
+  /** Last location indexed of each sensor, so its position is only written when it changes. */
+  private final LRUCache<Long, String> sensorsPositions = new LRUCacheImpl<Long, String>(10000, 60);
+
   @Value("${api.data.reject-unknown-sensors:true}")
   private boolean rejectUnknownSensors = true;
 
+  @Value("${api.data.sampling.page-size:500}")
+  private int samplingPageSize = 500;
+
+  @Value("${api.data.sampling.max-scan:100000}")
+  private int samplingMaxScan = 100000;
+
+  @Value("${api.data.sampling.max-points:1000}")
+  private int samplingMaxPoints = 1000;
+
+  @Value("${api.data.geo.enabled:true}")
+  private boolean geoIndexEnabled = true;
+
+  @Value("${api.data.geo.max-sensors:500}")
+  private int geoMaxSensors = 500;
+
+  @PostConstruct
+  public void loadGhostSensorsSnapshot() {
+    if (snapshotStore == null || !snapshotStore.isEnabled()) {
+      return;
+    }
+
+    final String[] ghostSensorKeys = snapshotStore.load(GHOST_SENSORS_SNAPSHOT_NAME, GHOST_SENSORS_SNAPSHOT_VERSION, String[].class);
+    if (ghostSensorKeys != null) {
+      for (final String ghostSensorKey : ghostSensorKeys) {
+        ghostSensors.put(ghostSensorKey, GHOST_SENSOR_MESSAGE_TEMPLATE);
+      }
+      LOGGER.info("Ghost sensors cache loaded from snapshot with {} sensors", ghostSensorKeys.length);
+    }
+  }
+
+  @PreDestroy
+  @Scheduled(initialDelayString = "${api.cache.snapshot.interval:300000}", fixedDelayString = "${api.cache.snapshot.interval:300000}")
+  public void saveGhostSensorsSnapshot() {
+    if (snapshotStore == null || !snapshotStore.isEnabled()) {
+      return;
+    }
+
+    snapshotStore.save(GHOST_SENSORS_SNAPSHOT_NAME, GHOST_SENSORS_SNAPSHOT_VERSION, ghostSensors.keys());
+  }
+
   /*
    * (non-Javadoc)
    *
@@ -94,20 +166,27 @@ public class DataServiceImpl extends AbstractPlatformServiceImpl implements Data
     final List<Observation> observations = message.getObservations();
     final RejectedResourcesContext rejectedContext = new RejectedResourcesContext();
 
-    for (final Observation observation : observations) {
-      try {
-        final Sensor sensor = getSensorMetadata(observation.getProvider(), observation.getSensor());
-        checkTargetResourceState(sensor, observation);
-        setObservation(sensor, observation);
-      } catch (final ResourceNotFoundException rnfe) {
-        rejectedContext.rejectEvent(observation.getSensor(), rnfe.getMessage());
-        LOGGER.warn("Observation [{}] has been rejected because sensor [{}], belonging to provider [{}], doesn't exist on Sentilo.",
-            observation.getValue(), observation.getSensor(), observation.getProvider());
-      } catch (final ResourceOfflineException roe) {
-        rejectedContext.rejectEvent(observation.getSensor(), roe.getMessage());
-        LOGGER.warn("Observation [{}] has been rejected because sensor [{}], belonging to provider [{}], is not online.", observation.getValue(),
-            observation.getSensor(), observation.getProvider());
+    // Events of the observations stored are delivered all together once the whole message has been
+    // processed
+    startEventsBatch();
+    try {
+      for (final Observation observation : observations) {
+        try {
+          final Sensor sensor = getSensorMetadata(observation.getProvider(), observation.getSensor());
+          checkTargetResourceState(sensor, observation);
+          setObservation(sensor, observation);
+        } catch (final ResourceNotFoundException rnfe) {
+          rejectedContext.rejectEvent(observation.getSensor(), rnfe.getMessage());
+          LOGGER.warn("Observation [{}] has been rejected because sensor [{}], belonging to provider [{}], doesn't exist on Sentilo.",
+              observation.getValue(), observation.getSensor(), observation.getProvider());
+        } catch (final ResourceOfflineException roe) {
+          rejectedContext.rejectEvent(observation.getSensor(), roe.getMessage());
+          LOGGER.warn("Observation [{}] has been rejected because sensor [{}], belonging to provider [{}], is not online.",
+              observation.getValue(), observation.getSensor(), observation.getProvider());
+        }
       }
+    } finally {
+      flushEvents();
     }
 
     if (!rejectedContext.isEmpty()) {
@@ -138,7 +217,16 @@ public class DataServiceImpl extends AbstractPlatformServiceImpl implements Data
    * .domain.DataInputMessage)
    */
   @Metric(requestType = RequestType.GET, eventType = EventType.DATA)
+  @ReplicaRead
   public List<Observation> getLastObservations(final DataInputMessage message) {
+    if (message.hasArea()) {
+      return getLastObservationsFromArea(message);
+    }
+
+    if (message.hasSensors()) {
+      return getLastObservationsFromSensors(message);
+    }
+
     // Para recuperar las observaciones del sensor / sensores de un proveedor, debemos hacer lo
     // siguiente:
     // 1. Recuperar los identificadores internos de los sensores de los cuales queremos recuperar
@@ -165,6 +253,151 @@ public class DataServiceImpl extends AbstractPlatformServiceImpl implements Data
     return globalObservations;
   }
 
+  /**
+   * Retrieves the last observations of a list of sensors, which may belong to different providers,
+   * with a fixed number of round trips to Redis: the sids not cached yet are read in a batch per
+   * provider, and then a batch reads the metadata of every sensor, a second one reads their sdids
+   * and a third one all these observations. As in the search by provider or sensor, sensors not
+   * registered, or removed, are skipped.
+   */
+  private List<Observation> getLastObservationsFromSensors(final DataInputMessage message) {
+    final Map<String, List<String>> sensorsByProvider = new LinkedHashMap<String, List<String>>();
+    for (final Sensor sensor : message.getSensors()) {
+      if (StringUtils.hasText(sensor.getProvider()) && StringUtils.hasText(sensor.getSensor())) {
+        List<String> sensorIds = sensorsByProvider.get(sensor.getProvider());
+        if (sensorIds == null) {
+          sensorIds = new ArrayList<String>();
+          sensorsByProvider.put(sensor.getProvider(), sensorIds);
+        }
+        sensorIds.add(sensor.getSensor());
+      }
+    }
+
+    final List<String> sids = new ArrayList<String>();
+    for (final Map.Entry<String, List<String>> provider : sensorsByProvider.entrySet()) {
+      final Map<String, Long> providerSids = jedisSequenceUtils.getSids(provider.getKey(), provider.getValue());
+      for (final String sensorId : provider.getValue()) {
+        final Long sid = providerSids.get(sensorId);
+        if (sid != null) {
+          sids.add(sid.toString());
+        }
+      }
+    }
+
+    return getLastObservationsFromSensors(getRegisteredSensors(sids), message);
+  }
+
+  /**
+   * Retrieves the last observations of the sensors whose last known position, kept in a Redis
+   * geospatial index, is within the requested area: one round trip finds the nearest sensors, up
+   * to <code>api.data.geo.max-sensors</code>, another one reads their metadata and then their
+   * observations are read as in a search by list of sensors.
+   */
+  private List<Observation> getLastObservationsFromArea(final DataInputMessage message) {
+    final GeoArea area = message.getArea();
+    final List<GeoRadiusResponse> members =
+        jedisTemplate.geoRadius(keysBuilder.getSensorsGeoKey(), area.getLongitude(), area.getLatitude(), area.getRadius(), geoMaxSensors);
+
+    final List<String> sids = new ArrayList<String>();
+    for (final GeoRadiusResponse member : members) {
+      final GeoCoordinate coordinate = member.getCoordinate();
+      if (coordinate == null || area.contains(coordinate.getLatitude(), coordinate.getLongitude())) {
+        sids.add(member.getMemberByString());
+      }
+    }
+
+    LOGGER.debug("Found {} sensors in area with center [{}, {}] and radius {}", sids.size(), area.getLatitude(), area.getLongitude(), area.getRadius());
+
+    return getLastObservationsFromSensors(getRegisteredSensors(sids), message);
+  }
+
+  /**
+   * Reads in a single batch the metadata of the sensors, discarding those which have been removed
+   * but whose sid, or position, has not been purged yet.
+   */
+  private List<Sensor> getRegisteredSensors(final List<String> sids) {
+    final List<Sensor> sensors = new ArrayList<Sensor>();
+    if (sids.isEmpty()) {
+      return sensors;
+    }
+
+    final List<String> sensorsKeys = new ArrayList<String>(sids.size());
+    for (final String sid : sids) {
+      sensorsKeys.add(keysBuilder.getSensorKey(Long.valueOf(sid)));
+    }
+
+    final List<Map<String, String>> sensorsInfo = jedisTemplate.hGetAll(sensorsKeys);
+    for (int i = 0; i < sensorsInfo.size(); i++) {
+      final Map<String, String> sensorInfo = sensorsInfo.get(i);
+      if (!CollectionUtils.isEmpty(sensorInfo)) {
+        sensors.add(new Sensor(Long.valueOf(sids.get(i)), sensorInfo.get(PROVIDER), sensorInfo.get(SENSOR), null, null));
+      }
+    }
+
+    return sensors;
+  }
+
+  private List<Observation> getLastObservationsFromSensors(final List<Sensor> sensors, final DataInputMessage message) {
+    final Long to = QueryFilterParamsUtils.getTo(message);
+    final Long from = QueryFilterParamsUtils.getFrom(message);
+    final Integer limit = Math.min(QueryFilterParamsUtils.getLimit(message), SentiloConstants.NUM_MAXIM_ELEMENTS_BY_SENSOR);
+
+    final List<String> sensorsKeys = new ArrayList<String>();
+    for (final Sensor sensor : sensors) {
+      sensorsKeys.add(keysBuilder.getSensorObservationsKey(sensor.getSid()));
+    }
+
+    final List<Observation> globalObservations = new ArrayList<Observation>();
+    if (sensors.isEmpty()) {
+      return globalObservations;
+    }
+
+    LOGGER.debug("Retrieving last observations for {} sensors", sensors.size());
+
+    // As in the search by sensor, limit + 1 entries are read to know if there are more of them
+    final List<Set<String>> sensorsSdids = jedisTemplate.zRevRangeByScore(sensorsKeys, to, from, 0, limit + 1);
+
+    final List<Integer> owners = new ArrayList<Integer>();
+    final List<String> observationsKeys = new ArrayList<String>();
+    for (int i = 0; i < sensors.size(); i++) {
+      final Set<String> sdids = sensorsSdids.get(i);
+      if (!CollectionUtils.isEmpty(sdids)) {
+        for (final String sdid : Iterables.limit(sdids, limit)) {
+          owners.add(i);
+          observationsKeys.add(keysBuilder.getObservationKey(sensors.get(i).getSid(), sdid));
+        }
+      }
+    }
+
+    final List<Map<String, String>> observationsInfo = jedisTemplate.hGetAll(observationsKeys);
+    final List<List<Observation>> sensorsObservations = new ArrayList<List<Observation>>();
+    for (int i = 0; i < sensors.size(); i++) {
+      sensorsObservations.add(new ArrayList<Observation>());
+    }
+
+    for (int j = 0; j < observationsInfo.size(); j++) {
+      final Map<String, String> infoSdid = observationsInfo.get(j);
+      if (!CollectionUtils.isEmpty(infoSdid) && StringUtils.hasText(infoSdid.get(SID))) {
+        final Sensor sensor = sensors.get(owners.get(j));
+        sensorsObservations.get(owners.get(j))
+            .add(new Observation(sensor.getProvider(), sensor.getSensor(), infoSdid.get(DATA), Long.parseLong(infoSdid.get(TIMESTAMP)), infoSdid.get(LOCATION)));
+      }
+    }
+
+    for (int i = 0; i < sensors.size(); i++) {
+      final Sensor sensor = sensors.get(i);
+      List<Observation> observations = sensorsObservations.get(i);
+      if (observations.size() < limit && sensorsSdids.get(i).size() > limit) {
+        // Some of the observations read have already expired: sensor is read again as a single one
+        final DataInputMessage sensorMessage = new DataInputMessage(sensor.getProvider(), sensor.getSensor(), new Date(from), new Date(to), limit);
+        observations = getLastObservations(sensor.getSid().toString(), sensorMessage);
+      }
+      globalObservations.addAll(observations);
+    }
+
+    return globalObservations;
+  }
+
   private void deleteLastObservations(final String providerId) {
     final Set<String> sids = resourceService.getSensorsFromProvider(providerId);
 
@@ -201,6 +434,10 @@ public class DataServiceImpl extends AbstractPlatformServiceImpl implements Data
   }
 
   private List<Observation> getLastObservations(final String sid, final DataInputMessage message) {
+    if (message.hasQueryFilters() && message.getQueryFilters().isSampled()) {
+      return getSampledObservations(sid, message);
+    }
+
     final Long to = QueryFilterParamsUtils.getTo(message);
     final Long from = QueryFilterParamsUtils.getFrom(message);
     final Integer limit = QueryFilterParamsUtils.getLimit(message);
@@ -233,7 +470,7 @@ public class DataServiceImpl extends AbstractPlatformServiceImpl implements Data
       // of limit elements
       if (!CollectionUtils.isEmpty(sdids)) {
         final Set<String> sdidsToEval = sdids.size() < count ? sdids : ImmutableSet.copyOf(Iterables.limit(sdids, limit));
-        addObservations(sdidsToEval, observations, limit);
+        addObservations(sid, sdidsToEval, observations, limit);
       }
 
       readMore = observations.size() < limit && !CollectionUtils.isEmpty(sdids) && sdids.size() > limit && iteration < MAX_ITERATIONS;
@@ -243,12 +480,78 @@ public class DataServiceImpl extends AbstractPlatformServiceImpl implements Data
     return observations;
   }
 
-  private void addObservations(final Set<String> sdids, final List<Observation> observations, final Integer limit) {
+  /**
+   * Scans the observations stored in the requested range, from the most recent to the oldest one
+   * and with two pipelined round trips per page, and reduces them on the fly to the samples
+   * requested (aggregated by interval or downsampled), so only these samples are returned.
+   * <p>
+   * Pages are read with a score cursor: each page starts at the score of the last observation read,
+   * skipping only those already read with that same score, so neither the cost of a page grows with
+   * the number of pages already read nor observations inserted meanwhile shift the following pages.
+   */
+  private List<Observation> getSampledObservations(final String sid, final DataInputMessage message) {
+    final Long to = QueryFilterParamsUtils.getTo(message);
+    final Long from = QueryFilterParamsUtils.getFrom(message);
+    final ObservationSampler sampler = buildSampler(message.getQueryFilters());
+    final Long sensorSid = Long.valueOf(sid);
+    final Sensor sensor = resourceService.getSensor(sensorSid);
+    final String sensorObservationsKey = keysBuilder.getSensorObservationsKey(sid);
+
+    double max = to;
+    int skip = 0;
+    int scanned = 0;
+    boolean readMore = true;
+    while (readMore) {
+      final Set<Tuple> sdids = jedisTemplate.zRevRangeByScoreWithScores(sensorObservationsKey, max, from, skip, samplingPageSize);
+      if (CollectionUtils.isEmpty(sdids)) {
+        break;
+      }
+
+      final List<String> observationsKeys = new ArrayList<String>(sdids.size());
+      double lastScore = max;
+      int lastScoreCount = 0;
+      for (final Tuple sdid : sdids) {
+        observationsKeys.add(keysBuilder.getObservationKey(sensorSid, sdid.getElement()));
+        lastScoreCount = sdid.getScore() == lastScore ? lastScoreCount + 1 : 1;
+        lastScore = sdid.getScore();
+      }
+
+      for (final Map<String, String> infoSdid : jedisTemplate.hGetAll(observationsKeys)) {
+        if (!CollectionUtils.isEmpty(infoSdid) && StringUtils.hasText(infoSdid.get(SID))) {
+          sampler.add(new Observation(sensor.getProvider(), sensor.getSensor(), infoSdid.get(DATA), Long.parseLong(infoSdid.get(TIMESTAMP)),
+              infoSdid.get(LOCATION)));
+        }
+      }
+
+      // Observations with the same score as the last one read are skipped in the next page
+      skip = lastScore == max ? skip + lastScoreCount : lastScoreCount;
+      max = lastScore;
+      scanned += sdids.size();
+      readMore = sdids.size() == samplingPageSize && scanned < samplingMaxScan && !sampler.isComplete();
+    }
+
+    if (scanned >= samplingMaxScan) {
+      LOGGER.warn("Sampling of sensor [{}] observations stopped after reading {} of them. Older observations have been ignored", sid, scanned);
+    }
+
+    return sampler.getSamples();
+  }
+
+  private ObservationSampler buildSampler(final QueryFilterParams filters) {
+    if (filters.getAggregation() != null) {
+      final int maxBuckets = filters.getLimit() != null ? Math.min(filters.getLimit(), samplingMaxPoints) : samplingMaxPoints;
+      return new AggregationSampler(filters.getAggregation(), filters.getInterval(), maxBuckets);
+    } else {
+      return new LttbSampler(Math.min(filters.getDownsample(), samplingMaxPoints));
+    }
+  }
+
+  private void addObservations(final String sid, final Set<String> sdids, final List<Observation> observations, final Integer limit) {
     final Iterator<String> it = sdids.iterator();
 
     while (it.hasNext() && observations.size() < limit) {
       final Long sdid = Long.parseLong(it.next());
-      final Observation observation = getObservation(sdid);
+      final Observation observation = getObservation(Long.valueOf(sid), sdid);
       if (observation != null) {
         // Añadir llamada a un ThreadMonitor que se encargue de eliminar las entradas invalidas de
         // los ZSETs
@@ -262,14 +565,14 @@ public class DataServiceImpl extends AbstractPlatformServiceImpl implements Data
     }
   }
 
-  private Observation getObservation(final Long sdid) {
+  private Observation getObservation(final Long sensorSid, final Long sdid) {
     Observation observation = null;
     String sid = null;
     String value = null;
     String ts = null;
     String location = null;
 
-    final Map<String, String> infoSdid = jedisTemplate.hGetAll(keysBuilder.getObservationKey(sdid));
+    final Map<String, String> infoSdid = jedisTemplate.hGetAll(keysBuilder.getObservationKey(sensorSid, sdid));
     if (!CollectionUtils.isEmpty(infoSdid)) {
       value = infoSdid.get(DATA);
       ts = infoSdid.get(TIMESTAMP);
@@ -296,7 +599,7 @@ public class DataServiceImpl extends AbstractPlatformServiceImpl implements Data
     if (!CollectionUtils.isEmpty(sdids)) {
       jedisTemplate.zRemRangeByRank(sensorObservationsKey, -1, -1);
       final String sdid = sdids.iterator().next();
-      jedisTemplate.del(keysBuilder.getObservationKey(sdid));
+      jedisTemplate.del(keysBuilder.getObservationKey(sid, sdid));
     }
   }
 
@@ -324,7 +627,7 @@ public class DataServiceImpl extends AbstractPlatformServiceImpl implements Data
 
     // Guardamos una hash de clave sdid:{sdid} y valores sid, data (aleatorio), timestamp y
     // location.
-    final String obsKey = keysBuilder.getObservationKey(sdid);
+    final String obsKey = keysBuilder.getObservationKey(sid, sdid);
     final Map<String, String> fields = new HashMap<String, String>();
     fields.put(SID, Long.toString(sid));
     fields.put(DATA, data.getValue());
@@ -344,18 +647,46 @@ public class DataServiceImpl extends AbstractPlatformServiceImpl implements Data
     // score, que se asocia a cada elemento del Set es el timestamp de la observacion.
     jedisTemplate.zAdd(keysBuilder.getSensorObservationsKey(sid), timestamp, sdid.toString());
 
+    if (geoIndexEnabled && StringUtils.hasText(location)) {
+      updateSensorPosition(sid, location);
+    }
+
     LOGGER.debug("Registered in Redis observation [{}] for sensor [{}] belonging to provider [{}]", sdid, data.getSensor(), data.getProvider());
   }
 
+  /**
+   * Stores into the geospatial index the position of the sensor given by the location of its last
+   * observation, which has the format "latitude longitude" (when it is a list of coordinates, only
+   * the first one is taken into account). As the index is a single key, shared by every sensor, it
+   * is only written when the sensor has moved since the last location indexed by this node.
+   */
+  private void updateSensorPosition(final Long sid, final String location) {
+    if (location.equals(sensorsPositions.get(sid))) {
+      return;
+    }
+
+    final String[] coordinates = location.split(",")[0].trim().split("\\s+");
+    try {
+      final double latitude = Double.parseDouble(coordinates[0]);
+      final double longitude = Double.parseDouble(coordinates[1]);
+      // Redis only indexes positions within these bounds (EPSG:900913)
+      if (Math.abs(latitude) <= MAX_GEO_LATITUDE && Math.abs(longitude) <= 180) {
+        jedisTemplate.geoAdd(keysBuilder.getSensorsGeoKey(), longitude, latitude, sid.toString());
+        sensorsPositions.put(sid, location);
+      }
+    } catch (final RuntimeException e) {
+      LOGGER.debug("Location [{}] of sensor with sid {} is not a valid position", location, sid);
+    }
+  }
+
   private void publishSensorData(final Observation data) {
     final Topic topic = ChannelUtils.buildTopic(PubSubChannelPrefix.data, data.getProvider(), data.getSensor());
-    jedisTemplate.publish(topic.getTopic(), PublishMessageUtils.buildContentToPublish(data, topic));
+    publishEvent(topic, PublishMessageUtils.buildContentToPublish(data, topic));
   }
 
   private void publishGhostSensorAlarm(final Observation data) {
     final String ghostSensorKey = data.getProvider() + "." + data.getSensor();
     if (ghostSensors.get(ghostSensorKey) == null) {
-      final String ghost_message_template = "Detected ghost sensor %s belonging to provider %s";
       final Topic topic = ChannelUtils.buildTopic(PubSubChannelPrefix.alarm, data.getProvider(), data.getSensor());
 
       final AlarmInputMessage aim = new AlarmInputMessage();
@@ -364,10 +695,10 @@ public class DataServiceImpl extends AbstractPlatformServiceImpl implements Data
       aim.setAlertType("INTERNAL");
       aim.setAlertId(SentiloConstants.GHOST_SENSOR_ALERT);
       aim.setSender(SentiloConstants.GHOST_SENSOR_SENDER);
-      aim.setMessage(String.format(ghost_message_template, data.getSensor(), data.getProvider()));
+      aim.setMessage(String.format(GHOST_SENSOR_MESSAGE_TEMPLATE, data.getSensor(), data.getProvider()));
 
-      jedisTemplate.publish(topic.getTopic(), PublishMessageUtils.buildContentToPublish(aim, topic));
-      ghostSensors.put(ghostSensorKey, ghost_message_template);
+      publishEvent(topic, PublishMessageUtils.buildContentToPublish(aim, topic));
+      ghostSensors.put(ghostSensorKey, GHOST_SENSOR_MESSAGE_TEMPLATE);
       LOGGER.info("Published new ghost sensor alarm related to sensor [{}] from provider [{}]", data.getSensor(), data.getProvider());
     }
   }
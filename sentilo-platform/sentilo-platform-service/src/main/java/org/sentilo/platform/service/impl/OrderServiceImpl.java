@@ -46,6 +46,7 @@ import org.sentilo.platform.common.exception.ResourceNotFoundException;
 import org.sentilo.platform.common.exception.ResourceOfflineException;
 import org.sentilo.platform.common.service.OrderService;
 import org.sentilo.platform.common.service.ResourceService;
+import org.sentilo.platform.service.dao.replica.ReplicaRead;
 import org.sentilo.platform.service.monitor.Metric;
 import org.sentilo.platform.service.monitor.RequestType;
 import org.sentilo.platform.service.utils.ChannelUtils;
@@ -55,6 +56,7 @@ import org.sentilo.platform.service.utils.QueryFilterParamsUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.listener.Topic;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
@@ -68,6 +70,10 @@ public class OrderServiceImpl extends AbstractPlatformServiceImpl implements Ord
   @Autowired
   private ResourceService resourceService;
 
+  /** Max number of sensors whose orders are registered in the same pipelined batch */
+  @Value("${api.order.batch.size:1000}")
+  private int orderBatchSize = 1000;
+
   /*
    * (non-Javadoc)
    *
@@ -110,6 +116,7 @@ public class OrderServiceImpl extends AbstractPlatformServiceImpl implements Ord
    * domain.OrderInputMessage)
    */
   @Metric(requestType = RequestType.GET, eventType = EventType.ORDER)
+  @ReplicaRead
   public List<Order> getLastOrders(final OrderInputMessage message) {
     // Para recuperar las ordenes del sensor / sensores de un proveedor, debemos hacer lo siguiente:
     // 1. Recuperar los identificadores internos de los sensores de los cuales queremos recuperar
@@ -209,12 +216,24 @@ public class OrderServiceImpl extends AbstractPlatformServiceImpl implements Ord
 
     LOGGER.debug("Found {} sensors belonging to provider [{}]", sids.size(), message.getProviderId());
 
+    // The order is stored once and its soid is added to the orders of every sensor: these ZADDs are
+    // sent in pipelined batches, with one round trip per batch and node, instead of one by one.
     final Long soid = persistOrder(message);
-    final Iterator<String> it = sids.iterator();
-    while (it.hasNext()) {
-      final String sid = it.next();
-      registerSensorOrder(new Long(sid), soid, message);
+    final Long timestamp = System.currentTimeMillis();
+    List<String> sensorsOrdersKeys = new ArrayList<String>();
+    for (final String sid : sids) {
+      sensorsOrdersKeys.add(keysBuilder.getSensorOrdersKey(Long.valueOf(sid)));
+      if (sensorsOrdersKeys.size() == orderBatchSize) {
+        jedisTemplate.zAdd(sensorsOrdersKeys, timestamp, soid.toString());
+        sensorsOrdersKeys = new ArrayList<String>();
+      }
+    }
+
+    if (!sensorsOrdersKeys.isEmpty()) {
+      jedisTemplate.zAdd(sensorsOrdersKeys, timestamp, soid.toString());
     }
+
+    LOGGER.debug("Registered in Redis order [{}] related to {} sensors of provider [{}]", soid, sids.size(), message.getProviderId());
   }
 
   /**
@@ -278,7 +297,7 @@ public class OrderServiceImpl extends AbstractPlatformServiceImpl implements Ord
     LOGGER.debug("Publish order event [{}] related to provider [{}] and sensor [{}]", message.getOrder(), message.getProviderId(),
         message.getSensorId());
     final Topic topic = ChannelUtils.buildTopic(PubSubChannelPrefix.order, message.getProviderId(), message.getSensorId());
-    jedisTemplate.publish(topic.getTopic(), PublishMessageUtils.buildContentToPublish(message, topic));
+    publishEvent(topic, PublishMessageUtils.buildContentToPublish(message, topic));
     LOGGER.debug("Order published");
   }
 }
@@ -28,10 +28,16 @@
  */
 package org.sentilo.platform.service.impl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import org.sentilo.common.domain.CatalogAlert;
@@ -40,8 +46,10 @@ import org.sentilo.common.enums.SensorState;
 import org.sentilo.platform.common.domain.Alert;
 import org.sentilo.platform.common.domain.Sensor;
 import org.sentilo.platform.common.service.ResourceService;
+import org.sentilo.platform.service.purge.ResourcePurgeService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
@@ -51,6 +59,12 @@ public class ResourceServiceImpl extends AbstractPlatformServiceImpl implements
 
   private static final Logger LOGGER = LoggerFactory.getLogger(ResourceServiceImpl.class);
 
+  private static final int REGISTER_BATCH_SIZE = 1000;
+  private static final int REMOVE_BATCH_SIZE = 1000;
+
+  @Autowired
+  private ResourcePurgeService purgeService;
+
   /*
    * (non-Javadoc)
    *
@@ -120,13 +134,7 @@ public class ResourceServiceImpl extends AbstractPlatformServiceImpl implements
       }
 
       // Store a hash with key sid:{sid} and fields provider, sensor, state and ttl
-      final Map<String, String> fields = new HashMap<String, String>();
-      fields.put(PROVIDER, sensor.getProvider());
-      fields.put(SENSOR, sensor.getSensor());
-      fields.put(STATE, sensor.getState().name());
-      fields.put(TTL, catalogSensorTtlToRedisTtl(sensor.getTtl()));
-
-      jedisTemplate.hmSet(keysBuilder.getSensorKey(sid), fields);
+      jedisTemplate.hmSet(keysBuilder.getSensorKey(sid), getSensorFields(sensor));
 
       LOGGER.debug("Saved in Redis sensor [{}]  with sid [{}] and state [{}], belonging to provider [{}]", sensor.getSensor(), sid,
           sensor.getState().name(), sensor.getProvider());
@@ -135,6 +143,35 @@ public class ResourceServiceImpl extends AbstractPlatformServiceImpl implements
     return sid;
   }
 
+  /*
+   * (non-Javadoc)
+   *
+   * @see
+   * org.sentilo.platform.common.service.ResourceService#registerSensorsIfNeedBe(java.util.List,
+   * boolean)
+   */
+  public void registerSensorsIfNeedBe(final List<CatalogSensor> sensors, final boolean update) {
+    // Sensors are registered by provider, in chunks, with the same keys as registerSensorIfNeedBe
+    // but each step being done in a single round trip
+    final Map<String, Map<String, CatalogSensor>> sensorsByProvider = new LinkedHashMap<String, Map<String, CatalogSensor>>();
+    for (final CatalogSensor sensor : sensors) {
+      Map<String, CatalogSensor> providerSensors = sensorsByProvider.get(sensor.getProvider());
+      if (providerSensors == null) {
+        providerSensors = new LinkedHashMap<String, CatalogSensor>();
+        sensorsByProvider.put(sensor.getProvider(), providerSensors);
+      }
+      providerSensors.put(sensor.getSensor(), sensor);
+    }
+
+    for (final Entry<String, Map<String, CatalogSensor>> providerSensors : sensorsByProvider.entrySet()) {
+      final List<CatalogSensor> providerSensorsList = new ArrayList<CatalogSensor>(providerSensors.getValue().values());
+      for (int from = 0; from < providerSensorsList.size(); from += REGISTER_BATCH_SIZE) {
+        registerProviderSensors(providerSensors.getKey(),
+            providerSensorsList.subList(from, Math.min(from + REGISTER_BATCH_SIZE, providerSensorsList.size())), update);
+      }
+    }
+  }
+
   /*
    * (non-Javadoc)
    *
@@ -265,16 +302,15 @@ public class ResourceServiceImpl extends AbstractPlatformServiceImpl implements
       // Remove key provider:{providerId}:pid
       jedisTemplate.del(keysBuilder.getReverseProviderKey(providerId));
 
-      // Remove every sensor related to the provider.
-      final Set<String> sids = getSensorsFromProvider(pid);
-      if (!CollectionUtils.isEmpty(sids)) {
-        for (final String sid : sids) {
-          removeSensor(Long.valueOf(sid), providerId, false);
-        }
+      // Remove every sensor related to the provider: reverse keys are removed right now, in
+      // batches, whereas sensor data is purged in background
+      final List<String> sids = new ArrayList<String>(getSensorsFromProvider(pid));
+      for (int from = 0; from < sids.size(); from += REMOVE_BATCH_SIZE) {
+        removeSensors(sids.subList(from, Math.min(from + REMOVE_BATCH_SIZE, sids.size())), providerId);
       }
 
       // Remove key pid:{pid}:sensors
-      jedisTemplate.del(keysBuilder.getProviderSensorsKey(pid));
+      purgeService.enqueue(keysBuilder.getProviderSensorsKey(pid));
 
       // Finally, remove {pid} from internal cache
       jedisSequenceUtils.removePid(providerId);
@@ -293,7 +329,18 @@ public class ResourceServiceImpl extends AbstractPlatformServiceImpl implements
     LOGGER.debug("Deleting in Redis sensor [{}] belonging to  provider {}", sensorId, providerId);
     final Long sid = jedisSequenceUtils.getSid(providerId, sensorId);
     if (sid != null) {
-      removeSensor(sid, providerId, true);
+      // Remove key sensor:{providerId}:{sensorId}:sid
+      jedisTemplate.del(keysBuilder.getReverseSensorKey(providerId, sensorId));
+      // Remove reference to sensor in the list defined by key pid:{pid}:sensors
+      final Long pid = jedisSequenceUtils.getPid(providerId);
+      jedisTemplate.sRem(keysBuilder.getProviderSensorsKey(pid), sid.toString());
+      // Remove {sid} from the internal cache
+      jedisSequenceUtils.removeSid(providerId, sensorId);
+      // Remove its last known position
+      jedisTemplate.zRem(keysBuilder.getSensorsGeoKey(), sid.toString());
+      // Finally, keys sid:{sid}, sid:{sid}:observations and sid:{sid}:orders are purged in
+      // background
+      purgeService.enqueue(getSensorDataKeys(sid));
     }
 
     LOGGER.debug("Sensor [{}], belonging to provider [{}], deleted.", sensorId, providerId);
@@ -359,34 +406,91 @@ public class ResourceServiceImpl extends AbstractPlatformServiceImpl implements
     return aid != null;
   }
 
-  private void removeSensor(final Long sid, final String providerId, final boolean removeFromProviderList) {
+  private void registerProviderSensors(final String providerId, final List<CatalogSensor> sensors, final boolean update) {
+    final List<String> sensorIds = new ArrayList<String>(sensors.size());
+    for (final CatalogSensor sensor : sensors) {
+      sensorIds.add(sensor.getSensor());
+    }
 
-    if (sid != null) {
-      // Remove key sensor:{providerId}:{sensorId}:sid
-      final String sensorId = jedisTemplate.hGet(keysBuilder.getSensorKey(sid), "sensor");
-      jedisTemplate.del(keysBuilder.getReverseSensorKey(providerId, sensorId));
+    final Map<String, Long> sids = new HashMap<String, Long>(jedisSequenceUtils.getSids(providerId, sensorIds));
+    final Set<String> newSensorIds = new LinkedHashSet<String>();
+    for (final String sensorId : sensorIds) {
+      if (!sids.containsKey(sensorId)) {
+        newSensorIds.add(sensorId);
+      }
+    }
 
-      // Remove key sid:{sid}:observations
-      jedisTemplate.del(keysBuilder.getSensorObservationsKey(sid));
+    if (!newSensorIds.isEmpty()) {
+      final Map<String, Long> newSids = jedisSequenceUtils.setSids(providerId, newSensorIds);
+      sids.putAll(newSids);
 
-      // Remove key sid:{sid}:orders
-      jedisTemplate.del(keysBuilder.getSensorOrdersKey(sid));
+      final List<String> reverseKeys = new ArrayList<String>(newSensorIds.size());
+      final List<String> newSidValues = new ArrayList<String>(newSensorIds.size());
+      for (final String sensorId : newSensorIds) {
+        reverseKeys.add(keysBuilder.getReverseSensorKey(providerId, sensorId));
+        newSidValues.add(newSids.get(sensorId).toString());
+      }
 
-      // Remove key sid:{sid}
-      jedisTemplate.del(keysBuilder.getSensorKey(sid));
-      if (removeFromProviderList) {
-        // Only if removeFromProviderList is true, i.e., method is invoked to remove only sensor
-        // identified by sid,
-        // also remove reference to sensor in the list defined by key
-        // keysBuilder.getProviderSensorsKey(pid)
+      final Long pid = jedisSequenceUtils.getPid(providerId);
+      jedisTemplate.sAdd(keysBuilder.getProviderSensorsKey(pid), newSidValues.toArray(new String[0]));
+      jedisTemplate.set(reverseKeys, newSidValues);
+    }
 
-        final Long pid = jedisSequenceUtils.getPid(providerId);
-        jedisTemplate.sRem(keysBuilder.getProviderSensorsKey(pid), sid.toString());
+    final List<String> sensorKeys = new ArrayList<String>(sensors.size());
+    final List<Map<String, String>> sensorsFields = new ArrayList<Map<String, String>>(sensors.size());
+    for (final CatalogSensor sensor : sensors) {
+      if (update || newSensorIds.contains(sensor.getSensor())) {
+        sensorKeys.add(keysBuilder.getSensorKey(sids.get(sensor.getSensor())));
+        sensorsFields.add(getSensorFields(sensor));
       }
+    }
 
-      // Finally, remove {sid} from the internal cache
-      jedisSequenceUtils.removeSid(providerId, sensorId);
+    if (!sensorKeys.isEmpty()) {
+      jedisTemplate.hmSet(sensorKeys, sensorsFields);
     }
+
+    LOGGER.debug("Saved in Redis {} sensors, {} of them new, belonging to provider [{}]", sensorKeys.size(), newSensorIds.size(), providerId);
+  }
+
+  private Map<String, String> getSensorFields(final CatalogSensor sensor) {
+    final Map<String, String> fields = new HashMap<String, String>();
+    fields.put(PROVIDER, sensor.getProvider());
+    fields.put(SENSOR, sensor.getSensor());
+    fields.put(STATE, sensor.getState().name());
+    fields.put(TTL, catalogSensorTtlToRedisTtl(sensor.getTtl()));
+    return fields;
+  }
+
+  private void removeSensors(final List<String> sids, final String providerId) {
+    final List<String> sensorKeys = new ArrayList<String>(sids.size());
+    for (final String sid : sids) {
+      sensorKeys.add(keysBuilder.getSensorKey(Long.valueOf(sid)));
+    }
+
+    final List<String> sensorIds = jedisTemplate.hGet(sensorKeys, "sensor");
+    final List<String> reverseKeys = new ArrayList<String>(sids.size());
+    final List<String> dataKeys = new ArrayList<String>(sids.size() * 3);
+    for (int i = 0; i < sids.size(); i++) {
+      final String sensorId = sensorIds.get(i);
+      if (sensorId != null) {
+        reverseKeys.add(keysBuilder.getReverseSensorKey(providerId, sensorId));
+        jedisSequenceUtils.removeSid(providerId, sensorId);
+      }
+      dataKeys.addAll(getSensorDataKeys(Long.valueOf(sids.get(i))));
+    }
+
+    // Remove keys sensor:{providerId}:{sensorId}:sid
+    if (!reverseKeys.isEmpty()) {
+      jedisTemplate.unlink(reverseKeys);
+    }
+    // Remove their last known positions
+    jedisTemplate.zRem(keysBuilder.getSensorsGeoKey(), sids.toArray(new String[0]));
+    purgeService.enqueue(dataKeys);
+  }
+
+  private List<String> getSensorDataKeys(final Long sid) {
+    // Key sid:{sid} is the last one removed so data could be still reached while it is purged
+    return Arrays.asList(keysBuilder.getSensorObservationsKey(sid), keysBuilder.getSensorOrdersKey(sid), keysBuilder.getSensorKey(sid));
   }
 
   private Set<String> getSensorsFromProvider(final Long pid) {
@@ -0,0 +1,120 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.impl;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.sentilo.platform.common.domain.Subscription;
+import org.sentilo.platform.common.service.EventStream;
+import org.sentilo.platform.common.service.StreamService;
+import org.sentilo.platform.service.listener.EventStreamListener;
+import org.sentilo.platform.service.listener.SubscriptionRouter;
+import org.sentilo.platform.service.utils.ChannelUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Event streams are neither persisted nor shared among platform nodes: they are registered in the
+ * {@link SubscriptionRouter} of the node which serves the connection and live as long as it.
+ *
+ * Streams which have not been polled for <code>api.stream.idle-timeout</code> millis, i.e. whose
+ * connection was lost before being written or whose writer is blocked by a client which doesn't
+ * read, are closed so their buffers and routes are released, and the connection of a blocked
+ * writer is shut down so its thread is freed.
+ */
+@Service
+public class StreamServiceImpl implements StreamService {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(StreamServiceImpl.class);
+
+  @Autowired
+  private SubscriptionRouter subscriptionRouter;
+
+  @Value("${api.stream.max-connections:4}")
+  private int maxConnections = 4;
+
+  @Value("${api.stream.buffer-size:1000}")
+  private int bufferSize = 1000;
+
+  @Value("${api.stream.idle-timeout:60000}")
+  private long idleTimeout = 60000;
+
+  private final Set<EventStreamListener> streams = Collections.newSetFromMap(new ConcurrentHashMap<EventStreamListener, Boolean>());
+
+  @Override
+  public EventStream open(final String entityId, final List<Subscription> subscriptions) {
+    final EventStreamListener stream = new EventStreamListener(entityId, bufferSize);
+    synchronized (streams) {
+      if (streams.size() >= maxConnections) {
+        LOGGER.warn("Event stream of {} rejected: there are already {} open streams", entityId, streams.size());
+        return null;
+      }
+      streams.add(stream);
+    }
+
+    for (final Subscription subscription : subscriptions) {
+      subscriptionRouter.addSubscription(stream, ChannelUtils.getChannel(subscription));
+    }
+
+    LOGGER.info("Event stream of {} opened on {} topics", entityId, subscriptions.size());
+    return stream;
+  }
+
+  @Override
+  public void close(final EventStream stream) {
+    final EventStreamListener listener = (EventStreamListener) stream;
+    if (streams.remove(listener)) {
+      listener.close();
+      subscriptionRouter.removeSubscriptions(listener);
+      LOGGER.info("Event stream of {} closed", stream.getEntityId());
+    }
+  }
+
+  @Scheduled(initialDelayString = "${api.stream.idle-timeout:60000}", fixedDelayString = "${api.stream.idle-timeout:60000}")
+  public void closeIdleStreams() {
+    final long limit = System.currentTimeMillis() - idleTimeout;
+    for (final EventStreamListener stream : streams) {
+      if (stream.getLastPoll() < limit) {
+        LOGGER.warn("Closing event stream of {}: it has not been polled for {} ms", stream.getEntityId(), idleTimeout);
+        close(stream);
+      }
+    }
+  }
+
+  public int getOpenStreams() {
+    return streams.size();
+  }
+}
@@ -28,12 +28,19 @@
  */
 package org.sentilo.platform.service.impl;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.sentilo.common.converter.DefaultStringMessageConverter;
 import org.sentilo.common.converter.StringMessageConverter;
@@ -48,14 +55,22 @@ import org.sentilo.platform.common.exception.ResourceNotFoundException;
 import org.sentilo.platform.common.exception.ResourceOfflineException;
 import org.sentilo.platform.common.service.ResourceService;
 import org.sentilo.platform.common.service.SubscribeService;
+import org.sentilo.platform.service.dao.replica.ReplicaRead;
 import org.sentilo.platform.service.listener.MessageListenerFactory;
 import org.sentilo.platform.service.listener.MessageListenerImpl;
 import org.sentilo.platform.service.listener.MockMessageListenerImpl;
+import org.sentilo.platform.service.listener.SubscriptionOwnershipManager;
+import org.sentilo.platform.service.listener.SubscriptionOwnershipManager.OwnershipChange;
+import org.sentilo.platform.service.listener.SubscriptionRouter;
 import org.sentilo.platform.service.utils.ChannelUtils;
 import org.sentilo.platform.service.utils.PubSubConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.listener.Topic;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -71,36 +86,133 @@ public class SubscribeServiceImpl extends AbstractPlatformServiceImpl implements
   @Autowired
   private RedisMessageListenerContainer listenerContainer;
   @Autowired
+  private SubscriptionRouter subscriptionRouter;
+  @Autowired
+  private SubscriptionOwnershipManager ownershipManager;
+  @Autowired
   private MessageListenerFactory listenerFactory;
   @Autowired
   private ResourceService resourceService;
 
   private StringMessageConverter converter = new DefaultStringMessageConverter();
 
-  private final Map<String, MessageListenerImpl> listeners = new HashMap<String, MessageListenerImpl>();
+  @Value("${api.subs.restore.batch-size:500}")
+  private int restoreBatchSize = 500;
+
+  @Value("${api.subs.restore.threads:4}")
+  private int restoreThreads = 4;
+
+  @Value("${api.subs.restore.scan-count:1000}")
+  private int restoreScanCount = 1000;
+
+  // Listeners are also updated from the listener container thread when changes are notified
+  private final Map<String, MessageListenerImpl> listeners = new ConcurrentHashMap<String, MessageListenerImpl>();
+  private final MessageListener changesListener = new SubscriptionChangesListener();
+  private final MessageListener ownershipListener = new OwnershipChangesListener();
 
   private boolean storedSubscriptionsActivated = false;
   private static final String DUMMY_TOPIC = "/trash/dummy";
 
   @Scheduled(initialDelay = 10000, fixedDelay = 300000)
   public void loadSubscriptions() {
-    // When platform starts, all persisted subscriptions in Redis are loaded and activated
+    // When platform starts, all persisted subscriptions in Redis are loaded and activated. Once
+    // loaded, they are kept in sync through the change notifications published by every platform
+    // instance, so this job does nothing else than retrying a failed initial load.
     final boolean listenerContainerRunning = listenerContainer != null && listenerContainer.isRunning();
     LOGGER.info("Listener container isRunning? {}", listenerContainerRunning);
 
     if (!storedSubscriptionsActivated && listenerContainerRunning) {
       LOGGER.info("Initializing subscriptions stored in Redis");
       try {
-        final Set<String> storedSubscriptions = jedisTemplate.keys(PubSubConstants.REDIS_SUBS_PATTERN_KEY);
+        // Listener is registered first so that no change done while loading is lost
+        listenerContainer.addMessageListener(changesListener, new ChannelTopic(PubSubConstants.REDIS_SUBS_CHANGES_CHANNEL));
+        if (ownershipManager.isEnabled()) {
+          listenerContainer.addMessageListener(ownershipListener, new ChannelTopic(PubSubConstants.REDIS_SUBS_OWNERSHIP_CHANNEL));
+          ownershipManager.rebalance();
+        }
+
+        final Set<String> storedSubscriptions = getStoredSubscriptionsKeys();
+        storedSubscriptions.removeIf(key -> !ownershipManager.isOwned(listenerNameFromSubscriptionKey(key)));
         activateStoredSubscriptions(storedSubscriptions);
         storedSubscriptionsActivated = true;
       } catch (final Exception e) {
+        LOGGER.warn("Error loading subscriptions stored in Redis. It will be retried later", e);
         storedSubscriptionsActivated = false;
       }
       LOGGER.info("Process finished");
     }
   }
 
+  /**
+   * When subscriptions are shared out among the platform nodes, periodically renews the ownership of
+   * this node: subscriptions of the entities whose partitions have been handed over to other nodes
+   * are deactivated before their leases are released, and subscriptions of the entities whose
+   * partitions have been taken over are loaded.
+   */
+  @Scheduled(initialDelayString = "${api.subs.ownership.renew-interval:5000}", fixedDelayString = "${api.subs.ownership.renew-interval:5000}")
+  public synchronized void rebalanceSubscriptions() {
+    if (!ownershipManager.isEnabled() || !storedSubscriptionsActivated) {
+      return;
+    }
+
+    final OwnershipChange change = ownershipManager.rebalance();
+    if (!change.getReleased().isEmpty()) {
+      deactivatePartitions(change.getReleased());
+      try {
+        ownershipManager.release(change.getReleased());
+      } catch (final Exception e) {
+        // Leases will expire by themselves
+        LOGGER.warn("Error releasing subscriptions partitions {}", change.getReleased(), e);
+      }
+    }
+
+    if (!change.getAcquired().isEmpty()) {
+      try {
+        final Set<String> storedSubscriptions = getStoredSubscriptionsKeys();
+        storedSubscriptions.removeIf(key -> !change.getAcquired().contains(ownershipManager.getPartition(listenerNameFromSubscriptionKey(key))));
+        if (!storedSubscriptions.isEmpty()) {
+          activateStoredSubscriptions(storedSubscriptions);
+        }
+      } catch (final Exception e) {
+        // Partitions are given up so they could be loaded again by the next rebalance
+        LOGGER.warn("Error loading subscriptions of partitions {}", change.getAcquired(), e);
+        deactivatePartitions(change.getAcquired());
+        ownershipManager.forget(change.getAcquired());
+      }
+    }
+  }
+
+  /**
+   * Reconciles the active subscriptions of the entity with the ones stored in Redis: stored
+   * subscriptions are activated (or their notification params updated) and active ones no longer
+   * stored are removed.
+   */
+  public synchronized void reloadSubscriptions(final String entityId) {
+    LOGGER.debug("Reloading subscriptions of entity {}", entityId);
+    // Subscriptions of entities owned by other nodes must not be active in this one
+    final Map<String, String> storedSubscriptions =
+        ownershipManager.isOwned(entityId) ? jedisTemplate.hGetAll(keysBuilder.getSubscriptionKey(entityId)) : null;
+    final Map<String, String> channels = storedSubscriptions != null ? storedSubscriptions : Collections.<String, String>emptyMap();
+
+    final MessageListenerImpl listener = listeners.get(entityId);
+    if (listener != null) {
+      for (final String topicName : listener.getTopics()) {
+        if (!channels.containsKey(topicName)) {
+          final Topic topic = ChannelUtils.buildTopic(topicName);
+          subscriptionRouter.removeSubscription(listener, topic);
+          listener.removeSubscription(topic);
+        }
+      }
+
+      if (channels.isEmpty()) {
+        subscriptionRouter.removeSubscriptions(listener);
+        listeners.remove(entityId);
+      }
+    }
+
+    activateEntitySubscriptions(entityId, channels);
+  }
+
   @Override
   public void subscribe(final Subscription subscription) {
     // The first step is to validate that the resource to which the subscription refers exists in
@@ -124,12 +236,17 @@ public class SubscribeServiceImpl extends AbstractPlatformServiceImpl implements
 
     final Topic topic = ChannelUtils.getChannel(subscription);
 
-    // Habilitamos listener
-    activateSubscription(subscription.getSourceEntityId(), topic, subscription.getNotificationParams());
+    // Habilitamos listener (si la entidad no pertenece a este nodo, lo hara su propietario al ser
+    // notificado del cambio)
+    if (ownershipManager.isOwned(subscription.getSourceEntityId())) {
+      activateSubscription(subscription.getSourceEntityId(), topic, subscription.getNotificationParams());
+    }
 
     // Persistimos en Redis la subscripcion
     jedisTemplate.hSet(keysBuilder.getSubscriptionKey(subscription.getSourceEntityId()), topic.getTopic(),
         converter.marshal(subscription.getNotificationParams()));
+    jedisTemplate.sAdd(keysBuilder.getSubscriptionsIndexKey(), subscription.getSourceEntityId());
+    notifyChange(subscription.getSourceEntityId());
 
     LOGGER.info("Listener {} subscribed to channel {}", subscription.getSourceEntityId(), topic.getTopic());
   }
@@ -153,9 +270,12 @@ public class SubscribeServiceImpl extends AbstractPlatformServiceImpl implements
     } else {
       removeSubscriptionsOfOneType(subscription);
     }
+
+    notifyChange(subscription.getSourceEntityId());
   }
 
   @Override
+  @ReplicaRead
   public List<Subscription> get(final Subscription subscription) {
     // Las subscripciones de una entidad estan registradas bajo la clave subs:idEntity en Redis
     // El valor asociado a la clave es una hash de pares <channel, notificationParam>
@@ -211,6 +331,29 @@ public class SubscribeServiceImpl extends AbstractPlatformServiceImpl implements
     }
   }
 
+  private Set<String> getStoredSubscriptionsKeys() {
+    final Set<String> keys = new HashSet<String>();
+    final Set<String> entities = jedisTemplate.sMembers(keysBuilder.getSubscriptionsIndexKey());
+    if (!CollectionUtils.isEmpty(entities)) {
+      for (final String entityId : entities) {
+        keys.add(keysBuilder.getSubscriptionKey(entityId));
+      }
+      return keys;
+    }
+
+    // Subscriptions stored before the index existed: the keyspace is walked once, without blocking
+    // Redis, and the index is rebuilt from the keys found.
+    keys.addAll(jedisTemplate.scan(PubSubConstants.REDIS_SUBS_PATTERN_KEY, restoreScanCount));
+    if (!keys.isEmpty()) {
+      final List<String> entityIds = new ArrayList<String>(keys.size());
+      for (final String key : keys) {
+        entityIds.add(listenerNameFromSubscriptionKey(key));
+      }
+      jedisTemplate.sAdd(keysBuilder.getSubscriptionsIndexKey(), entityIds.toArray(new String[0]));
+    }
+    return keys;
+  }
+
   private void activateStoredSubscriptions(final Set<String> storedSubscriptions) {
     // Patch!!: if there are not stored subscriptions in Redis, a default listener is initialized,
     // subscribed to a mock channel.
@@ -221,34 +364,73 @@ public class SubscribeServiceImpl extends AbstractPlatformServiceImpl implements
       return;
     }
 
-    LOGGER.info("Found {} subscriptions stored in Redis", storedSubscriptions.size());
+    LOGGER.info("Found {} entities with subscriptions stored in Redis", storedSubscriptions.size());
 
-    for (final String subscriptionKey : storedSubscriptions) {
-      // Each subscriptionKey represents an entity subscribed to N channels (in Redis is stored as a
-      // hash).
-      // For each hash entry, the key is the channel and the value stores the notification params.
-      final Map<String, String> storedSubscription = jedisTemplate.hGetAll(subscriptionKey);
-      if (CollectionUtils.isEmpty(storedSubscription)) {
-        return;
+    // Each subscriptionKey represents an entity subscribed to N channels (in Redis is stored as a
+    // hash). Hashes are read in pipelined batches, which are run in parallel.
+    final List<String> subscriptionsKeys = new ArrayList<String>(storedSubscriptions);
+    final int batchSize = Math.max(1, restoreBatchSize);
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, restoreThreads));
+    try {
+      final List<CompletableFuture<List<Map<String, String>>>> batches = new ArrayList<CompletableFuture<List<Map<String, String>>>>();
+      for (int from = 0; from < subscriptionsKeys.size(); from += batchSize) {
+        final List<String> batchKeys = subscriptionsKeys.subList(from, Math.min(from + batchSize, subscriptionsKeys.size()));
+        batches.add(CompletableFuture.supplyAsync(() -> jedisTemplate.hGetAll(batchKeys), executor));
       }
 
-      final Set<String> channels = storedSubscription.keySet();
-      final String listenerName = listenerNameFromSubscriptionKey(subscriptionKey);
+      final List<String> staleEntities = new ArrayList<String>();
+      for (int i = 0; i < batches.size(); i++) {
+        final List<Map<String, String>> storedBatch = batches.get(i).join();
+        for (int j = 0; j < storedBatch.size(); j++) {
+          final String listenerName = listenerNameFromSubscriptionKey(subscriptionsKeys.get(i * batchSize + j));
+          if (CollectionUtils.isEmpty(storedBatch.get(j))) {
+            staleEntities.add(listenerName);
+          } else {
+            activateEntitySubscriptions(listenerName, storedBatch.get(j));
+          }
+        }
+      }
 
-      for (final String channel : channels) {
-        final NotificationParams notifParams = (NotificationParams) converter.unmarshal(storedSubscription.get(channel), NotificationParams.class);
-        activateSubscription(listenerName, ChannelUtils.buildTopic(channel), notifParams);
+      // Entities whose last subscription was removed one by one remain in the index until now
+      if (!staleEntities.isEmpty()) {
+        jedisTemplate.sRem(keysBuilder.getSubscriptionsIndexKey(), staleEntities.toArray(new String[0]));
       }
+    } finally {
+      executor.shutdown();
     }
   }
 
+  private void activateEntitySubscriptions(final String listenerName, final Map<String, String> storedSubscription) {
+    // For each hash entry, the key is the channel and the value stores the notification params.
+    for (final Entry<String, String> channel : storedSubscription.entrySet()) {
+      final NotificationParams notifParams = (NotificationParams) converter.unmarshal(channel.getValue(), NotificationParams.class);
+      activateSubscription(listenerName, ChannelUtils.buildTopic(channel.getKey()), notifParams);
+    }
+  }
+
+  private void deactivatePartitions(final Set<Integer> partitions) {
+    final Iterator<Entry<String, MessageListenerImpl>> it = listeners.entrySet().iterator();
+    while (it.hasNext()) {
+      final Entry<String, MessageListenerImpl> entry = it.next();
+      if (partitions.contains(ownershipManager.getPartition(entry.getKey()))) {
+        subscriptionRouter.removeSubscriptions(entry.getValue());
+        it.remove();
+      }
+    }
+  }
+
+  private void notifyChange(final String entityId) {
+    // Other platform instances reload the subscriptions of the entity when they receive it
+    jedisTemplate.publish(PubSubConstants.REDIS_SUBS_CHANGES_CHANNEL, entityId);
+  }
+
   private String listenerNameFromSubscriptionKey(final String subscriptionKey) {
     // subscriptionKey follows the expression subs:<listenerName>
     final int pos = subscriptionKey.lastIndexOf(PubSubConstants.REDIS_KEY_TOKEN);
     return subscriptionKey.substring(pos + 1);
   }
 
-  private void activateSubscription(final String listenerName, final Topic topic, final NotificationParams notificationParams) {
+  private synchronized void activateSubscription(final String listenerName, final Topic topic, final NotificationParams notificationParams) {
     MessageListenerImpl listener = listeners.get(listenerName);
     if (listener == null) {
       listener = addNewListener(listenerName);
@@ -256,8 +438,8 @@ public class SubscribeServiceImpl extends AbstractPlatformServiceImpl implements
 
     LOGGER.info("Subscribing listener {} to channel {}", listener.getName(), topic.getTopic());
 
-    listenerContainer.addMessageListener(listener, topic);
     listener.addSubscription(topic, notificationParams);
+    subscriptionRouter.addSubscription(listener, topic);
   }
 
   private MessageListenerImpl addNewListener(final String listenerName) {
@@ -286,7 +468,7 @@ public class SubscribeServiceImpl extends AbstractPlatformServiceImpl implements
 
     final MessageListenerImpl listener = listeners.get(subscription.getSourceEntityId());
     if (listener != null) {
-      listenerContainer.removeMessageListener(listener, topic);
+      subscriptionRouter.removeSubscription(listener, topic);
       listener.removeSubscription(topic);
     }
 
@@ -301,13 +483,14 @@ public class SubscribeServiceImpl extends AbstractPlatformServiceImpl implements
 
     final MessageListenerImpl listener = listeners.get(subscription.getSourceEntityId());
     if (listener != null) {
-      listenerContainer.removeMessageListener(listener);
+      subscriptionRouter.removeSubscriptions(listener);
       // listener is removed from the active listeners list
       listeners.remove(subscription.getSourceEntityId());
     }
 
     // Finally, the subscription is removed from Redis
     jedisTemplate.del(keysBuilder.getSubscriptionKey(subscription.getSourceEntityId()));
+    jedisTemplate.sRem(keysBuilder.getSubscriptionsIndexKey(), subscription.getSourceEntityId());
 
     LOGGER.debug("Subscriptions removed for listener {} ", subscription.getSourceEntityId());
   }
@@ -331,7 +514,7 @@ public class SubscribeServiceImpl extends AbstractPlatformServiceImpl implements
     for (final String topicName : topicsToRemove) {
       if (listener != null) {
         final Topic topic = ChannelUtils.buildTopic(topicName);
-        listenerContainer.removeMessageListener(listener, topic);
+        subscriptionRouter.removeSubscription(listener, topic);
         listener.removeSubscription(topic);
       }
     }
@@ -363,4 +546,31 @@ public class SubscribeServiceImpl extends AbstractPlatformServiceImpl implements
     return subscriptionList;
   }
 
+  private class SubscriptionChangesListener implements MessageListener {
+
+    @Override
+    public void onMessage(final Message message, final byte[] pattern) {
+      final String entityId = new String(message.getBody(), StandardCharsets.UTF_8);
+      try {
+        reloadSubscriptions(entityId);
+      } catch (final Exception e) {
+        LOGGER.warn("Error reloading subscriptions of entity {}", entityId, e);
+      }
+    }
+  }
+
+  /**
+   * Partitions released by another node are taken over right away if they belong to this one.
+   */
+  private class OwnershipChangesListener implements MessageListener {
+
+    @Override
+    public void onMessage(final Message message, final byte[] pattern) {
+      final String nodeId = new String(message.getBody(), StandardCharsets.UTF_8);
+      if (!nodeId.equals(ownershipManager.getNodeId())) {
+        LOGGER.debug("Node {} has released subscriptions partitions", nodeId);
+        rebalanceSubscriptions();
+      }
+    }
+  }
 }
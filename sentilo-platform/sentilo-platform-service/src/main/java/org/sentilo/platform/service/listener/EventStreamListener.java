@@ -0,0 +1,151 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.listener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sentilo.platform.common.service.EventStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+/**
+ * Listener registered in the {@link SubscriptionRouter} on behalf of an event stream opened by a
+ * client. Messages are buffered, up to <code>capacity</code>, until the thread writing to the
+ * client polls them: when the buffer is full the oldest message is discarded, so a slow client
+ * never blocks the routing of messages nor makes the buffer grow.
+ */
+public class EventStreamListener implements MessageListener, EventStream {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(EventStreamListener.class);
+
+  private final RedisSerializer<String> serializer = new StringRedisSerializer();
+  private final String entityId;
+  private final BlockingQueue<String> buffer;
+  private final AtomicLong droppedEvents = new AtomicLong();
+  private final List<Runnable> closeActions = new CopyOnWriteArrayList<Runnable>();
+  private volatile boolean closed;
+  private volatile long lastPoll = System.currentTimeMillis();
+
+  public EventStreamListener(final String entityId, final int capacity) {
+    this.entityId = entityId;
+    buffer = new ArrayBlockingQueue<String>(capacity);
+  }
+
+  @Override
+  public void onMessage(final Message message, final byte[] pattern) {
+    if (closed) {
+      return;
+    }
+
+    final String event = serializer.deserialize(message.getBody());
+    while (!buffer.offer(event)) {
+      if (buffer.poll() != null) {
+        droppedEvents.incrementAndGet();
+      }
+    }
+  }
+
+  @Override
+  public List<String> poll(final int maxEvents, final long timeout) throws InterruptedException {
+    final List<String> events = new ArrayList<String>();
+    final String first = closed ? null : buffer.poll(timeout, TimeUnit.MILLISECONDS);
+    if (first != null) {
+      events.add(first);
+      buffer.drainTo(events, maxEvents - 1);
+    }
+    lastPoll = System.currentTimeMillis();
+    return events;
+  }
+
+  @Override
+  public long drainDroppedEvents() {
+    return droppedEvents.getAndSet(0);
+  }
+
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+
+    closed = true;
+    buffer.clear();
+    for (final Runnable action : closeActions) {
+      runCloseAction(action);
+    }
+  }
+
+  @Override
+  public synchronized void onClose(final Runnable action) {
+    if (closed) {
+      runCloseAction(action);
+    } else {
+      closeActions.add(action);
+    }
+  }
+
+  private void runCloseAction(final Runnable action) {
+    try {
+      action.run();
+    } catch (final RuntimeException e) {
+      LOGGER.warn("Error closing event stream of {}", entityId, e);
+    }
+  }
+
+  @Override
+  public boolean isClosed() {
+    return closed;
+  }
+
+  @Override
+  public String getEntityId() {
+    return entityId;
+  }
+
+  /**
+   * Returns the time of the last poll, which tells whether the stream is still being written to the
+   * client.
+   */
+  public long getLastPoll() {
+    return lastPoll;
+  }
+
+  public int getBufferedEvents() {
+    return buffer.size();
+  }
+}
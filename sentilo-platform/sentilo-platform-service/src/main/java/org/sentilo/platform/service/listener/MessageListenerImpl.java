@@ -29,7 +29,9 @@
 package org.sentilo.platform.service.listener;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.sentilo.common.enums.EventType;
 import org.sentilo.platform.common.domain.NotificationParams;
@@ -87,6 +89,10 @@ public class MessageListenerImpl implements MessageListener {
     }
   }
 
+  public Set<String> getTopics() {
+    return new HashSet<String>(subscriptions.keySet());
+  }
+
   public String getName() {
     return name;
   }
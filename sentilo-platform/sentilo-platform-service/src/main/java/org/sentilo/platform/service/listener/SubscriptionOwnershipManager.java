@@ -0,0 +1,258 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.listener;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.sentilo.platform.service.dao.JedisKeysBuilder;
+import org.sentilo.platform.service.dao.JedisTemplate;
+import org.sentilo.platform.service.utils.PubSubConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import redis.clients.util.Hashing;
+
+/**
+ * Shares out the subscribing entities among the platform nodes, so that the subscriptions of each
+ * entity are only activated, and therefore its notifications only pushed, by one of them.
+ *
+ * Entities are hashed into <code>api.subs.ownership.partitions</code> partitions. Every node
+ * periodically writes a heartbeat into a sorted set and, from the nodes alive, works out which
+ * partitions it should own using rendezvous hashing, so that a node joining or leaving only moves
+ * the partitions it takes or held. A partition is only owned while its Redis lease is held: leases
+ * expire after <code>api.subs.ownership.lease-ttl</code> millis unless renewed, so partitions of a
+ * dead node are taken over by the others, and a partition handed over is not taken by its new owner
+ * until the previous one has released it. Releases are announced on
+ * {@link PubSubConstants#REDIS_SUBS_OWNERSHIP_CHANNEL} so the new owner takes them over right away
+ * instead of waiting for its next renewal.
+ *
+ * If it is disabled (default), the node owns every entity.
+ */
+@Component
+public class SubscriptionOwnershipManager {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SubscriptionOwnershipManager.class);
+
+  @Autowired
+  private JedisTemplate<String, String> jedisTemplate;
+
+  @Value("${api.subs.ownership.enabled:false}")
+  private boolean enabled = false;
+
+  @Value("${api.subs.ownership.partitions:64}")
+  private int partitions = 64;
+
+  @Value("${api.subs.ownership.lease-ttl:15000}")
+  private long leaseTtl = 15000;
+
+  @Value("${api.subs.ownership.renew-interval:5000}")
+  private long renewInterval = 5000;
+
+  @Value("${api.subs.ownership.node-id:}")
+  private String nodeId;
+
+  private final JedisKeysBuilder keysBuilder = new JedisKeysBuilder();
+  private final Hashing algo = Hashing.MURMUR_HASH;
+  private volatile Set<Integer> ownedPartitions = Collections.emptySet();
+  /** Time by which the leases renewed by the last successful rebalance expire */
+  private long leasesExpireAt = 0;
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public boolean isOwned(final String entityId) {
+    return !enabled || ownedPartitions.contains(getPartition(entityId));
+  }
+
+  public int getPartition(final String entityId) {
+    return (int) Math.floorMod(algo.hash(entityId), (long) partitions);
+  }
+
+  /**
+   * Renews the heartbeat of this node and the leases of the partitions it should own, and takes the
+   * free ones among them. Partitions which should no longer be owned are returned as released: they
+   * are no longer considered owned, but their leases are held until {@link #release(Set)} is called,
+   * once their subscriptions have been deactivated.
+   *
+   * If Redis could not be reached, partitions are kept while their leases are held, and they are
+   * all released only when their leases could expire before the next renewal.
+   */
+  public synchronized OwnershipChange rebalance() {
+    final Set<Integer> owned = new HashSet<Integer>(ownedPartitions);
+    final Set<Integer> acquired = new HashSet<Integer>();
+    final Set<Integer> released = new HashSet<Integer>();
+    final long renewedAt = System.currentTimeMillis();
+    try {
+      final List<Integer> targets = getTargetPartitions(getLiveNodes());
+      final List<Boolean> leases = jedisTemplate.acquireLeases(getLeaseKeys(targets), getNodeId(), leaseTtl);
+      leasesExpireAt = renewedAt + leaseTtl;
+      for (int i = 0; i < targets.size(); i++) {
+        if (leases.get(i) && owned.add(targets.get(i))) {
+          acquired.add(targets.get(i));
+        } else if (!leases.get(i) && owned.contains(targets.get(i))) {
+          // Lease expired before being renewed and it has been taken by another node
+          released.add(targets.get(i));
+        }
+      }
+      for (final Integer partition : ownedPartitions) {
+        if (!targets.contains(partition)) {
+          released.add(partition);
+        }
+      }
+    } catch (final Exception e) {
+      owned.retainAll(ownedPartitions);
+      acquired.clear();
+      if (System.currentTimeMillis() + renewInterval < leasesExpireAt) {
+        LOGGER.warn("Error renewing subscriptions ownership of node {}. Its partitions are kept while their leases are held", getNodeId(), e);
+      } else {
+        LOGGER.warn("Error renewing subscriptions ownership of node {}. All its partitions are released", getNodeId(), e);
+        released.addAll(ownedPartitions);
+      }
+    }
+
+    owned.removeAll(released);
+    ownedPartitions = Collections.unmodifiableSet(owned);
+
+    if (!acquired.isEmpty() || !released.isEmpty()) {
+      LOGGER.info("Node {} acquires partitions {} and releases partitions {}. Owned partitions: {}", getNodeId(), acquired, released, owned.size());
+    }
+    return new OwnershipChange(acquired, released);
+  }
+
+  /**
+   * Frees the leases of the partitions released and announces it, so the nodes which should own them
+   * take them over without waiting for their next renewal.
+   */
+  public void release(final Set<Integer> released) {
+    if (!released.isEmpty()) {
+      jedisTemplate.releaseLeases(getLeaseKeys(new ArrayList<Integer>(released)), getNodeId());
+      jedisTemplate.publish(PubSubConstants.REDIS_SUBS_OWNERSHIP_CHANNEL, getNodeId());
+    }
+  }
+
+  /**
+   * Stops considering the partitions as owned, and frees their leases, without waiting for the next
+   * rebalance.
+   */
+  public synchronized void forget(final Set<Integer> forgotten) {
+    final Set<Integer> owned = new HashSet<Integer>(ownedPartitions);
+    owned.removeAll(forgotten);
+    ownedPartitions = Collections.unmodifiableSet(owned);
+    try {
+      release(forgotten);
+    } catch (final Exception e) {
+      LOGGER.warn("Error releasing partitions {}", forgotten, e);
+    }
+  }
+
+  private List<String> getLiveNodes() {
+    final long now = System.currentTimeMillis();
+    final String nodesKey = keysBuilder.getSubscribersNodesKey();
+    jedisTemplate.zAdd(nodesKey, now, getNodeId());
+    jedisTemplate.zRemRangeByScore(nodesKey, 0, now - leaseTtl);
+    return new ArrayList<String>(jedisTemplate.zRangeByScore(nodesKey, now - leaseTtl, Double.MAX_VALUE));
+  }
+
+  /**
+   * Each partition is owned by the live node with the highest hash of the node and partition pair.
+   */
+  private List<Integer> getTargetPartitions(final List<String> nodes) {
+    if (!nodes.contains(getNodeId())) {
+      nodes.add(getNodeId());
+    }
+
+    final List<Integer> targets = new ArrayList<Integer>();
+    for (int partition = 0; partition < partitions; partition++) {
+      String owner = null;
+      long maxWeight = Long.MIN_VALUE;
+      for (final String node : nodes) {
+        final long weight = algo.hash(node + "#" + partition);
+        if (owner == null || weight > maxWeight || weight == maxWeight && node.compareTo(owner) < 0) {
+          owner = node;
+          maxWeight = weight;
+        }
+      }
+      if (getNodeId().equals(owner)) {
+        targets.add(partition);
+      }
+    }
+    return targets;
+  }
+
+  private List<String> getLeaseKeys(final List<Integer> partitionsIds) {
+    final List<String> keys = new ArrayList<String>(partitionsIds.size());
+    for (final Integer partition : partitionsIds) {
+      keys.add(keysBuilder.getSubscribersLeaseKey(partition));
+    }
+    return keys;
+  }
+
+  /**
+   * By default the node is identified by its process id and host name.
+   */
+  public String getNodeId() {
+    if (!StringUtils.hasText(nodeId)) {
+      nodeId = ManagementFactory.getRuntimeMXBean().getName();
+    }
+    return nodeId;
+  }
+
+  public static class OwnershipChange {
+
+    private final Set<Integer> acquired;
+    private final Set<Integer> released;
+
+    public OwnershipChange(final Set<Integer> acquired, final Set<Integer> released) {
+      this.acquired = acquired;
+      this.released = released;
+    }
+
+    public Set<Integer> getAcquired() {
+      return acquired;
+    }
+
+    public Set<Integer> getReleased() {
+      return released;
+    }
+
+    public boolean isEmpty() {
+      return acquired.isEmpty() && released.isEmpty();
+    }
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.listener;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.sentilo.platform.service.utils.ChannelUtils;
+import org.sentilo.platform.service.utils.ChannelUtils.PubSubChannelPrefix;
+import org.sentilo.platform.service.utils.PubSubConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * Single listener registered in the listener container on behalf of every subscribed entity.
+ *
+ * Instead of subscribing each entity to its own channels and patterns, which makes Redis match
+ * every published message against one pattern per subscription and the container dispatch one
+ * copy of the message per listener, the router subscribes once to the pattern of each provider with
+ * subscriptions (<code>/data/prov1*</code>, <code>/order/prov1*</code>) and once to each alarm
+ * channel. Incoming messages are then routed in process, through a {@link TopicTrie}, to the
+ * listeners of the entities subscribed to their channel, and each listener gets the message only
+ * once even if it is subscribed to both the channel and its pattern. As the container does with its
+ * own listeners, each listener is handed the message through the task executor, so a slow push
+ * endpoint doesn't delay the notifications of the other subscriptions.
+ *
+ * Besides the listeners of the subscriptions notified by HTTP callbacks, the router also feeds the
+ * event streams opened by the clients (see {@link EventStreamListener}).
+ */
+@Component
+public class SubscriptionRouter implements MessageListener {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SubscriptionRouter.class);
+
+  @Autowired
+  private RedisMessageListenerContainer listenerContainer;
+
+  private final RedisSerializer<String> serializer = new StringRedisSerializer();
+  private final TopicTrie<MessageListener> trie = new TopicTrie<MessageListener>();
+  /** Number of subscriptions routed through each topic subscribed in Redis */
+  private final Map<String, Integer> routingTopics = new HashMap<String, Integer>();
+  private final Map<MessageListener, Set<String>> listenersTopics = new HashMap<MessageListener, Set<String>>();
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  /** Same executor the container uses by default to dispatch messages to its listeners */
+  private Executor taskExecutor = new SimpleAsyncTaskExecutor("SubscriptionRouter-");
+
+  @Override
+  public void onMessage(final Message message, final byte[] pattern) {
+    final String channel = serializer.deserialize(message.getChannel());
+    final Set<MessageListener> listeners;
+    lock.readLock().lock();
+    try {
+      listeners = trie.match(channel);
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    LOGGER.debug("Routing message published on channel {} to {} listeners", channel, listeners.size());
+    for (final MessageListener listener : listeners) {
+      taskExecutor.execute(() -> listener.onMessage(message, pattern));
+    }
+  }
+
+  public void setTaskExecutor(final Executor taskExecutor) {
+    this.taskExecutor = taskExecutor;
+  }
+
+  public synchronized void addSubscription(final MessageListener listener, final Topic topic) {
+    lock.writeLock().lock();
+    try {
+      if (!trie.add(topic.getTopic(), listener)) {
+        return;
+      }
+      Set<String> topics = listenersTopics.get(listener);
+      if (topics == null) {
+        topics = new HashSet<String>();
+        listenersTopics.put(listener, topics);
+      }
+      topics.add(topic.getTopic());
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    final Topic routingTopic = getRoutingTopic(topic.getTopic());
+    final Integer count = routingTopics.get(routingTopic.getTopic());
+    routingTopics.put(routingTopic.getTopic(), count == null ? 1 : count + 1);
+    if (count == null) {
+      LOGGER.debug("Subscribing to {} to route messages of topic {}", routingTopic.getTopic(), topic.getTopic());
+      listenerContainer.addMessageListener(this, routingTopic);
+    }
+  }
+
+  public synchronized void removeSubscription(final MessageListener listener, final Topic topic) {
+    lock.writeLock().lock();
+    try {
+      if (!trie.remove(topic.getTopic(), listener)) {
+        return;
+      }
+      final Set<String> topics = listenersTopics.get(listener);
+      topics.remove(topic.getTopic());
+      if (topics.isEmpty()) {
+        listenersTopics.remove(listener);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    final Topic routingTopic = getRoutingTopic(topic.getTopic());
+    final int count = routingTopics.get(routingTopic.getTopic()) - 1;
+    if (count == 0) {
+      LOGGER.debug("Unsubscribing from {}: there are no more subscriptions routed through it", routingTopic.getTopic());
+      routingTopics.remove(routingTopic.getTopic());
+      listenerContainer.removeMessageListener(this, routingTopic);
+    } else {
+      routingTopics.put(routingTopic.getTopic(), count);
+    }
+  }
+
+  public synchronized void removeSubscriptions(final MessageListener listener) {
+    final Set<String> topics = listenersTopics.get(listener);
+    if (topics != null) {
+      for (final String topic : new HashSet<String>(topics)) {
+        removeSubscription(listener, ChannelUtils.buildTopic(topic));
+      }
+    }
+  }
+
+  /**
+   * Returns the topic subscribed in Redis to receive the messages of <code>topic</code>: the
+   * pattern of its provider for data and orders, or the topic itself for alarms.
+   */
+  public static Topic getRoutingTopic(final String topic) {
+    final String[] tokens = StringUtils.tokenizeToStringArray(topic, PubSubConstants.REDIS_CHANNEL_TOKEN);
+    if (tokens.length < 2 || PubSubChannelPrefix.alarm.name().equals(tokens[0])) {
+      return ChannelUtils.buildTopic(topic);
+    }
+
+    final String provider = StringUtils.trimTrailingCharacter(tokens[1], PubSubConstants.REDIS_CHANNEL_PATTERN_SUFFIX.charAt(0));
+    return ChannelUtils.buildTopic(PubSubConstants.REDIS_CHANNEL_TOKEN + tokens[0] + PubSubConstants.REDIS_CHANNEL_TOKEN + provider
+        + PubSubConstants.REDIS_CHANNEL_PATTERN_SUFFIX);
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.listener;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.sentilo.platform.service.utils.PubSubConstants;
+import org.springframework.util.StringUtils;
+
+/**
+ * Index of the values (i.e. listeners) subscribed to each topic, organized as a trie whose levels
+ * are the tokens of the topic name, so the values subscribed to a channel are found in a time
+ * proportional to the channel length and not to the number of subscriptions.
+ *
+ * As in Sentilo subscriptions, a topic could be either a channel (<code>/data/prov1/sensor1</code>),
+ * which only matches itself, or a pattern ending with <code>*</code> (<code>/data/prov1*</code>),
+ * which matches any channel of its branch (<code>/data/prov1</code> and any
+ * <code>/data/prov1/...</code>).
+ *
+ * This class is not thread-safe.
+ */
+public class TopicTrie<T> {
+
+  private final Node<T> root = new Node<T>();
+  private int size;
+
+  /**
+   * @return true if <code>value</code> was not already subscribed to <code>topic</code>
+   */
+  public boolean add(final String topic, final T value) {
+    final boolean pattern = isPattern(topic);
+    Node<T> node = root;
+    for (final String token : tokenize(topic, pattern)) {
+      Node<T> child = node.children.get(token);
+      if (child == null) {
+        child = new Node<T>();
+        node.children.put(token, child);
+      }
+      node = child;
+    }
+
+    final boolean added = (pattern ? node.patternValues : node.channelValues).add(value);
+    if (added) {
+      size++;
+    }
+    return added;
+  }
+
+  /**
+   * @return true if <code>value</code> was subscribed to <code>topic</code>
+   */
+  public boolean remove(final String topic, final T value) {
+    final boolean pattern = isPattern(topic);
+    final String[] tokens = tokenize(topic, pattern);
+    final boolean removed = remove(root, tokens, 0, pattern, value);
+    if (removed) {
+      size--;
+    }
+    return removed;
+  }
+
+  /**
+   * Returns the values subscribed to <code>channel</code>, either directly or through a pattern.
+   * Each value is returned only once, even if it is subscribed through more than one topic.
+   */
+  public Set<T> match(final String channel) {
+    final Set<T> values = new LinkedHashSet<T>();
+    Node<T> node = root;
+    for (final String token : tokenize(channel, false)) {
+      node = node.children.get(token);
+      if (node == null) {
+        return values;
+      }
+      values.addAll(node.patternValues);
+    }
+
+    values.addAll(node.channelValues);
+    return values;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private boolean remove(final Node<T> node, final String[] tokens, final int level, final boolean pattern, final T value) {
+    if (level == tokens.length) {
+      return (pattern ? node.patternValues : node.channelValues).remove(value);
+    }
+
+    final Node<T> child = node.children.get(tokens[level]);
+    if (child == null) {
+      return false;
+    }
+
+    final boolean removed = remove(child, tokens, level + 1, pattern, value);
+    if (child.isEmpty()) {
+      // Branches without subscriptions are pruned
+      node.children.remove(tokens[level]);
+    }
+    return removed;
+  }
+
+  private static boolean isPattern(final String topic) {
+    return topic.endsWith(PubSubConstants.REDIS_CHANNEL_PATTERN_SUFFIX);
+  }
+
+  private static String[] tokenize(final String topic, final boolean pattern) {
+    final String name = pattern ? topic.substring(0, topic.length() - PubSubConstants.REDIS_CHANNEL_PATTERN_SUFFIX.length()) : topic;
+    return StringUtils.tokenizeToStringArray(name, PubSubConstants.REDIS_CHANNEL_TOKEN);
+  }
+
+  private static class Node<T> {
+
+    private final Map<String, Node<T>> children = new HashMap<String, Node<T>>();
+    private final Set<T> channelValues = new LinkedHashSet<T>(2);
+    private final Set<T> patternValues = new LinkedHashSet<T>(2);
+
+    boolean isEmpty() {
+      return children.isEmpty() && channelValues.isEmpty() && patternValues.isEmpty();
+    }
+  }
+}
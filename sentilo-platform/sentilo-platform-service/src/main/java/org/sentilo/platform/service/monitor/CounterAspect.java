@@ -29,6 +29,8 @@
 package org.sentilo.platform.service.monitor;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.ProceedingJoinPoint;
@@ -38,10 +40,15 @@ import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
 import org.sentilo.common.domain.PlatformInputMessage;
 import org.sentilo.common.enums.EventType;
+import org.sentilo.platform.common.domain.AlarmInputMessage;
 import org.sentilo.platform.common.domain.DataInputMessage;
+import org.sentilo.platform.common.domain.Observation;
+import org.sentilo.platform.common.domain.OrderInputMessage;
 import org.sentilo.platform.common.exception.EventRejectedException;
 import org.sentilo.platform.common.security.RequesterContext;
 import org.sentilo.platform.common.security.RequesterContextHolder;
+import org.sentilo.platform.service.monitor.HeavyHittersTracker.Dimension;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.core.Ordered;
@@ -54,6 +61,9 @@ public class CounterAspect implements Ordered, ApplicationContextAware {
   private final int order = 1;
   private ApplicationContext context;
 
+  @Autowired
+  private HeavyHittersTracker heavyHittersTracker;
+
   @Pointcut("execution(* org.sentilo.platform.service.impl.*.set*(..)) && args(inputMessage) && @annotation(metric)")
   public void setInputMessage(final PlatformInputMessage inputMessage, final Metric metric) {
     // Do nothing. Pointcut definition
@@ -88,16 +98,24 @@ public class CounterAspect implements Ordered, ApplicationContextAware {
       throw ere;
     } finally {
       publishCounterEvent(inputMessage, metric, totalResourcesRejected);
+      // Rejected events are also tracked: they load the platform as well
+      trackHeavyHitters(inputMessage, metric);
     }
   }
 
   @AfterReturning(pointcut = "getLastMessage(inputMessage, metric)", returning = "lastEvents")
   public void getLastAdvice(final JoinPoint jp, final PlatformInputMessage inputMessage, final Metric metric, final Object lastEvents) {
+    countLastEvents(metric.requestType(), metric.eventType(), lastEvents);
+  }
+
+  /**
+   * Counts the events read on behalf of the current requester. Used as well for requests served
+   * with the result of an identical read made by another request, which don't call the service.
+   */
+  public void countLastEvents(final RequestType requestType, final EventType eventType, final Object lastEvents) {
     if (lastEvents instanceof Collection<?>) {
-      publishCounterEvent(metric.requestType(), metric.eventType(), ((Collection<?>) lastEvents).size());
+      publishCounterEvent(requestType, eventType, ((Collection<?>) lastEvents).size());
     }
-
-    return;
   }
 
   protected void publishCounterEvent(final PlatformInputMessage inputMessage, final Metric metric, final int totalResourcesRejected) {
@@ -113,6 +131,54 @@ public class CounterAspect implements Ordered, ApplicationContextAware {
     }
   }
 
+  protected void trackHeavyHitters(final PlatformInputMessage inputMessage, final Metric metric) {
+    if (heavyHittersTracker == null || !heavyHittersTracker.isEnabled() || metric.requestType() != RequestType.PUT) {
+      return;
+    }
+
+    // Events are first grouped by key so each sketch is updated once per distinct key
+    final Map<String, Long> sensors = new HashMap<String, Long>();
+    final Map<String, Long> providers = new HashMap<String, Long>();
+    switch (metric.eventType()) {
+      case DATA:
+        for (final Observation observation : ((DataInputMessage) inputMessage).getObservations()) {
+          addEvent(providers, observation.getProvider());
+          addEvent(sensors, observation.getProvider() + "/" + observation.getSensor());
+        }
+        break;
+      case ORDER:
+        final OrderInputMessage order = (OrderInputMessage) inputMessage;
+        addEvent(providers, order.getProviderId());
+        addEvent(sensors, order.getSensorId() != null ? order.getProviderId() + "/" + order.getSensorId() : null);
+        break;
+      case ALARM:
+        final AlarmInputMessage alarm = (AlarmInputMessage) inputMessage;
+        addEvent(providers, alarm.getProviderId() != null ? alarm.getProviderId() : alarm.getSender());
+        addEvent(sensors, alarm.getSensorId() != null ? alarm.getProviderId() + "/" + alarm.getSensorId() : null);
+        break;
+      default:
+        return;
+    }
+
+    heavyHittersTracker.record(Dimension.provider, providers);
+    heavyHittersTracker.record(Dimension.sensor, sensors);
+    final RequesterContext requesterContext = RequesterContextHolder.getContext();
+    if (requesterContext != null) {
+      long total = 0;
+      for (final Long count : providers.values()) {
+        total += count;
+      }
+      heavyHittersTracker.record(Dimension.client, requesterContext.getRemoteAddress(), total);
+    }
+  }
+
+  private void addEvent(final Map<String, Long> counts, final String key) {
+    if (key != null) {
+      final Long count = counts.get(key);
+      counts.put(key, count == null ? 1L : count + 1);
+    }
+  }
+
   protected void publishCounterEvent(final RequestType requestType, final EventType dataType, final int total) {
     final RequesterContext requesterContext = RequesterContextHolder.getContext();
     final CounterContext counterContext =
@@ -0,0 +1,151 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.monitor;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.sentilo.platform.common.domain.HeavyHitters;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * Tracks, over tumbling time windows of <code>api.monitor.hitters.window</code> seconds, which
+ * sensors, providers and client addresses publish the most events. Each dimension is summarized by
+ * a {@link SpaceSavingSketch} of <code>api.monitor.hitters.capacity</code> counters, so memory
+ * needed is fixed no matter how many distinct sensors or clients there are.
+ *
+ * Only the current and the previous windows are kept.
+ */
+@Component
+public class HeavyHittersTracker {
+
+  public enum Dimension {
+    sensor, provider, client
+  }
+
+  @Value("${api.monitor.hitters.enabled:true}")
+  private boolean enabled = true;
+
+  @Value("${api.monitor.hitters.window:60}")
+  private int windowSeconds = 60;
+
+  @Value("${api.monitor.hitters.capacity:200}")
+  private int capacity = 200;
+
+  @Value("${api.monitor.hitters.top:20}")
+  private int topSize = 20;
+
+  private volatile Window current;
+  private volatile Window previous;
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Adds <code>count</code> events to each one of the keys of the dimension. Null or empty keys are
+   * ignored.
+   */
+  public void record(final Dimension dimension, final Map<String, Long> counts) {
+    if (!enabled || counts.isEmpty()) {
+      return;
+    }
+
+    final Window window = getCurrentWindow(System.currentTimeMillis());
+    for (final Entry<String, Long> count : counts.entrySet()) {
+      if (StringUtils.hasText(count.getKey())) {
+        window.sketches.get(dimension).add(count.getKey(), count.getValue());
+      }
+    }
+  }
+
+  public void record(final Dimension dimension, final String key, final long count) {
+    final Map<String, Long> counts = new HashMap<String, Long>(1);
+    counts.put(key, count);
+    record(dimension, counts);
+  }
+
+  public HeavyHitters getHeavyHitters() {
+    final long now = System.currentTimeMillis();
+    final Window currentWindow = getCurrentWindow(now);
+    final Window previousWindow = previous;
+
+    final List<HeavyHitters.Window> windows = new ArrayList<HeavyHitters.Window>(2);
+    windows.add(currentWindow.toHeavyHitters(topSize));
+    // Previous window is only reported if it ended just before the current one started
+    if (previousWindow != null && previousWindow.to == currentWindow.from) {
+      windows.add(previousWindow.toHeavyHitters(topSize));
+    }
+    return new HeavyHitters(now, windows);
+  }
+
+  private Window getCurrentWindow(final long now) {
+    Window window = current;
+    if (window == null || now >= window.to) {
+      synchronized (this) {
+        window = current;
+        if (window == null || now >= window.to) {
+          final long windowMillis = windowSeconds * 1000L;
+          final long from = now - now % windowMillis;
+          previous = window;
+          window = new Window(from, from + windowMillis, capacity);
+          current = window;
+        }
+      }
+    }
+    return window;
+  }
+
+  private static class Window {
+
+    private final long from;
+    private final long to;
+    private final Map<Dimension, SpaceSavingSketch> sketches = new EnumMap<Dimension, SpaceSavingSketch>(Dimension.class);
+
+    Window(final long from, final long to, final int capacity) {
+      this.from = from;
+      this.to = to;
+      for (final Dimension dimension : Dimension.values()) {
+        sketches.put(dimension, new SpaceSavingSketch(capacity));
+      }
+    }
+
+    HeavyHitters.Window toHeavyHitters(final int topSize) {
+      // Every event is published by a provider, so the provider sketch counts all of them
+      return new HeavyHitters.Window(from, to, sketches.get(Dimension.provider).getTotal(), sketches.get(Dimension.sensor).getTop(topSize),
+          sketches.get(Dimension.provider).getTop(topSize), sketches.get(Dimension.client).getTop(topSize));
+    }
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.monitor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.sentilo.common.metrics.LatencyHistogram;
+import org.sentilo.platform.common.domain.RedisMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps, for every Redis command sent by the platform, the number of calls, the number of errors
+ * and a latency histogram, grouped by command and key family (i.e. the key with its identifiers
+ * removed: <code>sid:1:observations</code> and <code>sid:2:observations</code> both belong to the
+ * <code>sid:*:observations</code> family). Commands slower than
+ * <code>jedis.metrics.slowlog.threshold</code> millis are logged and the last ones are kept to be
+ * retrieved through the admin API.
+ */
+@Component
+public class RedisCommandMetrics {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RedisCommandMetrics.class);
+
+  public static final String BORROW_COMMAND = "BORROW";
+  public static final String POOL_FAMILY = "pool";
+  private static final String SEPARATOR = ":";
+  private static final String WILDCARD = "*";
+
+  @Value("${jedis.metrics.slowlog.threshold:50}")
+  private long slowThresholdMillis;
+
+  @Value("${jedis.metrics.slowlog.size:100}")
+  private int slowLogSize;
+
+  private final ConcurrentMap<String, CommandStats> stats = new ConcurrentHashMap<String, CommandStats>();
+  private final Deque<RedisMetrics.SlowCommand> slowLog = new ArrayDeque<RedisMetrics.SlowCommand>();
+
+  /**
+   * Records a command call.
+   *
+   * @param command name of the Redis command
+   * @param key key (or channel) of the command, could be null
+   * @param startNanos value of {@link System#nanoTime()} when the call started
+   * @param failed true if the call has failed
+   */
+  public void record(final String command, final String key, final long startNanos, final boolean failed) {
+    final long elapsedNanos = System.nanoTime() - startNanos;
+    final String keyFamily = getKeyFamily(key);
+    getStats(command, keyFamily).record(elapsedNanos, failed);
+
+    final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    if (elapsedMillis >= slowThresholdMillis) {
+      LOGGER.warn("Slow Redis command {} on {}: {} ms", command, keyFamily, elapsedMillis);
+      addSlowCommand(new RedisMetrics.SlowCommand(System.currentTimeMillis(), command, keyFamily, elapsedNanos / 1000000f));
+    }
+  }
+
+  /**
+   * Records the time spent waiting for a connection of the pool.
+   */
+  public void recordBorrow(final long startNanos) {
+    getStats(BORROW_COMMAND, POOL_FAMILY).record(System.nanoTime() - startNanos, false);
+  }
+
+  public List<RedisMetrics.Command> getCommands() {
+    final List<RedisMetrics.Command> commands = new ArrayList<RedisMetrics.Command>();
+    for (final Entry<String, CommandStats> entry : stats.entrySet()) {
+      final CommandStats commandStats = entry.getValue();
+      final LatencyHistogram latency = commandStats.latency;
+      commands.add(new RedisMetrics.Command(commandStats.command, commandStats.keyFamily, latency.getCount(), commandStats.errors.sum(),
+          latency.getMeanMillis(), latency.getPercentileMillis(95), latency.getPercentileMillis(99), latency.getMaxMillis()));
+    }
+    return commands;
+  }
+
+  public List<RedisMetrics.SlowCommand> getSlowCommands() {
+    synchronized (slowLog) {
+      return new ArrayList<RedisMetrics.SlowCommand>(slowLog);
+    }
+  }
+
+  /**
+   * Returns the key without its identifiers, e.g. <code>sid:*:observations</code> for
+   * <code>sid:{12}:observations</code> or <code>subs:*</code> for <code>subs:app_demo</code>.
+   * Sequence keys (<code>global:*</code>) are returned as is, and channels only keep its type,
+   * e.g. <code>data:*</code>.
+   */
+  public static String getKeyFamily(final String key) {
+    if (key == null) {
+      return WILDCARD;
+    }
+
+    final String[] tokens = key.split(SEPARATOR);
+    if (tokens.length == 1 || "global".equals(tokens[0])) {
+      return key;
+    }
+
+    final String last = tokens[tokens.length - 1];
+    return tokens[0] + SEPARATOR + WILDCARD + (tokens.length > 2 && isSuffix(last) ? SEPARATOR + last : "");
+  }
+
+  private static boolean isSuffix(final String token) {
+    // Suffixes used by JedisKeysBuilder. Any other token is considered to be an identifier
+    switch (token) {
+      case "observations":
+      case "orders":
+      case "alarms":
+      case "sensors":
+      case "pid":
+      case "sid":
+      case "aid":
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private CommandStats getStats(final String command, final String keyFamily) {
+    final String statsKey = command + " " + keyFamily;
+    CommandStats commandStats = stats.get(statsKey);
+    if (commandStats == null) {
+      final CommandStats newStats = new CommandStats(command, keyFamily);
+      commandStats = stats.putIfAbsent(statsKey, newStats);
+      if (commandStats == null) {
+        commandStats = newStats;
+      }
+    }
+    return commandStats;
+  }
+
+  private void addSlowCommand(final RedisMetrics.SlowCommand slowCommand) {
+    synchronized (slowLog) {
+      if (slowLog.size() >= slowLogSize) {
+        slowLog.removeFirst();
+      }
+      slowLog.addLast(slowCommand);
+    }
+  }
+
+  public void setSlowThresholdMillis(final long slowThresholdMillis) {
+    this.slowThresholdMillis = slowThresholdMillis;
+  }
+
+  public void setSlowLogSize(final int slowLogSize) {
+    this.slowLogSize = slowLogSize;
+  }
+
+  private static class CommandStats {
+
+    private final String command;
+    private final String keyFamily;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    CommandStats(final String command, final String keyFamily) {
+      this.command = command;
+      this.keyFamily = keyFamily;
+    }
+
+    void record(final long elapsedNanos, final boolean failed) {
+      latency.record(elapsedNanos, TimeUnit.NANOSECONDS);
+      if (failed) {
+        errors.increment();
+      }
+    }
+  }
+}
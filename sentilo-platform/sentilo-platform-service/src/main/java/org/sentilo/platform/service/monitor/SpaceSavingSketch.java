@@ -0,0 +1,115 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.monitor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.sentilo.platform.common.domain.HeavyHitters;
+
+/**
+ * Space-Saving summary: estimates the most frequent keys of a stream using a fixed number of
+ * counters, whatever the number of distinct keys is.
+ *
+ * When a key not monitored arrives and every counter is in use, the counter with the lowest count is
+ * given to the new key, which inherits its count as error. Therefore every key whose actual count
+ * is greater than <code>total / capacity</code> is always monitored, and each count overestimates
+ * the actual one at most by its error.
+ */
+public class SpaceSavingSketch {
+
+  private final int capacity;
+  private final Map<String, Counter> counters;
+  // Counters sorted by count so the one with the lowest count could be found in log(capacity)
+  private final TreeSet<Counter> sortedCounters = new TreeSet<Counter>();
+  private long total;
+
+  public SpaceSavingSketch(final int capacity) {
+    this.capacity = capacity;
+    counters = new HashMap<String, Counter>(capacity * 2);
+  }
+
+  public synchronized void add(final String key, final long count) {
+    total += count;
+    Counter counter = counters.get(key);
+    if (counter != null) {
+      sortedCounters.remove(counter);
+      counter.count += count;
+    } else if (counters.size() < capacity) {
+      counter = new Counter(key, count, 0);
+      counters.put(key, counter);
+    } else {
+      final Counter min = sortedCounters.pollFirst();
+      counters.remove(min.key);
+      counter = new Counter(key, min.count + count, min.count);
+      counters.put(key, counter);
+    }
+    sortedCounters.add(counter);
+  }
+
+  /**
+   * Returns the <code>size</code> keys with the highest estimated count, sorted by count.
+   */
+  public synchronized List<HeavyHitters.Item> getTop(final int size) {
+    final List<HeavyHitters.Item> top = new ArrayList<HeavyHitters.Item>(Math.min(size, counters.size()));
+    final Iterator<Counter> it = sortedCounters.descendingIterator();
+    while (it.hasNext() && top.size() < size) {
+      final Counter counter = it.next();
+      top.add(new HeavyHitters.Item(counter.key, counter.count, counter.error));
+    }
+    return top;
+  }
+
+  public synchronized long getTotal() {
+    return total;
+  }
+
+  private static class Counter implements Comparable<Counter> {
+
+    private final String key;
+    private long count;
+    private final long error;
+
+    Counter(final String key, final long count, final long error) {
+      this.key = key;
+      this.count = count;
+      this.error = error;
+    }
+
+    @Override
+    public int compareTo(final Counter other) {
+      final int result = Long.compare(count, other.count);
+      return result != 0 ? result : key.compareTo(other.key);
+    }
+  }
+}
@@ -28,10 +28,15 @@
  */
 package org.sentilo.platform.service.notification;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.sentilo.common.rest.RequestContext;
+import org.sentilo.common.rest.impl.AsyncRequestDispatcher;
 import org.sentilo.common.rest.impl.RESTClientImpl;
 import org.sentilo.platform.common.domain.NotificationParams;
 import org.sentilo.platform.service.monitor.CounterContext;
@@ -58,7 +63,23 @@ public class NotificationDeliveryServiceImpl implements NotificationDeliveryServ
   @Value("${api.retry.notifications:true}")
   private boolean retryNotificationsEnabled = true;
 
-  private Map<String, RESTClientImpl> restClients = new HashMap<String, RESTClientImpl>();
+  @Value("${api.subs.push.async:false}")
+  private boolean pushAsync = false;
+
+  @Value("${api.subs.push.async.max-per-host:1}")
+  private int pushMaxPerHost = 1;
+
+  private final Map<String, RESTClientImpl> restClients = new ConcurrentHashMap<String, RESTClientImpl>();
+  private AsyncRequestDispatcher pushDispatcher;
+
+  @PostConstruct
+  public void init() {
+    // A single dispatcher must be shared by every listener so that pushes to a host are limited to
+    // api.subs.push.async.max-per-host at a time
+    if (pushAsync) {
+      pushDispatcher = new AsyncRequestDispatcher(pushMaxPerHost);
+    }
+  }
 
   @Override
   public void pushNotification(final String message, final NotificationDeliveryContext notificationContext) {
@@ -77,20 +98,39 @@ public class NotificationDeliveryServiceImpl implements NotificationDeliveryServ
       rc.setHost(notificationParams.getEndpoint());
       rc.setSecretKey(notificationParams.getSecretCallbackKey());
 
-      restClient.post(rc);
-
-      publishPushCounterEvent(notificationContext);
-    } catch (final Exception e) {
-      LOGGER.warn("Error sending push notification {} to {}. Number of retries: {} ", notificationRetryEvent.getMessage(),
-          notificationContext.getNotificationParams().getEndpoint(), notificationRetryEvent.getRetryCount());
-
-      if (retryNotificationsEnabled) {
-        saveForFurtherRetryAttempt(notificationRetryEvent);
+      if (pushAsync) {
+        // The caller thread doesn't wait for the endpoint response: the outcome of the push is
+        // handled when the request completes
+        restClient.postAsync(rc).whenComplete(new BiConsumer<String, Throwable>() {
+
+          @Override
+          public void accept(final String response, final Throwable error) {
+            if (error == null) {
+              publishPushCounterEvent(notificationContext);
+            } else {
+              handlePushError(notificationRetryEvent);
+            }
+          }
+        });
+      } else {
+        restClient.post(rc);
+        publishPushCounterEvent(notificationContext);
       }
+    } catch (final Exception e) {
+      handlePushError(notificationRetryEvent);
     }
 
   }
 
+  private void handlePushError(final NotificationRetryEvent notificationRetryEvent) {
+    LOGGER.warn("Error sending push notification {} to {}. Number of retries: {} ", notificationRetryEvent.getMessage(),
+        notificationRetryEvent.getNotificationDeliveryContext().getNotificationParams().getEndpoint(), notificationRetryEvent.getRetryCount());
+
+    if (retryNotificationsEnabled) {
+      saveForFurtherRetryAttempt(notificationRetryEvent);
+    }
+  }
+
   /**
    * If {@link NotificationParams#getMaxRetries()} is greater than
    * {@link NotificationRetryEvent#getRetryCount()}, saves the message in a queue for further retry
@@ -119,9 +159,20 @@ public class NotificationDeliveryServiceImpl implements NotificationDeliveryServ
     context.publishEvent(new CounterEvent(counterContext));
   }
 
+  @PreDestroy
+  public void shutdown() {
+    if (pushDispatcher != null) {
+      pushDispatcher.shutdown();
+    }
+  }
+
   /**
-   * Each listener has its own RestClient to push notifications (each containing up to 400
-   * connections) .
+   * Each listener has its own RestClient to push notifications. By default all of them take their
+   * connections from the pool shared by the JVM (see api.subs.rest.shared-pool); otherwise each one
+   * owns a pool of up to 400 connections.
+   *
+   * Asynchronous pushes are run by a dispatcher of their own, which by default makes the requests to
+   * each endpoint host one after another so that notifications arrive in the order they were sent.
    *
    * @param sourceListener Listener unique identifier
    * @return
@@ -129,13 +180,14 @@ public class NotificationDeliveryServiceImpl implements NotificationDeliveryServ
    *
    */
   private RESTClientImpl getRestClient(final String sourceListener) {
-    RESTClientImpl restClient = restClients.get(sourceListener);
-    if (restClient == null) {
-      restClient = context.getBean("pushRestClient", RESTClientImpl.class);
-      restClients.put(sourceListener, restClient);
-    }
-
-    return restClient;
+    // Listeners push notifications from many threads, so each client must be created only once
+    return restClients.computeIfAbsent(sourceListener, listener -> {
+      final RESTClientImpl restClient = context.getBean("pushRestClient", RESTClientImpl.class);
+      if (pushDispatcher != null) {
+        restClient.setAsyncDispatcher(pushDispatcher);
+      }
+      return restClient;
+    });
   }
 
 }
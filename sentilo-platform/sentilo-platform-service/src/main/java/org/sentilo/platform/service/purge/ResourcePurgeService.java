@@ -0,0 +1,127 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.purge;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.sentilo.platform.common.domain.PurgeStatus;
+import org.sentilo.platform.service.dao.JedisKeysBuilder;
+import org.sentilo.platform.service.dao.JedisTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Removes in background the keys of the resources deleted from the catalog.
+ *
+ * Keys to remove are queued into a Redis list, so a purge interrupted by a restart is resumed by
+ * any platform node. Every <code>api.purge.interval</code> millis, the node holding the purge lease
+ * takes up to <code>api.purge.chunks-per-run</code> chunks of <code>api.purge.chunk-size</code>
+ * keys from the head of the list and unlinks them in a pipeline: UNLINK frees the memory of big
+ * keys, such as the observations of a sensor, in a Redis background thread. Each chunk is only
+ * trimmed from the list once it has been unlinked, so keys could be unlinked twice but never lost.
+ */
+@Component
+public class ResourcePurgeService {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ResourcePurgeService.class);
+
+  @Autowired
+  private JedisTemplate<String, String> jedisTemplate;
+
+  @Value("${api.purge.chunk-size:500}")
+  private int chunkSize = 500;
+
+  @Value("${api.purge.chunks-per-run:20}")
+  private int chunksPerRun = 20;
+
+  @Value("${api.purge.lease-ttl:30000}")
+  private long leaseTtl = 30000;
+
+  private final JedisKeysBuilder keysBuilder = new JedisKeysBuilder();
+  private String nodeId;
+
+  /**
+   * Queues the keys to be removed in background.
+   */
+  public void enqueue(final List<String> keys) {
+    for (int from = 0; from < keys.size(); from += chunkSize) {
+      final List<String> chunk = keys.subList(from, Math.min(from + chunkSize, keys.size()));
+      jedisTemplate.rPush(keysBuilder.getPurgeQueueKey(), chunk.toArray(new String[0]));
+    }
+  }
+
+  public void enqueue(final String... keys) {
+    enqueue(Arrays.asList(keys));
+  }
+
+  @Scheduled(initialDelayString = "${api.purge.interval:1000}", fixedDelayString = "${api.purge.interval:1000}")
+  public void purge() {
+    final String queueKey = keysBuilder.getPurgeQueueKey();
+    final List<String> leaseKeys = Collections.singletonList(keysBuilder.getPurgeLeaseKey());
+    try {
+      for (int run = 0; run < chunksPerRun; run++) {
+        // Lease is renewed for every chunk and guarantees that only one node trims the queue
+        final List<String> chunk = jedisTemplate.lRangeFromMaster(queueKey, 0, chunkSize - 1);
+        if (CollectionUtils.isEmpty(chunk) || !jedisTemplate.acquireLeases(leaseKeys, getNodeId(), leaseTtl).get(0)) {
+          return;
+        }
+
+        jedisTemplate.unlink(chunk);
+        jedisTemplate.lTrim(queueKey, chunk.size(), -1);
+        jedisTemplate.incrBy(keysBuilder.getPurgedCountKey(), chunk.size());
+        LOGGER.debug("Purged {} keys", chunk.size());
+      }
+    } catch (final Exception e) {
+      // Chunk remains queued and will be purged next time
+      LOGGER.warn("Error purging keys of removed resources", e);
+    }
+  }
+
+  public PurgeStatus getStatus() {
+    final Long pending = jedisTemplate.lLen(keysBuilder.getPurgeQueueKey());
+    final String purged = jedisTemplate.get(keysBuilder.getPurgedCountKey());
+    return new PurgeStatus(System.currentTimeMillis(), pending, StringUtils.hasText(purged) ? Long.valueOf(purged) : 0L);
+  }
+
+  private String getNodeId() {
+    if (nodeId == null) {
+      nodeId = ManagementFactory.getRuntimeMXBean().getName();
+    }
+    return nodeId;
+  }
+}
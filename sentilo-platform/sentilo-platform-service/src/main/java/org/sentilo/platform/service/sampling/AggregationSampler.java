@@ -0,0 +1,166 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.sampling;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.sentilo.common.enums.DataAggregation;
+import org.sentilo.platform.common.domain.Observation;
+
+/**
+ * Groups the observations into intervals of fixed length, aligned to the epoch, and summarizes
+ * each interval into one observation timestamped with the interval start.
+ *
+ * Non-numeric values are ignored by the numeric aggregations (min, max and avg), and intervals
+ * without any numeric value are not returned by them.
+ */
+public class AggregationSampler implements ObservationSampler {
+
+  private final DataAggregation aggregation;
+  private final long interval;
+  private final int maxBuckets;
+
+  private final List<Bucket> buckets = new ArrayList<Bucket>();
+  private boolean complete;
+
+  public AggregationSampler(final DataAggregation aggregation, final long interval, final int maxBuckets) {
+    this.aggregation = aggregation;
+    this.interval = interval;
+    this.maxBuckets = maxBuckets;
+  }
+
+  @Override
+  public void add(final Observation observation) {
+    if (complete) {
+      return;
+    }
+
+    final long start = observation.getTimestamp() - Math.floorMod(observation.getTimestamp(), interval);
+    Bucket bucket = buckets.isEmpty() ? null : buckets.get(buckets.size() - 1);
+    if (bucket == null || bucket.start != start) {
+      // As observations are sorted, a new interval means that the previous one is closed
+      if (buckets.size() == maxBuckets) {
+        complete = true;
+        return;
+      }
+      bucket = new Bucket(start);
+      buckets.add(bucket);
+    }
+
+    bucket.add(observation);
+  }
+
+  @Override
+  public boolean isComplete() {
+    return complete;
+  }
+
+  @Override
+  public List<Observation> getSamples() {
+    final List<Observation> samples = new ArrayList<Observation>(buckets.size());
+    for (final Bucket bucket : buckets) {
+      final Observation sample = bucket.toObservation();
+      if (sample != null) {
+        samples.add(sample);
+      }
+    }
+    return samples;
+  }
+
+  static Double toNumber(final String value) {
+    try {
+      return value == null ? null : Double.valueOf(value);
+    } catch (final NumberFormatException nfe) {
+      return null;
+    }
+  }
+
+  private class Bucket {
+
+    private final long start;
+    private Observation last;
+    private long count;
+    private long numericCount;
+    private double sum;
+    private String min;
+    private double minValue;
+    private String max;
+    private double maxValue;
+
+    Bucket(final long start) {
+      this.start = start;
+    }
+
+    void add(final Observation observation) {
+      if (last == null) {
+        last = observation;
+      }
+      count++;
+
+      final Double number = aggregation.isNumeric() ? toNumber(observation.getValue()) : null;
+      if (number != null) {
+        numericCount++;
+        sum += number;
+        if (min == null || number < minValue) {
+          min = observation.getValue();
+          minValue = number;
+        }
+        if (max == null || number > maxValue) {
+          max = observation.getValue();
+          maxValue = number;
+        }
+      }
+    }
+
+    Observation toObservation() {
+      if (aggregation.isNumeric() && numericCount == 0) {
+        return null;
+      }
+
+      switch (aggregation) {
+        case min:
+          return buildObservation(min, null);
+        case max:
+          return buildObservation(max, null);
+        case avg:
+          return buildObservation(BigDecimal.valueOf(sum / numericCount).stripTrailingZeros().toPlainString(), null);
+        case count:
+          return buildObservation(Long.toString(count), null);
+        default:
+          return buildObservation(last.getValue(), last.getLocation());
+      }
+    }
+
+    private Observation buildObservation(final String value, final String location) {
+      return new Observation(last.getProvider(), last.getSensor(), value, start, location);
+    }
+  }
+}
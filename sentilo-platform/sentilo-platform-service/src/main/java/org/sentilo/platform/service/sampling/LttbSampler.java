@@ -0,0 +1,131 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.sampling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.sentilo.platform.common.domain.Observation;
+
+/**
+ * Downsamples the numeric observations of a sensor to a fixed number of points using the
+ * Largest-Triangle-Three-Buckets algorithm, which keeps the visual shape of the series: the first
+ * and last observations are always kept and, for every bucket in between, the observation which
+ * forms the largest triangle with the previous selected point and the average of the next bucket.
+ *
+ * Non-numeric values can not be plotted and therefore they are ignored.
+ */
+public class LttbSampler implements ObservationSampler {
+
+  private final int threshold;
+
+  private final List<Observation> observations = new ArrayList<Observation>();
+  private final List<Double> values = new ArrayList<Double>();
+
+  public LttbSampler(final int threshold) {
+    this.threshold = threshold;
+  }
+
+  @Override
+  public void add(final Observation observation) {
+    final Double value = AggregationSampler.toNumber(observation.getValue());
+    if (value != null) {
+      observations.add(observation);
+      values.add(value);
+    }
+  }
+
+  @Override
+  public boolean isComplete() {
+    // Every observation in the range could be selected
+    return false;
+  }
+
+  @Override
+  public List<Observation> getSamples() {
+    final int size = observations.size();
+    if (size <= threshold) {
+      return observations;
+    }
+
+    // Points are selected in chronological order, i.e. from the oldest to the most recent one
+    final List<Observation> samples = new ArrayList<Observation>(threshold);
+    final double every = (double) (size - 2) / (threshold - 2);
+    int a = 0;
+    samples.add(get(a));
+
+    for (int i = 0; i < threshold - 2; i++) {
+      // Average point of the next bucket
+      final int avgRangeStart = (int) Math.floor((i + 1) * every) + 1;
+      final int avgRangeEnd = Math.min((int) Math.floor((i + 2) * every) + 1, size);
+      double avgX = 0;
+      double avgY = 0;
+      for (int j = avgRangeStart; j < avgRangeEnd; j++) {
+        avgX += x(j);
+        avgY += y(j);
+      }
+      avgX /= avgRangeEnd - avgRangeStart;
+      avgY /= avgRangeEnd - avgRangeStart;
+
+      // Point of the current bucket forming the largest triangle
+      final int rangeStart = (int) Math.floor(i * every) + 1;
+      final int rangeEnd = (int) Math.floor((i + 1) * every) + 1;
+      double maxArea = -1;
+      int next = rangeStart;
+      for (int j = rangeStart; j < rangeEnd; j++) {
+        final double area = Math.abs((x(a) - avgX) * (y(j) - y(a)) - (x(a) - x(j)) * (avgY - y(a)));
+        if (area > maxArea) {
+          maxArea = area;
+          next = j;
+        }
+      }
+
+      a = next;
+      samples.add(get(a));
+    }
+
+    samples.add(get(size - 1));
+    Collections.reverse(samples);
+    return samples;
+  }
+
+  /** Returns the i-th observation in chronological order */
+  private Observation get(final int i) {
+    return observations.get(observations.size() - 1 - i);
+  }
+
+  private double x(final int i) {
+    return get(i).getTimestamp();
+  }
+
+  private double y(final int i) {
+    return values.get(values.size() - 1 - i);
+  }
+}
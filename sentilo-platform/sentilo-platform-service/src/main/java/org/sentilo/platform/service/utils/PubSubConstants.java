@@ -37,6 +37,10 @@ public abstract class PubSubConstants {
   public static final String REDIS_CHANNEL_PATTERN_SUFFIX = "*";
   public static final String REDIS_SUBS_PREFIX_KEY = "subs" + PubSubConstants.REDIS_KEY_TOKEN;
   public static final String REDIS_SUBS_PATTERN_KEY = REDIS_SUBS_PREFIX_KEY + REDIS_CHANNEL_PATTERN_SUFFIX;
+  /** Channel where the id of an entity is published every time its subscriptions change */
+  public static final String REDIS_SUBS_CHANGES_CHANNEL = "/subs/changes";
+  /** Channel where a platform node publishes its id every time it releases subscriptions partitions */
+  public static final String REDIS_SUBS_OWNERSHIP_CHANNEL = "/subs/ownership";
 
   protected PubSubConstants() {
     // this prevents even the native class from calling this ctor as well :
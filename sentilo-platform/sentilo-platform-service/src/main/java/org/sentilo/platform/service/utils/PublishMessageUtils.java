@@ -28,88 +28,138 @@
  */
 package org.sentilo.platform.service.utils;
 
-import org.sentilo.common.converter.DefaultStringMessageConverter;
-import org.sentilo.common.converter.StringMessageConverter;
+import java.io.IOException;
+
 import org.sentilo.common.domain.EventMessage;
 import org.sentilo.common.enums.EventType;
+import org.sentilo.common.exception.MessageNotWritableException;
 import org.sentilo.common.utils.DateUtils;
 import org.sentilo.platform.common.domain.AlarmInputMessage;
 import org.sentilo.platform.common.domain.Observation;
 import org.sentilo.platform.common.domain.OrderInputMessage;
+import org.sentilo.platform.common.security.RequesterContext;
 import org.sentilo.platform.common.security.RequesterContextHolder;
 import org.sentilo.platform.common.security.ResourceOwnerContextHolder;
 import org.springframework.data.redis.listener.Topic;
 import org.springframework.util.StringUtils;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+
+/**
+ * Builds the content of the events published by the platform, i.e. the JSON representation of an
+ * {@link EventMessage}, as UTF-8 bytes ready to be sent to Redis.
+ *
+ * Events are published on every write request, so their content is written field by field with a
+ * streaming generator into a per-thread buffer which is reused from one event to the next, rather
+ * than building an {@link EventMessage} and marshalling it into a String. Fields are written in the
+ * same order, and with the same null handling, as {@link EventMessage} is marshalled.
+ */
 public abstract class PublishMessageUtils {
 
-  private static final StringMessageConverter converter = new DefaultStringMessageConverter();
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private static final ThreadLocal<ByteArrayBuilder> BUFFER = new ThreadLocal<ByteArrayBuilder>() {
+
+    @Override
+    protected ByteArrayBuilder initialValue() {
+      return new ByteArrayBuilder(512);
+    }
+  };
 
   private PublishMessageUtils() {
     // this prevents even the native class from calling this ctor as well :
     throw new AssertionError();
   }
 
-  public static String buildContentToPublish(final AlarmInputMessage message, final Topic topic) {
+  public static byte[] buildContentToPublish(final AlarmInputMessage message, final Topic topic) {
     final Long timestamp = System.currentTimeMillis();
-
-    final EventMessage event = new EventMessage();
-    event.setAlert(message.getAlertId());
-    event.setAlertType(message.getAlertType());
-    event.setProvider(message.getProviderId());
-    event.setSensor(message.getSensorId());
-    event.setMessage(message.getMessage());
-    event.setTimestamp(DateUtils.timestampToString(timestamp));
-    event.setTime(timestamp);
-    event.setType(EventType.ALARM.name());
-    event.setTopic(topic.getTopic());
-    event.setPublisher(message.getSender());
-
-    setCustomsFields(event);
-
-    return converter.marshal(event);
+    final ByteArrayBuilder buffer = BUFFER.get();
+    try {
+      final JsonGenerator generator = startEvent(buffer, message.getMessage(), timestamp, topic, EventType.ALARM);
+      writeField(generator, "sensor", message.getSensorId());
+      writeField(generator, "provider", message.getProviderId());
+      writeField(generator, "alert", message.getAlertId());
+      writeField(generator, "alertType", message.getAlertType());
+      writeField(generator, "time", timestamp);
+      return endEvent(generator, buffer, message.getSender());
+    } catch (final IOException ioe) {
+      throw new MessageNotWritableException(ioe);
+    } finally {
+      buffer.reset();
+    }
   }
 
-  public static String buildContentToPublish(final OrderInputMessage message, final Topic topic) {
+  public static byte[] buildContentToPublish(final OrderInputMessage message, final Topic topic) {
     final Long timestamp = System.currentTimeMillis();
-
-    final EventMessage event = new EventMessage();
-    event.setProvider(message.getProviderId());
-    event.setSensor(message.getSensorId());
-    event.setMessage(message.getOrder());
-    event.setTimestamp(DateUtils.timestampToString(timestamp));
-    event.setTime(timestamp);
-    event.setType(EventType.ORDER.name());
-    event.setTopic(topic.getTopic());
-
-    setCustomsFields(event);
-
-    return converter.marshal(event);
+    final ByteArrayBuilder buffer = BUFFER.get();
+    try {
+      final JsonGenerator generator = startEvent(buffer, message.getOrder(), timestamp, topic, EventType.ORDER);
+      writeField(generator, "sensor", message.getSensorId());
+      writeField(generator, "provider", message.getProviderId());
+      writeField(generator, "time", timestamp);
+      return endEvent(generator, buffer, null);
+    } catch (final IOException ioe) {
+      throw new MessageNotWritableException(ioe);
+    } finally {
+      buffer.reset();
+    }
   }
 
-  public static String buildContentToPublish(final Observation message, final Topic topic) {
-    final EventMessage event = new EventMessage();
-    event.setProvider(message.getProvider());
-    event.setSensor(message.getSensor());
-    event.setMessage(message.getValue());
-    event.setTimestamp(DateUtils.timestampToString(message.getTimestamp()));
-    event.setTime(message.getTimestamp());
-    event.setLocation(message.getLocation());
-    event.setType(EventType.DATA.name());
-    event.setTopic(topic.getTopic());
+  public static byte[] buildContentToPublish(final Observation message, final Topic topic) {
+    final Long timestamp = message.getTimestamp();
+    final ByteArrayBuilder buffer = BUFFER.get();
+    try {
+      final JsonGenerator generator = startEvent(buffer, message.getValue(), timestamp, topic, EventType.DATA);
+      writeField(generator, "sensor", message.getSensor());
+      writeField(generator, "provider", message.getProvider());
+      writeField(generator, "location", message.getLocation());
+      writeField(generator, "time", timestamp);
+      return endEvent(generator, buffer, null);
+    } catch (final IOException ioe) {
+      throw new MessageNotWritableException(ioe);
+    } finally {
+      buffer.reset();
+    }
+  }
 
-    setCustomsFields(event);
+  private static JsonGenerator startEvent(final ByteArrayBuilder buffer, final String message, final Long timestamp, final Topic topic,
+      final EventType type) throws IOException {
+    final JsonGenerator generator = JSON_FACTORY.createGenerator(buffer, JsonEncoding.UTF8);
+    generator.writeStartObject();
+    // Unlike the other fields, message and timestamp are always present
+    generator.writeStringField("message", message);
+    generator.writeStringField("timestamp", DateUtils.timestampToString(timestamp));
+    writeField(generator, "topic", topic.getTopic());
+    writeField(generator, "type", type.name());
+    return generator;
+  }
 
-    return converter.marshal(event);
+  private static byte[] endEvent(final JsonGenerator generator, final ByteArrayBuilder buffer, final String publisher) throws IOException {
+    final RequesterContext requesterContext = RequesterContextHolder.getContext();
+    final String eventPublisher = StringUtils.hasText(publisher) ? publisher : requesterContext.getEntityId();
+    writeField(generator, "publisher", eventPublisher);
+    writeField(generator, "publishedAt", requesterContext.getRequestTimestamp());
+    writeField(generator, "publisherTenant", requesterContext.getTenantId());
+    writeField(generator, "tenant", ResourceOwnerContextHolder.getContext().getTenantId());
+    // Deprecated field, kept for the clients which still read the publisher from it
+    writeField(generator, "sender", eventPublisher);
+    generator.writeEndObject();
+    generator.close();
+    return buffer.toByteArray();
   }
 
-  private static void setCustomsFields(final EventMessage event) {
-    if (!StringUtils.hasText(event.getPublisher())) {
-      event.setPublisher(RequesterContextHolder.getContext().getEntityId());
+  private static void writeField(final JsonGenerator generator, final String name, final String value) throws IOException {
+    if (value != null) {
+      generator.writeStringField(name, value);
     }
+  }
 
-    event.setPublishedAt(RequesterContextHolder.getContext().getRequestTimestamp());
-    event.setPublisherTenant(RequesterContextHolder.getContext().getTenantId());
-    event.setTenant(ResourceOwnerContextHolder.getContext().getTenantId());
+  private static void writeField(final JsonGenerator generator, final String name, final Long value) throws IOException {
+    if (value != null) {
+      generator.writeNumberField(name, value);
+    }
   }
 }
@@ -0,0 +1,118 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.test.dao;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sentilo.platform.service.dao.topology.ConsistentHashPoolLocator;
+import org.sentilo.platform.service.dao.topology.JedisTopology;
+
+import redis.clients.jedis.JedisPool;
+
+public class ConsistentHashPoolLocatorTest {
+
+  private final Map<String, JedisPool> nodes = new LinkedHashMap<String, JedisPool>();
+
+  private ConsistentHashPoolLocator locator;
+
+  @Before
+  public void setUp() {
+    nodes.put("127.0.0.1:6379", mock(JedisPool.class));
+    nodes.put("127.0.0.1:6380", mock(JedisPool.class));
+    nodes.put("127.0.0.1:6381", mock(JedisPool.class));
+    locator = new ConsistentHashPoolLocator(nodes);
+  }
+
+  @Test
+  public void getKeyTag() {
+    Assert.assertEquals("12", ConsistentHashPoolLocator.getKeyTag("sid:{12}:observations"));
+    Assert.assertEquals("sid:12", ConsistentHashPoolLocator.getKeyTag("sid:12"));
+    Assert.assertEquals("sid:{}:12", ConsistentHashPoolLocator.getKeyTag("sid:{}:12"));
+    Assert.assertEquals("sid:{12", ConsistentHashPoolLocator.getKeyTag("sid:{12"));
+  }
+
+  @Test
+  public void colocatedKeys() {
+    final JedisPool pool = locator.getPool("sid:{12}");
+
+    Assert.assertSame(pool, locator.getPool("sid:{12}:observations"));
+    Assert.assertSame(pool, locator.getPool("sid:{12}:orders"));
+    Assert.assertSame(pool, locator.getPool("sdid:{12}:345"));
+  }
+
+  @Test
+  public void keysAreSpreadOverAllNodes() {
+    final Map<JedisPool, Integer> distribution = new LinkedHashMap<JedisPool, Integer>();
+    for (int sid = 0; sid < 3000; sid++) {
+      final JedisPool pool = locator.getPool("sid:{" + sid + "}");
+      distribution.put(pool, distribution.containsKey(pool) ? distribution.get(pool) + 1 : 1);
+    }
+
+    Assert.assertEquals(nodes.size(), distribution.size());
+    for (final Integer total : distribution.values()) {
+      Assert.assertTrue(total > 500);
+    }
+  }
+
+  @Test
+  public void ringIsStableWhenNodeIsAdded() {
+    final Map<String, JedisPool> newNodes = new LinkedHashMap<String, JedisPool>(nodes);
+    newNodes.put("127.0.0.1:6382", mock(JedisPool.class));
+    final ConsistentHashPoolLocator newLocator = new ConsistentHashPoolLocator(newNodes);
+
+    int moved = 0;
+    for (int sid = 0; sid < 3000; sid++) {
+      final String key = "sid:{" + sid + "}";
+      if (locator.getPool(key) != newLocator.getPool(key)) {
+        moved++;
+      }
+    }
+
+    // Only keys assigned to the new node should be moved (~1/4)
+    Assert.assertTrue(moved < 1200);
+  }
+
+  @Test
+  public void getPoolsAndDestroy() {
+    Assert.assertEquals(JedisTopology.sharded, locator.getTopology());
+    Assert.assertEquals(nodes.size(), locator.getPools().size());
+
+    locator.destroy();
+    for (final JedisPool pool : nodes.values()) {
+      verify(pool).destroy();
+    }
+  }
+}
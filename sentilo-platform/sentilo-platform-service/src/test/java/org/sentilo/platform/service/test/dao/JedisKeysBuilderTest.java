@@ -136,4 +136,25 @@ public class JedisKeysBuilderTest {
   public void getSubscriptionKey() {
     Assert.assertEquals("subs" + PubSubConstants.REDIS_KEY_TOKEN + entityId, keysBuilder.getSubscriptionKey(entityId));
   }
+
+  @Test
+  public void getKeysWithHashTags() {
+    final JedisKeysBuilder taggedKeysBuilder = new JedisKeysBuilder(true);
+
+    Assert.assertTrue(taggedKeysBuilder.isHashTagsEnabled());
+    Assert.assertEquals("sid:{" + sid + "}", taggedKeysBuilder.getSensorKey(new Long(sid)));
+    Assert.assertEquals("sid:{" + sid + "}:observations", taggedKeysBuilder.getSensorObservationsKey(sid));
+    Assert.assertEquals("sid:{" + sid + "}:orders", taggedKeysBuilder.getSensorOrdersKey(new Long(sid)));
+    Assert.assertEquals("sdid:{" + sid + "}:" + sdid, taggedKeysBuilder.getObservationKey(new Long(sid), new Long(sdid)));
+    Assert.assertEquals("aid:{" + aid + "}:alarms", taggedKeysBuilder.getAlertAlarmsKey(new Long(aid)));
+    Assert.assertEquals("amid:{" + aid + "}:" + amid, taggedKeysBuilder.getAlarmKey(new Long(aid), new Long(amid)));
+    Assert.assertEquals("pid:{" + pid + "}:sensors", taggedKeysBuilder.getProviderSensorsKey(new Long(pid)));
+  }
+
+  @Test
+  public void getColocatedKeysWithoutHashTags() {
+    Assert.assertFalse(keysBuilder.isHashTagsEnabled());
+    Assert.assertEquals("sdid:" + sdid, keysBuilder.getObservationKey(new Long(sid), new Long(sdid)));
+    Assert.assertEquals("amid:" + amid, keysBuilder.getAlarmKey(new Long(aid), new Long(amid)));
+  }
 }
@@ -0,0 +1,188 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.test.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.sentilo.platform.common.exception.SentiloDataAccessException;
+import org.sentilo.platform.service.dao.JedisCommand;
+import org.sentilo.platform.service.dao.JedisPoolUtils;
+import org.sentilo.platform.service.dao.pipeline.JedisPipelineExecutor;
+import org.sentilo.platform.service.dao.pipeline.JedisTemplateMode;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+public class JedisPipelineExecutorTest {
+
+  @Mock
+  private JedisPoolUtils jedisPoolUtils;
+
+  @Mock
+  private JedisPool pool;
+
+  @Mock
+  private Jedis connection;
+
+  @Mock
+  private Pipeline pipeline;
+
+  @Mock
+  private Response<String> response;
+
+  private JedisPipelineExecutor executor;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    when(jedisPoolUtils.getPool(anyString())).thenReturn(pool);
+    when(pool.getResource()).thenReturn(connection);
+    when(connection.pipelined()).thenReturn(pipeline);
+    when(pipeline.get(anyString())).thenReturn(response);
+    when(jedisPoolUtils.convertJedisAccessException(any(Exception.class))).thenAnswer(invocation -> {
+      final Exception e = (Exception) invocation.getArguments()[0];
+      return new SentiloDataAccessException(e.getMessage(), e);
+    });
+
+    executor = new JedisPipelineExecutor();
+    executor.setJedisPoolUtils(jedisPoolUtils);
+    executor.setMode(JedisTemplateMode.pipelined);
+    executor.setConnections(2);
+    executor.setBatchSize(10);
+    executor.init();
+  }
+
+  @After
+  public void tearDown() {
+    executor.destroy();
+  }
+
+  @Test
+  public void submit() throws Exception {
+    when(response.get()).thenReturn("value");
+
+    final String result = executor.submit("sid:1", getCommand("sid:1")).get(1, TimeUnit.SECONDS);
+
+    assertEquals("value", result);
+    verify(pipeline).get("sid:1");
+    verify(pipeline).sync();
+    verify(connection, timeout(1000)).close();
+  }
+
+  @Test
+  public void concurrentCommandsArePipelined() throws Exception {
+    when(response.get()).thenReturn("value");
+    final int total = 50;
+
+    final List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>();
+    for (int i = 0; i < total; i++) {
+      futures.add(executor.submit("sid:" + i, getCommand("sid:" + i)));
+    }
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(1, TimeUnit.SECONDS);
+
+    verify(pool, atMost(total)).getResource();
+    for (final CompletableFuture<String> future : futures) {
+      assertEquals("value", future.get());
+    }
+  }
+
+  @Test
+  public void errorReply() throws Exception {
+    when(response.get()).thenThrow(new JedisDataException("WRONGTYPE Operation against a key holding the wrong kind of value"));
+
+    final CompletableFuture<String> future = executor.submit("sid:1", getCommand("sid:1"));
+
+    assertFailed(future);
+    verify(connection, timeout(1000)).close();
+  }
+
+  @Test
+  public void connectionError() throws Exception {
+    doThrow(new JedisConnectionException("connection reset")).when(pipeline).sync();
+
+    final CompletableFuture<String> future = executor.submit("sid:1", getCommand("sid:1"));
+
+    assertFailed(future);
+    verify(connection, timeout(1000)).close();
+  }
+
+  @Test
+  public void submitWhenStopped() throws Exception {
+    executor.destroy();
+
+    assertFailed(executor.submit("sid:1", getCommand("sid:1")));
+  }
+
+  private void assertFailed(final CompletableFuture<String> future) throws Exception {
+    try {
+      future.get(1, TimeUnit.SECONDS);
+    } catch (final ExecutionException ee) {
+      assertTrue(ee.getCause() instanceof SentiloDataAccessException);
+      return;
+    }
+    throw new AssertionError("Future should have failed");
+  }
+
+  private JedisCommand<String> getCommand(final String key) {
+    return new JedisCommand<String>("GET") {
+
+      public String doInRedis(final Jedis connection) {
+        return connection.get(key);
+      }
+
+      @Override
+      public Response<String> doInPipeline(final Pipeline pipeline) {
+        return pipeline.get(key);
+      }
+    };
+  }
+}
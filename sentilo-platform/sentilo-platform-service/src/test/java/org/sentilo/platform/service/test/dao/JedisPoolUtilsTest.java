@@ -30,8 +30,10 @@ package org.sentilo.platform.service.test.dao;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 
@@ -43,6 +45,8 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.sentilo.platform.common.exception.SentiloDataAccessException;
 import org.sentilo.platform.service.dao.JedisPoolUtils;
+import org.sentilo.platform.service.dao.topology.JedisPoolLocator;
+import org.sentilo.platform.service.dao.topology.JedisTopology;
 
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
@@ -59,6 +63,9 @@ public class JedisPoolUtilsTest {
   @Mock
   private Jedis jedis;
 
+  @Mock
+  private JedisPool shardPool;
+
   @Before
   public void setUp() {
     MockitoAnnotations.initMocks(this);
@@ -126,4 +133,36 @@ public class JedisPoolUtilsTest {
     Assert.assertTrue(jedisPoolUtils.convertJedisAccessException(new NullPointerException("")) instanceof SentiloDataAccessException);
   }
 
+  @Test
+  public void getResourceWithKeyWhenNotDistributed() {
+    jedisPoolUtils.getResource("sid:1");
+
+    verify(pool).getResource();
+    Assert.assertFalse(jedisPoolUtils.isDistributed());
+  }
+
+  @Test
+  public void getResourceWithKeyWhenDistributed() {
+    final JedisPoolLocator poolLocator = mock(JedisPoolLocator.class);
+    jedisPoolUtils.setPoolLocator(poolLocator);
+    when(poolLocator.getTopology()).thenReturn(JedisTopology.sharded);
+    when(poolLocator.getPool("sid:{1}")).thenReturn(shardPool);
+
+    jedisPoolUtils.getResource("sid:{1}");
+
+    verify(shardPool).getResource();
+    verify(pool, times(0)).getResource();
+  }
+
+  @Test
+  public void releaseConnectionWhenDistributed() {
+    final JedisPoolLocator poolLocator = mock(JedisPoolLocator.class);
+    jedisPoolUtils.setPoolLocator(poolLocator);
+    when(poolLocator.getTopology()).thenReturn(JedisTopology.cluster);
+
+    jedisPoolUtils.releaseConnection(jedis, false);
+
+    verify(jedis).close();
+    verify(pool, times(0)).returnResource(jedis);
+  }
 }
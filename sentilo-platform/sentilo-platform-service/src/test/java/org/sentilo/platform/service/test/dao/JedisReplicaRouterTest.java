@@ -0,0 +1,153 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.test.dao;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.sentilo.platform.service.dao.replica.JedisReplicaRouter;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+public class JedisReplicaRouterTest {
+
+  private static final String INFO_HEADER = "# Replication\r\nrole:master\r\nconnected_slaves:2\r\n";
+
+  @Mock
+  private JedisPool masterPool;
+
+  @Mock
+  private Jedis master;
+
+  private JedisReplicaRouter router;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    when(masterPool.getResource()).thenReturn(master);
+
+    router = new JedisReplicaRouter();
+    router.setMasterPool(masterPool);
+    router.setPoolConfig(new JedisPoolConfig());
+    router.setNodes("127.0.0.1:6380, 127.0.0.1:6381");
+    router.setMaxLag(5);
+  }
+
+  @After
+  public void tearDown() {
+    router.destroy();
+  }
+
+  @Test
+  public void noReplicas() {
+    router.setNodes("");
+    router.init();
+
+    assertFalse(router.isEnabled());
+    assertNull(router.getReplica());
+  }
+
+  @Test
+  public void replicasInSync() {
+    when(master.info("replication")).thenReturn(INFO_HEADER + "slave0:ip=127.0.0.1,port=6380,state=online,offset=2870,lag=0\r\n"
+        + "slave1:ip=127.0.0.1,port=6381,state=online,offset=2870,lag=1\r\n");
+    router.init();
+
+    final JedisPool first = router.getReplica();
+    final JedisPool second = router.getReplica();
+    assertNotNull(first);
+    assertNotNull(second);
+    assertNotSame(first, second);
+    assertSame(first, router.getReplica());
+  }
+
+  @Test
+  public void laggingReplicasAreNotEligible() {
+    when(master.info("replication")).thenReturn(INFO_HEADER + "slave0:ip=127.0.0.1,port=6380,state=online,offset=2870,lag=10\r\n"
+        + "slave1:ip=127.0.0.1,port=6381,state=wait_bgsave,offset=0,lag=0\r\n");
+    router.init();
+
+    assertNull(router.getReplica());
+  }
+
+  @Test
+  public void discardedReplicaIsNotEligibleUntilNextCheck() {
+    when(master.info("replication")).thenReturn(INFO_HEADER + "slave0:ip=127.0.0.1,port=6380,state=online,offset=2870,lag=0\r\n");
+    router.init();
+
+    final JedisPool replica = router.getReplica();
+    assertNotNull(replica);
+    router.discard(replica);
+    assertNull(router.getReplica());
+
+    router.checkReplicas();
+    assertSame(replica, router.getReplica());
+  }
+
+  @Test
+  public void recentlyWrittenKeys() {
+    router.setCheckInterval(0);
+    router.init();
+
+    assertFalse(router.isRecentlyWritten("sensor:1"));
+    router.markWritten("sensor:1");
+    assertTrue(router.isRecentlyWritten("sensor:1"));
+    assertFalse(router.isRecentlyWritten("sensor:2"));
+  }
+
+  @Test
+  public void writesAreNotTrackedWithoutReplicas() {
+    router.setNodes("");
+    router.init();
+
+    router.markWritten("sensor:1");
+    assertFalse(router.isRecentlyWritten("sensor:1"));
+  }
+
+  @Test
+  public void masterUnavailable() {
+    when(master.info("replication")).thenThrow(new JedisConnectionException("connection refused"));
+    router.init();
+
+    assertNull(router.getReplica());
+  }
+}
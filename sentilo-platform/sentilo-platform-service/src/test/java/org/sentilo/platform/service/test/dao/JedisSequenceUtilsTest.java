@@ -28,15 +28,27 @@
  */
 package org.sentilo.platform.service.test.dao;
 
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.ArgumentCaptor;
 import org.mockito.MockitoAnnotations;
+import org.sentilo.platform.common.cache.CacheSnapshotStore;
 import org.sentilo.platform.service.dao.JedisSequenceUtils;
 import org.sentilo.platform.service.dao.JedisTemplate;
 
@@ -55,6 +67,8 @@ public class JedisSequenceUtilsTest {
 
   @Mock
   private JedisTemplate<String, String> jedisTemplate;
+  @Mock
+  private CacheSnapshotStore snapshotStore;
 
   @InjectMocks
   private JedisSequenceUtils jedisSequenceUtils;
@@ -66,12 +80,12 @@ public class JedisSequenceUtilsTest {
 
   @Test
   public void getPid() {
-    when(jedisTemplate.get("provider:" + providerId + ":pid")).thenReturn("1");
+    when(jedisTemplate.getFromMaster("provider:" + providerId + ":pid")).thenReturn("1");
 
     jedisSequenceUtils.getPid(providerId);
     jedisSequenceUtils.getPid(providerId);
 
-    verify(jedisTemplate, times(1)).get("provider:" + providerId + ":pid");
+    verify(jedisTemplate, times(1)).getFromMaster("provider:" + providerId + ":pid");
   }
 
   @Test
@@ -89,17 +103,17 @@ public class JedisSequenceUtilsTest {
     jedisSequenceUtils.removePid(providerId);
     jedisSequenceUtils.getPid(providerId);
 
-    verify(jedisTemplate, times(1)).get("provider:" + providerId + ":pid");
+    verify(jedisTemplate, times(1)).getFromMaster("provider:" + providerId + ":pid");
   }
 
   @Test
   public void getSid() {
-    when(jedisTemplate.get("sensor:" + providerId + ":" + sensorId + ":sid")).thenReturn("2");
+    when(jedisTemplate.getFromMaster("sensor:" + providerId + ":" + sensorId + ":sid")).thenReturn("2");
 
     jedisSequenceUtils.getSid(providerId, sensorId);
     jedisSequenceUtils.getSid(providerId, sensorId);
 
-    verify(jedisTemplate, times(1)).get("sensor:" + providerId + ":" + sensorId + ":sid");
+    verify(jedisTemplate, times(1)).getFromMaster("sensor:" + providerId + ":" + sensorId + ":sid");
   }
 
   @Test
@@ -110,6 +124,31 @@ public class JedisSequenceUtilsTest {
     verify(jedisTemplate, times(1)).getKeyNextValue(SID_KEY);
   }
 
+  @Test
+  public void getSids() {
+    final List<String> reverseKeys = Arrays.asList("sensor:" + providerId + ":sensor1:sid", "sensor:" + providerId + ":sensor2:sid");
+    when(jedisTemplate.getFromMaster(reverseKeys)).thenReturn(Arrays.asList("2", null));
+
+    final Map<String, Long> sids = jedisSequenceUtils.getSids(providerId, Arrays.asList("sensor1", "sensor2"));
+    jedisSequenceUtils.getSid(providerId, "sensor1");
+
+    assertEquals(Collections.singletonMap("sensor1", 2l), sids);
+    verify(jedisTemplate, times(0)).getFromMaster("sensor:" + providerId + ":sensor1:sid");
+  }
+
+  @Test
+  public void setSids() {
+    when(jedisTemplate.incrBy(SID_KEY, 3)).thenReturn(12l);
+
+    final Map<String, Long> sids = jedisSequenceUtils.setSids(providerId, Arrays.asList("sensor1", "sensor2", "sensor3"));
+
+    assertEquals(Long.valueOf(10), sids.get("sensor1"));
+    assertEquals(Long.valueOf(11), sids.get("sensor2"));
+    assertEquals(Long.valueOf(12), sids.get("sensor3"));
+    assertEquals(Long.valueOf(11), jedisSequenceUtils.getSid(providerId, "sensor2"));
+    verify(jedisTemplate, times(0)).getKeyNextValue(SID_KEY);
+  }
+
   @Test
   public void removeSid() {
     jedisSequenceUtils.setSid(providerId, sensorId);
@@ -117,17 +156,17 @@ public class JedisSequenceUtilsTest {
     jedisSequenceUtils.removeSid(providerId, sensorId);
     jedisSequenceUtils.getSid(providerId, sensorId);
 
-    verify(jedisTemplate, times(1)).get("sensor:" + providerId + ":" + sensorId + ":sid");
+    verify(jedisTemplate, times(1)).getFromMaster("sensor:" + providerId + ":" + sensorId + ":sid");
   }
 
   @Test
   public void getAid() {
-    when(jedisTemplate.get("alert:" + alertId + ":aid")).thenReturn("1");
+    when(jedisTemplate.getFromMaster("alert:" + alertId + ":aid")).thenReturn("1");
 
     jedisSequenceUtils.getAid(alertId);
     jedisSequenceUtils.getAid(alertId);
 
-    verify(jedisTemplate, times(1)).get("alert:" + alertId + ":aid");
+    verify(jedisTemplate, times(1)).getFromMaster("alert:" + alertId + ":aid");
   }
 
   @Test
@@ -145,7 +184,7 @@ public class JedisSequenceUtilsTest {
     jedisSequenceUtils.removeAid(alertId);
     jedisSequenceUtils.getAid(alertId);
 
-    verify(jedisTemplate, times(1)).get("alert:" + alertId + ":aid");
+    verify(jedisTemplate, times(1)).getFromMaster("alert:" + alertId + ":aid");
   }
 
   @Test
@@ -173,21 +212,84 @@ public class JedisSequenceUtilsTest {
   public void getCurrentSdid() {
     jedisSequenceUtils.getCurrentSdid();
 
-    verify(jedisTemplate).get(SDID_KEY);
+    verify(jedisTemplate).getFromMaster(SDID_KEY);
   }
 
   @Test
   public void getCurrentSoid() {
     jedisSequenceUtils.getCurrentSoid();
 
-    verify(jedisTemplate).get(SOID_KEY);
+    verify(jedisTemplate).getFromMaster(SOID_KEY);
   }
 
   @Test
   public void getCurrentAmid() {
     jedisSequenceUtils.getCurrentAmid();
 
-    verify(jedisTemplate).get(AMID_KEY);
+    verify(jedisTemplate).getFromMaster(AMID_KEY);
+  }
+
+  @Test
+  public void saveSnapshot() {
+    when(snapshotStore.isEnabled()).thenReturn(true);
+    when(jedisTemplate.getKeyNextValue(PID_KEY)).thenReturn(3L);
+    jedisSequenceUtils.setPid(providerId);
+
+    jedisSequenceUtils.saveSnapshot();
+
+    final ArgumentCaptor<JedisSequenceUtils.Snapshot> snapshot = ArgumentCaptor.forClass(JedisSequenceUtils.Snapshot.class);
+    verify(snapshotStore).save(eq("sequences"), eq(1), snapshot.capture());
+    assertEquals(Long.valueOf(3), snapshot.getValue().getPids().get(providerId));
+    assertEquals(0, snapshot.getValue().getSids().size());
+  }
+
+  @Test
+  public void loadSnapshot() {
+    when(snapshotStore.isEnabled()).thenReturn(true);
+    when(snapshotStore.load("sequences", 1, JedisSequenceUtils.Snapshot.class)).thenReturn(buildSnapshot());
+    when(jedisTemplate.getFromMaster(Collections.singletonList("provider:" + providerId + ":pid"))).thenReturn(Collections.singletonList("3"));
+    when(jedisTemplate.getFromMaster(Collections.singletonList("sensor:" + providerId + ":" + sensorId + ":sid")))
+        .thenReturn(Collections.singletonList("7"));
+
+    jedisSequenceUtils.loadSnapshot();
+
+    assertEquals(Long.valueOf(3), jedisSequenceUtils.getPid(providerId));
+    assertEquals(Long.valueOf(7), jedisSequenceUtils.getSid(providerId, sensorId));
+    verify(jedisTemplate, never()).getFromMaster("provider:" + providerId + ":pid");
+    verify(jedisTemplate, never()).getFromMaster("sensor:" + providerId + ":" + sensorId + ":sid");
+  }
+
+  @Test
+  public void snapshotIdsNoLongerInRedisAreDiscarded() {
+    when(snapshotStore.isEnabled()).thenReturn(true);
+    when(snapshotStore.load("sequences", 1, JedisSequenceUtils.Snapshot.class)).thenReturn(buildSnapshot());
+    when(jedisTemplate.getFromMaster(Collections.singletonList("provider:" + providerId + ":pid"))).thenReturn(Collections.singletonList("3"));
+    // The sensor has been removed since the snapshot was saved
+    when(jedisTemplate.getFromMaster(Collections.singletonList("sensor:" + providerId + ":" + sensorId + ":sid")))
+        .thenReturn(Collections.singletonList((String) null));
+
+    jedisSequenceUtils.loadSnapshot();
+    jedisSequenceUtils.getPid(providerId);
+    jedisSequenceUtils.getSid(providerId, sensorId);
+
+    verify(jedisTemplate, never()).getFromMaster("provider:" + providerId + ":pid");
+    verify(jedisTemplate).getFromMaster("sensor:" + providerId + ":" + sensorId + ":sid");
+  }
+
+  @Test
+  public void snapshotDisabled() {
+    jedisSequenceUtils.loadSnapshot();
+    jedisSequenceUtils.saveSnapshot();
+
+    verify(snapshotStore, never()).load(any(String.class), any(Integer.class), eq(JedisSequenceUtils.Snapshot.class));
+    verify(snapshotStore, never()).save(any(String.class), any(Integer.class), any());
   }
 
+  private JedisSequenceUtils.Snapshot buildSnapshot() {
+    final JedisSequenceUtils.Snapshot snapshot = new JedisSequenceUtils.Snapshot();
+    snapshot.setPids(new HashMap<String, Long>(Collections.singletonMap(providerId, 3L)));
+    snapshot.setSids(new HashMap<String, Long>(Collections.singletonMap(providerId + "#" + sensorId, 7L)));
+    snapshot.setAids(new HashMap<String, Long>());
+    return snapshot;
+  }
 }
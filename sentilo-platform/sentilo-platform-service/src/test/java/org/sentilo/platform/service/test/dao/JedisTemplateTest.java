@@ -28,22 +28,45 @@
  */
 package org.sentilo.platform.service.test.dao;
 
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.sentilo.platform.common.exception.SentiloDataAccessException;
 import org.sentilo.platform.service.dao.JedisCallback;
+import org.sentilo.platform.service.dao.JedisCommand;
 import org.sentilo.platform.service.dao.JedisPoolUtils;
 import org.sentilo.platform.service.dao.JedisTemplate;
+import org.sentilo.platform.service.dao.pipeline.JedisPipelineExecutor;
+import org.sentilo.platform.service.dao.replica.JedisReplicaRouter;
+import org.sentilo.platform.service.dao.replica.ReplicaReadContextHolder;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisConnectionException;
 
 public class JedisTemplateTest {
 
@@ -57,6 +80,18 @@ public class JedisTemplateTest {
   @Mock
   private Jedis conn;
 
+  @Mock
+  private JedisReplicaRouter replicaRouter;
+
+  @Mock
+  private JedisPool replicaPool;
+
+  @Mock
+  private Jedis replicaConn;
+
+  @Mock
+  private JedisPipelineExecutor pipelineExecutor;
+
   @InjectMocks
   private JedisTemplate<String, String> jedisTemplate;
 
@@ -64,6 +99,12 @@ public class JedisTemplateTest {
   public void setUp() {
     MockitoAnnotations.initMocks(this);
     when(jedisPoolUtils.getResource()).thenReturn(conn);
+    when(replicaPool.getResource()).thenReturn(replicaConn);
+  }
+
+  @After
+  public void tearDown() {
+    ReplicaReadContextHolder.setReplicaReadAllowed(false);
   }
 
   @SuppressWarnings("unchecked")
@@ -84,6 +125,29 @@ public class JedisTemplateTest {
     verify(conn).keys(pattern);
   }
 
+  @SuppressWarnings("unchecked")
+  @Test
+  public void scan() {
+    final String pattern = "abc*";
+    final JedisPool pool = Mockito.mock(JedisPool.class);
+    final ScanResult<String> firstPage = Mockito.mock(ScanResult.class);
+    final ScanResult<String> lastPage = Mockito.mock(ScanResult.class);
+    when(jedisPoolUtils.getPools()).thenReturn(Collections.singletonList(pool));
+    when(pool.getResource()).thenReturn(conn);
+    when(firstPage.getResult()).thenReturn(Arrays.asList("abc1", "abc2"));
+    when(firstPage.getStringCursor()).thenReturn("17");
+    when(lastPage.getResult()).thenReturn(Arrays.asList("abc3"));
+    when(lastPage.getStringCursor()).thenReturn(ScanParams.SCAN_POINTER_START);
+    when(conn.scan(eq(ScanParams.SCAN_POINTER_START), any(ScanParams.class))).thenReturn(firstPage);
+    when(conn.scan(eq("17"), any(ScanParams.class))).thenReturn(lastPage);
+
+    final Set<String> keys = jedisTemplate.scan(pattern, 100);
+
+    assertEquals(new HashSet<String>(Arrays.asList("abc1", "abc2", "abc3")), keys);
+    verify(conn, never()).keys(anyString());
+    verify(conn).close();
+  }
+
   @Test
   public void get() {
     final String key = "abc";
@@ -261,6 +325,37 @@ public class JedisTemplateTest {
     verify(conn).publish(channel, message);
   }
 
+  @SuppressWarnings("unchecked")
+  @Test
+  public void publishBatch() {
+    final Pipeline pipeline = Mockito.mock(Pipeline.class);
+    final Response<Long> response = Mockito.mock(Response.class);
+    final byte[] channel1 = "data:prov1:sensor1".getBytes();
+    final byte[] channel2 = "data:prov1:sensor2".getBytes();
+    final byte[] message = "{}".getBytes();
+    when(jedisPoolUtils.getPool(null)).thenReturn(replicaPool);
+    when(replicaConn.pipelined()).thenReturn(pipeline);
+    when(pipeline.publish(any(byte[].class), any(byte[].class))).thenReturn(response);
+    when(response.get()).thenReturn(1L);
+
+    final List<Long> replies = jedisTemplate.publish(Arrays.asList(channel1, channel2), Arrays.asList(message, message));
+
+    assertEquals(Arrays.asList(1L, 1L), replies);
+    verify(pipeline).publish(channel1, message);
+    verify(pipeline).publish(channel2, message);
+    verify(pipeline).sync();
+    verify(replicaPool).getResource();
+  }
+
+  @Test
+  public void xAdd() {
+    final String key = "stream:data:0";
+
+    jedisTemplate.xAdd(key, 1000, "topic", "data:prov1:sensor1", "message", "message");
+
+    verify(conn).eval(anyString(), eq(1), eq(key), eq("1000"), eq("topic"), eq("data:prov1:sensor1"), eq("message"), eq("message"));
+  }
+
   @Test
   public void expire() {
     final String key = "abc";
@@ -270,4 +365,198 @@ public class JedisTemplateTest {
 
     verify(conn).expire(key, seconds);
   }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void zAddBatch() {
+    final Pipeline pipeline = Mockito.mock(Pipeline.class);
+    final Response<Long> response = Mockito.mock(Response.class);
+    when(jedisPoolUtils.getPool(anyString())).thenReturn(replicaPool);
+    when(replicaConn.pipelined()).thenReturn(pipeline);
+    when(pipeline.zadd(anyString(), eq(10d), eq("1"))).thenReturn(response);
+    when(response.get()).thenReturn(1L);
+
+    final List<Long> replies = jedisTemplate.zAdd(Arrays.asList("a", "b"), 10, "1");
+
+    assertEquals(Arrays.asList(1L, 1L), replies);
+    verify(pipeline).zadd("a", 10, "1");
+    verify(pipeline).zadd("b", 10, "1");
+    verify(pipeline).sync();
+    verify(replicaPool).getResource();
+    verify(replicaConn).close();
+  }
+
+  @Test
+  public void readFromReplica() {
+    final String key = "abc";
+    ReplicaReadContextHolder.setReplicaReadAllowed(true);
+    when(replicaRouter.getReplica()).thenReturn(replicaPool);
+
+    jedisTemplate.hGetAll(key);
+
+    verify(replicaConn).hgetAll(key);
+    verify(replicaConn).close();
+    verify(jedisPoolUtils, never()).getResource();
+  }
+
+  @Test
+  public void readFromMasterWhenReplicaReadIsNotAllowed() {
+    final String key = "abc";
+    when(replicaRouter.getReplica()).thenReturn(replicaPool);
+
+    jedisTemplate.hGetAll(key);
+
+    verify(conn).hgetAll(key);
+    verify(replicaPool, never()).getResource();
+  }
+
+  @Test
+  public void readFromMasterWhenReplicaFails() {
+    final String key = "abc";
+    ReplicaReadContextHolder.setReplicaReadAllowed(true);
+    when(replicaRouter.getReplica()).thenReturn(replicaPool);
+    when(replicaConn.hgetAll(key)).thenThrow(new JedisConnectionException("connection refused"));
+
+    jedisTemplate.hGetAll(key);
+
+    verify(replicaRouter).discard(replicaPool);
+    verify(conn).hgetAll(key);
+  }
+
+  @Test
+  public void writeToMasterWhenReplicaReadIsAllowed() {
+    final String key = "abc";
+    ReplicaReadContextHolder.setReplicaReadAllowed(true);
+    when(replicaRouter.getReplica()).thenReturn(replicaPool);
+
+    jedisTemplate.hSet(key, "field", "value");
+    jedisTemplate.getKeyNextValue(key);
+
+    verify(conn).hset(key, "field", "value");
+    verify(conn).incr(key);
+    verify(replicaPool, never()).getResource();
+  }
+
+  @Test
+  public void readFromMasterAfterWrite() {
+    final String key = "abc";
+    ReplicaReadContextHolder.setReplicaReadAllowed(true);
+    when(replicaRouter.getReplica()).thenReturn(replicaPool);
+    when(replicaRouter.isRecentlyWritten(key)).thenReturn(true);
+
+    jedisTemplate.hGetAll(key);
+
+    verify(conn).hgetAll(key);
+    verify(replicaPool, never()).getResource();
+  }
+
+  @Test
+  public void writesAreMarkedOnReplicaRouter() {
+    final String key = "abc";
+
+    jedisTemplate.hSet(key, "field", "value");
+    jedisTemplate.hGetAll("def");
+    jedisTemplate.getFromMaster("ghi");
+
+    verify(replicaRouter).markWritten(key);
+    verify(replicaRouter, never()).markWritten("def");
+    verify(replicaRouter, never()).markWritten("ghi");
+    verify(conn).get("ghi");
+  }
+
+  @Test
+  public void listAndRangeReadsAreNotMarkedAsWritten() {
+    final String key = "abc";
+    ReplicaReadContextHolder.setReplicaReadAllowed(true);
+    when(replicaRouter.getReplica()).thenReturn(replicaPool);
+
+    jedisTemplate.lRange(key, 0, -1);
+    jedisTemplate.lLen(key);
+    jedisTemplate.zRangeByScore(key, 0, 10);
+
+    verify(replicaConn).lrange(key, 0, -1);
+    verify(replicaConn).llen(key);
+    verify(replicaConn).zrangeByScore(key, 0d, 10d);
+    verify(replicaRouter, never()).markWritten(key);
+  }
+
+  @Test
+  public void asyncReadsAreNotMarkedAsWritten() throws Exception {
+    final String key = "abc";
+    ReplicaReadContextHolder.setReplicaReadAllowed(true);
+    when(replicaRouter.getReplica()).thenReturn(replicaPool);
+    when(replicaConn.hgetAll(key)).thenReturn(Collections.singletonMap("field", "value"));
+
+    final CompletableFuture<Map<String, String>> future = jedisTemplate.hGetAllAsync(key);
+    jedisTemplate.getAsync(key);
+    jedisTemplate.hGetAsync(key, "field");
+
+    assertEquals("value", future.get().get("field"));
+    verify(replicaConn).get(key);
+    verify(replicaConn).hget(key, "field");
+    verify(replicaRouter, never()).markWritten(key);
+    verify(jedisPoolUtils, never()).getResource();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void asyncReadsArePipelinedWhenReadFromMaster() {
+    final String key = "abc";
+    when(pipelineExecutor.isEnabled()).thenReturn(true);
+    when(pipelineExecutor.submit(eq(key), any(JedisCommand.class))).thenReturn(CompletableFuture.completedFuture(null));
+
+    jedisTemplate.sMembersAsync(key);
+
+    verify(pipelineExecutor).submit(eq(key), any(JedisCommand.class));
+    verify(replicaRouter, never()).markWritten(key);
+  }
+
+  @Test
+  public void lRangeFromMaster() {
+    final String key = "abc";
+    ReplicaReadContextHolder.setReplicaReadAllowed(true);
+    when(replicaRouter.getReplica()).thenReturn(replicaPool);
+
+    jedisTemplate.lRangeFromMaster(key, 0, 9);
+
+    verify(conn).lrange(key, 0, 9);
+    verify(replicaPool, never()).getResource();
+    verify(replicaRouter, never()).markWritten(key);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void executeWhenPipelined() {
+    final String key = "abc";
+    final Map<String, String> hash = Collections.singletonMap("field", "value");
+    when(pipelineExecutor.isEnabled()).thenReturn(true);
+    when(pipelineExecutor.submit(eq(key), any(JedisCommand.class))).thenReturn(CompletableFuture.completedFuture(hash));
+
+    final Map<String, String> result = jedisTemplate.hGetAll(key);
+
+    assertEquals(hash, result);
+    verify(pipelineExecutor).submit(eq(key), any(JedisCommand.class));
+    verify(jedisPoolUtils, never()).getResource();
+  }
+
+  @Test(expected = SentiloDataAccessException.class)
+  public void executeWhenPipelinedFails() {
+    final CompletableFuture<Object> future = new CompletableFuture<Object>();
+    future.completeExceptionally(new SentiloDataAccessException("connection refused"));
+    when(pipelineExecutor.isEnabled()).thenReturn(true);
+    when(pipelineExecutor.submit(any(String.class), any(JedisCommand.class))).thenReturn(future);
+
+    jedisTemplate.zAdd("abc", 1, "member");
+  }
+
+  @Test
+  public void executeAsyncWhenPooled() throws Exception {
+    final String key = "abc";
+    when(conn.hgetAll(key)).thenReturn(Collections.singletonMap("field", "value"));
+
+    final CompletableFuture<Map<String, String>> future = jedisTemplate.hGetAllAsync(key);
+
+    assertEquals("value", future.get().get("field"));
+    verify(pipelineExecutor, never()).submit(any(String.class), any(JedisCommand.class));
+  }
 }
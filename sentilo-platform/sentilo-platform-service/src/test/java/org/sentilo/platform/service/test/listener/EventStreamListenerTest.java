@@ -0,0 +1,113 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.test.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.sentilo.platform.service.listener.EventStreamListener;
+import org.springframework.data.redis.connection.Message;
+
+public class EventStreamListenerTest {
+
+  @Mock
+  private Message message1;
+  @Mock
+  private Message message2;
+  @Mock
+  private Message message3;
+
+  private EventStreamListener stream;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    when(message1.getBody()).thenReturn("event1".getBytes());
+    when(message2.getBody()).thenReturn("event2".getBytes());
+    when(message3.getBody()).thenReturn("event3".getBytes());
+    stream = new EventStreamListener("app1", 2);
+  }
+
+  @Test
+  public void pollInBatches() throws Exception {
+    stream.onMessage(message1, null);
+    stream.onMessage(message2, null);
+
+    assertEquals(Arrays.asList("event1"), stream.poll(1, 0));
+    assertEquals(Arrays.asList("event2"), stream.poll(10, 0));
+    assertTrue(stream.poll(10, 0).isEmpty());
+  }
+
+  @Test
+  public void dropOldestEventsWhenBufferIsFull() throws Exception {
+    stream.onMessage(message1, null);
+    stream.onMessage(message2, null);
+    stream.onMessage(message3, null);
+
+    final List<String> events = stream.poll(10, 0);
+
+    assertEquals(Arrays.asList("event2", "event3"), events);
+    assertEquals(1, stream.drainDroppedEvents());
+    assertEquals(0, stream.drainDroppedEvents());
+  }
+
+  @Test
+  public void discardEventsOnceClosed() throws Exception {
+    stream.onMessage(message1, null);
+    stream.close();
+    stream.onMessage(message2, null);
+
+    assertTrue(stream.isClosed());
+    assertEquals(0, stream.getBufferedEvents());
+    assertTrue(stream.poll(10, 0).isEmpty());
+  }
+
+  @Test
+  public void runCloseActionsOnce() throws Exception {
+    final AtomicInteger closes = new AtomicInteger();
+    stream.onClose(closes::incrementAndGet);
+
+    stream.close();
+    stream.close();
+    assertEquals(1, closes.get());
+
+    // Actions registered once closed run at once
+    stream.onClose(closes::incrementAndGet);
+    assertEquals(2, closes.get());
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.test.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sentilo.platform.service.dao.JedisTemplate;
+import org.sentilo.platform.service.listener.SubscriptionOwnershipManager;
+import org.sentilo.platform.service.listener.SubscriptionOwnershipManager.OwnershipChange;
+import org.sentilo.platform.service.utils.PubSubConstants;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class SubscriptionOwnershipManagerTest {
+
+  private static final int PARTITIONS = 16;
+
+  @Mock
+  private JedisTemplate<String, String> jedisTemplate;
+
+  @InjectMocks
+  private SubscriptionOwnershipManager ownershipManager;
+
+  private final Set<String> liveNodes = new LinkedHashSet<String>();
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    ReflectionTestUtils.setField(ownershipManager, "enabled", true);
+    ReflectionTestUtils.setField(ownershipManager, "partitions", PARTITIONS);
+    ReflectionTestUtils.setField(ownershipManager, "nodeId", "node1");
+    when(jedisTemplate.zRangeByScore(anyString(), anyDouble(), anyDouble())).thenReturn(liveNodes);
+    when(jedisTemplate.acquireLeases(anyListOf(String.class), eq("node1"), anyLong())).thenAnswer(new Answer<List<Boolean>>() {
+
+      @Override
+      public List<Boolean> answer(final InvocationOnMock invocation) throws Throwable {
+        return new ArrayList<Boolean>(Collections.nCopies(((List<?>) invocation.getArguments()[0]).size(), true));
+      }
+    });
+  }
+
+  @Test
+  public void disabled() {
+    ReflectionTestUtils.setField(ownershipManager, "enabled", false);
+
+    assertTrue(ownershipManager.isOwned("app1"));
+  }
+
+  @Test
+  public void singleNodeOwnsEveryPartition() {
+    liveNodes.add("node1");
+
+    final OwnershipChange change = ownershipManager.rebalance();
+
+    assertEquals(PARTITIONS, change.getAcquired().size());
+    assertTrue(change.getReleased().isEmpty());
+    assertTrue(ownershipManager.isOwned("app1"));
+    assertTrue(ownershipManager.rebalance().isEmpty());
+  }
+
+  @Test
+  public void handOverPartitionsWhenNodeJoins() {
+    liveNodes.add("node1");
+    ownershipManager.rebalance();
+
+    liveNodes.add("node2");
+    final OwnershipChange change = ownershipManager.rebalance();
+
+    assertTrue(change.getAcquired().isEmpty());
+    assertFalse(change.getReleased().isEmpty());
+    assertTrue(change.getReleased().size() < PARTITIONS);
+    for (final Integer partition : change.getReleased()) {
+      assertFalse(ownershipManager.isOwned(entityOfPartition(partition)));
+    }
+  }
+
+  @Test
+  public void partitionHeldByAnotherNode() {
+    liveNodes.add("node1");
+    when(jedisTemplate.acquireLeases(anyListOf(String.class), eq("node1"), anyLong()))
+        .thenReturn(new ArrayList<Boolean>(Collections.nCopies(PARTITIONS, false)));
+
+    final OwnershipChange change = ownershipManager.rebalance();
+
+    assertTrue(change.isEmpty());
+    assertFalse(ownershipManager.isOwned("app1"));
+  }
+
+  @Test
+  public void keepPartitionsWhileLeasesAreHeldWhenRedisFails() {
+    liveNodes.add("node1");
+    ownershipManager.rebalance();
+    when(jedisTemplate.zRangeByScore(anyString(), anyDouble(), anyDouble())).thenThrow(new RuntimeException("Connection refused"));
+
+    final OwnershipChange change = ownershipManager.rebalance();
+
+    assertTrue(change.isEmpty());
+    assertTrue(ownershipManager.isOwned("app1"));
+  }
+
+  @Test
+  public void releaseAllWhenRedisFailsAndLeasesCouldExpire() {
+    // Leases would expire before the next renewal
+    ReflectionTestUtils.setField(ownershipManager, "renewInterval", 15000L);
+    liveNodes.add("node1");
+    ownershipManager.rebalance();
+    when(jedisTemplate.zRangeByScore(anyString(), anyDouble(), anyDouble())).thenThrow(new RuntimeException("Connection refused"));
+
+    final OwnershipChange change = ownershipManager.rebalance();
+
+    assertEquals(new HashSet<Integer>(allPartitions()), change.getReleased());
+    assertFalse(ownershipManager.isOwned("app1"));
+  }
+
+  @Test
+  public void announceRelease() {
+    final Set<Integer> released = new HashSet<Integer>(Arrays.asList(3));
+
+    ownershipManager.release(released);
+
+    verify(jedisTemplate).releaseLeases(anyListOf(String.class), eq("node1"));
+    verify(jedisTemplate).publish(PubSubConstants.REDIS_SUBS_OWNERSHIP_CHANNEL, "node1");
+  }
+
+  private String entityOfPartition(final int partition) {
+    for (int i = 0;; i++) {
+      if (ownershipManager.getPartition("app" + i) == partition) {
+        return "app" + i;
+      }
+    }
+  }
+
+  private List<Integer> allPartitions() {
+    final List<Integer> partitions = new ArrayList<Integer>();
+    for (int i = 0; i < PARTITIONS; i++) {
+      partitions.add(i);
+    }
+    return partitions;
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.test.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.Executor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.sentilo.platform.service.listener.MessageListenerImpl;
+import org.sentilo.platform.service.listener.SubscriptionRouter;
+import org.sentilo.platform.service.utils.ChannelUtils;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+
+public class SubscriptionRouterTest {
+
+  @Mock
+  private RedisMessageListenerContainer listenerContainer;
+  @Mock
+  private MessageListenerImpl listener1;
+  @Mock
+  private MessageListenerImpl listener2;
+  @Mock
+  private Message message;
+
+  @InjectMocks
+  private SubscriptionRouter router;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    router.setTaskExecutor(new SyncTaskExecutor());
+  }
+
+  @Test
+  public void getRoutingTopic() {
+    assertEquals(new PatternTopic("/data/prov1*"), SubscriptionRouter.getRoutingTopic("/data/prov1/sensor1"));
+    assertEquals(new PatternTopic("/data/prov1*"), SubscriptionRouter.getRoutingTopic("/data/prov1*"));
+    assertEquals(new PatternTopic("/order/prov1*"), SubscriptionRouter.getRoutingTopic("/order/prov1/sensor1"));
+    assertEquals(new ChannelTopic("/alarm/alert1"), SubscriptionRouter.getRoutingTopic("/alarm/alert1"));
+  }
+
+  @Test
+  public void subscribeOncePerProvider() {
+    final Topic routingTopic = new PatternTopic("/data/prov1*");
+
+    router.addSubscription(listener1, ChannelUtils.buildTopic("/data/prov1/sensor1"));
+    router.addSubscription(listener2, ChannelUtils.buildTopic("/data/prov1/sensor2"));
+    router.addSubscription(listener2, ChannelUtils.buildTopic("/data/prov1*"));
+
+    verify(listenerContainer).addMessageListener(router, routingTopic);
+
+    router.removeSubscription(listener1, ChannelUtils.buildTopic("/data/prov1/sensor1"));
+    router.removeSubscriptions(listener2);
+
+    verify(listenerContainer).removeMessageListener(router, routingTopic);
+  }
+
+  @Test
+  public void keepRoutingTopicWhileItHasSubscriptions() {
+    router.addSubscription(listener1, ChannelUtils.buildTopic("/data/prov1/sensor1"));
+    router.addSubscription(listener2, ChannelUtils.buildTopic("/data/prov1*"));
+
+    router.removeSubscriptions(listener1);
+
+    verify(listenerContainer, never()).removeMessageListener(any(SubscriptionRouter.class), any(Topic.class));
+  }
+
+  @Test
+  public void route() {
+    when(message.getChannel()).thenReturn("/data/prov1/sensor1".getBytes());
+    router.addSubscription(listener1, ChannelUtils.buildTopic("/data/prov1/sensor1"));
+    router.addSubscription(listener1, ChannelUtils.buildTopic("/data/prov1*"));
+    router.addSubscription(listener2, ChannelUtils.buildTopic("/data/prov1/sensor2"));
+
+    router.onMessage(message, "/data/prov1*".getBytes());
+
+    verify(listener1, times(1)).onMessage(eq(message), any(byte[].class));
+    verify(listener2, never()).onMessage(eq(message), any(byte[].class));
+  }
+
+  @Test
+  public void routeThroughTaskExecutor() {
+    final Executor taskExecutor = mock(Executor.class);
+    router.setTaskExecutor(taskExecutor);
+    when(message.getChannel()).thenReturn("/data/prov1/sensor1".getBytes());
+    router.addSubscription(listener1, ChannelUtils.buildTopic("/data/prov1/sensor1"));
+    router.addSubscription(listener2, ChannelUtils.buildTopic("/data/prov1*"));
+
+    router.onMessage(message, "/data/prov1*".getBytes());
+
+    verify(taskExecutor, times(2)).execute(any(Runnable.class));
+    verify(listener1, never()).onMessage(eq(message), any(byte[].class));
+  }
+}
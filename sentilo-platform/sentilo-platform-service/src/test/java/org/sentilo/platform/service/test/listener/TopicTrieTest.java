@@ -0,0 +1,85 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.test.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sentilo.platform.service.listener.TopicTrie;
+
+public class TopicTrieTest {
+
+  private TopicTrie<String> trie;
+
+  @Before
+  public void setUp() {
+    trie = new TopicTrie<String>();
+    trie.add("/data/prov1/sensor1", "app1");
+    trie.add("/data/prov1*", "app2");
+    trie.add("/data/prov1*", "app1");
+    trie.add("/data/prov10/sensor1", "app3");
+    trie.add("/alarm/alert1", "app3");
+  }
+
+  @Test
+  public void match() {
+    assertEquals(new HashSet<String>(Arrays.asList("app1", "app2")), trie.match("/data/prov1/sensor1"));
+    assertEquals(new HashSet<String>(Arrays.asList("app1", "app2")), trie.match("/data/prov1/sensor2"));
+    assertEquals(Collections.singleton("app3"), trie.match("/data/prov10/sensor1"));
+    assertEquals(Collections.singleton("app3"), trie.match("/alarm/alert1"));
+    assertTrue(trie.match("/alarm/alert2").isEmpty());
+    assertTrue(trie.match("/order/prov1/sensor1").isEmpty());
+  }
+
+  @Test
+  public void addTwice() {
+    assertFalse(trie.add("/data/prov1*", "app2"));
+    assertEquals(5, trie.size());
+  }
+
+  @Test
+  public void remove() {
+    assertTrue(trie.remove("/data/prov1*", "app1"));
+    assertFalse(trie.remove("/data/prov1*", "app1"));
+    assertTrue(trie.remove("/data/prov10/sensor1", "app3"));
+    assertFalse(trie.remove("/data/prov2/sensor1", "app3"));
+
+    assertEquals(new HashSet<String>(Arrays.asList("app1", "app2")), trie.match("/data/prov1/sensor1"));
+    assertEquals(Collections.singleton("app2"), trie.match("/data/prov1/sensor2"));
+    assertTrue(trie.match("/data/prov10/sensor1").isEmpty());
+    assertEquals(3, trie.size());
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.test.monitor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.sentilo.platform.common.domain.HeavyHitters;
+import org.sentilo.platform.service.monitor.HeavyHittersTracker;
+import org.sentilo.platform.service.monitor.HeavyHittersTracker.Dimension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class HeavyHittersTrackerTest {
+
+  private final HeavyHittersTracker tracker = new HeavyHittersTracker();
+
+  @Test
+  public void getHeavyHitters() {
+    final Map<String, Long> sensors = new HashMap<String, Long>();
+    sensors.put("prov1/s1", 8L);
+    sensors.put("prov1/s2", 2L);
+    sensors.put("", 1L);
+    tracker.record(Dimension.sensor, sensors);
+    tracker.record(Dimension.provider, "prov1", 10);
+    tracker.record(Dimension.client, "10.0.0.1", 10);
+
+    final HeavyHitters heavyHitters = tracker.getHeavyHitters();
+    final HeavyHitters.Window window = heavyHitters.getWindows().get(0);
+
+    assertTrue(window.getFrom() <= heavyHitters.getTs() && heavyHitters.getTs() < window.getTo());
+    assertEquals(Long.valueOf(10), window.getTotal());
+    assertEquals(2, window.getSensors().size());
+    assertEquals("prov1/s1", window.getSensors().get(0).getKey());
+    assertEquals("prov1", window.getProviders().get(0).getKey());
+    assertEquals("10.0.0.1", window.getClients().get(0).getKey());
+  }
+
+  @Test
+  public void disabled() {
+    ReflectionTestUtils.setField(tracker, "enabled", false);
+    tracker.record(Dimension.provider, "prov1", 10);
+
+    assertTrue(tracker.getHeavyHitters().getWindows().get(0).getProviders().isEmpty());
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.test.monitor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sentilo.platform.common.domain.RedisMetrics;
+import org.sentilo.platform.service.monitor.RedisCommandMetrics;
+
+public class RedisCommandMetricsTest {
+
+  private RedisCommandMetrics metrics;
+
+  @Before
+  public void setUp() {
+    metrics = new RedisCommandMetrics();
+    metrics.setSlowThresholdMillis(50);
+    metrics.setSlowLogSize(2);
+  }
+
+  @Test
+  public void getKeyFamily() {
+    assertEquals("sid:*", RedisCommandMetrics.getKeyFamily("sid:12"));
+    assertEquals("sid:*", RedisCommandMetrics.getKeyFamily("sid:{12}"));
+    assertEquals("sid:*:observations", RedisCommandMetrics.getKeyFamily("sid:12:observations"));
+    assertEquals("sid:*:orders", RedisCommandMetrics.getKeyFamily("sid:{12}:orders"));
+    assertEquals("sdid:*", RedisCommandMetrics.getKeyFamily("sdid:{12}:345"));
+    assertEquals("sensor:*:sid", RedisCommandMetrics.getKeyFamily("sensor:provider1:sensor1:sid"));
+    assertEquals("subs:*", RedisCommandMetrics.getKeyFamily("subs:app_demo"));
+    assertEquals("data:*", RedisCommandMetrics.getKeyFamily("data:provider1:sensor1"));
+    assertEquals("global:sdid", RedisCommandMetrics.getKeyFamily("global:sdid"));
+    assertEquals("tenants", RedisCommandMetrics.getKeyFamily("tenants"));
+    assertEquals("*", RedisCommandMetrics.getKeyFamily(null));
+  }
+
+  @Test
+  public void record() {
+    // Start times are taken right before each call, so that class loading isn't measured
+    metrics.record("HGETALL", "sdid:1", System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(2), false);
+    metrics.record("HGETALL", "sdid:2", System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(4), true);
+    metrics.record("ZADD", "sid:1:observations", System.nanoTime(), false);
+
+    final List<RedisMetrics.Command> commands = metrics.getCommands();
+    assertEquals(2, commands.size());
+    for (final RedisMetrics.Command command : commands) {
+      if ("HGETALL".equals(command.getCommand())) {
+        assertEquals("sdid:*", command.getKeyFamily());
+        assertEquals(Long.valueOf(2), command.getCount());
+        assertEquals(Long.valueOf(1), command.getErrors());
+        assertTrue(command.getMaxMillis() >= 4);
+      } else {
+        assertEquals("sid:*:observations", command.getKeyFamily());
+        assertEquals(Long.valueOf(1), command.getCount());
+      }
+    }
+    assertTrue(metrics.getSlowCommands().isEmpty());
+  }
+
+  @Test
+  public void slowCommands() {
+    final long now = System.nanoTime();
+    metrics.record("KEYS", "subs:*", now - TimeUnit.MILLISECONDS.toNanos(500), false);
+    metrics.record("HGETALL", "sdid:1", now - TimeUnit.MILLISECONDS.toNanos(60), false);
+    metrics.record("ZREVRANGEBYSCORE", "sid:1:observations", now - TimeUnit.MILLISECONDS.toNanos(100), false);
+
+    final List<RedisMetrics.SlowCommand> slowCommands = metrics.getSlowCommands();
+    assertEquals(2, slowCommands.size());
+    assertEquals("HGETALL", slowCommands.get(0).getCommand());
+    assertEquals("sid:*:observations", slowCommands.get(1).getKeyPattern());
+    assertTrue(slowCommands.get(1).getMillis() >= 100);
+  }
+
+  @Test
+  public void recordBorrow() {
+    metrics.recordBorrow(System.nanoTime());
+
+    final RedisMetrics.Command borrow = metrics.getCommands().get(0);
+    assertEquals(RedisCommandMetrics.BORROW_COMMAND, borrow.getCommand());
+    assertEquals(RedisCommandMetrics.POOL_FAMILY, borrow.getKeyFamily());
+  }
+}
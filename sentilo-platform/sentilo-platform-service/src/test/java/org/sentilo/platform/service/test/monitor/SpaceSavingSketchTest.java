@@ -0,0 +1,82 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.test.monitor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.sentilo.platform.common.domain.HeavyHitters;
+import org.sentilo.platform.service.monitor.SpaceSavingSketch;
+
+public class SpaceSavingSketchTest {
+
+  @Test
+  public void exactCountsWhileUnderCapacity() {
+    final SpaceSavingSketch sketch = new SpaceSavingSketch(10);
+    sketch.add("a", 3);
+    sketch.add("b", 1);
+    sketch.add("a", 2);
+
+    final List<HeavyHitters.Item> top = sketch.getTop(5);
+
+    assertEquals(2, top.size());
+    assertEquals("a", top.get(0).getKey());
+    assertEquals(Long.valueOf(5), top.get(0).getCount());
+    assertEquals(Long.valueOf(0), top.get(0).getError());
+    assertEquals(6, sketch.getTotal());
+  }
+
+  @Test
+  public void heavyHittersSurviveManyDistinctKeys() {
+    final SpaceSavingSketch sketch = new SpaceSavingSketch(100);
+    for (int i = 0; i < 10000; i++) {
+      sketch.add("noise-" + i, 1);
+      if (i % 10 == 0) {
+        sketch.add("runaway", 1);
+      }
+      if (i % 50 == 0) {
+        sketch.add("busy", 1);
+      }
+    }
+
+    final List<HeavyHitters.Item> top = sketch.getTop(2);
+
+    assertEquals("runaway", top.get(0).getKey());
+    assertEquals("busy", top.get(1).getKey());
+    // Counts never underestimate and the overestimation is bounded by the error
+    for (final HeavyHitters.Item item : top) {
+      final long actual = "runaway".equals(item.getKey()) ? 1000 : 200;
+      assertTrue(item.getCount() >= actual);
+      assertTrue(item.getCount() - item.getError() <= actual);
+    }
+  }
+}
@@ -28,21 +28,36 @@
  */
 package org.sentilo.platform.service.test.notification;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.sentilo.common.exception.RESTClientException;
 import org.sentilo.common.rest.RequestContext;
+import org.sentilo.common.rest.impl.AsyncRequestDispatcher;
 import org.sentilo.common.rest.impl.RESTClientImpl;
 import org.sentilo.platform.common.domain.NotificationParams;
 import org.sentilo.platform.service.monitor.CounterEvent;
@@ -89,6 +104,11 @@ public class NotificationDeliveryServiceImplTest {
     when(params.getMaxRetries()).thenReturn(3l);
   }
 
+  @After
+  public void tearDown() {
+    service.shutdown();
+  }
+
   @Test
   public void pushNotification() {
     service.pushNotification(mockMessage, notificationContext);
@@ -142,6 +162,75 @@ public class NotificationDeliveryServiceImplTest {
     verify(repository, times(0)).save(any(NotificationRetryEvent.class));
   }
 
+  @Test
+  public void pushNotificationAsync() {
+    ReflectionTestUtils.setField(service, "pushAsync", Boolean.TRUE);
+    service.init();
+    when(restClient.postAsync(argThat(new RequestContextMatcher("", mockMessage)))).thenReturn(CompletableFuture.completedFuture(""));
+
+    service.pushNotification(mockMessage, notificationContext);
+
+    verify(restClient, times(0)).post(any(RequestContext.class));
+    verify(restClient).setAsyncDispatcher(any(AsyncRequestDispatcher.class));
+    verify(context).publishEvent(any(CounterEvent.class));
+  }
+
+  @Test
+  public void pushNotificationAsyncWithError() {
+    ReflectionTestUtils.setField(service, "pushAsync", Boolean.TRUE);
+    service.init();
+    final CompletableFuture<String> response = new CompletableFuture<String>();
+    when(restClient.postAsync(argThat(new RequestContextMatcher("", mockMessage)))).thenReturn(response);
+
+    service.pushNotification(mockMessage, notificationContext);
+    verify(repository, times(0)).save(any(NotificationRetryEvent.class));
+
+    response.completeExceptionally(new RESTClientException(500, "Internal error"));
+
+    verify(context, times(0)).publishEvent(any(CounterEvent.class));
+    verify(repository).save(any(NotificationRetryEvent.class));
+  }
+
+  @Test
+  public void pushNotificationsAsyncFromManyThreads() throws Exception {
+    ReflectionTestUtils.setField(service, "pushAsync", Boolean.TRUE);
+    service.init();
+    when(restClient.postAsync(any(RequestContext.class))).thenReturn(CompletableFuture.completedFuture(""));
+    final int threads = 8;
+    final List<NotificationDeliveryContext> contexts = new ArrayList<NotificationDeliveryContext>();
+    for (int i = 0; i < threads; i++) {
+      final NotificationDeliveryContext threadContext = mock(NotificationDeliveryContext.class);
+      when(threadContext.getNotificationParams()).thenReturn(params);
+      when(threadContext.getEntity()).thenReturn(ENTITY + i % 2);
+      contexts.add(threadContext);
+    }
+
+    final CountDownLatch start = new CountDownLatch(1);
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    for (final NotificationDeliveryContext threadContext : contexts) {
+      executor.execute(() -> {
+        try {
+          start.await();
+          service.pushNotification(mockMessage, threadContext);
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+    }
+    start.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+    // One client per listener, and every client shares the same dispatcher
+    final ArgumentCaptor<AsyncRequestDispatcher> dispatchers = ArgumentCaptor.forClass(AsyncRequestDispatcher.class);
+    verify(context, times(2)).getBean("pushRestClient", RESTClientImpl.class);
+    verify(restClient, times(2)).setAsyncDispatcher(dispatchers.capture());
+    assertEquals(2, dispatchers.getAllValues().size());
+    assertSame(dispatchers.getAllValues().get(0), dispatchers.getAllValues().get(1));
+    assertSame(ReflectionTestUtils.getField(service, "pushDispatcher"), dispatchers.getValue());
+    verify(restClient, times(threads)).postAsync(any(RequestContext.class));
+  }
+
   class RequestContextMatcher extends ArgumentMatcher<RequestContext> {
 
     final String path;
@@ -0,0 +1,128 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.test.purge;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.sentilo.platform.common.domain.PurgeStatus;
+import org.sentilo.platform.service.dao.JedisKeysBuilder;
+import org.sentilo.platform.service.dao.JedisTemplate;
+import org.sentilo.platform.service.purge.ResourcePurgeService;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class ResourcePurgeServiceTest {
+
+  private final JedisKeysBuilder keysBuilder = new JedisKeysBuilder();
+
+  @Mock
+  private JedisTemplate<String, String> jedisTemplate;
+
+  @InjectMocks
+  private ResourcePurgeService purgeService;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    ReflectionTestUtils.setField(purgeService, "chunkSize", 2);
+    ReflectionTestUtils.setField(purgeService, "chunksPerRun", 5);
+    when(jedisTemplate.acquireLeases(anyListOf(String.class), anyString(), anyLong())).thenReturn(Collections.singletonList(Boolean.TRUE));
+  }
+
+  @Test
+  public void enqueue() {
+    purgeService.enqueue(Arrays.asList("sid:1:observations", "sid:1:orders", "sid:1"));
+
+    verify(jedisTemplate).rPush(keysBuilder.getPurgeQueueKey(), "sid:1:observations", "sid:1:orders");
+    verify(jedisTemplate).rPush(keysBuilder.getPurgeQueueKey(), "sid:1");
+  }
+
+  @Test
+  public void purge() {
+    final List<String> chunk1 = Arrays.asList("sid:1:observations", "sid:1:orders");
+    final List<String> chunk2 = Arrays.asList("sid:1");
+    when(jedisTemplate.lRangeFromMaster(keysBuilder.getPurgeQueueKey(), 0, 1)).thenReturn(chunk1, chunk2, Collections.<String>emptyList());
+
+    purgeService.purge();
+
+    verify(jedisTemplate).unlink(chunk1);
+    verify(jedisTemplate).lTrim(keysBuilder.getPurgeQueueKey(), 2, -1);
+    verify(jedisTemplate).incrBy(keysBuilder.getPurgedCountKey(), 2);
+    verify(jedisTemplate).unlink(chunk2);
+    verify(jedisTemplate).lTrim(keysBuilder.getPurgeQueueKey(), 1, -1);
+    verify(jedisTemplate).incrBy(keysBuilder.getPurgedCountKey(), 1);
+  }
+
+  @Test
+  public void purgeWithoutLease() {
+    when(jedisTemplate.lRangeFromMaster(keysBuilder.getPurgeQueueKey(), 0, 1)).thenReturn(Arrays.asList("sid:1"));
+    when(jedisTemplate.acquireLeases(anyListOf(String.class), anyString(), anyLong())).thenReturn(Collections.singletonList(Boolean.FALSE));
+
+    purgeService.purge();
+
+    verify(jedisTemplate, times(0)).unlink(anyListOf(String.class));
+    verify(jedisTemplate, times(0)).lTrim(anyString(), anyLong(), anyLong());
+  }
+
+  @Test
+  public void purgeWithError() {
+    when(jedisTemplate.lRangeFromMaster(keysBuilder.getPurgeQueueKey(), 0, 1)).thenReturn(Arrays.asList("sid:1"));
+    when(jedisTemplate.unlink(anyListOf(String.class))).thenThrow(new RuntimeException("Connection refused"));
+
+    purgeService.purge();
+
+    // Keys remain queued
+    verify(jedisTemplate, times(0)).lTrim(anyString(), anyLong(), anyLong());
+  }
+
+  @Test
+  public void getStatus() {
+    when(jedisTemplate.lLen(keysBuilder.getPurgeQueueKey())).thenReturn(10l);
+    when(jedisTemplate.get(keysBuilder.getPurgedCountKey())).thenReturn("500");
+
+    final PurgeStatus status = purgeService.getStatus();
+
+    assertEquals(Long.valueOf(10), status.getPending());
+    assertEquals(Long.valueOf(500), status.getPurged());
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.test.sampling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.sentilo.common.enums.DataAggregation;
+import org.sentilo.platform.common.domain.Observation;
+import org.sentilo.platform.service.sampling.AggregationSampler;
+
+public class AggregationSamplerTest {
+
+  private static final long INTERVAL = 60000;
+
+  @Test
+  public void avg() {
+    final AggregationSampler sampler = buildSampler(DataAggregation.avg, 10);
+
+    final List<Observation> samples = sampler.getSamples();
+
+    assertEquals(2, samples.size());
+    assertEquals("15", samples.get(0).getValue());
+    assertEquals(INTERVAL, samples.get(0).getTimestamp().longValue());
+    assertEquals("2.5", samples.get(1).getValue());
+    assertEquals(0, samples.get(1).getTimestamp().longValue());
+  }
+
+  @Test
+  public void minAndMax() {
+    assertEquals("10", buildSampler(DataAggregation.min, 10).getSamples().get(0).getValue());
+    assertEquals("20", buildSampler(DataAggregation.max, 10).getSamples().get(0).getValue());
+  }
+
+  @Test
+  public void countAndLast() {
+    final List<Observation> counts = buildSampler(DataAggregation.count, 10).getSamples();
+    final List<Observation> lasts = buildSampler(DataAggregation.last, 10).getSamples();
+
+    assertEquals("3", counts.get(0).getValue());
+    assertEquals("2", counts.get(1).getValue());
+    assertEquals("text", lasts.get(0).getValue());
+    assertEquals("41.38 2.17", lasts.get(0).getLocation());
+    assertEquals("4", lasts.get(1).getValue());
+  }
+
+  @Test
+  public void limitBuckets() {
+    final AggregationSampler sampler = buildSampler(DataAggregation.count, 1);
+
+    assertTrue(sampler.isComplete());
+    assertEquals(1, sampler.getSamples().size());
+    assertEquals(INTERVAL, sampler.getSamples().get(0).getTimestamp().longValue());
+  }
+
+  @Test
+  public void noNumericValues() {
+    final AggregationSampler sampler = new AggregationSampler(DataAggregation.max, INTERVAL, 10);
+    sampler.add(new Observation("prov1", "sensor1", "on", INTERVAL + 1));
+
+    assertFalse(sampler.isComplete());
+    assertTrue(sampler.getSamples().isEmpty());
+  }
+
+  private AggregationSampler buildSampler(final DataAggregation aggregation, final int maxBuckets) {
+    final AggregationSampler sampler = new AggregationSampler(aggregation, INTERVAL, maxBuckets);
+    // Observations are added from the most recent to the oldest one
+    sampler.add(new Observation("prov1", "sensor1", "text", INTERVAL + 3000, "41.38 2.17"));
+    sampler.add(new Observation("prov1", "sensor1", "20", INTERVAL + 2000));
+    sampler.add(new Observation("prov1", "sensor1", "10", INTERVAL + 1000));
+    sampler.add(new Observation("prov1", "sensor1", "4", 2000L));
+    sampler.add(new Observation("prov1", "sensor1", "1", 1000L));
+    return sampler;
+  }
+}
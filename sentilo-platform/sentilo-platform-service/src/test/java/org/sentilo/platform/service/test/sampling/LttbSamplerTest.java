@@ -0,0 +1,80 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.test.sampling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.sentilo.platform.common.domain.Observation;
+import org.sentilo.platform.service.sampling.LttbSampler;
+
+public class LttbSamplerTest {
+
+  @Test
+  public void lessObservationsThanThreshold() {
+    final LttbSampler sampler = new LttbSampler(10);
+    sampler.add(new Observation("prov1", "sensor1", "2", 2000L));
+    sampler.add(new Observation("prov1", "sensor1", "on", 1500L));
+    sampler.add(new Observation("prov1", "sensor1", "1", 1000L));
+
+    final List<Observation> samples = sampler.getSamples();
+
+    assertFalse(sampler.isComplete());
+    assertEquals(2, samples.size());
+    assertEquals("2", samples.get(0).getValue());
+    assertEquals("1", samples.get(1).getValue());
+  }
+
+  @Test
+  public void downsample() {
+    final LttbSampler sampler = new LttbSampler(5);
+    // Flat series with one peak, added from the most recent to the oldest observation
+    for (long ts = 100; ts > 0; ts--) {
+      sampler.add(new Observation("prov1", "sensor1", ts == 50 ? "100" : "0", ts));
+    }
+
+    final List<Observation> samples = sampler.getSamples();
+
+    assertEquals(5, samples.size());
+    assertEquals(100, samples.get(0).getTimestamp().longValue());
+    assertEquals(1, samples.get(4).getTimestamp().longValue());
+    boolean peakKept = false;
+    for (int i = 0; i < samples.size(); i++) {
+      peakKept |= "100".equals(samples.get(i).getValue());
+      if (i > 0) {
+        assertTrue(samples.get(i - 1).getTimestamp() > samples.get(i).getTimestamp());
+      }
+    }
+    assertTrue(peakKept);
+  }
+}
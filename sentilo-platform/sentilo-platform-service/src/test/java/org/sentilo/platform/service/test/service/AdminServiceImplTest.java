@@ -28,6 +28,7 @@
  */
 package org.sentilo.platform.service.test.service;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
@@ -48,10 +49,19 @@ import org.sentilo.common.domain.CatalogAlert;
 import org.sentilo.common.domain.CatalogEntity;
 import org.sentilo.common.domain.CatalogSensor;
 import org.sentilo.platform.common.domain.AdminInputMessage;
+import org.sentilo.platform.common.domain.HeavyHitters;
+import org.sentilo.platform.common.domain.PurgeStatus;
+import org.sentilo.platform.common.domain.RedisMetrics;
 import org.sentilo.platform.common.domain.Subscription;
 import org.sentilo.platform.common.service.ResourceService;
 import org.sentilo.platform.common.service.SubscribeService;
+import org.sentilo.platform.service.dao.JedisPoolUtils;
 import org.sentilo.platform.service.impl.AdminServiceImpl;
+import org.sentilo.platform.service.monitor.HeavyHittersTracker;
+import org.sentilo.platform.service.monitor.RedisCommandMetrics;
+import org.sentilo.platform.service.purge.ResourcePurgeService;
+
+import redis.clients.jedis.JedisPool;
 
 public class AdminServiceImplTest {
 
@@ -65,6 +75,16 @@ public class AdminServiceImplTest {
   private AdminInputMessage message;
   @Mock
   private SubscribeService subscribeService;
+  @Mock
+  private RedisCommandMetrics redisCommandMetrics;
+  @Mock
+  private JedisPoolUtils jedisPoolUtils;
+  @Mock
+  private JedisPool jedisPool;
+  @Mock
+  private HeavyHittersTracker heavyHittersTracker;
+  @Mock
+  private ResourcePurgeService purgeService;
   @InjectMocks
   private AdminServiceImpl service;
 
@@ -145,8 +165,8 @@ public class AdminServiceImplTest {
     service.save(message);
 
     verify(message, times(2)).getSensors();
-    verify(resourceService, times(sensors.size())).registerProviderIfNeedBe(anyString());
-    verify(resourceService, times(sensors.size())).registerSensorIfNeedBe(any(CatalogSensor.class), eq(Boolean.TRUE));
+    verify(resourceService).registerProviderIfNeedBe(PROVIDER_ID);
+    verify(resourceService).registerSensorsIfNeedBe(sensors, true);
   }
 
   @Test
@@ -160,6 +180,40 @@ public class AdminServiceImplTest {
     verify(resourceService, times(alerts.size())).registerAlertIfNeedBe(any(CatalogAlert.class), eq(Boolean.TRUE));
   }
 
+  @Test
+  public void getHeavyHitters() {
+    final HeavyHitters heavyHitters = new HeavyHitters(System.currentTimeMillis(), Collections.<HeavyHitters.Window>emptyList());
+    when(heavyHittersTracker.getHeavyHitters()).thenReturn(heavyHitters);
+
+    assertEquals(heavyHitters, service.getHeavyHitters());
+  }
+
+  @Test
+  public void getPurgeStatus() {
+    final PurgeStatus purgeStatus = new PurgeStatus(System.currentTimeMillis(), 10l, 500l);
+    when(purgeService.getStatus()).thenReturn(purgeStatus);
+
+    assertEquals(purgeStatus, service.getPurgeStatus());
+  }
+
+  @Test
+  public void getRedisMetrics() {
+    final List<RedisMetrics.Command> commands =
+        Collections.singletonList(new RedisMetrics.Command("HGETALL", "sid:*", 10l, 0l, 0.5f, 1f, 1f, 2.5f));
+    when(redisCommandMetrics.getCommands()).thenReturn(commands);
+    when(jedisPoolUtils.getPools()).thenReturn(Collections.singletonList(jedisPool));
+    when(jedisPool.getNumActive()).thenReturn(3);
+    when(jedisPool.getNumWaiters()).thenReturn(1);
+
+    final RedisMetrics metrics = service.getRedisMetrics();
+
+    assertEquals(commands, metrics.getCommands());
+    assertEquals(1, metrics.getPools().size());
+    assertEquals("default", metrics.getPools().get(0).getName());
+    assertEquals(Integer.valueOf(3), metrics.getPools().get(0).getActive());
+    assertEquals(Integer.valueOf(1), metrics.getPools().get(0).getWaiters());
+  }
+
   private <T> List<T> buildMockList(final T mockObject, final long total) {
     final List<T> resources = new ArrayList<T>();
     for (int i = 0; i < total; i++) {
@@ -28,6 +28,8 @@
  */
 package org.sentilo.platform.service.test.service;
 
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyDouble;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
@@ -64,6 +66,8 @@ import org.sentilo.platform.service.impl.AlarmServiceImpl;
 import org.sentilo.platform.service.utils.ChannelUtils;
 import org.sentilo.platform.service.utils.ChannelUtils.PubSubChannelPrefix;
 
+import redis.clients.util.SafeEncoder;
+
 public class AlarmServiceImplTest {
 
   final static String ALERT_ID = "alert1";
@@ -107,7 +111,7 @@ public class AlarmServiceImplTest {
 
     service.setAlarm(message);
 
-    verify(jedisTemplate).publish(eq(channel), anyString());
+    verify(jedisTemplate).publish(aryEq(SafeEncoder.encode(channel)), any(byte[].class));
   }
 
   @Test(expected = EventRejectedException.class)
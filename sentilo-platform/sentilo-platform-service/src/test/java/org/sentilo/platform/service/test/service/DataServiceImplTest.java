@@ -28,34 +28,46 @@
  */
 package org.sentilo.platform.service.test.service;
 
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyDouble;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.notNull;
+import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.sentilo.common.domain.QueryFilterParams;
+import org.sentilo.common.enums.DataAggregation;
+import org.sentilo.common.enums.EventTransport;
 import org.sentilo.common.enums.SensorState;
+import org.sentilo.common.utils.EventStreamUtils;
+import org.sentilo.platform.common.cache.CacheSnapshotStore;
 import org.sentilo.platform.common.domain.DataInputMessage;
+import org.sentilo.platform.common.domain.GeoArea;
 import org.sentilo.platform.common.domain.Observation;
 import org.sentilo.platform.common.domain.Sensor;
 import org.sentilo.platform.common.exception.EventRejectedException;
@@ -74,6 +86,12 @@ import org.springframework.test.util.ReflectionTestUtils;
 
 import com.google.common.collect.ImmutableMap;
 
+import redis.clients.util.SafeEncoder;
+
+import redis.clients.jedis.GeoCoordinate;
+import redis.clients.jedis.GeoRadiusResponse;
+import redis.clients.jedis.Tuple;
+
 public class DataServiceImplTest {
 
   @InjectMocks
@@ -92,6 +110,8 @@ public class DataServiceImplTest {
   private ResourceOwnerContext resourceOwnerContext;
   @Mock
   private QueryFilterParams queryFilterParams;
+  @Mock
+  private CacheSnapshotStore snapshotStore;
 
   @Before
   public void setUp() {
@@ -121,7 +141,38 @@ public class DataServiceImplTest {
     verify(jedisSequenceUtils, times(observations.size())).getSdid();
     verify(jedisTemplate, times(observations.size())).hmSet(eq("sdid:10"), anyMapOf(String.class, String.class));
     verify(jedisTemplate, times(observations.size())).zAdd(eq("sid:1:observations"), anyDouble(), eq("10"));
-    verify(jedisTemplate, times(observations.size())).publish(eq(topic.getTopic()), anyString());
+    // Events of the whole message are published in a single batch
+    verify(jedisTemplate).publish(anyListOf(byte[].class), anyListOf(byte[].class));
+    Assert.assertEquals(observations.size(), Collections.frequency(getPublishedChannels(), topic.getTopic()));
+  }
+
+  @Test
+  public void setObservationsThroughStreams() {
+    final String provider = "prov1";
+    final String sensor1 = "sensor1";
+    final List<Observation> observations = buildObservations(provider, sensor1);
+    when(inputMessage.getObservations()).thenReturn(observations);
+    when(resourceService.getSensor(eq(provider), eq(sensor1))).thenReturn(new Sensor(1L, provider, sensor1, SensorState.online.name(), "2"));
+    when(jedisSequenceUtils.getSdid()).thenReturn(new Long(10));
+    ReflectionTestUtils.setField(service, "eventTransport", EventTransport.stream);
+
+    final Topic topic = ChannelUtils.buildTopic(PubSubChannelPrefix.data, provider, sensor1);
+    final String streamKey = EventStreamUtils.getStreamKey(topic.getTopic(), 4);
+
+    service.setObservations(inputMessage);
+
+    final ArgumentCaptor<List> keys = ArgumentCaptor.forClass(List.class);
+    final ArgumentCaptor<List> entries = ArgumentCaptor.forClass(List.class);
+    // Events are still published, for push subscriptions
+    verify(jedisTemplate).publish(anyListOf(byte[].class), anyListOf(byte[].class));
+    verify(jedisTemplate).xAdd(keys.capture(), eq(100000L), entries.capture());
+    Assert.assertEquals(Collections.nCopies(observations.size(), streamKey), keys.getValue());
+    for (final Object entry : entries.getValue()) {
+      final byte[][] fieldsAndValues = (byte[][]) entry;
+      Assert.assertEquals(EventStreamUtils.TOPIC_FIELD, SafeEncoder.encode(fieldsAndValues[0]));
+      Assert.assertEquals(topic.getTopic(), SafeEncoder.encode(fieldsAndValues[1]));
+      Assert.assertEquals(EventStreamUtils.MESSAGE_FIELD, SafeEncoder.encode(fieldsAndValues[2]));
+    }
   }
 
   @Test
@@ -169,8 +220,20 @@ public class DataServiceImplTest {
     verify(jedisSequenceUtils, times(observations.size())).getSdid();
     verify(jedisTemplate, times(observations.size())).hmSet(eq("sdid:10"), anyMapOf(String.class, String.class));
     verify(jedisTemplate, times(observations.size())).zAdd(eq("sid:1:observations"), anyDouble(), eq("10"));
-    verify(jedisTemplate, times(observations.size())).publish(eq(topic.getTopic()), anyString());
-    verify(jedisTemplate, times(1)).publish(eq(ghostAlarmTopic.getTopic()), anyString());
+    final List<String> publishedChannels = getPublishedChannels();
+    Assert.assertEquals(observations.size(), Collections.frequency(publishedChannels, topic.getTopic()));
+    Assert.assertEquals(1, Collections.frequency(publishedChannels, ghostAlarmTopic.getTopic()));
+  }
+
+  @Test
+  public void ghostSensorsSnapshot() {
+    when(snapshotStore.isEnabled()).thenReturn(true);
+    when(snapshotStore.load("ghost-sensors", 1, String[].class)).thenReturn(new String[] {"prov1.sensor1"});
+
+    service.loadGhostSensorsSnapshot();
+    service.saveGhostSensorsSnapshot();
+
+    verify(snapshotStore).save("ghost-sensors", 1, Collections.singleton("prov1.sensor1"));
   }
 
   @Test
@@ -193,7 +256,7 @@ public class DataServiceImplTest {
     verify(inputMessage).getObservations();
     verify(jedisSequenceUtils, times(0)).getSid(provider, sensor);
     verify(jedisSequenceUtils, times(0)).getSdid();
-    verify(jedisTemplate, times(0)).publish(eq(topic.getTopic()), anyString());
+    Assert.assertEquals(0, Collections.frequency(getPublishedChannels(), topic.getTopic()));
   }
 
   @Test
@@ -221,7 +284,7 @@ public class DataServiceImplTest {
     verify(inputMessage).getObservations();
     verify(jedisSequenceUtils, times(0)).getSid(provider, sensorId);
     verify(jedisSequenceUtils, times(0)).getSdid();
-    verify(jedisTemplate, times(0)).publish(eq(topic.getTopic()), anyString());
+    Assert.assertEquals(0, Collections.frequency(getPublishedChannels(), topic.getTopic()));
   }
 
   @Test
@@ -249,7 +312,7 @@ public class DataServiceImplTest {
     verify(inputMessage).getObservations();
     verify(jedisSequenceUtils, times(0)).getSid(provider, sensor1);
     verify(jedisSequenceUtils, times(observations.size() / 2)).getSdid();
-    verify(jedisTemplate, times(observations.size() / 2)).publish(eq(topic.getTopic()), anyString());
+    Assert.assertEquals(observations.size() / 2, Collections.frequency(getPublishedChannels(), topic.getTopic()));
   }
 
   @Test
@@ -426,6 +489,140 @@ public class DataServiceImplTest {
     verify(jedisTemplate, times(7)).hGetAll(anyString());
   }
 
+  @SuppressWarnings("unchecked")
+  @Test
+  public void getLastObservationsFromSensors() {
+    final int limit = 1;
+    final List<Sensor> sensors = Arrays.asList(new Sensor("prov1", "sensor1"), new Sensor("prov2", "sensor2"), new Sensor("prov2", "removed"),
+        new Sensor("prov2", "unknown"));
+    final List<Set<String>> sdids =
+        Arrays.<Set<String>>asList(new HashSet<String>(Arrays.asList("121")), new HashSet<String>(Arrays.asList("221")));
+    final List<Map<String, String>> infos =
+        Arrays.<Map<String, String>>asList(ImmutableMap.of("data", "23", "sid", "1", "ts", Long.toString(System.currentTimeMillis())),
+            ImmutableMap.of("data", "24", "sid", "2", "ts", Long.toString(System.currentTimeMillis())));
+
+    when(inputMessage.hasSensors()).thenReturn(true);
+    when(inputMessage.getSensors()).thenReturn(sensors);
+    when(inputMessage.hasQueryFilters()).thenReturn(true);
+    when(inputMessage.getQueryFilters()).thenReturn(queryFilterParams);
+    when(queryFilterParams.getLimit()).thenReturn(limit);
+    when(jedisSequenceUtils.getSids("prov1", Arrays.asList("sensor1"))).thenReturn(Collections.singletonMap("sensor1", 1L));
+    when(jedisSequenceUtils.getSids("prov2", Arrays.asList("sensor2", "removed", "unknown"))).thenReturn(ImmutableMap.of("sensor2", 2L, "removed", 3L));
+    // Sensor removed, but whose sid has not been purged yet, is skipped
+    when(jedisTemplate.hGetAll(Arrays.asList("sid:1", "sid:2", "sid:3"))).thenReturn(Arrays.<Map<String, String>>asList(
+        ImmutableMap.of("provider", "prov1", "sensor", "sensor1"), ImmutableMap.of("provider", "prov2", "sensor", "sensor2"),
+        Collections.<String, String>emptyMap()));
+    when(jedisTemplate.zRevRangeByScore(eq(Arrays.asList("sid:1:observations", "sid:2:observations")), anyDouble(), anyDouble(), eq(0),
+        eq(limit + 1))).thenReturn(sdids);
+    when(jedisTemplate.hGetAll(Arrays.asList("sdid:121", "sdid:221"))).thenReturn(infos);
+
+    final List<Observation> observations = service.getLastObservations(inputMessage);
+
+    verify(jedisTemplate).zRevRangeByScore(any(List.class), anyDouble(), anyDouble(), eq(0), eq(limit + 1));
+    verify(jedisTemplate, times(2)).hGetAll(any(List.class));
+    verify(jedisTemplate, times(0)).hGetAll(anyString());
+    verify(jedisSequenceUtils, times(0)).getSid(anyString(), anyString());
+    verify(resourceService, times(0)).getSensorsToInspect(anyString(), anyString());
+    Assert.assertEquals(2, observations.size());
+    Assert.assertEquals("sensor1", observations.get(0).getSensor());
+    Assert.assertEquals("prov2", observations.get(1).getProvider());
+    Assert.assertEquals("24", observations.get(1).getValue());
+  }
+
+  @Test
+  public void setObservationsWithLocation() {
+    final List<Observation> observations = Arrays.asList(new Observation("prov1", "sensor1", "12", System.currentTimeMillis(), "41.3851 2.1734"),
+        new Observation("prov1", "sensor1", "14", System.currentTimeMillis(), "wrong location"));
+    when(inputMessage.getObservations()).thenReturn(observations);
+    when(resourceService.getSensor("prov1", "sensor1")).thenReturn(new Sensor(1L, "prov1", "sensor1", SensorState.online.name(), "2"));
+    when(jedisSequenceUtils.getSdid()).thenReturn(new Long(10));
+
+    service.setObservations(inputMessage);
+
+    verify(jedisTemplate).geoAdd("sensors:geo", 2.1734, 41.3851, "1");
+  }
+
+  @Test
+  public void setObservationsWithSameLocation() {
+    final List<Observation> observations = Arrays.asList(new Observation("prov1", "sensor1", "12", System.currentTimeMillis(), "41.3851 2.1734"),
+        new Observation("prov1", "sensor1", "14", System.currentTimeMillis(), "41.3851 2.1734"),
+        new Observation("prov1", "sensor1", "16", System.currentTimeMillis(), "41.3852 2.1735"));
+    when(inputMessage.getObservations()).thenReturn(observations);
+    when(resourceService.getSensor("prov1", "sensor1")).thenReturn(new Sensor(1L, "prov1", "sensor1", SensorState.online.name(), "2"));
+    when(jedisSequenceUtils.getSdid()).thenReturn(new Long(10));
+
+    service.setObservations(inputMessage);
+
+    // Position is only written again when the sensor moves
+    verify(jedisTemplate, times(1)).geoAdd("sensors:geo", 2.1734, 41.3851, "1");
+    verify(jedisTemplate, times(1)).geoAdd("sensors:geo", 2.1735, 41.3852, "1");
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void getLastObservationsFromArea() {
+    final GeoRadiusResponse inside = new GeoRadiusResponse("1".getBytes());
+    inside.setCoordinate(new GeoCoordinate(2.1734, 41.3851));
+    final GeoRadiusResponse outside = new GeoRadiusResponse("2".getBytes());
+    outside.setCoordinate(new GeoCoordinate(2.1834, 41.3851));
+    final GeoRadiusResponse removed = new GeoRadiusResponse("3".getBytes());
+    removed.setCoordinate(new GeoCoordinate(2.1735, 41.3852));
+
+    when(inputMessage.hasArea()).thenReturn(true);
+    when(inputMessage.getArea()).thenReturn(GeoArea.box(41.38, 2.17, 41.39, 2.18));
+    when(jedisTemplate.geoRadius(eq("sensors:geo"), anyDouble(), anyDouble(), anyDouble(), eq(500))).thenReturn(Arrays.asList(inside, outside, removed));
+    when(jedisTemplate.hGetAll(Arrays.asList("sid:1", "sid:3")))
+        .thenReturn(Arrays.<Map<String, String>>asList(ImmutableMap.of("provider", "prov1", "sensor", "sensor1"), Collections.<String, String>emptyMap()));
+    when(jedisTemplate.zRevRangeByScore(eq(Arrays.asList("sid:1:observations")), anyDouble(), anyDouble(), eq(0), eq(2)))
+        .thenReturn(Arrays.<Set<String>>asList(new HashSet<String>(Arrays.asList("121"))));
+    when(jedisTemplate.hGetAll(Arrays.asList("sdid:121")))
+        .thenReturn(Arrays.<Map<String, String>>asList(ImmutableMap.of("data", "23", "sid", "1", "ts", Long.toString(System.currentTimeMillis()))));
+
+    final List<Observation> observations = service.getLastObservations(inputMessage);
+
+    verify(jedisSequenceUtils, times(0)).getSid(anyString(), anyString());
+    verify(resourceService, times(0)).getSensorsToInspect(anyString(), anyString());
+    Assert.assertEquals(1, observations.size());
+    Assert.assertEquals("prov1", observations.get(0).getProvider());
+    Assert.assertEquals("sensor1", observations.get(0).getSensor());
+    Assert.assertEquals("23", observations.get(0).getValue());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void getAggregatedObservations() {
+    final String provider = "prov1";
+    final String sensor = "sensor1";
+    final Set<Tuple> page1 = new LinkedHashSet<Tuple>(Arrays.asList(new Tuple("123", 120500d), new Tuple("122", 61000d)));
+    final Set<Tuple> page2 = new LinkedHashSet<Tuple>(Arrays.asList(new Tuple("121", 61000d)));
+    final QueryFilterParams filters = new QueryFilterParams(null, null, null, DataAggregation.avg, 60000L, null);
+
+    ReflectionTestUtils.setField(service, "samplingPageSize", 2);
+    when(inputMessage.getSensorId()).thenReturn(sensor);
+    when(inputMessage.getProviderId()).thenReturn(provider);
+    when(inputMessage.hasQueryFilters()).thenReturn(true);
+    when(inputMessage.getQueryFilters()).thenReturn(filters);
+    when(resourceService.getSensorsToInspect(provider, sensor)).thenReturn(new HashSet<String>(Arrays.asList("1")));
+    when(resourceService.getSensor(1l)).thenReturn(new Sensor(provider, sensor));
+    when(jedisTemplate.zRevRangeByScoreWithScores(eq("sid:1:observations"), anyDouble(), anyDouble(), eq(0), eq(2))).thenReturn(page1);
+    // Next page starts at the score of the last observation read, skipping the one already read with it
+    when(jedisTemplate.zRevRangeByScoreWithScores(eq("sid:1:observations"), eq(61000d), anyDouble(), eq(1), eq(2))).thenReturn(page2);
+    when(jedisTemplate.hGetAll(Arrays.asList("sdid:123", "sdid:122")))
+        .thenReturn(Arrays.<Map<String, String>>asList(ImmutableMap.of("data", "30", "sid", "1", "ts", "120500"),
+            ImmutableMap.of("data", "10", "sid", "1", "ts", "61000")));
+    when(jedisTemplate.hGetAll(Arrays.asList("sdid:121"))).thenReturn(Arrays.<Map<String, String>>asList(ImmutableMap.of("data", "20", "sid", "1", "ts", "61000")));
+
+    final List<Observation> observations = service.getLastObservations(inputMessage);
+
+    verify(jedisTemplate, times(2)).zRevRangeByScoreWithScores(anyString(), anyDouble(), anyDouble(), anyInt(), eq(2));
+    verify(jedisTemplate, times(2)).hGetAll(any(List.class));
+    Assert.assertEquals(2, observations.size());
+    Assert.assertEquals("30", observations.get(0).getValue());
+    Assert.assertEquals(120000l, observations.get(0).getTimestamp().longValue());
+    Assert.assertEquals("15", observations.get(1).getValue());
+    Assert.assertEquals(60000l, observations.get(1).getTimestamp().longValue());
+  }
+
   // @Test
   public void getLastObservationsFromProvider() {
     final String provider = "prov1";
@@ -471,4 +668,17 @@ public class DataServiceImplTest {
     sensors.add("2");
     return sensors;
   }
+
+  @SuppressWarnings("unchecked")
+  private List<String> getPublishedChannels() {
+    final ArgumentCaptor<List> channels = ArgumentCaptor.forClass(List.class);
+    verify(jedisTemplate, atLeast(0)).publish(channels.capture(), anyListOf(byte[].class));
+    final List<String> publishedChannels = new ArrayList<String>();
+    for (final List<byte[]> batch : (List<List<byte[]>>) (List<?>) channels.getAllValues()) {
+      for (final byte[] channel : batch) {
+        publishedChannels.add(SafeEncoder.encode(channel));
+      }
+    }
+    return publishedChannels;
+  }
 }
@@ -28,6 +28,8 @@
  */
 package org.sentilo.platform.service.test.service;
 
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyDouble;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyLong;
@@ -38,7 +40,9 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import org.junit.Before;
@@ -60,6 +64,9 @@ import org.sentilo.platform.service.dao.JedisTemplate;
 import org.sentilo.platform.service.impl.OrderServiceImpl;
 import org.sentilo.platform.service.utils.ChannelUtils;
 import org.sentilo.platform.service.utils.ChannelUtils.PubSubChannelPrefix;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import redis.clients.util.SafeEncoder;
 
 public class OrderServiceImplTest {
 
@@ -100,7 +107,25 @@ public class OrderServiceImplTest {
 
     service.setOrder(message);
 
-    verify(jedisTemplate).publish(eq(channel), anyString());
+    verify(jedisTemplate).publish(aryEq(SafeEncoder.encode(channel)), any(byte[].class));
+  }
+
+  @Test
+  public void setProviderOrder() {
+    ReflectionTestUtils.setField(service, "orderBatchSize", 2);
+    when(message.getProviderId()).thenReturn("prov1");
+    when(message.getOrder()).thenReturn("stop restart");
+    when(jedisSequenceUtils.getSoid()).thenReturn(10L);
+    when(resourceService.getSensorsFromProvider("prov1")).thenReturn(new LinkedHashSet<String>(Arrays.asList("1", "2", "3")));
+
+    final String channel = ChannelUtils.buildTopic(PubSubChannelPrefix.order, "prov1", null).getTopic();
+
+    service.setOrder(message);
+
+    verify(jedisTemplate).zAdd(eq(Arrays.asList("sid:1:orders", "sid:2:orders")), anyDouble(), eq("10"));
+    verify(jedisTemplate).zAdd(eq(Arrays.asList("sid:3:orders")), anyDouble(), eq("10"));
+    verify(jedisTemplate, times(0)).zAdd(anyString(), anyDouble(), anyString());
+    verify(jedisTemplate).publish(aryEq(SafeEncoder.encode(channel)), any(byte[].class));
   }
 
   @Test(expected = EventRejectedException.class)
@@ -113,7 +138,7 @@ public class OrderServiceImplTest {
 
     service.setOrder(message);
 
-    verify(jedisTemplate, times(0)).publish(anyString(), anyString());
+    verify(jedisTemplate, times(0)).publish(any(byte[].class), any(byte[].class));
   }
 
   @Test(expected = EventRejectedException.class)
@@ -126,7 +151,7 @@ public class OrderServiceImplTest {
 
     service.setOrder(message);
 
-    verify(jedisTemplate, times(0)).publish(anyString(), anyString());
+    verify(jedisTemplate, times(0)).publish(any(byte[].class), any(byte[].class));
   }
 
   @Test
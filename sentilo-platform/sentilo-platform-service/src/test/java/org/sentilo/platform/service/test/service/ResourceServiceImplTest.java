@@ -34,6 +34,7 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -52,6 +53,7 @@ import org.sentilo.platform.common.domain.Sensor;
 import org.sentilo.platform.service.dao.JedisSequenceUtils;
 import org.sentilo.platform.service.dao.JedisTemplate;
 import org.sentilo.platform.service.impl.ResourceServiceImpl;
+import org.sentilo.platform.service.purge.ResourcePurgeService;
 import org.springframework.util.CollectionUtils;
 
 public class ResourceServiceImplTest {
@@ -69,6 +71,8 @@ public class ResourceServiceImplTest {
   private JedisTemplate<String, String> jedisTemplate;
   @Mock
   private JedisSequenceUtils jedisSequenceUtils;
+  @Mock
+  private ResourcePurgeService purgeService;
   @InjectMocks
   private ResourceServiceImpl service;
 
@@ -130,6 +134,36 @@ public class ResourceServiceImplTest {
     verify(jedisTemplate).set(service.getKeysBuilder().getReverseSensorKey(PROVIDER_ID, SENSOR_ID), SID.toString());
   }
 
+  @Test
+  public void registerSensors() {
+    final CatalogSensor newSensor = new CatalogSensor();
+    newSensor.setProvider(PROVIDER_ID);
+    newSensor.setSensor(SENSOR_ID);
+    newSensor.setState(SensorState.online);
+    newSensor.setTtl(5 * 60);
+    final CatalogSensor existingSensor = new CatalogSensor();
+    existingSensor.setProvider(PROVIDER_ID);
+    existingSensor.setSensor("sensor2");
+    existingSensor.setState(SensorState.offline);
+
+    final Map<String, String> fields = new HashMap<String, String>();
+    fields.put("provider", PROVIDER_ID);
+    fields.put("sensor", SENSOR_ID);
+    fields.put("state", "online");
+    fields.put("ttl", Integer.toString(5 * 60));
+
+    when(jedisSequenceUtils.getSids(PROVIDER_ID, Arrays.asList(SENSOR_ID, "sensor2"))).thenReturn(Collections.singletonMap("sensor2", 7l));
+    when(jedisSequenceUtils.setSids(PROVIDER_ID, Collections.singleton(SENSOR_ID))).thenReturn(Collections.singletonMap(SENSOR_ID, SID));
+    when(jedisSequenceUtils.getPid(PROVIDER_ID)).thenReturn(PID);
+
+    service.registerSensorsIfNeedBe(Arrays.asList(newSensor, existingSensor), false);
+
+    verify(jedisTemplate).sAdd(service.getKeysBuilder().getProviderSensorsKey(PID), SID.toString());
+    verify(jedisTemplate).set(Arrays.asList(service.getKeysBuilder().getReverseSensorKey(PROVIDER_ID, SENSOR_ID)), Arrays.asList(SID.toString()));
+    verify(jedisTemplate).hmSet(Arrays.asList(service.getKeysBuilder().getSensorKey(SID)), Arrays.asList(fields));
+    verify(jedisSequenceUtils, times(0)).setSid(anyString(), anyString());
+  }
+
   @Test
   public void registerSensorThatAlreadyExists() {
     final CatalogSensor sensor = new CatalogSensor();
@@ -275,26 +309,40 @@ public class ResourceServiceImplTest {
     verify(jedisTemplate).del(service.getKeysBuilder().getProviderKey(PID));
     verify(jedisTemplate).del(service.getKeysBuilder().getReverseProviderKey(PROVIDER_ID));
     verify(jedisSequenceUtils).removePid(PROVIDER_ID);
+    verify(purgeService).enqueue(service.getKeysBuilder().getProviderSensorsKey(PID));
+  }
+
+  @Test
+  public void removeProviderWithSensors() {
+    final String sensorKey = service.getKeysBuilder().getSensorKey(SID);
+    when(jedisSequenceUtils.getPid(PROVIDER_ID)).thenReturn(PID);
+    when(jedisTemplate.sMembers(service.getKeysBuilder().getProviderSensorsKey(PID))).thenReturn(Collections.singleton(SID.toString()));
+    when(jedisTemplate.hGet(Arrays.asList(sensorKey), "sensor")).thenReturn(Arrays.asList(SENSOR_ID));
 
+    service.removeProvider(PROVIDER_ID);
+
+    verify(jedisTemplate).unlink(Arrays.asList(service.getKeysBuilder().getReverseSensorKey(PROVIDER_ID, SENSOR_ID)));
+    verify(jedisSequenceUtils).removeSid(PROVIDER_ID, SENSOR_ID);
+    verify(purgeService).enqueue(
+        Arrays.asList(service.getKeysBuilder().getSensorObservationsKey(SID), service.getKeysBuilder().getSensorOrdersKey(SID), sensorKey));
+    verify(purgeService).enqueue(service.getKeysBuilder().getProviderSensorsKey(PID));
+    verify(jedisTemplate, times(0)).del(sensorKey);
+    verify(jedisSequenceUtils).removePid(PROVIDER_ID);
   }
 
   @Test
   public void removeSensor() {
     when(jedisSequenceUtils.getSid(PROVIDER_ID, SENSOR_ID)).thenReturn(SID);
     when(jedisSequenceUtils.getPid(PROVIDER_ID)).thenReturn(PID);
-    when(jedisTemplate.hGet(service.getKeysBuilder().getSensorKey(SID), "sensor")).thenReturn(SENSOR_ID);
-
-    when(jedisTemplate.sMembers(service.getKeysBuilder().getProviderSensorsKey(PID))).thenReturn(Collections.<String>emptySet());
 
     service.removeSensor(SENSOR_ID, PROVIDER_ID);
 
     verify(jedisSequenceUtils).getSid(PROVIDER_ID, SENSOR_ID);
     verify(jedisSequenceUtils).getPid(PROVIDER_ID);
-    verify(jedisTemplate).del(service.getKeysBuilder().getSensorKey(SID));
     verify(jedisTemplate).sRem(service.getKeysBuilder().getProviderSensorsKey(PID), SID.toString());
     verify(jedisTemplate).del(service.getKeysBuilder().getReverseSensorKey(PROVIDER_ID, SENSOR_ID));
-    verify(jedisTemplate).del(service.getKeysBuilder().getSensorObservationsKey(SID));
-    verify(jedisTemplate).del(service.getKeysBuilder().getSensorOrdersKey(SID));
+    verify(purgeService).enqueue(Arrays.asList(service.getKeysBuilder().getSensorObservationsKey(SID),
+        service.getKeysBuilder().getSensorOrdersKey(SID), service.getKeysBuilder().getSensorKey(SID)));
     verify(jedisSequenceUtils).removeSid(PROVIDER_ID, SENSOR_ID);
   }
 
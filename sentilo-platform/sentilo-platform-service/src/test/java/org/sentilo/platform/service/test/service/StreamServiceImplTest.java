@@ -0,0 +1,119 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.test.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.sentilo.platform.common.domain.AlarmSubscription;
+import org.sentilo.platform.common.domain.DataSubscription;
+import org.sentilo.platform.common.domain.Subscription;
+import org.sentilo.platform.common.service.EventStream;
+import org.sentilo.platform.service.impl.StreamServiceImpl;
+import org.sentilo.platform.service.listener.EventStreamListener;
+import org.sentilo.platform.service.listener.SubscriptionRouter;
+import org.sentilo.platform.service.utils.ChannelUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class StreamServiceImplTest {
+
+  private static final String CLIENT = "app1";
+
+  @Mock
+  private SubscriptionRouter subscriptionRouter;
+
+  @InjectMocks
+  private StreamServiceImpl service;
+
+  private List<Subscription> subscriptions;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    ReflectionTestUtils.setField(service, "maxConnections", 1);
+    subscriptions = Arrays.<Subscription>asList(new DataSubscription(CLIENT, "prov1", "sensor1", null),
+        new AlarmSubscription(CLIENT, "prov2", "alert1", null));
+  }
+
+  @Test
+  public void open() {
+    final EventStream stream = service.open(CLIENT, subscriptions);
+
+    assertNotNull(stream);
+    assertEquals(1, service.getOpenStreams());
+    verify(subscriptionRouter).addSubscription((EventStreamListener) stream, ChannelUtils.getChannel(subscriptions.get(0)));
+    verify(subscriptionRouter).addSubscription((EventStreamListener) stream, ChannelUtils.getChannel(subscriptions.get(1)));
+  }
+
+  @Test
+  public void rejectWhenMaxConnectionsReached() {
+    service.open(CLIENT, subscriptions);
+
+    assertNull(service.open(CLIENT, subscriptions));
+    assertEquals(1, service.getOpenStreams());
+  }
+
+  @Test
+  public void close() {
+    final EventStream stream = service.open(CLIENT, subscriptions);
+
+    service.close(stream);
+    service.close(stream);
+
+    assertEquals(0, service.getOpenStreams());
+    assertEquals(true, stream.isClosed());
+    verify(subscriptionRouter).removeSubscriptions((EventStreamListener) stream);
+  }
+
+  @Test
+  public void closeIdleStreams() throws Exception {
+    final EventStream stream = service.open(CLIENT, subscriptions);
+
+    ReflectionTestUtils.setField(service, "idleTimeout", 60000L);
+    service.closeIdleStreams();
+    verify(subscriptionRouter, never()).removeSubscriptions(any(EventStreamListener.class));
+
+    ReflectionTestUtils.setField(service, "idleTimeout", -1L);
+    service.closeIdleStreams();
+    verify(subscriptionRouter).removeSubscriptions((EventStreamListener) stream);
+    assertEquals(0, service.getOpenStreams());
+  }
+}
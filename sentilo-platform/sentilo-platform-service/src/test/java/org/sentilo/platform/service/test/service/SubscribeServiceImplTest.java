@@ -30,11 +30,16 @@ package org.sentilo.platform.service.test.service;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -46,6 +51,8 @@ import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.sentilo.common.converter.DefaultStringMessageConverter;
 import org.sentilo.common.converter.StringMessageConverter;
 import org.sentilo.common.enums.SensorState;
@@ -63,7 +70,13 @@ import org.sentilo.platform.service.dao.JedisTemplate;
 import org.sentilo.platform.service.impl.SubscribeServiceImpl;
 import org.sentilo.platform.service.listener.MessageListenerFactory;
 import org.sentilo.platform.service.listener.MessageListenerImpl;
+import org.sentilo.platform.service.listener.SubscriptionOwnershipManager;
+import org.sentilo.platform.service.listener.SubscriptionOwnershipManager.OwnershipChange;
+import org.sentilo.platform.service.listener.SubscriptionRouter;
 import org.sentilo.platform.service.utils.ChannelUtils;
+import org.sentilo.platform.service.utils.PubSubConstants;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.listener.Topic;
 import org.springframework.util.CollectionUtils;
@@ -75,6 +88,10 @@ public class SubscribeServiceImplTest {
   @Mock
   private RedisMessageListenerContainer listenerContainer;
   @Mock
+  private SubscriptionRouter subscriptionRouter;
+  @Mock
+  private SubscriptionOwnershipManager ownershipManager;
+  @Mock
   private DataSubscription dataSubscription;
   @Mock
   private AlarmSubscription alarmSubscription;
@@ -94,6 +111,7 @@ public class SubscribeServiceImplTest {
   public void setUp() throws Exception {
     MockitoAnnotations.initMocks(this);
     when(listenerFactory.getObject()).thenReturn(new MessageListenerImpl("mockName"));
+    when(ownershipManager.isOwned(anyString())).thenReturn(true);
   }
 
   @Test
@@ -307,6 +325,118 @@ public class SubscribeServiceImplTest {
 
   }
 
+  @SuppressWarnings("unchecked")
+  @Test
+  public void loadSubscriptionsFromIndex() {
+    final String indexKey = service.getKeysBuilder().getSubscriptionsIndexKey();
+    when(listenerContainer.isRunning()).thenReturn(true);
+    when(jedisTemplate.sMembers(indexKey)).thenReturn(new HashSet<String>(Arrays.asList("prov1", "prov2")));
+    when(jedisTemplate.hGetAll(any(List.class))).thenAnswer(new Answer<List<Map<String, String>>>() {
+
+      @Override
+      public List<Map<String, String>> answer(final InvocationOnMock invocation) throws Throwable {
+        final List<Map<String, String>> hashes = new ArrayList<Map<String, String>>();
+        for (final String key : (List<String>) invocation.getArguments()[0]) {
+          // prov2 removed all its subscriptions one by one and its hash no longer exists
+          hashes.add(key.endsWith("prov1") ? buildSubscriptions() : new HashMap<String, String>());
+        }
+        return hashes;
+      }
+    });
+
+    service.loadSubscriptions();
+
+    verify(jedisTemplate, times(0)).keys(anyString());
+    verify(jedisTemplate, times(0)).scan(anyString(), anyInt());
+    verify(listenerContainer).addMessageListener(any(MessageListener.class), eq(new ChannelTopic(PubSubConstants.REDIS_SUBS_CHANGES_CHANNEL)));
+    verify(subscriptionRouter, times(buildSubscriptions().size())).addSubscription(any(MessageListenerImpl.class), any(Topic.class));
+    verify(jedisTemplate).sRem(indexKey, "prov2");
+  }
+
+  @Test
+  public void loadSubscriptionsWithoutIndex() {
+    final String indexKey = service.getKeysBuilder().getSubscriptionsIndexKey();
+    final String key = service.getKeysBuilder().getSubscriptionKey("prov1");
+    when(listenerContainer.isRunning()).thenReturn(true);
+    when(jedisTemplate.scan(eq(PubSubConstants.REDIS_SUBS_PATTERN_KEY), anyInt())).thenReturn(new HashSet<String>(Arrays.asList(key)));
+    when(jedisTemplate.hGetAll(Arrays.asList(key))).thenReturn(Arrays.asList(buildSubscriptions()));
+
+    service.loadSubscriptions();
+
+    verify(jedisTemplate).sAdd(indexKey, "prov1");
+    verify(subscriptionRouter, times(buildSubscriptions().size())).addSubscription(any(MessageListenerImpl.class), any(Topic.class));
+  }
+
+  @Test
+  public void reloadSubscriptions() throws Exception {
+    when(listenerFactory.getObject()).thenReturn(new MessageListenerImpl("prov1"));
+    final String key = service.getKeysBuilder().getSubscriptionKey("prov1");
+    when(jedisTemplate.hGetAll(key)).thenReturn(buildSubscriptions());
+    service.reloadSubscriptions("prov1");
+
+    // Another instance removes one of the subscriptions
+    final Map<String, String> subscriptions = buildSubscriptions();
+    subscriptions.remove("/data/provider2*");
+    when(jedisTemplate.hGetAll(key)).thenReturn(subscriptions);
+    service.reloadSubscriptions("prov1");
+
+    verify(subscriptionRouter).removeSubscription(any(MessageListenerImpl.class), eq(ChannelUtils.buildTopic("/data/provider2*")));
+    verify(subscriptionRouter, times(0)).removeSubscription(any(MessageListenerImpl.class), eq(ChannelUtils.buildTopic("/data/provider1/sensor1")));
+
+    // And then the remaining one
+    when(jedisTemplate.hGetAll(key)).thenReturn(new HashMap<String, String>());
+    service.reloadSubscriptions("prov1");
+
+    verify(subscriptionRouter).removeSubscriptions(any(MessageListenerImpl.class));
+  }
+
+  @Test
+  public void subscribeToEntityOwnedByAnotherNode() {
+    when(ownershipManager.isOwned("prov1")).thenReturn(false);
+    initSubscription(alarmSubscription);
+    when(alarmSubscription.getType()).thenReturn(SubscribeType.ALARM);
+    when(alarmSubscription.getAlertId()).thenReturn("alert1");
+    when(resourceService.existsAlert("alert1")).thenReturn(true);
+
+    service.subscribe(alarmSubscription);
+
+    // Subscription is stored and notified, and activated by its owner when it reloads it
+    verify(jedisTemplate).hSet(eq(service.getKeysBuilder().getSubscriptionKey("prov1")), anyString(), anyString());
+    verify(jedisTemplate).publish(PubSubConstants.REDIS_SUBS_CHANGES_CHANNEL, "prov1");
+    verify(subscriptionRouter, times(0)).addSubscription(any(MessageListenerImpl.class), any(Topic.class));
+  }
+
+  @Test
+  public void rebalanceSubscriptions() throws Exception {
+    final String prov1Key = service.getKeysBuilder().getSubscriptionKey("prov1");
+    final Set<Integer> partitions = new HashSet<Integer>(Arrays.asList(7));
+    when(listenerFactory.getObject()).thenReturn(new MessageListenerImpl("prov1"));
+    when(listenerContainer.isRunning()).thenReturn(true);
+    when(ownershipManager.isEnabled()).thenReturn(true);
+    when(ownershipManager.isOwned(anyString())).thenReturn(false);
+    when(ownershipManager.getPartition("prov1")).thenReturn(7);
+    when(ownershipManager.getPartition("prov2")).thenReturn(8);
+    when(jedisTemplate.sMembers(service.getKeysBuilder().getSubscriptionsIndexKey())).thenReturn(new HashSet<String>(Arrays.asList("prov1", "prov2")));
+    when(jedisTemplate.hGetAll(Arrays.asList(prov1Key))).thenReturn(Arrays.asList(buildSubscriptions()));
+    service.loadSubscriptions();
+
+    // This node takes over the partition of prov1 ...
+    when(ownershipManager.rebalance()).thenReturn(new OwnershipChange(partitions, new HashSet<Integer>()));
+    service.rebalanceSubscriptions();
+
+    verify(jedisTemplate).hGetAll(Arrays.asList(prov1Key));
+    verify(subscriptionRouter, times(buildSubscriptions().size())).addSubscription(any(MessageListenerImpl.class), any(Topic.class));
+
+    // ... and later on hands it over to another node
+    when(ownershipManager.rebalance()).thenReturn(new OwnershipChange(new HashSet<Integer>(), partitions));
+    service.rebalanceSubscriptions();
+
+    verify(subscriptionRouter).removeSubscriptions(any(MessageListenerImpl.class));
+    verify(ownershipManager).release(partitions);
+    // Partitions released by other nodes are taken over as soon as it is announced
+    verify(listenerContainer).addMessageListener(any(MessageListener.class), eq(new ChannelTopic(PubSubConstants.REDIS_SUBS_OWNERSHIP_CHANNEL)));
+  }
+
   private void initSubscription(final Subscription subscription) {
     final NotificationParams notificationParams = new NotificationParams("http://127.0.0.1/endpoint", "ABCDEFGH", 3, 5);
     when(subscription.getSourceEntityId()).thenReturn("prov1");
@@ -323,6 +453,9 @@ public class SubscribeServiceImplTest {
     service.subscribe(subscription);
 
     verify(jedisTemplate).hSet(key, topic.getTopic(), converter.marshal(subscription.getNotificationParams()));
+    verify(subscriptionRouter).addSubscription(any(MessageListenerImpl.class), eq(topic));
+    verify(jedisTemplate).sAdd(service.getKeysBuilder().getSubscriptionsIndexKey(), subscription.getSourceEntityId());
+    verify(jedisTemplate).publish(PubSubConstants.REDIS_SUBS_CHANGES_CHANNEL, subscription.getSourceEntityId());
   }
 
   private Set<String> getTopics() {
@@ -0,0 +1,149 @@
+/*
+ * Sentilo
+ *
+ * Original version 1.4 Copyright (C) 2013 Institut Municipal d’Informàtica, Ajuntament de
+ * Barcelona. Modified by Opentrends adding support for multitenant deployments and SaaS.
+ * Modifications on version 1.5 Copyright (C) 2015 Opentrends Solucions i Sistemes, S.L.
+ *
+ *
+ * This program is licensed and may be used, modified and redistributed under the terms of the
+ * European Public License (EUPL), either version 1.1 or (at your option) any later version as soon
+ * as they are approved by the European Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along with this program;
+ * if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl http://www.gnu.org/licenses/ and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.sentilo.platform.service.test.utils;
+
+import static org.mockito.Mockito.when;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.sentilo.common.converter.DefaultStringMessageConverter;
+import org.sentilo.common.converter.StringMessageConverter;
+import org.sentilo.common.domain.EventMessage;
+import org.sentilo.common.enums.EventType;
+import org.sentilo.common.utils.DateUtils;
+import org.sentilo.platform.common.domain.AlarmInputMessage;
+import org.sentilo.platform.common.domain.Observation;
+import org.sentilo.platform.common.domain.OrderInputMessage;
+import org.sentilo.platform.common.security.RequesterContext;
+import org.sentilo.platform.common.security.RequesterContextHolder;
+import org.sentilo.platform.common.security.ResourceOwnerContext;
+import org.sentilo.platform.common.security.ResourceOwnerContextHolder;
+import org.sentilo.platform.service.utils.ChannelUtils;
+import org.sentilo.platform.service.utils.ChannelUtils.PubSubChannelPrefix;
+import org.sentilo.platform.service.utils.PublishMessageUtils;
+import org.springframework.data.redis.listener.Topic;
+
+public class PublishMessageUtilsTest {
+
+  private static final long REQUEST_TIMESTAMP = 1700000000000L;
+
+  private final StringMessageConverter converter = new DefaultStringMessageConverter();
+
+  @Mock
+  private RequesterContext requesterContext;
+  @Mock
+  private ResourceOwnerContext resourceOwnerContext;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    when(requesterContext.getEntityId()).thenReturn("app1");
+    when(requesterContext.getTenantId()).thenReturn("tenant1");
+    when(requesterContext.getRequestTimestamp()).thenReturn(REQUEST_TIMESTAMP);
+    when(resourceOwnerContext.getTenantId()).thenReturn("tenant2");
+    RequesterContextHolder.setContext(requesterContext);
+    ResourceOwnerContextHolder.setContext(resourceOwnerContext);
+  }
+
+  @After
+  public void tearDown() {
+    RequesterContextHolder.clearContext();
+    ResourceOwnerContextHolder.clearContext();
+  }
+
+  @Test
+  public void observationContentIsTheMarshalledEvent() throws Exception {
+    final Observation observation = new Observation("prov1", "sensor1", "12.5 \"C\"", 1600000000000L, "41.38 2.17");
+    final Topic topic = ChannelUtils.buildTopic(PubSubChannelPrefix.data, "prov1", "sensor1");
+
+    final EventMessage event = new EventMessage();
+    event.setProvider("prov1");
+    event.setSensor("sensor1");
+    event.setMessage("12.5 \"C\"");
+    event.setTimestamp(DateUtils.timestampToString(1600000000000L));
+    event.setTime(1600000000000L);
+    event.setLocation("41.38 2.17");
+    event.setType(EventType.DATA.name());
+    event.setTopic(topic.getTopic());
+    event.setPublisher("app1");
+    event.setPublishedAt(REQUEST_TIMESTAMP);
+    event.setPublisherTenant("tenant1");
+    event.setTenant("tenant2");
+
+    final byte[] content = PublishMessageUtils.buildContentToPublish(observation, topic);
+
+    Assert.assertEquals(converter.marshal(event), new String(content, "UTF-8"));
+  }
+
+  @Test
+  public void alarmContent() throws Exception {
+    final AlarmInputMessage message = new AlarmInputMessage("alert1");
+    message.setProviderId("prov1");
+    message.setSensorId("sensor1");
+    message.setAlertType("EXTERNAL");
+    message.setMessage("threshold exceeded");
+    message.setSender("prov1");
+    final Topic topic = ChannelUtils.buildTopic(PubSubChannelPrefix.alarm, "alert1");
+
+    final String content = new String(PublishMessageUtils.buildContentToPublish(message, topic), "UTF-8");
+    final EventMessage event = (EventMessage) converter.unmarshal(content, EventMessage.class);
+
+    Assert.assertEquals("threshold exceeded", event.getMessage());
+    Assert.assertEquals("alert1", event.getAlert());
+    Assert.assertEquals("EXTERNAL", event.getAlertType());
+    Assert.assertEquals(EventType.ALARM.name(), event.getType());
+    Assert.assertEquals(topic.getTopic(), event.getTopic());
+    Assert.assertEquals("prov1", event.getPublisher());
+    Assert.assertEquals(event.getTimestamp(), DateUtils.timestampToString(event.getTime()));
+    Assert.assertFalse(content.contains("location"));
+  }
+
+  @Test
+  public void contentBuffersAreNotShared() throws Exception {
+    final OrderInputMessage message = new OrderInputMessage("prov1", null);
+    message.setOrder("stop");
+    final Topic topic = ChannelUtils.buildTopic(PubSubChannelPrefix.order, "prov1");
+    final Observation observation = new Observation("prov1", "sensor1", "1", 1600000000000L);
+    final Topic dataTopic = ChannelUtils.buildTopic(PubSubChannelPrefix.data, "prov1", "sensor1");
+
+    final byte[] orderContent = PublishMessageUtils.buildContentToPublish(message, topic);
+    final String order = new String(orderContent, "UTF-8");
+    PublishMessageUtils.buildContentToPublish(observation, dataTopic);
+
+    Assert.assertEquals(order, new String(orderContent, "UTF-8"));
+    final EventMessage event = (EventMessage) converter.unmarshal(order, EventMessage.class);
+    Assert.assertEquals("stop", event.getMessage());
+    Assert.assertEquals("app1", event.getPublisher());
+    Assert.assertNull(event.getSensor());
+  }
+}